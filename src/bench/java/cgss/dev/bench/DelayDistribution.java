@@ -0,0 +1,43 @@
+package cgss.dev.bench;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the delays of synthetic events are distributed.
+ */
+public enum DelayDistribution {
+    /**
+     * Every event is delayed by the longest delay.
+     */
+    FIXED,
+    /**
+     * Delays are uniformly distributed, up to the longest delay.
+     */
+    UNIFORM,
+    /**
+     * Delays are exponentially distributed, with a quarter of the longest delay as mean, capped at it.
+     */
+    EXPONENTIAL;
+
+    /**
+     * Picks the delay of the next event.
+     *
+     * @param maxDelay The longest delay.
+     * @return The delay.
+     */
+    public Duration next(final Duration maxDelay) {
+        final long maxDelayMillis = maxDelay.toMillis();
+
+        switch (this) {
+            case FIXED:
+                return maxDelay;
+            case UNIFORM:
+                return Duration.ofMillis(ThreadLocalRandom.current().nextLong(maxDelayMillis + 1));
+            default:
+                final double delayMillis = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) * maxDelayMillis / 4;
+
+                return Duration.ofMillis(Math.min(maxDelayMillis, (long) delayMillis));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package cgss.dev.bench;
+
+import cgss.dev.model.Event;
+import cgss.dev.model.EventHandler;
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+/**
+ * Measures the event parsing done for every consumed event.
+ * Run it with the GC profiler to get the allocation rates as well:
+ * <pre>
+ * mvn -P bench package
+ * java -jar target/benchmarks.jar EventHandlerBenchmark -prof gc
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventHandlerBenchmark {
+    /**
+     * The size and shape of the event.
+     */
+    @Param({"SMALL", "KB_10", "KB_200", "NESTED"})
+    public EventPayloads.Shape shape;
+    /**
+     * What kind of input the event is.
+     */
+    @Param({"VALID", "BAD_TIMESTAMP", "NOT_JSON"})
+    public EventPayloads.Validity validity;
+
+    /**
+     * The handler being measured.
+     */
+    private EventHandler eventHandler;
+    /**
+     * The event being parsed.
+     */
+    private byte[] event;
+
+    /**
+     * Builds the event, and silences the invalid event warnings so they don't get measured.
+     */
+    @Setup
+    public void setUp() {
+        LogManager.getLogManager().reset();
+
+        eventHandler = new EventHandler(EventPayloads.TIMESTAMP_FIELD_NAME, new Gson(), DateTimeFormatter.ISO_INSTANT);
+        event = EventPayloads.event(shape, validity, Instant.now());
+    }
+
+    /**
+     * Validates the event, as the sink thread does for every consumed event.
+     *
+     * @return If the event is valid.
+     */
+    @Benchmark
+    public boolean validateEvent() {
+        return eventHandler.validateEvent(event);
+    }
+
+    /**
+     * Unmarshalls the event, as the producer does for events saved without a timestamp in their key.
+     *
+     * @return The unmarshalled event.
+     */
+    @Benchmark
+    public Optional<Event> unmarshallEvent() {
+        return eventHandler.unmarshallEvent(event);
+    }
+
+    /**
+     * Extracts the destination field, as the router does when routing by field.
+     *
+     * @return The destination.
+     */
+    @Benchmark
+    public Optional<String> extractField() {
+        return eventHandler.extractField(event, EventPayloads.DESTINATION_FIELD_NAME);
+    }
+}
@@ -0,0 +1,137 @@
+package cgss.dev.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Builds the event payloads used by the benchmarks, shaped like the ones we see in production: a timestamp field
+ * next to a routing field and some business data.
+ */
+public final class EventPayloads {
+    /**
+     * The name of the timestamp field in the generated events.
+     */
+    public static final String TIMESTAMP_FIELD_NAME = "timestamp";
+    /**
+     * The name of the destination field in the generated events.
+     */
+    public static final String DESTINATION_FIELD_NAME = "destination";
+
+    /**
+     * The size and shape of a generated event.
+     */
+    public enum Shape {
+        /**
+         * A handful of fields, around a hundred bytes.
+         */
+        SMALL(0, 0),
+        /**
+         * Around 10 KB of flat fields.
+         */
+        KB_10(10 * 1024, 0),
+        /**
+         * Around 200 KB of flat fields.
+         */
+        KB_200(200 * 1024, 0),
+        /**
+         * A small event whose data is nested 64 objects deep.
+         */
+        NESTED(1024, 64);
+
+        /**
+         * The approximate size of the padding data, in bytes.
+         */
+        private final int paddingBytes;
+        /**
+         * How deep the data is nested.
+         */
+        private final int depth;
+
+        /**
+         * Constructor for the event shape.
+         *
+         * @param paddingBytes The approximate size of the padding data, in bytes.
+         * @param depth How deep the data is nested.
+         */
+        Shape(final int paddingBytes, final int depth) {
+            this.paddingBytes = paddingBytes;
+            this.depth = depth;
+        }
+    }
+
+    /**
+     * What kind of input a generated event is.
+     */
+    public enum Validity {
+        /**
+         * A JSON object with a valid timestamp.
+         */
+        VALID,
+        /**
+         * A JSON object whose timestamp can't be parsed.
+         */
+        BAD_TIMESTAMP,
+        /**
+         * Something that isn't JSON at all, as the same size as the valid event.
+         */
+        NOT_JSON
+    }
+
+    /**
+     * Can't be instantiated.
+     */
+    private EventPayloads() {
+    }
+
+    /**
+     * Builds an event of the given shape and validity.
+     *
+     * @param shape The size and shape of the event.
+     * @param validity What kind of input the event is.
+     * @param timestamp The event timestamp.
+     * @return The event bytes.
+     */
+    public static byte[] event(final Shape shape, final Validity validity, final Instant timestamp) {
+        final String formattedTimestamp = validity == Validity.BAD_TIMESTAMP ? "not a timestamp" : DateTimeFormatter.ISO_INSTANT.format(timestamp);
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append("{\"").append(TIMESTAMP_FIELD_NAME).append("\": \"").append(formattedTimestamp).append("\", ");
+        builder.append("\"").append(DESTINATION_FIELD_NAME).append("\": \"sink\", ");
+        builder.append("\"id\": 42, \"active\": true, \"data\": ");
+        appendData(builder, shape.paddingBytes, shape.depth);
+        builder.append('}');
+
+        final byte[] bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (validity == Validity.NOT_JSON) {
+            // Same size, but starts like a plain text log line.
+            bytes[0] = '#';
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Appends the data object, nested the given number of times, with padding fields at the innermost level.
+     *
+     * @param builder The builder to append to.
+     * @param paddingBytes The approximate size of the padding fields, in bytes.
+     * @param depth How deep the data is nested.
+     */
+    private static void appendData(final StringBuilder builder, final int paddingBytes, final int depth) {
+        for (int i = 0; i < depth; i++) {
+            builder.append("{\"level\": ").append(i).append(", \"child\": ");
+        }
+
+        builder.append("{\"name\": \"padding\"");
+        for (int i = 0; builder.length() < paddingBytes; i++) {
+            builder.append(", \"field").append(i).append("\": \"value-").append(i).append('"');
+        }
+        builder.append('}');
+
+        for (int i = 0; i < depth; i++) {
+            builder.append('}');
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package cgss.dev.bench;
+
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.model.EventHandler;
+import cgss.dev.pipeline.BackpressureController;
+import cgss.dev.pipeline.EmitRateLimiter;
+import cgss.dev.pipeline.EventRouter;
+import cgss.dev.pipeline.KafkaDelayedProducerRunnable;
+import cgss.dev.pipeline.KafkaSinkThread;
+import cgss.dev.pipeline.OffsetCommitter;
+import cgss.dev.pipeline.ProducerScheduler;
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.StorageEnum;
+import cgss.dev.storage.memory.MemoryStorage;
+import cgss.dev.storage.nop.NopStorage;
+import cgss.dev.storage.rocksdb.RocksDBStorage;
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.rocksdb.RocksDBException;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Drives the real sink thread and producer with synthetic traffic, through in process Kafka stand ins, and reports
+ * how they keep up over time: the ingest and emit rates, the emit lateness percentiles, the heap and GC, and the
+ * storage size. Everything runs offline.
+ * <p>
+ * It's configured through system properties, all optional:
+ * <ul>
+ *     <li>harness.rate: the events per second fed to the consumer, 10000 by default.</li>
+ *     <li>harness.duration: how long to feed events for, PT1M by default.</li>
+ *     <li>harness.partitions: the number of consumed partitions, 4 by default.</li>
+ *     <li>harness.delay.distribution: FIXED, UNIFORM or EXPONENTIAL, UNIFORM by default.</li>
+ *     <li>harness.delay.max: the longest delay, which is also the expiry age, PT10S by default. Exponential delays
+ *     have a quarter of it as mean.</li>
+ *     <li>harness.storage: NOP, MEMORY or ROCKSDB, MEMORY by default. RocksDB runs on a temporary directory.</li>
+ *     <li>harness.shape: the event shape, as in {@link EventPayloads.Shape}, SMALL by default.</li>
+ *     <li>harness.pipeline.capacity: the ingest pipeline capacity, 0 by default, which saves records on the consumer
+ *     thread.</li>
+ *     <li>harness.pipeline.batch.size: the ingest pipeline batch size, 256 by default.</li>
+ *     <li>harness.parse.parallelism: the threads parsing each poll, 0 by default, which parses them one by one.</li>
+ *     <li>harness.producer.poll: the producer poll interval, PT0.1S by default.</li>
+ *     <li>harness.report.interval: the interval between reports, PT5S by default.</li>
+ *     <li>harness.min.ingest.rate: fails the run if the overall ingest rate is lower, 0 by default.</li>
+ *     <li>harness.max.lateness.p99: fails the run if the p99 emit lateness is higher, unchecked by default.</li>
+ * </ul>
+ * <pre>
+ * mvn -P bench package
+ * java -Dharness.rate=50000 -Dharness.storage=ROCKSDB -cp target/benchmarks.jar cgss.dev.bench.LoadHarness
+ * </pre>
+ * It exits with 1 if the run misses any of the given thresholds, so it can gate performance changes.
+ */
+public class LoadHarness {
+    /**
+     * The topic the synthetic events are consumed from.
+     */
+    private static final String SOURCE_TOPIC = "harness-source";
+    /**
+     * The topic the expired events are sent to.
+     */
+    private static final String SINK_TOPIC = "harness-sink";
+    /**
+     * The interval between batches of fed events.
+     */
+    private static final Duration FEED_INTERVAL = Duration.ofMillis(10);
+
+    /**
+     * Runs the harness.
+     *
+     * @param args Command line arguments. Not used, the harness is configured through system properties.
+     * @throws Exception If it fails to set the pipelines up.
+     */
+    public static void main(final String[] args) throws Exception {
+        final long rate = Long.getLong("harness.rate", 10_000);
+        final Duration duration = Duration.parse(System.getProperty("harness.duration", "PT1M"));
+        final int partitions = Integer.getInteger("harness.partitions", 4);
+        final DelayDistribution delayDistribution = DelayDistribution.valueOf(System.getProperty("harness.delay.distribution", "UNIFORM"));
+        final Duration maxDelay = Duration.parse(System.getProperty("harness.delay.max", "PT10S"));
+        final StorageEnum storage = StorageEnum.valueOf(System.getProperty("harness.storage", "MEMORY"));
+        final EventPayloads.Shape shape = EventPayloads.Shape.valueOf(System.getProperty("harness.shape", "SMALL"));
+        final int pipelineCapacity = Integer.getInteger("harness.pipeline.capacity", 0);
+        final int pipelineBatchSize = Integer.getInteger("harness.pipeline.batch.size", 256);
+        final int parseParallelism = Integer.getInteger("harness.parse.parallelism", 0);
+        final Duration producerPollInterval = Duration.parse(System.getProperty("harness.producer.poll", "PT0.1S"));
+        final Duration reportInterval = Duration.parse(System.getProperty("harness.report.interval", "PT5S"));
+        final double minIngestRate = Double.parseDouble(System.getProperty("harness.min.ingest.rate", "0"));
+        final String maxLatenessP99 = System.getProperty("harness.max.lateness.p99");
+
+        // The per event diagnostics would only measure the console.
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        final KVStorage kvStorage = createStorage(storage);
+        final EventHandler eventHandler = new EventHandler(EventPayloads.TIMESTAMP_FIELD_NAME, new Gson(), DateTimeFormatter.ISO_INSTANT);
+        final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+        final List<TopicPartition> topicPartitions = new ArrayList<>();
+        final Map<TopicPartition, Long> beginningOffsets = new HashMap<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            final TopicPartition topicPartition = new TopicPartition(SOURCE_TOPIC, partition);
+            topicPartitions.add(topicPartition);
+            beginningOffsets.put(topicPartition, 0L);
+        }
+
+        final MockConsumer<byte[], byte[]> mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        mockConsumer.assign(topicPartitions);
+        mockConsumer.updateBeginningOffsets(beginningOffsets);
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                eventHandler,
+                maxDelay,
+                Collections.singletonList(SINK_TOPIC),
+                new EmitRateLimiter(0, 0),
+                0,
+                Duration.ZERO,
+                false,
+                pipelineMetrics,
+                Clock.systemUTC()
+        );
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                mockConsumer,
+                Duration.ofMillis(10),
+                kvStorage,
+                eventHandler,
+                new OffsetCommitter(mockConsumer, Duration.ofSeconds(5)),
+                new BackpressureController(kvStorage, kafkaDelayedProducerRunnable::getEmitLag, 0, 0, Duration.ZERO, 1),
+                EventRouter.broadcast(),
+                pipelineMetrics,
+                Clock.systemUTC(),
+                pipelineCapacity,
+                pipelineBatchSize,
+                parseParallelism
+        );
+
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool(2);
+        final ProducerScheduler producerScheduler = new ProducerScheduler(executor, kafkaDelayedProducerRunnable, producerPollInterval);
+
+        System.out.printf("Feeding %d events/s for %s, %s delays up to %s, %s events, %s storage%n", rate, duration, delayDistribution, maxDelay, shape, storage);
+        System.out.printf("%8s %12s %12s %12s %10s %10s %10s %12s %12s %10s %10s %10s%n",
+                "elapsed", "fed/s", "ingest/s", "emit/s", "late p50", "late p99", "late p999", "pending", "stored MB", "heap MB", "gc count", "gc ms");
+
+        kafkaSinkThread.start();
+        producerScheduler.start();
+
+        final long startNanos = System.nanoTime();
+        final long endNanos = startNanos + duration.toNanos();
+        final long[] nextOffsets = new long[partitions];
+        long fed = 0;
+        long nextReportNanos = startNanos + reportInterval.toNanos();
+        Snapshot lastSnapshot = Snapshot.take(0, pipelineMetrics, startNanos);
+
+        while (System.nanoTime() < endNanos) {
+            // Feeds as many events as the rate allows for the elapsed time, in small batches.
+            final long due = (System.nanoTime() - startNanos) * rate / 1_000_000_000L;
+            final Instant now = Instant.now();
+
+            for (; fed < due; fed++) {
+                final int partition = (int) (fed % partitions);
+                final Instant timestamp = now.minus(maxDelay).plus(delayDistribution.next(maxDelay));
+
+                mockConsumer.addRecord(new ConsumerRecord<>(
+                        SOURCE_TOPIC,
+                        partition,
+                        nextOffsets[partition]++,
+                        Long.toString(fed).getBytes(),
+                        EventPayloads.event(shape, EventPayloads.Validity.VALID, timestamp)
+                ));
+            }
+
+            if (System.nanoTime() >= nextReportNanos) {
+                lastSnapshot = report(lastSnapshot, Snapshot.take(fed, pipelineMetrics, System.nanoTime()), pipelineMetrics, kvStorage, startNanos);
+                nextReportNanos += reportInterval.toNanos();
+
+                // The producer keeps every sent record otherwise.
+                mockProducer.clear();
+            }
+
+            Thread.sleep(FEED_INTERVAL.toMillis());
+        }
+
+        final Snapshot finalSnapshot = Snapshot.take(fed, pipelineMetrics, System.nanoTime());
+        report(lastSnapshot, finalSnapshot, pipelineMetrics, kvStorage, startNanos);
+
+        kafkaSinkThread.interrupt();
+        executor.shutdown();
+        kafkaSinkThread.join();
+
+        final double elapsedSeconds = (finalSnapshot.nanos - startNanos) / 1e9;
+        final double ingestRate = finalSnapshot.consumed / elapsedSeconds;
+        final long latenessP99 = latenessPercentile(pipelineMetrics.emitAccuracy().getEmitLatenessP99Millis());
+
+        System.out.printf("Overall: fed %d, ingested %d (%.0f/s), emitted %d (%.0f/s), p99 emit lateness %d ms%n",
+                fed, finalSnapshot.consumed, ingestRate, finalSnapshot.emitted, finalSnapshot.emitted / elapsedSeconds, latenessP99);
+
+        boolean passed = true;
+        if (ingestRate < minIngestRate) {
+            System.out.printf("FAILED: ingest rate %.0f/s is lower than %.0f/s%n", ingestRate, minIngestRate);
+            passed = false;
+        }
+        if (maxLatenessP99 != null && latenessP99 > Duration.parse(maxLatenessP99).toMillis()) {
+            System.out.printf("FAILED: p99 emit lateness %d ms is higher than %s%n", latenessP99, maxLatenessP99);
+            passed = false;
+        }
+
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * Creates the storage to be used. RocksDB is created on a temporary directory, deleted on exit.
+     *
+     * @param storage The storage engine.
+     * @return The storage.
+     * @throws IOException If it fails to create the temporary directory.
+     * @throws RocksDBException If it fails to create the RocksDB instance.
+     */
+    static KVStorage createStorage(final StorageEnum storage) throws IOException, RocksDBException {
+        switch (storage) {
+            case NOP:
+                return new NopStorage();
+            case MEMORY:
+                return new MemoryStorage();
+            default:
+                final Path rocksDbPath = Files.createTempDirectory("kafka-event-delayer");
+                rocksDbPath.toFile().deleteOnExit();
+
+                return new RocksDBStorage(rocksDbPath.toString());
+        }
+    }
+
+    /**
+     * Prints a report line, with the rates since the last report.
+     *
+     * @param last The counters at the last report.
+     * @param current The current counters.
+     * @param pipelineMetrics The pipeline metrics, for the lateness percentiles.
+     * @param kvStorage The storage, for its size.
+     * @param startNanos When the harness started.
+     * @return The current counters.
+     * @throws KVStorageException If it fails to read the storage size.
+     */
+    private static Snapshot report(
+            final Snapshot last,
+            final Snapshot current,
+            final PipelineMetrics pipelineMetrics,
+            final KVStorage kvStorage,
+            final long startNanos) throws KVStorageException {
+        final double seconds = Math.max(1, current.nanos - last.nanos) / 1e9;
+        final MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (final GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, garbageCollector.getCollectionCount());
+            gcMillis += Math.max(0, garbageCollector.getCollectionTime());
+        }
+
+        System.out.printf("%7ds %12.0f %12.0f %12.0f %10d %10d %10d %12d %12.1f %10d %10d %10d%n",
+                Duration.ofNanos(current.nanos - startNanos).getSeconds(),
+                (current.fed - last.fed) / seconds,
+                (current.consumed - last.consumed) / seconds,
+                (current.emitted - last.emitted) / seconds,
+                latenessPercentile(pipelineMetrics.emitAccuracy().getEmitLatenessP50Millis()),
+                latenessPercentile(pipelineMetrics.emitAccuracy().getEmitLatenessP99Millis()),
+                latenessPercentile(pipelineMetrics.emitAccuracy().getEmitLatenessP999Millis()),
+                kvStorage.CountValues(),
+                kvStorage.SizeInBytes() / (1024.0 * 1024.0),
+                heap.getUsed() / (1024 * 1024),
+                gcCount,
+                gcMillis);
+
+        return current;
+    }
+
+    /**
+     * Reads the lateness percentile of the source topic.
+     *
+     * @param percentiles The percentiles by source topic.
+     * @return The percentile in milliseconds, 0 if nothing was emitted yet.
+     */
+    private static long latenessPercentile(final Map<String, Long> percentiles) {
+        return percentiles.getOrDefault(SOURCE_TOPIC, 0L);
+    }
+
+    /**
+     * The pipeline counters at a given time.
+     */
+    private static class Snapshot {
+        /**
+         * The number of events fed to the consumer.
+         */
+        private final long fed;
+        /**
+         * The number of consumed events.
+         */
+        private final long consumed;
+        /**
+         * The number of emitted events.
+         */
+        private final long emitted;
+        /**
+         * When the snapshot was taken.
+         */
+        private final long nanos;
+
+        /**
+         * Constructor for the snapshot.
+         *
+         * @param fed The number of events fed to the consumer.
+         * @param consumed The number of consumed events.
+         * @param emitted The number of emitted events.
+         * @param nanos When the snapshot was taken.
+         */
+        private Snapshot(final long fed, final long consumed, final long emitted, final long nanos) {
+            this.fed = fed;
+            this.consumed = consumed;
+            this.emitted = emitted;
+            this.nanos = nanos;
+        }
+
+        /**
+         * Takes a snapshot of the pipeline counters.
+         *
+         * @param fed The number of events fed to the consumer.
+         * @param pipelineMetrics The pipeline metrics.
+         * @param nanos The current time.
+         * @return The snapshot.
+         */
+        private static Snapshot take(final long fed, final PipelineMetrics pipelineMetrics, final long nanos) {
+            return new Snapshot(fed, pipelineMetrics.getConsumedCount(), pipelineMetrics.getEmittedCount(), nanos);
+        }
+    }
+}
@@ -0,0 +1,404 @@
+package cgss.dev.bench;
+
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.model.Event;
+import cgss.dev.model.EventHandler;
+import cgss.dev.pipeline.BackpressureController;
+import cgss.dev.pipeline.EmitRateLimiter;
+import cgss.dev.pipeline.EventRouter;
+import cgss.dev.pipeline.KafkaDelayedProducerRunnable;
+import cgss.dev.pipeline.KafkaSinkThread;
+import cgss.dev.pipeline.OffsetCommitter;
+import cgss.dev.pipeline.ProducerScheduler;
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.StorageEnum;
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Replays a workload through the real pipelines and storage engine, on a clock running many times faster than the
+ * wall clock, so days of traffic take minutes. It reports how the backlog and the storage engine, e.g. RocksDB
+ * compactions, behave over the replayed time.
+ * <p>
+ * The workload is either synthetic, or recorded in a file with one event per line, in timestamp order. Recorded
+ * events are fed when the clock reaches their timestamp, the clock starting at the first one.
+ * <p>
+ * It's configured through system properties, all optional:
+ * <ul>
+ *     <li>replay.speed: how many times faster than the wall clock the replay runs, 100 by default.</li>
+ *     <li>replay.file: the recorded workload, synthetic if not given.</li>
+ *     <li>replay.duration: how long to feed synthetic events for, in replayed time, P1D by default.</li>
+ *     <li>replay.rate: the synthetic events per replayed second, 100 by default.</li>
+ *     <li>replay.delay.distribution: FIXED, UNIFORM or EXPONENTIAL, UNIFORM by default.</li>
+ *     <li>replay.delay.max: the longest delay, which is also the expiry age, PT1H by default.</li>
+ *     <li>replay.storage: NOP, MEMORY or ROCKSDB, ROCKSDB by default. RocksDB runs on a temporary directory.</li>
+ *     <li>replay.shape: the synthetic event shape, as in {@link EventPayloads.Shape}, SMALL by default.</li>
+ *     <li>replay.producer.poll: the producer poll interval, in replayed time, PT1S by default.</li>
+ *     <li>replay.report.interval: the interval between reports, in replayed time, PT1H by default.</li>
+ * </ul>
+ * <pre>
+ * mvn -P bench package
+ * java -Dreplay.speed=1000 -Dreplay.duration=P7D -cp target/benchmarks.jar cgss.dev.bench.ReplayDriver
+ * </pre>
+ * The time the pipelines spend working is sped up as well, so the emit lateness is magnified by the speed; it's only
+ * meaningful at the lower speeds. Rate limits and offset commits aren't replayed, as they run on the wall clock.
+ */
+public class ReplayDriver {
+    /**
+     * The topic the replayed events are consumed from.
+     */
+    private static final String SOURCE_TOPIC = "replay-source";
+    /**
+     * The topic the expired events are sent to.
+     */
+    private static final String SINK_TOPIC = "replay-sink";
+    /**
+     * The wall clock interval between batches of fed events.
+     */
+    private static final Duration FEED_INTERVAL = Duration.ofMillis(10);
+
+    /**
+     * Runs the replay.
+     *
+     * @param args Command line arguments. Not used, the replay is configured through system properties.
+     * @throws Exception If it fails to set the pipelines up, or to read the recorded workload.
+     */
+    public static void main(final String[] args) throws Exception {
+        final double speed = Double.parseDouble(System.getProperty("replay.speed", "100"));
+        final String file = System.getProperty("replay.file");
+        final Duration duration = Duration.parse(System.getProperty("replay.duration", "P1D"));
+        final long rate = Long.getLong("replay.rate", 100);
+        final DelayDistribution delayDistribution = DelayDistribution.valueOf(System.getProperty("replay.delay.distribution", "UNIFORM"));
+        final Duration maxDelay = Duration.parse(System.getProperty("replay.delay.max", "PT1H"));
+        final StorageEnum storage = StorageEnum.valueOf(System.getProperty("replay.storage", "ROCKSDB"));
+        final EventPayloads.Shape shape = EventPayloads.Shape.valueOf(System.getProperty("replay.shape", "SMALL"));
+        final Duration producerPollInterval = Duration.parse(System.getProperty("replay.producer.poll", "PT1S"));
+        final Duration reportInterval = Duration.parse(System.getProperty("replay.report.interval", "PT1H"));
+
+        // The per event diagnostics would only measure the console.
+        Logger.getLogger("").setLevel(Level.WARNING);
+
+        final EventHandler eventHandler = new EventHandler(EventPayloads.TIMESTAMP_FIELD_NAME, new Gson(), DateTimeFormatter.ISO_INSTANT);
+        final Workload workload = file == null
+                ? new SyntheticWorkload(rate, duration, delayDistribution, maxDelay, shape)
+                : new RecordedWorkload(Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8), eventHandler);
+
+        final ScaledClock clock = new ScaledClock(workload.start(), speed);
+        final KVStorage kvStorage = LoadHarness.createStorage(storage);
+        final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+        final TopicPartition topicPartition = new TopicPartition(SOURCE_TOPIC, 0);
+        final MockConsumer<byte[], byte[]> mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        mockConsumer.assign(Collections.singletonList(topicPartition));
+        mockConsumer.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                eventHandler,
+                maxDelay,
+                Collections.singletonList(SINK_TOPIC),
+                new EmitRateLimiter(0, 0),
+                0,
+                Duration.ZERO,
+                false,
+                pipelineMetrics,
+                clock
+        );
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                mockConsumer,
+                Duration.ofMillis(10),
+                kvStorage,
+                eventHandler,
+                new OffsetCommitter(mockConsumer, Duration.ofSeconds(5)),
+                new BackpressureController(kvStorage, kafkaDelayedProducerRunnable::getEmitLag, 0, 0, Duration.ZERO, 1),
+                EventRouter.broadcast(),
+                pipelineMetrics,
+                clock,
+                0,
+                0,
+                0
+        );
+
+        // The executor runs on the wall clock, so the poll interval is sped up along with the clock.
+        final ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
+        final ProducerScheduler producerScheduler = new ProducerScheduler(executor, kafkaDelayedProducerRunnable, clock.toWallClock(producerPollInterval));
+
+        System.out.printf("Replaying %s at %.0fx, delays up to %s, %s storage%n", file == null ? "a synthetic workload" : file, speed, maxDelay, storage);
+        System.out.printf("%22s %12s %12s %12s %10s %12s %12s %14s %14s %12s%n",
+                "replayed time", "fed", "ingested", "emitted", "late p99", "pending", "stored MB", "sst MB", "compaction MB", "stall ms");
+
+        kafkaSinkThread.start();
+        producerScheduler.start();
+
+        final long[] fed = {0};
+        Instant nextReport = workload.start().plus(reportInterval);
+        boolean feeding = true;
+        Instant feedingEnd = null;
+
+        // Runs until every fed event had the time to expire.
+        while (feeding || clock.instant().isBefore(feedingEnd.plus(maxDelay).plus(producerPollInterval))) {
+            final Instant now = clock.instant();
+
+            if (feeding) {
+                feeding = workload.feed(now, value -> mockConsumer.addRecord(new ConsumerRecord<>(
+                        SOURCE_TOPIC, 0, fed[0], Long.toString(fed[0]++).getBytes(), value
+                )));
+
+                if (!feeding) {
+                    feedingEnd = now;
+                }
+            }
+
+            if (!now.isBefore(nextReport)) {
+                report(now, fed[0], pipelineMetrics, kvStorage);
+                nextReport = nextReport.plus(reportInterval);
+
+                // The producer keeps every sent record otherwise.
+                mockProducer.clear();
+            }
+
+            Thread.sleep(FEED_INTERVAL.toMillis());
+        }
+
+        report(clock.instant(), fed[0], pipelineMetrics, kvStorage);
+
+        kafkaSinkThread.interrupt();
+        executor.shutdown();
+        kafkaSinkThread.join();
+        workload.close();
+
+        System.exit(0);
+    }
+
+    /**
+     * Prints a report line.
+     *
+     * @param now The replayed time.
+     * @param fed The number of fed events.
+     * @param pipelineMetrics The pipeline metrics.
+     * @param kvStorage The storage.
+     * @throws KVStorageException If it fails to read the storage size and properties.
+     */
+    private static void report(final Instant now, final long fed, final PipelineMetrics pipelineMetrics, final KVStorage kvStorage) throws KVStorageException {
+        final Map<String, Long> properties = kvStorage.GetProperties();
+
+        System.out.printf("%22s %12d %12d %12d %10d %12d %12.1f %14.1f %14.1f %12d%n",
+                now.truncatedTo(ChronoUnit.SECONDS),
+                fed,
+                pipelineMetrics.getConsumedCount(),
+                pipelineMetrics.getEmittedCount(),
+                pipelineMetrics.emitAccuracy().getEmitLatenessP99Millis().getOrDefault(SOURCE_TOPIC, 0L),
+                kvStorage.CountValues(),
+                kvStorage.SizeInBytes() / (1024.0 * 1024.0),
+                properties.getOrDefault("rocksdb.total-sst-files-size", 0L) / (1024.0 * 1024.0),
+                properties.getOrDefault("rocksdb.estimate-pending-compaction-bytes", 0L) / (1024.0 * 1024.0),
+                properties.getOrDefault("rocksdb.stall.micros", 0L) / 1000);
+    }
+
+    /**
+     * Feeds the events of a workload as the replayed time goes by.
+     */
+    private interface Workload extends AutoCloseable {
+        /**
+         * Tells when the workload starts, which the replay clock starts at.
+         *
+         * @return The start of the workload.
+         */
+        Instant start();
+
+        /**
+         * Feeds the events up to the given time.
+         *
+         * @param now The replayed time.
+         * @param sink Receives the event values.
+         * @return If there are events left to be fed.
+         * @throws IOException If it fails to read the events.
+         */
+        boolean feed(Instant now, Consumer<byte[]> sink) throws IOException;
+
+        @Override
+        default void close() throws IOException {}
+    }
+
+    /**
+     * Feeds synthetic events at a fixed rate, with delays following the given distribution.
+     */
+    private static class SyntheticWorkload implements Workload {
+        /**
+         * The events per replayed second.
+         */
+        private final long rate;
+        /**
+         * How long to feed events for.
+         */
+        private final Duration duration;
+        /**
+         * How the delays are distributed.
+         */
+        private final DelayDistribution delayDistribution;
+        /**
+         * The longest delay, which is also the expiry age.
+         */
+        private final Duration maxDelay;
+        /**
+         * The event shape.
+         */
+        private final EventPayloads.Shape shape;
+        /**
+         * When the workload starts.
+         */
+        private final Instant start;
+        /**
+         * The number of fed events.
+         */
+        private long fed;
+
+        /**
+         * Constructor for the synthetic workload. It starts now.
+         *
+         * @param rate The events per replayed second.
+         * @param duration How long to feed events for.
+         * @param delayDistribution How the delays are distributed.
+         * @param maxDelay The longest delay, which is also the expiry age.
+         * @param shape The event shape.
+         */
+        private SyntheticWorkload(final long rate, final Duration duration, final DelayDistribution delayDistribution, final Duration maxDelay, final EventPayloads.Shape shape) {
+            this.rate = rate;
+            this.duration = duration;
+            this.delayDistribution = delayDistribution;
+            this.maxDelay = maxDelay;
+            this.shape = shape;
+            this.start = Instant.now();
+            this.fed = 0;
+        }
+
+        @Override
+        public Instant start() {
+            return start;
+        }
+
+        @Override
+        public boolean feed(final Instant now, final Consumer<byte[]> sink) {
+            final long elapsedMillis = Math.min(duration.toMillis(), Duration.between(start, now).toMillis());
+            final long due = elapsedMillis * rate / 1000;
+
+            for (; fed < due; fed++) {
+                final Instant timestamp = now.minus(maxDelay).plus(delayDistribution.next(maxDelay));
+
+                sink.accept(EventPayloads.event(shape, EventPayloads.Validity.VALID, timestamp));
+            }
+
+            return elapsedMillis < duration.toMillis();
+        }
+    }
+
+    /**
+     * Feeds recorded events, one per line, when the replayed time reaches their timestamp.
+     */
+    private static class RecordedWorkload implements Workload {
+        /**
+         * Reads the recorded events.
+         */
+        private final BufferedReader reader;
+        /**
+         * The event business object, to read the event timestamps.
+         */
+        private final EventHandler eventHandler;
+        /**
+         * The next event to be fed, null once they run out.
+         */
+        private byte[] nextEvent;
+        /**
+         * The timestamp of the next event to be fed.
+         */
+        private Instant nextTimestamp;
+
+        /**
+         * Constructor for the recorded workload. It starts at the first event.
+         *
+         * @param reader Reads the recorded events.
+         * @param eventHandler The event business object, to read the event timestamps.
+         * @throws IOException If it fails to read the first event.
+         */
+        private RecordedWorkload(final BufferedReader reader, final EventHandler eventHandler) throws IOException {
+            this.reader = reader;
+            this.eventHandler = eventHandler;
+
+            readNext();
+
+            if (nextEvent == null) {
+                throw new IOException("The recorded workload has no valid events.");
+            }
+        }
+
+        @Override
+        public Instant start() {
+            return nextTimestamp;
+        }
+
+        @Override
+        public boolean feed(final Instant now, final Consumer<byte[]> sink) throws IOException {
+            while (nextEvent != null && !nextTimestamp.isAfter(now)) {
+                sink.accept(nextEvent);
+                readNext();
+            }
+
+            return nextEvent != null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+
+        /**
+         * Reads the next valid event, skipping the lines that aren't one.
+         *
+         * @throws IOException If it fails to read the event.
+         */
+        private void readNext() throws IOException {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final byte[] event = line.getBytes(StandardCharsets.UTF_8);
+                final Optional<Event> eventOpt = eventHandler.unmarshallEvent(event);
+
+                if (eventOpt.isPresent()) {
+                    nextEvent = event;
+                    nextTimestamp = eventOpt.get().getTimestamp();
+
+                    return;
+                }
+            }
+
+            nextEvent = null;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package cgss.dev.bench;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+/**
+ * A clock that runs faster than the wall clock, from a given start, so a long workload can be replayed in a fraction
+ * of the time it would take.
+ */
+public class ScaledClock extends Clock {
+    /**
+     * The instant the clock starts at.
+     */
+    private final Instant start;
+    /**
+     * The wall clock nanos when the clock started.
+     */
+    private final long startNanos;
+    /**
+     * How many times faster than the wall clock this clock runs.
+     */
+    private final double speed;
+
+    /**
+     * Constructor for the scaled clock. It starts running right away.
+     *
+     * @param start The instant the clock starts at.
+     * @param speed How many times faster than the wall clock this clock runs.
+     */
+    public ScaledClock(final Instant start, final double speed) {
+        this.start = start;
+        this.startNanos = System.nanoTime();
+        this.speed = speed;
+    }
+
+    /**
+     * Converts a duration of this clock into wall clock time.
+     *
+     * @param duration The duration, in this clock's time.
+     * @return The same duration, in wall clock time.
+     */
+    public Duration toWallClock(final Duration duration) {
+        return Duration.ofNanos((long) (duration.toNanos() / speed));
+    }
+
+    @Override
+    public Instant instant() {
+        return start.plusNanos((long) ((System.nanoTime() - startNanos) * speed));
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(final ZoneId zone) {
+        throw new UnsupportedOperationException("The scaled clock is always in UTC.");
+    }
+}
@@ -0,0 +1,246 @@
+package cgss.dev.bench;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageEnum;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+import cgss.dev.storage.nop.NopStorage;
+import cgss.dev.storage.rocksdb.RocksDBStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.Statistics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Compares the storage engines on the operations the pipelines do, with a given backlog already stored: saving a
+ * new event, deleting the oldest one, scanning the whole backlog, and scanning while another thread saves events.
+ * The backlog is the same after every iteration, as the saved events are deleted and the deleted ones saved back
+ * in between iterations. RocksDB runs on a temporary directory, configured like the application does.
+ * <pre>
+ * mvn -P bench package
+ * java -jar target/benchmarks.jar StorageBenchmark -p engine=ROCKSDB -p backlog=10000000 -jvmArgsAppend -Xmx16g
+ * </pre>
+ * The larger backlogs take a while to load, and the memory storage needs a heap to fit them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class StorageBenchmark {
+    /**
+     * When the first event of the backlog is due.
+     */
+    private static final Instant BASE_TIMESTAMP = Instant.parse("2020-01-01T00:00:00Z");
+
+    /**
+     * The storage engine.
+     */
+    @Param({"MEMORY", "ROCKSDB", "NOP"})
+    public StorageEnum engine;
+    /**
+     * The number of events stored before measuring.
+     */
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public long backlog;
+    /**
+     * The size of each stored value, in bytes.
+     */
+    @Param({"256"})
+    public int valueBytes;
+
+    /**
+     * The storage being measured.
+     */
+    private KVStorage kvStorage;
+    /**
+     * The RocksDB instance, null for the other engines.
+     */
+    private RocksDB rocksDB;
+    /**
+     * The temporary directory of the RocksDB instance, null for the other engines.
+     */
+    private Path rocksDbPath;
+    /**
+     * The value stored for every event.
+     */
+    private byte[] value;
+    /**
+     * The sequence of the next event to be saved, after the backlog.
+     */
+    private final AtomicLong nextSaveSequence = new AtomicLong();
+    /**
+     * The sequence of the next event to be deleted, from the start of the backlog.
+     */
+    private long nextDeleteSequence;
+
+    /**
+     * Opens the storage and loads the backlog.
+     *
+     * @throws RocksDBException If it fails to open the RocksDB instance.
+     * @throws IOException If it fails to create the temporary directory.
+     * @throws KVStorageException If it fails to load the backlog.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws RocksDBException, IOException, KVStorageException {
+        value = new byte[valueBytes];
+        new Random(42).nextBytes(value);
+
+        switch (engine) {
+            case NOP:
+                kvStorage = new NopStorage();
+                break;
+            case MEMORY:
+                kvStorage = new MemoryStorage();
+                break;
+            default:
+                RocksDB.loadLibrary();
+                rocksDbPath = Files.createTempDirectory("storage-benchmark");
+                final Statistics statistics = new Statistics();
+                rocksDB = RocksDB.open(new Options().setCreateIfMissing(true).setStatistics(statistics), rocksDbPath.toString());
+                kvStorage = new RocksDBStorage(rocksDB, statistics);
+                break;
+        }
+
+        for (long sequence = 0; sequence < backlog; sequence++) {
+            kvStorage.SaveValue(new KeyValue(keyOf(sequence), value));
+        }
+
+        nextSaveSequence.set(backlog);
+        nextDeleteSequence = 0;
+    }
+
+    /**
+     * Brings the backlog back to how it was loaded: deletes the events saved by the last iteration, and saves back
+     * the ones it deleted.
+     *
+     * @throws KVStorageException If it fails to restore the backlog.
+     */
+    @TearDown(Level.Iteration)
+    public void restoreBacklog() throws KVStorageException {
+        for (long sequence = backlog; sequence < nextSaveSequence.get(); sequence++) {
+            kvStorage.DeleteValue(keyOf(sequence));
+        }
+        for (long sequence = 0; sequence < Math.min(nextDeleteSequence, backlog); sequence++) {
+            kvStorage.SaveValue(new KeyValue(keyOf(sequence), value));
+        }
+
+        nextSaveSequence.set(backlog);
+        nextDeleteSequence = 0;
+    }
+
+    /**
+     * Closes the storage, and deletes the RocksDB directory.
+     *
+     * @throws IOException If it fails to delete the RocksDB directory.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (rocksDB != null) {
+            rocksDB.close();
+        }
+
+        if (rocksDbPath != null) {
+            try (final Stream<Path> paths = Files.walk(rocksDbPath)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Saves a new event, due after the whole backlog, like the sink thread does.
+     *
+     * @throws KVStorageException If it fails to save the event.
+     */
+    @Benchmark
+    public void saveValue() throws KVStorageException {
+        kvStorage.SaveValue(new KeyValue(keyOf(nextSaveSequence.getAndIncrement()), value));
+    }
+
+    /**
+     * Deletes the oldest event, like the producer does once it's sent. Once the whole backlog is deleted, this
+     * measures deleting keys that don't exist anymore.
+     *
+     * @throws KVStorageException If it fails to delete the event.
+     */
+    @Benchmark
+    public void deleteValue() throws KVStorageException {
+        kvStorage.DeleteValue(keyOf(nextDeleteSequence++));
+    }
+
+    /**
+     * Scans the whole backlog.
+     *
+     * @return The number of scanned events.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long streamValues() {
+        try (final Stream<KeyValue> storedValues = kvStorage.StreamValues()) {
+            return storedValues.count();
+        }
+    }
+
+    /**
+     * Scans the whole backlog while the writer saves new events, like the producer does while the sink thread runs.
+     *
+     * @return The number of scanned events.
+     */
+    @Benchmark
+    @Group("scanWhileWriting")
+    @GroupThreads(1)
+    public long scanWhileWriting_scan() {
+        return streamValues();
+    }
+
+    /**
+     * Saves new events while the scanner scans the backlog.
+     *
+     * @throws KVStorageException If it fails to save the event.
+     */
+    @Benchmark
+    @Group("scanWhileWriting")
+    @GroupThreads(1)
+    public void scanWhileWriting_write() throws KVStorageException {
+        saveValue();
+    }
+
+    /**
+     * Builds the key of the event with the given sequence. Events are due one millisecond apart, in sequence order.
+     *
+     * @param sequence The event sequence.
+     * @return The storage key.
+     */
+    private static byte[] keyOf(final long sequence) {
+        return StorageKey.encode(BASE_TIMESTAMP.plusMillis(sequence), sequence);
+    }
+}
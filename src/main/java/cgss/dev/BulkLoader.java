@@ -0,0 +1,105 @@
+package cgss.dev;
+
+import cgss.dev.config.Config;
+import cgss.dev.config.InvalidConfigException;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.rocksdb.RocksDBStorage;
+import cgss.dev.storage.rocksdb.SstFileBuilder;
+import com.google.gson.Gson;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk loads events into RocksDB, e.g. to backfill a new node or migrate a backlog, without going through Kafka.
+ * <p>
+ * The events are read from files with one event per line, like a recorded workload or a topic dump, turned into SST
+ * files in parallel, and ingested into the storage, which is much faster than saving them one by one. It uses the
+ * application config, for the timestamp field and format and the RocksDB path, and the following system properties:
+ * <ul>
+ *     <li>bulk.files: the comma separated input files, required.</li>
+ *     <li>bulk.output: the directory the SST files are written to, required.</li>
+ *     <li>bulk.ingest: if the SST files are ingested into the RocksDB at rocksdb.path, which must not be open by a
+ *     running instance, true by default. Otherwise they're left in bulk.output, to be ingested into a running
+ *     instance through POST /storage/ingest?path=... on its admin server.</li>
+ *     <li>bulk.source.topic: the topic saved as the source of the events, none by default.</li>
+ *     <li>bulk.parallelism: how many SST files are built at once, the number of processors by default.</li>
+ *     <li>bulk.sst.entries: how many events go into each SST file, 1000000 by default.</li>
+ * </ul>
+ * <pre>
+ * java -Dbulk.files=dump.jsonl -Dbulk.output=/tmp/bulk -cp kafka-event-delayer.jar cgss.dev.BulkLoader
+ * </pre>
+ * Loaded events are emitted to all the sink topics, as they have no record to route by.
+ */
+public class BulkLoader {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(BulkLoader.class.getSimpleName());
+
+    /**
+     * Builds the SST files and ingests them, if asked to.
+     *
+     * @param args Command line arguments. Not used.
+     * @throws InvalidConfigException If the application config is invalid.
+     * @throws IOException If it fails to read the input files.
+     * @throws KVStorageException If it fails to build or ingest the SST files.
+     * @throws RocksDBException If it fails to open the RocksDB.
+     */
+    public static void main(final String[] args) throws InvalidConfigException, IOException, KVStorageException, RocksDBException {
+        final String files = System.getProperty("bulk.files");
+        final String output = System.getProperty("bulk.output");
+        if (files == null || output == null) {
+            throw new IllegalArgumentException("bulk.files and bulk.output are required");
+        }
+
+        final boolean ingest = Boolean.parseBoolean(System.getProperty("bulk.ingest", "true"));
+        final String sourceTopic = System.getProperty("bulk.source.topic");
+        final int parallelism = Integer.getInteger("bulk.parallelism", Runtime.getRuntime().availableProcessors());
+        final int entriesPerFile = Integer.getInteger("bulk.sst.entries", 1_000_000);
+
+        final Config config = Config.load();
+        final Clock clock = Clock.systemUTC();
+
+        final List<Path> inputPaths = Arrays.stream(files.split(","))
+                .map(String::trim)
+                .filter(file -> !file.isEmpty())
+                .map(Paths::get)
+                .collect(Collectors.toList());
+
+        // Sequences are based on the current time, like the sink's, so loaded keys don't clash with consumed ones.
+        final SstFileBuilder sstFileBuilder = new SstFileBuilder(
+                new EventHandler(config.getTimestampFieldName(), new Gson(), config.getDateTimeFormatter()),
+                Paths.get(output),
+                sourceTopic,
+                parallelism,
+                entriesPerFile,
+                clock.millis() * 1_000_000,
+                clock
+        );
+        final List<Path> sstPaths = sstFileBuilder.build(inputPaths);
+
+        if (!ingest) {
+            logger.info(String.format("Left %d SST files in %s, to be ingested through the admin server.", sstPaths.size(), output));
+            return;
+        }
+
+        RocksDB.loadLibrary();
+        try (final Options options = new Options().setCreateIfMissing(true);
+             final RocksDB rocksDB = RocksDB.open(options, config.getRocksDbPath())) {
+            new RocksDBStorage(rocksDB).IngestFiles(sstPaths.stream().map(Path::toString).collect(Collectors.toList()));
+        }
+
+        logger.info(String.format("Ingested %d events into %s.", sstFileBuilder.getBuiltEvents(), config.getRocksDbPath()));
+    }
+}
@@ -1,41 +1,85 @@
 package cgss.dev;
 
+import cgss.dev.admin.AdminServer;
 import cgss.dev.config.Config;
 import cgss.dev.config.InvalidConfigException;
+import cgss.dev.logging.SampledLogger;
+import cgss.dev.metrics.Metrics;
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.metrics.StorageMetrics;
 import cgss.dev.model.EventHandler;
+import cgss.dev.pipeline.BackpressureController;
+import cgss.dev.pipeline.CancelThread;
+import cgss.dev.pipeline.DelayTier;
+import cgss.dev.pipeline.DelayTierRouter;
+import cgss.dev.pipeline.DelayTierThread;
+import cgss.dev.pipeline.EmitRateLimiter;
+import cgss.dev.pipeline.EventRouter;
 import cgss.dev.pipeline.KafkaDelayedProducerRunnable;
 import cgss.dev.pipeline.KafkaSinkThread;
+import cgss.dev.pipeline.OffsetCommitter;
+import cgss.dev.pipeline.ProducerScheduler;
+import cgss.dev.pipeline.RoutingEnum;
+import cgss.dev.pipeline.StorageCheckpointer;
 import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.StorageEnum;
+import cgss.dev.storage.StorageMigrator;
+import cgss.dev.storage.changelog.ChangelogOffsets;
+import cgss.dev.storage.changelog.ChangelogRestorer;
+import cgss.dev.storage.changelog.ChangelogStorage;
 import cgss.dev.storage.memory.MemoryStorage;
 import cgss.dev.storage.nop.NopStorage;
+import cgss.dev.storage.indexed.IndexedStorage;
 import cgss.dev.storage.rocksdb.RocksDBStorage;
+import cgss.dev.storage.striped.StripedStorage;
+import cgss.dev.storage.tiered.TieredStorage;
 import com.google.gson.Gson;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.ByteArrayDeserializer;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
 
 /**
  * The main class for the application.
  * Here we initialize all the required configuration entries and start the sink and source pipelines.
  */
 public class Main extends Thread {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(Main.class.getSimpleName());
 
     /**
      * Main app configuration, contains all the required configs for the application.
      */
     private final Config config;
     /**
-     * The executor that will run the expiry check, defined by KafkaDelayedProducerRunnable.
+     * The executor that will run the expiry check, defined by KafkaDelayedProducerRunnable, and the metrics summaries.
      */
     private final ScheduledExecutorService executor;
     /**
@@ -46,20 +90,95 @@ public class Main extends Thread {
      * This represents the task that check for expired events on the given storage and sends them to Kafka.
      */
     private final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable;
+    /**
+     * The pipeline metrics, whose emit accuracy gets summarized in the logs every so often.
+     */
+    private final PipelineMetrics pipelineMetrics;
+    /**
+     * Runs the producer task every poll interval, which can be changed while running.
+     */
+    private final ProducerScheduler producerScheduler;
+    /**
+     * The admin HTTP server, null if disabled.
+     */
+    private final AdminServer adminServer;
+    /**
+     * The consumer reading the changelog topic, null if the changelog is disabled.
+     */
+    private final KafkaConsumer<byte[], byte[]> changelogConsumer;
+    /**
+     * Restores the storage from the changelog topic, or keeps it up to date as a standby. Null if the changelog is
+     * disabled.
+     */
+    private final ChangelogRestorer changelogRestorer;
+    /**
+     * The tiered storage, whose hot tier gets loaded every so often. Null unless the storage is tiered.
+     */
+    private final TieredStorage tieredStorage;
+    /**
+     * The striped storage, closed on shutdown. Null unless the storage is striped.
+     */
+    private final StripedStorage stripedStorage;
+    /**
+     * The storage indexed by business key, whose index gets built on startup if not stored yet. Null unless cancelling or upserting.
+     */
+    private final IndexedStorage indexedStorage;
+    /**
+     * Thread applying the cancel commands of the control topic. Null unless cancelling is enabled.
+     */
+    private final CancelThread cancelThread;
+    /**
+     * Move the events through the delay tier topics in the stateless delay mode, empty otherwise.
+     */
+    private final List<DelayTierThread> delayTierThreads;
+    /**
+     * The changelog offsets the storage holds, null if the changelog is disabled.
+     */
+    private final ChangelogOffsets changelogOffsets;
 
     /**
      * Constructor for the main app.
      *
      * @param config The app configuration.
      * @throws RocksDBException If storage type is set RocksDB, will throw in case of failure to create a Rocks DB.
+     * @throws IOException If the admin server is enabled, will throw in case of failure to bind to its address, if
+     *                     the changelog is enabled, in case of failure to read its offsets, if restoring from a
+     *                     checkpoint, in case of failure to copy it, if migrating, in case of failure to record
+     *                     its progress, and if cancelling without an instance id, in case of failure to resolve the
+     *                     host name.
+     * @throws KVStorageException If migrating, will throw in case of failure to migrate the values.
      */
 
-    public Main(final Config config) throws RocksDBException {
+    public Main(final Config config) throws RocksDBException, IOException, KVStorageException {
         this.config = config;
-        this.executor = Executors.newScheduledThreadPool(1);
+        this.executor = Executors.newScheduledThreadPool(2);
+
+        // In the stateless delay mode, events go through the delay tier topics, so no storage or sink is created.
+        if (!config.getDelayTiers().isEmpty()) {
+            SampledLogger.configure(config.getLogSampleEvery(), config.getLogTraceKeys());
+
+            this.delayTierThreads = createDelayTierThreads(config);
+            this.kafkaSinkThread = null;
+            this.kafkaDelayedProducerRunnable = null;
+            this.pipelineMetrics = null;
+            this.producerScheduler = null;
+            this.adminServer = null;
+            this.changelogConsumer = null;
+            this.changelogRestorer = null;
+            this.tieredStorage = null;
+            this.stripedStorage = null;
+            this.indexedStorage = null;
+            this.cancelThread = null;
+            this.changelogOffsets = null;
+
+            return;
+        }
+        this.delayTierThreads = Collections.emptyList();
 
         // Create the storage. Default RocksDB.
         KVStorage kvStorage;
+        StripedStorage stripedStorage = null;
+        Map<TopicPartition, Long> checkpointOffsets = Collections.emptyMap();
         switch (config.getKvStorage()) {
             case NOP:
                 kvStorage = new NopStorage();
@@ -68,61 +187,301 @@ public class Main extends Thread {
                 kvStorage = new MemoryStorage();
                 break;
             default:
-                kvStorage = new RocksDBStorage(config.getRocksDbPath());
+                final List<String> stripePaths = new ArrayList<>(config.getRocksDbStripePaths());
+
+                // Brings a new node up from a checkpoint copy, instead of consuming the source topics all over again.
+                if (!config.getRocksDbRestoreCheckpoint().isEmpty()) {
+                    final Path checkpointPath = Paths.get(config.getRocksDbRestoreCheckpoint());
+
+                    if (stripePaths.isEmpty()) {
+                        StorageCheckpointer.copyStorage(checkpointPath, Paths.get(config.getRocksDbPath()));
+                    } else {
+                        for (int index = 0; index < stripePaths.size(); index++) {
+                            StorageCheckpointer.copyStorage(checkpointPath, StripedStorage.stripeDirectory(index), Paths.get(stripePaths.get(index)));
+                        }
+                    }
+                    checkpointOffsets = StorageCheckpointer.readOffsets(checkpointPath);
+
+                    logger.info(String.format("Restored the storage from %s, consuming from %s.", checkpointPath, checkpointOffsets));
+                }
+
+                if (stripePaths.isEmpty()) {
+                    kvStorage = new RocksDBStorage(config.getRocksDbPath(), config.isRocksDbStatistics());
+                } else {
+                    // One RocksDB per path, e.g. one per disk, so they write and compact in parallel.
+                    final List<KVStorage> stripes = new ArrayList<>(stripePaths.size());
+                    for (int index = 0; index < stripePaths.size(); index++) {
+                        StripedStorage.checkStripe(Paths.get(stripePaths.get(index)), index, stripePaths.size());
+                        stripes.add(new RocksDBStorage(stripePaths.get(index), config.isRocksDbStatistics()));
+                    }
+
+                    stripedStorage = new StripedStorage(stripes);
+                    kvStorage = stripedStorage;
+                }
                 break;
         }
+        this.stripedStorage = stripedStorage;
+
+        // Keeps the values about to be due in memory as well, so emitting them doesn't read from disk.
+        if (config.getKvStorage() == StorageEnum.TIERED) {
+            this.tieredStorage = new TieredStorage(kvStorage, config.getExpiryAge(), config.getStorageTieredLookAhead(), Clock.systemUTC());
+            kvStorage = tieredStorage;
+        } else {
+            this.tieredStorage = null;
+        }
 
         // The class name to be used as deserializer.
         final String deserializerClassName = ByteArrayDeserializer.class.getName();
+        // The class name to be used as serializer.
+        final String serializerClassName = ByteArraySerializer.class.getName();
 
-        // Extracts the properties for the Kafka consumer.
-        final Properties consumerProperties = new Properties();
-        consumerProperties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getConsumerBootstrapServers());
-        consumerProperties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, deserializerClassName);
-        consumerProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, deserializerClassName);
-        consumerProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, config.getConsumerGroupId());
-        final KafkaConsumer<byte[], byte[]> kafkaConsumer = new KafkaConsumer<>(consumerProperties);
-        kafkaConsumer.subscribe(new ArrayList<>(config.getSourceTopics()));
+        // Mirrors the storage to the changelog topic, unless this is a standby, which keeps a replica from it instead.
+        if (config.getStorageChangelogTopic().isEmpty()) {
+            this.changelogOffsets = null;
+            this.changelogConsumer = null;
+            this.changelogRestorer = null;
+        } else {
+            this.changelogOffsets = new ChangelogOffsets(Paths.get(config.getStorageChangelogOffsetsPath()));
+            changelogOffsets.load();
+
+            final Properties changelogConsumerProperties = new Properties();
+            changelogConsumerProperties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getConsumerBootstrapServers());
+            changelogConsumerProperties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, deserializerClassName);
+            changelogConsumerProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, deserializerClassName);
+            changelogConsumerProperties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+            this.changelogConsumer = new KafkaConsumer<>(changelogConsumerProperties);
+            this.changelogRestorer = new ChangelogRestorer(
+                    changelogConsumer,
+                    config.getStorageChangelogTopic(),
+                    kvStorage,
+                    changelogOffsets,
+                    config.getConsumerCommitInterval()
+            );
+
+            if (!config.isStorageChangelogStandby()) {
+                // Saves are only acknowledged once in every replica, so the changelog never misses a committed event.
+                final Properties changelogProducerProperties = new Properties();
+                changelogProducerProperties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getProducerBootstrapServers());
+                changelogProducerProperties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, serializerClassName);
+                changelogProducerProperties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, serializerClassName);
+                changelogProducerProperties.setProperty(ProducerConfig.ACKS_CONFIG, "all");
+                changelogProducerProperties.setProperty(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+
+                kvStorage = new ChangelogStorage(kvStorage, new KafkaProducer<>(changelogProducerProperties), config.getStorageChangelogTopic(), changelogOffsets);
+            }
+        }
+
+        // Moves a previous RocksDB's backlog over, so the storage engine can be switched without draining it first.
+        if (!config.getStorageMigrationSourcePath().isEmpty()) {
+            migrateStorage(config, kvStorage);
+        }
 
         // The business object for the event payload.
-        final EventHandler eventHandler = new EventHandler(config.getTimestampFieldName(), new Gson(), config.getDateTimeFormatter());
+        final EventHandler eventHandler = createEventHandler(config);
 
-        // Create the sink thread that will consume events from kafka and save it in the storage.
-        this.kafkaSinkThread = new KafkaSinkThread(
-                kafkaConsumer,
-                config.getConsumerPollInternal(),
-                kvStorage,
-                eventHandler
-        );
+        // Indexes the events by business key, so neither the cancel commands nor the upserts scan the storage.
+        if (config.getCancelTopic().isEmpty() && !config.isStorageUpsert()) {
+            this.indexedStorage = null;
+        } else {
+            this.indexedStorage = new IndexedStorage(kvStorage, eventHandler, config.getCancelIdField(), config.isStorageUpsert());
+            kvStorage = indexedStorage;
+        }
 
-        // The class name to be used as serializer.
-        final String serializerClassName = ByteArraySerializer.class.getName();
+        // Samples the per event diagnostics, except for the traced keys.
+        SampledLogger.configure(config.getLogSampleEvery(), config.getLogTraceKeys());
+
+        // Exposes the pipeline counters and the storage backlog through JMX.
+        this.pipelineMetrics = new PipelineMetrics();
+        Metrics.register("Pipeline", "pipeline", pipelineMetrics);
+        Metrics.register("EmitAccuracy", "pipeline", pipelineMetrics.emitAccuracy());
+        final StorageMetrics storageMetrics = new StorageMetrics(kvStorage, config.getExpiryAge());
+        Metrics.register("Storage", config.getKvStorage().name(), storageMetrics);
+
+        // Extracts the properties for the Kafka consumer.
+        final Properties consumerProperties = createConsumerProperties(config);
+        final KafkaConsumer<byte[], byte[]> kafkaConsumer = new KafkaConsumer<>(consumerProperties);
+
+        // Commits the saved offsets, and the remaining ones when partitions get revoked.
+        final OffsetCommitter offsetCommitter = new OffsetCommitter(kafkaConsumer, config.getConsumerCommitInterval());
+        offsetCommitter.setInitialOffsets(checkpointOffsets);
+        kafkaConsumer.subscribe(new ArrayList<>(config.getSourceTopics()), offsetCommitter);
 
         // Extracts the properties for the Kafka producer.
-        final Properties producerProperties = new Properties();
-        producerProperties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getProducerBootstrapServers());
-        producerProperties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, serializerClassName);
-        producerProperties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, serializerClassName);
+        final Properties producerProperties = createProducerProperties(config);
         final KafkaProducer<byte[], byte[]> kafkaProducer = new KafkaProducer<>(producerProperties);
 
+        // Limits how fast the expired events are sent to Kafka.
+        final EmitRateLimiter emitRateLimiter = new EmitRateLimiter(config.getEmitMaxEventsPerSecond(), config.getEmitMaxBytesPerSecond());
+
         // Creates the task that will check for expired events on the storage and send them to Kafka.
         this.kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
                 kafkaProducer,
                 kvStorage,
                 eventHandler,
                 config.getExpiryAge(),
-                config.getSinkTopics()
+                config.getSinkTopics(),
+                emitRateLimiter,
+                config.getProducerMaxEventsPerTick(),
+                config.getProducerMaxTickTime(),
+                config.isProducerCatchUpMode(),
+                config.getProducerEmitBatchSize(),
+                pipelineMetrics,
+                Clock.systemUTC()
+        );
+
+        // Pauses the consumption while the storage or the emission can't keep up.
+        final BackpressureController backpressureController = new BackpressureController(
+                kvStorage,
+                kafkaDelayedProducerRunnable::getEmitLag,
+                config.getBackpressureMaxPendingEvents(),
+                config.getBackpressureMaxStorageBytes(),
+                config.getBackpressureMaxEmitLag(),
+                config.getBackpressureResumeRatio()
+        );
+
+        // Picks the destination of each event, reading it from either a header or a field depending on the mode.
+        final EventRouter eventRouter = createEventRouter(config, eventHandler);
+
+        // Consumes the cancel commands in a group of this instance's own, as the events a command cancels can be held by
+        // any instance, so every instance has to consume every command.
+        if (config.getCancelTopic().isEmpty()) {
+            this.cancelThread = null;
+        } else {
+            final String instanceId = config.getCancelInstanceId().isEmpty()
+                    ? InetAddress.getLocalHost().getHostName()
+                    : config.getCancelInstanceId();
+            final Properties cancelConsumerProperties = new Properties();
+            cancelConsumerProperties.putAll(consumerProperties);
+            cancelConsumerProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, String.format("%s-cancel-%s", config.getConsumerGroupId(), instanceId));
+            final KafkaConsumer<byte[], byte[]> cancelConsumer = new KafkaConsumer<>(cancelConsumerProperties);
+            cancelConsumer.subscribe(Collections.singletonList(config.getCancelTopic()));
+
+            this.cancelThread = new CancelThread(cancelConsumer, config.getConsumerPollInternal(), indexedStorage, eventHandler, config.getCancelIdField());
+        }
+
+        // Create the sink thread that will consume events from kafka and save it in the storage.
+        this.kafkaSinkThread = new KafkaSinkThread(
+                kafkaConsumer,
+                config.getConsumerPollInternal(),
+                kvStorage,
+                eventHandler,
+                offsetCommitter,
+                backpressureController,
+                eventRouter,
+                pipelineMetrics,
+                Clock.systemUTC(),
+                (int) config.getConsumerPipelineCapacity(),
+                (int) config.getConsumerPipelineBatchSize(),
+                (int) config.getConsumerParseParallelism()
+        );
+
+        // Creates storage checkpoints, periodically and on demand, if enabled.
+        if (!config.getRocksDbCheckpointPath().isEmpty()) {
+            kafkaSinkThread.setStorageCheckpointer(new StorageCheckpointer(
+                    kvStorage,
+                    Paths.get(config.getRocksDbCheckpointPath()),
+                    config.getRocksDbCheckpointInterval(),
+                    config.getRocksDbCheckpointRetained(),
+                    Clock.systemUTC()
+            ));
+        }
+
+        // Runs the producer task every poll interval.
+        this.producerScheduler = new ProducerScheduler(executor, kafkaDelayedProducerRunnable, config.getProducerPollInternal());
+
+        // Lets operators look into and tune the pipelines while running, if enabled.
+        this.adminServer = config.getAdminPort() <= 0 ? null : new AdminServer(
+                new InetSocketAddress(config.getAdminHost(), (int) config.getAdminPort()),
+                pipelineMetrics,
+                storageMetrics,
+                kvStorage,
+                kafkaSinkThread,
+                kafkaDelayedProducerRunnable,
+                producerScheduler,
+                emitRateLimiter
         );
     }
 
     /**
      * Runs the main application.
-     * This will start the consumer thread and schedule the producer task based on the given poll time.
+     * This will start the consumer thread and schedule the producer task based on the given poll time, along with
+     * the emit accuracy and diagnostics summaries.
+     * If the changelog is enabled, the storage is restored from it first. A standby only keeps restoring it instead.
      */
     @Override
     public void run() {
+        if (changelogRestorer != null && config.isStorageChangelogStandby()) {
+            logger.info(String.format("Running as a standby of %s.", config.getStorageChangelogTopic()));
+
+            changelogRestorer.start();
+
+            return;
+        }
+
+        if (!delayTierThreads.isEmpty()) {
+            logger.info(String.format("Running in the stateless delay mode, through the delay tiers %s.", config.getDelayTiers()));
+
+            delayTierThreads.forEach(Thread::start);
+
+            return;
+        }
+
+        if (changelogRestorer != null) {
+            try {
+                changelogRestorer.restoreToEnd();
+            } catch (final KVStorageException | IOException | RuntimeException e) {
+                logger.severe(String.format("Failed restoring the storage from %s, not starting: %s", config.getStorageChangelogTopic(), e.getMessage()));
+
+                return;
+            } finally {
+                changelogConsumer.close();
+            }
+
+            final long commitIntervalMillis = config.getConsumerCommitInterval().toMillis();
+            executor.scheduleAtFixedRate(this::storeChangelogOffsets, commitIntervalMillis, commitIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        // The index is stored along with the values, so it's only built if the storage has none yet, once restored.
+        // Migrated values went straight to the storage without being indexed, so it's built again after a migration.
+        if (indexedStorage != null) {
+            try {
+                if (config.getStorageMigrationSourcePath().isEmpty()) {
+                    indexedStorage.buildIndex();
+                } else {
+                    indexedStorage.rebuildIndex();
+                }
+            } catch (final KVStorageException | RuntimeException e) {
+                logger.severe(String.format("Failed indexing the storage, not starting: %s", e.getMessage()));
+
+                return;
+            }
+        }
+
+        if (tieredStorage != null && !config.getStorageTieredLoadInterval().isZero()) {
+            // Fills the hot tier before emitting anything, and keeps it filled.
+            loadDueValues();
+
+            final long loadIntervalMillis = config.getStorageTieredLoadInterval().toMillis();
+            executor.scheduleAtFixedRate(this::loadDueValues, loadIntervalMillis, loadIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
         kafkaSinkThread.start();
-        executor.scheduleAtFixedRate(kafkaDelayedProducerRunnable, 0, config.getProducerPollInternal().toMillis(), TimeUnit.MILLISECONDS);
+        producerScheduler.start();
+
+        if (cancelThread != null) {
+            cancelThread.start();
+        }
+
+        if (adminServer != null) {
+            adminServer.start();
+        }
+
+        if (!config.getMetricsLogInterval().isZero()) {
+            final long metricsLogIntervalMillis = config.getMetricsLogInterval().toMillis();
+
+            executor.scheduleAtFixedRate(pipelineMetrics.emitAccuracy()::logSummary, metricsLogIntervalMillis, metricsLogIntervalMillis, TimeUnit.MILLISECONDS);
+            executor.scheduleAtFixedRate(SampledLogger::logSummaries, metricsLogIntervalMillis, metricsLogIntervalMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     /**
@@ -132,8 +491,242 @@ public class Main extends Thread {
     public void interrupt() {
         super.interrupt();
 
+        if (changelogRestorer != null && config.isStorageChangelogStandby()) {
+            executor.shutdown();
+            changelogRestorer.interrupt();
+
+            try {
+                changelogRestorer.join(config.getConsumerPollInternal().toMillis());
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            if (stripedStorage != null) {
+                stripedStorage.close();
+            }
+
+            return;
+        }
+
+        if (!delayTierThreads.isEmpty()) {
+            executor.shutdown();
+            delayTierThreads.forEach(Thread::interrupt);
+
+            // Gives the threads the chance to commit their offsets before exiting.
+            for (final DelayTierThread delayTierThread : delayTierThreads) {
+                try {
+                    delayTierThread.join(config.getConsumerPollInternal().toMillis());
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return;
+        }
+
+        if (adminServer != null) {
+            adminServer.stop();
+        }
+
         kafkaSinkThread.interrupt();
         executor.shutdown();
+
+        if (cancelThread != null) {
+            cancelThread.interrupt();
+        }
+
+        // Gives the sink thread the chance to commit its offsets before exiting.
+        try {
+            kafkaSinkThread.join(config.getConsumerPollInternal().toMillis());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (changelogOffsets != null) {
+            storeChangelogOffsets();
+        }
+
+        if (stripedStorage != null) {
+            stripedStorage.close();
+        }
+    }
+
+    /**
+     * Loads the values entering the look ahead window into the hot tier of the storage.
+     */
+    private void loadDueValues() {
+        try {
+            tieredStorage.loadDueValues();
+        } catch (final KVStorageException | RuntimeException e) {
+            logger.warning(String.format("Failed loading the due values into memory: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Saves how far the storage has got in the changelog, so a restart only restores the changes after it.
+     */
+    private void storeChangelogOffsets() {
+        try {
+            changelogOffsets.store();
+        } catch (final IOException e) {
+            logger.warning(String.format("Failed saving the changelog offsets: %s", e.getMessage()));
+        }
+    }
+
+    /**
+     * Creates the business object for the event payload.
+     *
+     * @param config The app configuration.
+     * @return The event handler.
+     */
+    private static EventHandler createEventHandler(final Config config) {
+        return new EventHandler(config.getTimestampFieldName(), new Gson(), config.getDateTimeFormatter());
+    }
+
+    /**
+     * Creates the router picking the destination of each event, reading it from either a header or a field depending
+     * on the mode.
+     *
+     * @param config The app configuration.
+     * @param eventHandler The event business object.
+     * @return The event router.
+     */
+    private static EventRouter createEventRouter(final Config config, final EventHandler eventHandler) {
+        return new EventRouter(
+                config.getRoutingMode(),
+                config.getSinkTopics(),
+                eventHandler,
+                config.getRoutingMode() == RoutingEnum.HEADER ? config.getRoutingHeaderName() : config.getRoutingFieldName(),
+                config.getRoutingTopicMapping()
+        );
+    }
+
+    /**
+     * Extracts the properties for the Kafka consumer of the source topics.
+     *
+     * @param config The app configuration.
+     * @return The consumer properties.
+     */
+    private static Properties createConsumerProperties(final Config config) {
+        final Properties consumerProperties = new Properties();
+        consumerProperties.setProperty(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getConsumerBootstrapServers());
+        consumerProperties.setProperty(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        consumerProperties.setProperty(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, ByteArrayDeserializer.class.getName());
+        consumerProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, config.getConsumerGroupId());
+        consumerProperties.setProperty(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+
+        return consumerProperties;
+    }
+
+    /**
+     * Extracts the properties for the Kafka producer of the sink topics.
+     *
+     * @param config The app configuration.
+     * @return The producer properties.
+     */
+    private static Properties createProducerProperties(final Config config) {
+        final Properties producerProperties = new Properties();
+        producerProperties.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, config.getProducerBootstrapServers());
+        producerProperties.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+        producerProperties.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+
+        return producerProperties;
+    }
+
+    /**
+     * Creates the threads of the stateless delay mode: one for the source topics, in the consumer group, and one for
+     * each delay tier topic, in a group of its own. They share a producer which only acknowledges records once in
+     * every replica, as the delay tier topics are the only copy of the events.
+     *
+     * @param config The app configuration.
+     * @return The threads, not started yet.
+     */
+    private static List<DelayTierThread> createDelayTierThreads(final Config config) {
+        final Properties consumerProperties = createConsumerProperties(config);
+        final EventHandler eventHandler = createEventHandler(config);
+        final EventRouter eventRouter = createEventRouter(config, eventHandler);
+        final List<DelayTier> delayTiers = DelayTier.of(config.getDelayTiers(), config.getDelayTierTopicPrefix());
+        final DelayTierRouter delayTierRouter = new DelayTierRouter(delayTiers, eventHandler, eventRouter, config.getSinkTopics(), config.getExpiryAge());
+
+        final Properties delayProducerProperties = createProducerProperties(config);
+        delayProducerProperties.setProperty(ProducerConfig.ACKS_CONFIG, "all");
+        delayProducerProperties.setProperty(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, "true");
+        final KafkaProducer<byte[], byte[]> delayProducer = new KafkaProducer<>(delayProducerProperties);
+
+        final List<DelayTierThread> delayTierThreads = new ArrayList<>();
+        delayTierThreads.add(createDelayTierThread(config, consumerProperties, config.getConsumerGroupId(), config.getSourceTopics(), Duration.ZERO, delayProducer, delayTierRouter));
+        for (final DelayTier delayTier : delayTiers) {
+            final String groupId = String.format("%s-%s", config.getConsumerGroupId(), delayTier.getTopic());
+
+            delayTierThreads.add(createDelayTierThread(config, consumerProperties, groupId, Collections.singletonList(delayTier.getTopic()), delayTier.getDelay(), delayProducer, delayTierRouter));
+        }
+
+        return delayTierThreads;
+    }
+
+    /**
+     * Creates a thread of the stateless delay mode, with a consumer of its own subscribed to the given topics.
+     *
+     * @param config The app configuration.
+     * @param consumerProperties The properties for the Kafka consumer, whose group gets replaced.
+     * @param groupId The consumer group.
+     * @param topics The topics to consume.
+     * @param delay How long each record is held back for, zero for the source topics.
+     * @param delayProducer The producer sending the records to the next tier or their sink topics.
+     * @param delayTierRouter Picks where each record goes next.
+     * @return The thread, not started yet.
+     */
+    private static DelayTierThread createDelayTierThread(
+            final Config config,
+            final Properties consumerProperties,
+            final String groupId,
+            final Collection<String> topics,
+            final Duration delay,
+            final KafkaProducer<byte[], byte[]> delayProducer,
+            final DelayTierRouter delayTierRouter) {
+        final Properties delayConsumerProperties = new Properties();
+        delayConsumerProperties.putAll(consumerProperties);
+        delayConsumerProperties.setProperty(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        final KafkaConsumer<byte[], byte[]> delayConsumer = new KafkaConsumer<>(delayConsumerProperties);
+
+        final DelayTierThread delayTierThread = new DelayTierThread(
+                delayConsumer,
+                delayProducer,
+                config.getConsumerPollInternal(),
+                delay,
+                delayTierRouter,
+                Clock.systemUTC()
+        );
+        delayTierThread.setName(String.format("%s-%s", DelayTierThread.class.getSimpleName(), groupId));
+        delayConsumer.subscribe(new ArrayList<>(topics), delayTierThread);
+
+        return delayTierThread;
+    }
+
+    /**
+     * Copies the values of the RocksDB at the migration source path into the given storage, resuming an interrupted
+     * migration, or doing nothing if it was completed already. The source is opened read only, and left untouched.
+     *
+     * @param config The app configuration.
+     * @param kvStorage The storage the values are copied to.
+     * @throws RocksDBException If it fails to open the source RocksDB.
+     * @throws IOException If it fails to read or write the migration progress.
+     * @throws KVStorageException If it fails to copy the values, or the counts don't match.
+     */
+    private static void migrateStorage(final Config config, final KVStorage kvStorage) throws RocksDBException, IOException, KVStorageException {
+        logger.info(String.format("Migrating the values from %s.", config.getStorageMigrationSourcePath()));
+
+        RocksDB.loadLibrary();
+        try (final Options options = new Options();
+             final RocksDB sourceRocksDB = RocksDB.openReadOnly(options, config.getStorageMigrationSourcePath())) {
+            new StorageMigrator(
+                    new RocksDBStorage(sourceRocksDB),
+                    kvStorage,
+                    (int) config.getStorageMigrationBatchSize(),
+                    (int) config.getStorageMigrationParallelism(),
+                    Paths.get(config.getStorageMigrationProgressPath())
+            ).migrate();
+        }
     }
 
     /**
@@ -143,8 +736,10 @@ public class Main extends Thread {
      * @param args Command line arguments. Not used.
      * @throws InvalidConfigException Will be thrown if an invalid configuration was detected either on the file or env. vars.
      * @throws RocksDBException Will be thrown if an invalid configuration was provided when using RocksDB as the storage provider.
+     * @throws IOException Will be thrown if the admin server is enabled and fails to bind to its address.
+     * @throws KVStorageException Will be thrown if migrating from a previous storage fails.
      */
-    public static void main(String[] args) throws InvalidConfigException, RocksDBException {
+    public static void main(String[] args) throws InvalidConfigException, RocksDBException, IOException, KVStorageException {
         final Config config = Config.load();
 
         final Main mainApp = new Main(config);
@@ -0,0 +1,66 @@
+package cgss.dev;
+
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.StorageMigrator;
+import cgss.dev.storage.rocksdb.RocksDBStorage;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDB;
+import org.rocksdb.RocksDBException;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+/**
+ * Migrates a stopped instance's RocksDB into a new one, e.g. to move it to another disk or rebuild it with different
+ * options, without draining the backlog first. To switch to another storage engine instead, start the instance with
+ * storage.migration.source.path pointing at the old RocksDB, which migrates it on startup.
+ * <p>
+ * It's configured through the following system properties:
+ * <ul>
+ *     <li>migrate.source.path: the RocksDB the values are copied from, opened read only, required.</li>
+ *     <li>migrate.target.path: the RocksDB the values are copied to, created if missing, required.</li>
+ *     <li>migrate.batch.size: how many values are saved at once, 1000 by default.</li>
+ *     <li>migrate.parallelism: how many batches are saved at once, 4 by default.</li>
+ *     <li>migrate.progress.path: the file recording how far the migration has got, next to the target by default.</li>
+ * </ul>
+ * <pre>
+ * java -Dmigrate.source.path=/data/old -Dmigrate.target.path=/data/new -cp kafka-event-delayer.jar cgss.dev.StorageMigration
+ * </pre>
+ * If interrupted, running it again resumes the migration.
+ */
+public class StorageMigration {
+
+    /**
+     * Copies the values from the source RocksDB into the target one.
+     *
+     * @param args Command line arguments. Not used.
+     * @throws RocksDBException If it fails to open either RocksDB.
+     * @throws IOException If it fails to read or write the migration progress.
+     * @throws KVStorageException If it fails to copy the values, or the counts don't match.
+     */
+    public static void main(final String[] args) throws RocksDBException, IOException, KVStorageException {
+        final String sourcePath = System.getProperty("migrate.source.path");
+        final String targetPath = System.getProperty("migrate.target.path");
+        if (sourcePath == null || targetPath == null) {
+            throw new IllegalArgumentException("migrate.source.path and migrate.target.path are required");
+        }
+
+        final int batchSize = Integer.getInteger("migrate.batch.size", 1000);
+        final int parallelism = Integer.getInteger("migrate.parallelism", 4);
+        final String progressPath = System.getProperty("migrate.progress.path", targetPath + ".progress");
+
+        RocksDB.loadLibrary();
+        try (final Options sourceOptions = new Options();
+             final RocksDB sourceRocksDB = RocksDB.openReadOnly(sourceOptions, sourcePath);
+             final Options targetOptions = new Options().setCreateIfMissing(true);
+             final RocksDB targetRocksDB = RocksDB.open(targetOptions, targetPath)) {
+            new StorageMigrator(
+                    new RocksDBStorage(sourceRocksDB),
+                    new RocksDBStorage(targetRocksDB),
+                    batchSize,
+                    parallelism,
+                    Paths.get(progressPath)
+            ).migrate();
+        }
+    }
+}
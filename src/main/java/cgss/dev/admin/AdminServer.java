@@ -0,0 +1,581 @@
+package cgss.dev.admin;
+
+import cgss.dev.config.ConfigFieldNames;
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.metrics.StorageMetrics;
+import cgss.dev.pipeline.EmitRateLimiter;
+import cgss.dev.pipeline.KafkaDelayedProducerRunnable;
+import cgss.dev.pipeline.KafkaSinkThread;
+import cgss.dev.pipeline.ProducerScheduler;
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An HTTP server to operate the application while it runs, built on the JDK's own HTTP server.
+ * It answers in JSON, on the following paths:
+ * <ul>
+ *     <li>GET /stats: the pipeline counters and latencies, the emit accuracy, and what is paused.</li>
+ *     <li>GET /pending?width=PT1M&amp;buckets=10: the pending events by when they are due.</li>
+ *     <li>GET /storage: the storage backlog and engine properties.</li>
+ *     <li>POST /ingest/pause, /ingest/resume, /emit/pause, /emit/resume: pauses or resumes a pipeline.</li>
+ *     <li>GET /tunables: the tunables, named like their config fields.</li>
+ *     <li>POST /tunables?name=value: changes the given tunables, e.g. /tunables?emit.max.events.per.second=100.</li>
+ *     <li>POST /checkpoint: creates a storage checkpoint, answering with its directory once created.</li>
+ *     <li>POST /storage/ingest?path=dir: ingests the SST files in the given directory, built by the bulk loader.</li>
+ * </ul>
+ * Requests are handled one at a time, on a thread of their own, so they never slow the pipelines down.
+ */
+public class AdminServer {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(AdminServer.class.getSimpleName());
+    /**
+     * The default width of the pending distribution buckets.
+     */
+    private static final Duration DEFAULT_BUCKET_WIDTH = Duration.ofMinutes(1);
+    /**
+     * The default number of pending distribution buckets.
+     */
+    private static final int DEFAULT_BUCKET_COUNT = 10;
+
+    /**
+     * How long to wait for an on demand checkpoint to be created.
+     */
+    private static final Duration CHECKPOINT_TIMEOUT = Duration.ofMinutes(1);
+    /**
+     * The underlying HTTP server.
+     */
+    private final HttpServer httpServer;
+    /**
+     * The thread handling the requests.
+     */
+    private final ExecutorService executor;
+    /**
+     * The pipeline counters and latencies.
+     */
+    private final PipelineMetrics pipelineMetrics;
+    /**
+     * The storage backlog.
+     */
+    private final StorageMetrics storageMetrics;
+    /**
+     * The storage, which the bulk loaded files are ingested into.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * The Kafka to storage pipeline.
+     */
+    private final KafkaSinkThread kafkaSinkThread;
+    /**
+     * The storage to Kafka pipeline.
+     */
+    private final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable;
+    /**
+     * Runs the storage to Kafka pipeline every poll interval.
+     */
+    private final ProducerScheduler producerScheduler;
+    /**
+     * Limits how fast the expired events are sent to Kafka.
+     */
+    private final EmitRateLimiter emitRateLimiter;
+    /**
+     * The JSON marshaller for the responses.
+     */
+    private final Gson gson;
+
+    /**
+     * Constructor for the admin server. It's bound right away, but only answers once started.
+     *
+     * @param address The address to bind to.
+     * @param pipelineMetrics The pipeline counters and latencies.
+     * @param storageMetrics The storage backlog.
+     * @param kvStorage The storage, which the bulk loaded files are ingested into.
+     * @param kafkaSinkThread The Kafka to storage pipeline.
+     * @param kafkaDelayedProducerRunnable The storage to Kafka pipeline.
+     * @param producerScheduler Runs the storage to Kafka pipeline every poll interval.
+     * @param emitRateLimiter Limits how fast the expired events are sent to Kafka.
+     * @throws IOException If it fails to bind to the address.
+     */
+    public AdminServer(
+            final InetSocketAddress address,
+            final PipelineMetrics pipelineMetrics,
+            final StorageMetrics storageMetrics,
+            final KVStorage kvStorage,
+            final KafkaSinkThread kafkaSinkThread,
+            final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable,
+            final ProducerScheduler producerScheduler,
+            final EmitRateLimiter emitRateLimiter) throws IOException {
+        this.httpServer = HttpServer.create(address, 0);
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, AdminServer.class.getSimpleName());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        this.pipelineMetrics = pipelineMetrics;
+        this.storageMetrics = storageMetrics;
+        this.kvStorage = kvStorage;
+        this.kafkaSinkThread = kafkaSinkThread;
+        this.kafkaDelayedProducerRunnable = kafkaDelayedProducerRunnable;
+        this.producerScheduler = producerScheduler;
+        this.emitRateLimiter = emitRateLimiter;
+        this.gson = new GsonBuilder().setPrettyPrinting().create();
+
+        httpServer.createContext("/stats", handler("GET", this::stats));
+        httpServer.createContext("/pending", handler("GET", this::pending));
+        httpServer.createContext("/storage", handler("GET", this::storage));
+        httpServer.createContext("/ingest/pause", handler("POST", query -> setIngestPaused(true)));
+        httpServer.createContext("/ingest/resume", handler("POST", query -> setIngestPaused(false)));
+        httpServer.createContext("/emit/pause", handler("POST", query -> setEmitPaused(true)));
+        httpServer.createContext("/emit/resume", handler("POST", query -> setEmitPaused(false)));
+        httpServer.createContext("/tunables", this::tunables);
+        httpServer.createContext("/checkpoint", handler("POST", this::checkpoint));
+        httpServer.createContext("/storage/ingest", handler("POST", this::ingestFiles));
+        httpServer.setExecutor(executor);
+    }
+
+    /**
+     * Starts answering requests.
+     */
+    public void start() {
+        httpServer.start();
+
+        logger.info(String.format("Admin server listening on %s", httpServer.getAddress()));
+    }
+
+    /**
+     * Stops answering requests, and releases the address.
+     */
+    public void stop() {
+        httpServer.stop(0);
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the address the server is bound to, useful when binding to an ephemeral port.
+     *
+     * @return The bound address.
+     */
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * Builds the pipeline stats.
+     *
+     * @param query The request query parameters, unused.
+     * @return The pipeline stats.
+     */
+    private Object stats(final Map<String, String> query) {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("pipeline", pipeline());
+        stats.put("emitLatenessP50Millis", pipelineMetrics.emitAccuracy().getEmitLatenessP50Millis());
+        stats.put("emitLatenessP99Millis", pipelineMetrics.emitAccuracy().getEmitLatenessP99Millis());
+        stats.put("emitLatenessP999Millis", pipelineMetrics.emitAccuracy().getEmitLatenessP999Millis());
+        stats.put("dwellTimeP50Millis", pipelineMetrics.emitAccuracy().getDwellTimeP50Millis());
+        stats.put("dwellTimeP99Millis", pipelineMetrics.emitAccuracy().getDwellTimeP99Millis());
+        stats.put("dwellTimeP999Millis", pipelineMetrics.emitAccuracy().getDwellTimeP999Millis());
+        stats.put("emitLagMillis", kafkaDelayedProducerRunnable.getEmitLag().toMillis());
+        stats.put("ingestPaused", kafkaSinkThread.isIngestPaused());
+        stats.put("emitPaused", kafkaDelayedProducerRunnable.isEmitPaused());
+
+        return stats;
+    }
+
+    /**
+     * Builds the pipeline counters and stage latencies, as the management interface exposes them.
+     *
+     * @return The pipeline counters and latencies.
+     */
+    private Map<String, Object> pipeline() {
+        final Map<String, Object> pipeline = new LinkedHashMap<>();
+        pipeline.put("consumedCount", pipelineMetrics.getConsumedCount());
+        pipeline.put("invalidCount", pipelineMetrics.getInvalidCount());
+        pipeline.put("storedCount", pipelineMetrics.getStoredCount());
+        pipeline.put("storeFailedCount", pipelineMetrics.getStoreFailedCount());
+        pipeline.put("emittedCount", pipelineMetrics.getEmittedCount());
+        pipeline.put("emitFailedCount", pipelineMetrics.getEmitFailedCount());
+        pipeline.put("inFlightSends", pipelineMetrics.getInFlightSends());
+        pipeline.put("storeLatencyMeanMicros", pipelineMetrics.getStoreLatencyMeanMicros());
+        pipeline.put("storeLatencyMaxMicros", pipelineMetrics.getStoreLatencyMaxMicros());
+        pipeline.put("emitLatencyMeanMicros", pipelineMetrics.getEmitLatencyMeanMicros());
+        pipeline.put("emitLatencyMaxMicros", pipelineMetrics.getEmitLatencyMaxMicros());
+        pipeline.put("tickLatencyMeanMicros", pipelineMetrics.getTickLatencyMeanMicros());
+        pipeline.put("tickLatencyMaxMicros", pipelineMetrics.getTickLatencyMaxMicros());
+
+        return pipeline;
+    }
+
+    /**
+     * Builds the distribution of the pending events by due time.
+     *
+     * @param query The request query parameters, optionally with the bucket 'width' and number of 'buckets'.
+     * @return The pending distribution.
+     */
+    private Object pending(final Map<String, String> query) {
+        final Duration bucketWidth = query.containsKey("width") ? Duration.parse(query.get("width")) : DEFAULT_BUCKET_WIDTH;
+        final int bucketCount = query.containsKey("buckets") ? Integer.parseInt(query.get("buckets")) : DEFAULT_BUCKET_COUNT;
+
+        if (bucketWidth.isNegative() || bucketWidth.isZero() || bucketCount < 0 || bucketCount > 1000) {
+            throw new IllegalArgumentException("the width must be positive, and there can be up to 1000 buckets");
+        }
+
+        return storageMetrics.getPendingDistribution(bucketWidth, bucketCount);
+    }
+
+    /**
+     * Builds the storage backlog and engine properties.
+     *
+     * @param query The request query parameters, unused.
+     * @return The storage stats.
+     */
+    private Object storage(final Map<String, String> query) {
+        final Map<String, Object> storage = new LinkedHashMap<>();
+        storage.put("pendingEvents", storageMetrics.getPendingEvents());
+        storage.put("pendingBytes", storageMetrics.getPendingBytes());
+        storage.put("oldestPendingDueTime", storageMetrics.getOldestPendingDueTime());
+        storage.put("oldestPendingOverdueMillis", storageMetrics.getOldestPendingOverdueMillis());
+        storage.put("engineProperties", storageMetrics.getEngineProperties());
+
+        return storage;
+    }
+
+    /**
+     * Asks the Kafka to storage pipeline for a storage checkpoint, waiting for it to be created.
+     *
+     * @param query The request query parameters, unused.
+     * @return The checkpoint directory.
+     */
+    private Object checkpoint(final Map<String, String> query) {
+        final Path checkpointPath;
+        try {
+            checkpointPath = kafkaSinkThread.requestCheckpoint().get(CHECKPOINT_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new IllegalStateException("interrupted while waiting for the checkpoint");
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof IllegalStateException) {
+                throw new IllegalArgumentException(e.getCause().getMessage());
+            }
+
+            throw new IllegalStateException(String.format("failed creating the checkpoint: %s", e.getCause().getMessage()));
+        } catch (final TimeoutException e) {
+            throw new IllegalStateException(String.format("the checkpoint wasn't created within %s", CHECKPOINT_TIMEOUT));
+        }
+
+        logger.info(String.format("Checkpoint %s created through the admin server.", checkpointPath));
+
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("checkpoint", checkpointPath.toString());
+
+        return body;
+    }
+
+    /**
+     * Ingests the SST files in the given directory into the storage, in name order.
+     *
+     * @param query The request query parameters, with the directory 'path'.
+     * @return The ingested files.
+     */
+    private Object ingestFiles(final Map<String, String> query) {
+        final String path = query.get("path");
+        if (path == null || !Files.isDirectory(Paths.get(path))) {
+            throw new IllegalArgumentException("the path must be an existing directory");
+        }
+
+        final List<String> sstPaths;
+        try (final Stream<Path> files = Files.list(Paths.get(path))) {
+            sstPaths = files
+                    .filter(file -> file.getFileName().toString().endsWith(".sst"))
+                    .map(Path::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+        } catch (final IOException e) {
+            throw new IllegalStateException(String.format("failed listing %s: %s", path, e.getMessage()));
+        }
+
+        try {
+            kvStorage.IngestFiles(sstPaths);
+        } catch (final KVStorageException e) {
+            if (e.getCause() instanceof UnsupportedOperationException) {
+                throw new IllegalArgumentException(e.getCause().getMessage());
+            }
+
+            throw new IllegalStateException(String.format("failed ingesting the files: %s", e.getMessage()));
+        }
+
+        logger.info(String.format("Ingested %d SST files from %s through the admin server.", sstPaths.size(), path));
+
+        final Map<String, Object> body = new LinkedHashMap<>();
+        body.put("ingested", sstPaths);
+
+        return body;
+    }
+
+    /**
+     * Pauses or resumes the Kafka to storage pipeline.
+     *
+     * @param paused If it should be paused.
+     * @return The new state.
+     */
+    private Object setIngestPaused(final boolean paused) {
+        kafkaSinkThread.setIngestPaused(paused);
+
+        logger.warning(String.format("Ingest %s through the admin server.", paused ? "paused" : "resumed"));
+
+        return stats(null);
+    }
+
+    /**
+     * Pauses or resumes the storage to Kafka pipeline.
+     *
+     * @param paused If it should be paused.
+     * @return The new state.
+     */
+    private Object setEmitPaused(final boolean paused) {
+        kafkaDelayedProducerRunnable.setEmitPaused(paused);
+
+        logger.warning(String.format("Emission %s through the admin server.", paused ? "paused" : "resumed"));
+
+        return stats(null);
+    }
+
+    /**
+     * Handles the tunables path: shows them on GET, and changes the ones in the query on POST.
+     * Every given tunable is validated before any is changed, so a bad request changes nothing.
+     *
+     * @param httpExchange The request.
+     * @throws IOException If it fails to answer.
+     */
+    private void tunables(final HttpExchange httpExchange) throws IOException {
+        if ("GET".equals(httpExchange.getRequestMethod())) {
+            handler("GET", query -> getTunables()).handle(httpExchange);
+        } else {
+            handler("POST", this::setTunables).handle(httpExchange);
+        }
+    }
+
+    /**
+     * Builds the current tunables, named like their config fields.
+     *
+     * @return The tunables.
+     */
+    private Map<String, Object> getTunables() {
+        final Map<String, Object> tunables = new LinkedHashMap<>();
+        tunables.put(ConfigFieldNames.CONSUMER_POLL_INTERVAL, kafkaSinkThread.getPollInterval().toString());
+        tunables.put(ConfigFieldNames.PRODUCER_POLL_INTERVAL, producerScheduler.getPollInterval().toString());
+        tunables.put(ConfigFieldNames.EMIT_MAX_EVENTS_PER_SECOND, emitRateLimiter.getMaxEventsPerSecond());
+        tunables.put(ConfigFieldNames.EMIT_MAX_BYTES_PER_SECOND, emitRateLimiter.getMaxBytesPerSecond());
+        tunables.put(ConfigFieldNames.PRODUCER_MAX_EVENTS_PER_TICK, kafkaDelayedProducerRunnable.getMaxEventsPerTick());
+        tunables.put(ConfigFieldNames.PRODUCER_MAX_TICK_TIME, kafkaDelayedProducerRunnable.getMaxTickDuration().toString());
+
+        return tunables;
+    }
+
+    /**
+     * Changes the tunables given in the query.
+     *
+     * @param query The tunables to be changed, named like their config fields.
+     * @return The new tunables.
+     */
+    private Object setTunables(final Map<String, String> query) {
+        final Duration consumerPollInterval = parseDuration(query, ConfigFieldNames.CONSUMER_POLL_INTERVAL, kafkaSinkThread.getPollInterval());
+        final Duration producerPollInterval = parseDuration(query, ConfigFieldNames.PRODUCER_POLL_INTERVAL, producerScheduler.getPollInterval());
+        final long emitMaxEventsPerSecond = parseLong(query, ConfigFieldNames.EMIT_MAX_EVENTS_PER_SECOND, emitRateLimiter.getMaxEventsPerSecond());
+        final long emitMaxBytesPerSecond = parseLong(query, ConfigFieldNames.EMIT_MAX_BYTES_PER_SECOND, emitRateLimiter.getMaxBytesPerSecond());
+        final long producerMaxEventsPerTick = parseLong(query, ConfigFieldNames.PRODUCER_MAX_EVENTS_PER_TICK, kafkaDelayedProducerRunnable.getMaxEventsPerTick());
+        final Duration producerMaxTickTime = parseDuration(query, ConfigFieldNames.PRODUCER_MAX_TICK_TIME, kafkaDelayedProducerRunnable.getMaxTickDuration());
+
+        for (final String name : query.keySet()) {
+            if (!getTunables().containsKey(name)) {
+                throw new IllegalArgumentException(String.format("unknown tunable %s", name));
+            }
+        }
+
+        if (consumerPollInterval.isZero() || producerPollInterval.isZero()) {
+            throw new IllegalArgumentException("poll intervals must be positive");
+        }
+
+        kafkaSinkThread.setPollInterval(consumerPollInterval);
+        producerScheduler.setPollInterval(producerPollInterval);
+        emitRateLimiter.setLimits(emitMaxEventsPerSecond, emitMaxBytesPerSecond);
+        kafkaDelayedProducerRunnable.setMaxEventsPerTick(producerMaxEventsPerTick);
+        kafkaDelayedProducerRunnable.setMaxTickDuration(producerMaxTickTime);
+
+        logger.warning(String.format("Tunables changed through the admin server: %s", query));
+
+        return getTunables();
+    }
+
+    /**
+     * Parses the given query parameter as a non-negative duration.
+     *
+     * @param query The request query parameters.
+     * @param name The parameter name.
+     * @param defaultValue The value to be used if the parameter is missing.
+     * @return The parsed duration, or the default value.
+     */
+    private static Duration parseDuration(final Map<String, String> query, final String name, final Duration defaultValue) {
+        if (!query.containsKey(name)) {
+            return defaultValue;
+        }
+
+        final Duration duration = Duration.parse(query.get(name));
+        if (duration.isNegative()) {
+            throw new IllegalArgumentException(String.format("%s can't be negative", name));
+        }
+
+        return duration;
+    }
+
+    /**
+     * Parses the given query parameter as a non-negative long.
+     *
+     * @param query The request query parameters.
+     * @param name The parameter name.
+     * @param defaultValue The value to be used if the parameter is missing.
+     * @return The parsed long, or the default value.
+     */
+    private static long parseLong(final Map<String, String> query, final String name, final long defaultValue) {
+        if (!query.containsKey(name)) {
+            return defaultValue;
+        }
+
+        final long value = Long.parseLong(query.get(name));
+        if (value < 0) {
+            throw new IllegalArgumentException(String.format("%s can't be negative", name));
+        }
+
+        return value;
+    }
+
+    /**
+     * Wraps the given action into an HTTP handler, which only accepts the given method, and answers with the action
+     * result as JSON. Invalid parameters are answered with a 400.
+     *
+     * @param method The accepted HTTP method.
+     * @param action The action, taking the query parameters.
+     * @return The HTTP handler.
+     */
+    private HttpHandler handler(final String method, final AdminAction action) {
+        return httpExchange -> {
+            try {
+                if (!method.equals(httpExchange.getRequestMethod())) {
+                    respond(httpExchange, 405, errorBody(String.format("only %s is allowed", method)));
+
+                    return;
+                }
+
+                respond(httpExchange, 200, action.apply(parseQuery(httpExchange.getRequestURI().getRawQuery())));
+            } catch (final IllegalArgumentException | DateTimeParseException e) {
+                respond(httpExchange, 400, errorBody(e.getMessage()));
+            } catch (final Throwable e) {
+                logger.warning(String.format("Failed handling %s: %s", httpExchange.getRequestURI(), e.getMessage()));
+
+                respond(httpExchange, 500, errorBody(e.getMessage()));
+            } finally {
+                httpExchange.close();
+            }
+        };
+    }
+
+    /**
+     * Writes the given body as JSON.
+     *
+     * @param httpExchange The request.
+     * @param status The HTTP status.
+     * @param body The body to be marshalled.
+     * @throws IOException If it fails to answer.
+     */
+    private void respond(final HttpExchange httpExchange, final int status, final Object body) throws IOException {
+        final byte[] bytes = gson.toJson(body).getBytes(StandardCharsets.UTF_8);
+
+        httpExchange.getResponseHeaders().set("Content-Type", "application/json");
+        httpExchange.sendResponseHeaders(status, bytes.length);
+
+        try (final OutputStream outputStream = httpExchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+
+    /**
+     * Builds an error body.
+     *
+     * @param message The error message.
+     * @return The error body.
+     */
+    private static Map<String, String> errorBody(final String message) {
+        final Map<String, String> body = new LinkedHashMap<>();
+        body.put("error", String.valueOf(message));
+
+        return body;
+    }
+
+    /**
+     * Parses the given raw query string into its parameters.
+     *
+     * @param rawQuery The raw query string, can be null.
+     * @return The parameters by name.
+     */
+    private static Map<String, String> parseQuery(final String rawQuery) {
+        final Map<String, String> query = new LinkedHashMap<>();
+
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+
+        for (final String parameter : rawQuery.split("&")) {
+            final String[] nameValue = parameter.split("=", 2);
+
+            query.put(
+                    URLDecoder.decode(nameValue[0], StandardCharsets.UTF_8),
+                    nameValue.length > 1 ? URLDecoder.decode(nameValue[1], StandardCharsets.UTF_8) : ""
+            );
+        }
+
+        return query;
+    }
+
+    /**
+     * An action of the admin server, taking the request query parameters and returning what to answer with.
+     */
+    @FunctionalInterface
+    private interface AdminAction {
+        /**
+         * Runs the action.
+         *
+         * @param query The request query parameters.
+         * @return The body to answer with, marshalled as JSON.
+         */
+        Object apply(Map<String, String> query);
+    }
+}
@@ -1,5 +1,7 @@
 package cgss.dev.config;
 
+import cgss.dev.pipeline.DelayTier;
+import cgss.dev.pipeline.RoutingEnum;
 import cgss.dev.storage.StorageEnum;
 import org.javatuples.Pair;
 
@@ -71,6 +73,182 @@ public class Config implements ConfigFieldNames {
      * The type of storage to be used.
      */
     private final StorageEnum kvStorage;
+    /**
+     * The interval between blocking offset commits. In between, offsets are committed asynchronously.
+     */
+    private final Duration consumerCommitInterval;
+    /**
+     * The maximum number of pending events before the consumption gets paused. Zero disables it.
+     */
+    private final long backpressureMaxPendingEvents;
+    /**
+     * The maximum number of bytes in storage before the consumption gets paused. Zero disables it.
+     */
+    private final long backpressureMaxStorageBytes;
+    /**
+     * The maximum emit lag before the consumption gets paused. Zero disables it.
+     */
+    private final Duration backpressureMaxEmitLag;
+    /**
+     * The ratio of the backpressure thresholds the values need to get below of to resume the consumption.
+     */
+    private final double backpressureResumeRatio;
+    /**
+     * The maximum number of events emitted per second. Zero disables the limit.
+     */
+    private final long emitMaxEventsPerSecond;
+    /**
+     * The maximum number of bytes emitted per second. Zero disables the limit.
+     */
+    private final long emitMaxBytesPerSecond;
+    /**
+     * The maximum number of events processed per producer tick. Zero disables the limit.
+     */
+    private final long producerMaxEventsPerTick;
+    /**
+     * The maximum duration of a producer tick. Zero disables the limit.
+     */
+    private final Duration producerMaxTickTime;
+    /**
+     * If producer ticks should be run back to back while they run out of budget.
+     */
+    private final boolean producerCatchUpMode;
+    /**
+     * How the destination topic of each event is picked.
+     */
+    private final RoutingEnum routingMode;
+    /**
+     * The record header holding the destination topic, when routing by header.
+     */
+    private final String routingHeaderName;
+    /**
+     * The event field holding the destination topic, when routing by field.
+     */
+    private final String routingFieldName;
+    /**
+     * The destination topic for each source topic, when routing by source topic.
+     */
+    private final Map<String, String> routingTopicMapping;
+    /**
+     * The interval between the metrics and diagnostics summaries in the logs. Zero disables them.
+     */
+    private final Duration metricsLogInterval;
+    /**
+     * One in every this many occurrences of each per event diagnostic is logged.
+     */
+    private final long logSampleEvery;
+    /**
+     * The record keys whose events are logged in full.
+     */
+    private final Collection<String> logTraceKeys;
+    /**
+     * The port of the admin HTTP server, 0 to disable it.
+     */
+    private final long adminPort;
+    /**
+     * The address the admin HTTP server binds to.
+     */
+    private final String adminHost;
+    /**
+     * The maximum number of records in the ingest pipeline, 0 to parse and save them on the consumer thread.
+     */
+    private final long consumerPipelineCapacity;
+    /**
+     * The maximum number of records saved at once by the ingest pipeline.
+     */
+    private final long consumerPipelineBatchSize;
+    /**
+     * The number of threads parsing the records of each poll, 0 to parse them one by one.
+     */
+    private final long consumerParseParallelism;
+    /**
+     * The compacted topic every save and delete is mirrored to, empty to disable it.
+     */
+    private final String storageChangelogTopic;
+    /**
+     * If this instance only keeps a replica of the storage from the changelog, instead of running the pipelines.
+     */
+    private final boolean storageChangelogStandby;
+    /**
+     * The file saving how far the storage has got in the changelog.
+     */
+    private final String storageChangelogOffsetsPath;
+    /**
+     * The directory RocksDB checkpoints are created in, empty to disable them.
+     */
+    private final String rocksDbCheckpointPath;
+    /**
+     * The interval between periodic RocksDB checkpoints, zero to only create them on demand.
+     */
+    private final Duration rocksDbCheckpointInterval;
+    /**
+     * How many RocksDB checkpoints are kept, older ones are deleted.
+     */
+    private final long rocksDbCheckpointRetained;
+    /**
+     * A checkpoint to restore the RocksDB storage from on startup, consuming from its offsets. Empty to disable it.
+     */
+    private final String rocksDbRestoreCheckpoint;
+    /**
+     * The RocksDB whose values are migrated into the storage on startup. Empty disables the migration.
+     */
+    private final String storageMigrationSourcePath;
+    /**
+     * How many values are saved at once when migrating.
+     */
+    private final long storageMigrationBatchSize;
+    /**
+     * How many batches are saved at once when migrating.
+     */
+    private final long storageMigrationParallelism;
+    /**
+     * The file recording how far the migration has got.
+     */
+    private final String storageMigrationProgressPath;
+    /**
+     * How long before being due values are loaded into memory, with the TIERED storage.
+     */
+    private final Duration storageTieredLookAhead;
+    /**
+     * How often values entering the look ahead window are loaded into memory, with the TIERED storage.
+     */
+    private final Duration storageTieredLoadInterval;
+    /**
+     * The delays of the delay tier topics, in the stateless delay mode. Empty disables the mode.
+     */
+    private final Collection<String> delayTiers;
+    /**
+     * The prefix of the delay tier topics, followed by their delay.
+     */
+    private final String delayTierTopicPrefix;
+    /**
+     * If using RocksDB, the paths of the RocksDB instances the storage is striped across, instead of the single one at rocksDbPath.
+     */
+    private final Collection<String> rocksDbStripePaths;
+    /**
+     * The control topic carrying the cancel commands, empty to disable cancelling.
+     */
+    private final String cancelTopic;
+    /**
+     * The field holding the business key of events and cancel commands, empty to use their Kafka key.
+     */
+    private final String cancelIdField;
+    /**
+     * The id of this instance, naming its own cancel consumer group, empty for the host name.
+     */
+    private final String cancelInstanceId;
+    /**
+     * If a newer event with the same business key replaces the pending one, instead of both being emitted.
+     */
+    private final boolean storageUpsert;
+    /**
+     * How many due events are sent together, then flushed. Zero or one sends each one on its own.
+     */
+    private final long producerEmitBatchSize;
+    /**
+     * If using RocksDB, if it collects statistics, such as the time writes were stalled for.
+     */
+    private final boolean rocksDbStatistics;
 
     /**
      * Config constructor.
@@ -87,8 +265,52 @@ public class Config implements ConfigFieldNames {
      * @param kvStorage The type of storage to be used.
      * @param rocksDbPath If using RocksDB, the path for the database.
      * @param expiryAge How old an event needs to be in order to be considered expired.
+     * @param consumerCommitInterval The interval between blocking offset commits.
+     * @param backpressureMaxPendingEvents The maximum number of pending events before pausing the consumption.
+     * @param backpressureMaxStorageBytes The maximum number of bytes in storage before pausing the consumption.
+     * @param backpressureMaxEmitLag The maximum emit lag before pausing the consumption.
+     * @param backpressureResumeRatio The ratio of the backpressure thresholds to resume the consumption.
+     * @param emitMaxEventsPerSecond The maximum number of events emitted per second.
+     * @param emitMaxBytesPerSecond The maximum number of bytes emitted per second.
+     * @param producerMaxEventsPerTick The maximum number of events processed per producer tick.
+     * @param producerMaxTickTime The maximum duration of a producer tick.
+     * @param producerCatchUpMode If producer ticks should be run back to back while they run out of budget.
+     * @param routingMode How the destination topic of each event is picked.
+     * @param routingHeaderName The record header holding the destination topic.
+     * @param routingFieldName The event field holding the destination topic.
+     * @param routingTopicMapping The destination topic for each source topic.
+     * @param metricsLogInterval The interval between the metrics and diagnostics summaries in the logs.
+     * @param logSampleEvery One in every this many occurrences of each per event diagnostic is logged.
+     * @param logTraceKeys The record keys whose events are logged in full.
+     * @param adminPort The port of the admin HTTP server, 0 to disable it.
+     * @param adminHost The address the admin HTTP server binds to.
+     * @param consumerPipelineCapacity The maximum number of records in the ingest pipeline.
+     * @param consumerPipelineBatchSize The maximum number of records saved at once by the ingest pipeline.
+     * @param consumerParseParallelism The number of threads parsing the records of each poll.
+     * @param storageChangelogTopic The topic the storage is mirrored to.
+     * @param storageChangelogStandby If this instance is a standby.
+     * @param storageChangelogOffsetsPath The file saving the changelog offsets.
+     * @param rocksDbCheckpointPath The directory RocksDB checkpoints are created in.
+     * @param rocksDbCheckpointInterval The interval between periodic RocksDB checkpoints.
+     * @param rocksDbCheckpointRetained How many RocksDB checkpoints are kept.
+     * @param rocksDbRestoreCheckpoint A checkpoint to restore the RocksDB storage from on startup.
+     * @param storageMigrationSourcePath The RocksDB whose values are migrated into the storage on startup.
+     * @param storageMigrationBatchSize How many values are saved at once when migrating.
+     * @param storageMigrationParallelism How many batches are saved at once when migrating.
+     * @param storageMigrationProgressPath The file recording how far the migration has got.
+     * @param storageTieredLookAhead How long before being due values are loaded into memory, with the TIERED storage.
+     * @param storageTieredLoadInterval How often values entering the look ahead window are loaded into memory, with the TIERED storage.
+     * @param delayTiers The delays of the delay tier topics, in the stateless delay mode.
+     * @param delayTierTopicPrefix The prefix of the delay tier topics, followed by their delay.
+     * @param rocksDbStripePaths If using RocksDB, the paths of the RocksDB instances the storage is striped across, empty for a single one.
+     * @param cancelTopic The control topic carrying the cancel commands, empty to disable cancelling.
+     * @param cancelIdField The field holding the business key of events and cancel commands, empty to use their Kafka key.
+     * @param cancelInstanceId The id of this instance, naming its own cancel consumer group, empty for the host name.
+     * @param storageUpsert If a newer event with the same business key replaces the pending one.
+     * @param producerEmitBatchSize How many due events are sent together, zero or one to send each one on its own.
+     * @param rocksDbStatistics If using RocksDB, if it collects statistics, such as the time writes were stalled for.
      */
-    private Config(Collection<String> sinkTopics, Collection<String> sourceTopics, DateTimeFormatter dateTimeFormatter, String consumerBootstrapServers, String consumerGroupId, String producerBootstrapServers, Duration consumerPollInternal, Duration producerPollInternal, String timestampFieldName, StorageEnum kvStorage, String rocksDbPath, Duration expiryAge) {
+    private Config(Collection<String> sinkTopics, Collection<String> sourceTopics, DateTimeFormatter dateTimeFormatter, String consumerBootstrapServers, String consumerGroupId, String producerBootstrapServers, Duration consumerPollInternal, Duration producerPollInternal, String timestampFieldName, StorageEnum kvStorage, String rocksDbPath, Duration expiryAge, Duration consumerCommitInterval, long backpressureMaxPendingEvents, long backpressureMaxStorageBytes, Duration backpressureMaxEmitLag, double backpressureResumeRatio, long emitMaxEventsPerSecond, long emitMaxBytesPerSecond, long producerMaxEventsPerTick, Duration producerMaxTickTime, boolean producerCatchUpMode, RoutingEnum routingMode, String routingHeaderName, String routingFieldName, Map<String, String> routingTopicMapping, Duration metricsLogInterval, long logSampleEvery, Collection<String> logTraceKeys, long adminPort, String adminHost, long consumerPipelineCapacity, long consumerPipelineBatchSize, long consumerParseParallelism, String storageChangelogTopic, boolean storageChangelogStandby, String storageChangelogOffsetsPath, String rocksDbCheckpointPath, Duration rocksDbCheckpointInterval, long rocksDbCheckpointRetained, String rocksDbRestoreCheckpoint, String storageMigrationSourcePath, long storageMigrationBatchSize, long storageMigrationParallelism, String storageMigrationProgressPath, Duration storageTieredLookAhead, Duration storageTieredLoadInterval, Collection<String> delayTiers, String delayTierTopicPrefix, Collection<String> rocksDbStripePaths, String cancelTopic, String cancelIdField, String cancelInstanceId, boolean storageUpsert, long producerEmitBatchSize, boolean rocksDbStatistics) {
         this.sinkTopics = sinkTopics;
         this.sourceTopics = sourceTopics;
         this.dateTimeFormatter = dateTimeFormatter;
@@ -101,6 +323,50 @@ public class Config implements ConfigFieldNames {
         this.kvStorage = kvStorage;
         this.rocksDbPath = rocksDbPath;
         this.expiryAge = expiryAge;
+        this.consumerCommitInterval = consumerCommitInterval;
+        this.backpressureMaxPendingEvents = backpressureMaxPendingEvents;
+        this.backpressureMaxStorageBytes = backpressureMaxStorageBytes;
+        this.backpressureMaxEmitLag = backpressureMaxEmitLag;
+        this.backpressureResumeRatio = backpressureResumeRatio;
+        this.emitMaxEventsPerSecond = emitMaxEventsPerSecond;
+        this.emitMaxBytesPerSecond = emitMaxBytesPerSecond;
+        this.producerMaxEventsPerTick = producerMaxEventsPerTick;
+        this.producerMaxTickTime = producerMaxTickTime;
+        this.producerCatchUpMode = producerCatchUpMode;
+        this.routingMode = routingMode;
+        this.routingHeaderName = routingHeaderName;
+        this.routingFieldName = routingFieldName;
+        this.routingTopicMapping = routingTopicMapping;
+        this.metricsLogInterval = metricsLogInterval;
+        this.logSampleEvery = logSampleEvery;
+        this.logTraceKeys = logTraceKeys;
+        this.adminPort = adminPort;
+        this.adminHost = adminHost;
+        this.consumerPipelineCapacity = consumerPipelineCapacity;
+        this.consumerPipelineBatchSize = consumerPipelineBatchSize;
+        this.consumerParseParallelism = consumerParseParallelism;
+        this.storageChangelogTopic = storageChangelogTopic;
+        this.storageChangelogStandby = storageChangelogStandby;
+        this.storageChangelogOffsetsPath = storageChangelogOffsetsPath;
+        this.rocksDbCheckpointPath = rocksDbCheckpointPath;
+        this.rocksDbCheckpointInterval = rocksDbCheckpointInterval;
+        this.rocksDbCheckpointRetained = rocksDbCheckpointRetained;
+        this.rocksDbRestoreCheckpoint = rocksDbRestoreCheckpoint;
+        this.storageMigrationSourcePath = storageMigrationSourcePath;
+        this.storageMigrationBatchSize = storageMigrationBatchSize;
+        this.storageMigrationParallelism = storageMigrationParallelism;
+        this.storageMigrationProgressPath = storageMigrationProgressPath;
+        this.storageTieredLookAhead = storageTieredLookAhead;
+        this.storageTieredLoadInterval = storageTieredLoadInterval;
+        this.delayTiers = delayTiers;
+        this.delayTierTopicPrefix = delayTierTopicPrefix;
+        this.rocksDbStripePaths = rocksDbStripePaths;
+        this.cancelTopic = cancelTopic;
+        this.cancelIdField = cancelIdField;
+        this.cancelInstanceId = cancelInstanceId;
+        this.storageUpsert = storageUpsert;
+        this.producerEmitBatchSize = producerEmitBatchSize;
+        this.rocksDbStatistics = rocksDbStatistics;
     }
 
     /**
@@ -238,6 +504,75 @@ public class Config implements ConfigFieldNames {
 
         final String rocksDbPath = extractAndValidateIfEmpty(properties, ROCKSDB_PATH, missingFields);
 
+        final Duration consumerCommitInterval = extractOptionalDuration(properties, CONSUMER_COMMIT_INTERVAL, Duration.ofSeconds(5), errorMessages);
+
+        final long backpressureMaxPendingEvents = extractOptionalLong(properties, BACKPRESSURE_MAX_PENDING_EVENTS, 0, errorMessages);
+        final long backpressureMaxStorageBytes = extractOptionalLong(properties, BACKPRESSURE_MAX_STORAGE_BYTES, 0, errorMessages);
+        final Duration backpressureMaxEmitLag = extractOptionalDuration(properties, BACKPRESSURE_MAX_EMIT_LAG, Duration.ZERO, errorMessages);
+        final double backpressureResumeRatio = extractOptionalDouble(properties, BACKPRESSURE_RESUME_RATIO, 0.8, errorMessages);
+
+        final long emitMaxEventsPerSecond = extractOptionalLong(properties, EMIT_MAX_EVENTS_PER_SECOND, 0, errorMessages);
+        final long emitMaxBytesPerSecond = extractOptionalLong(properties, EMIT_MAX_BYTES_PER_SECOND, 0, errorMessages);
+
+        final long producerMaxEventsPerTick = extractOptionalLong(properties, PRODUCER_MAX_EVENTS_PER_TICK, 0, errorMessages);
+        final Duration producerMaxTickTime = extractOptionalDuration(properties, PRODUCER_MAX_TICK_TIME, Duration.ZERO, errorMessages);
+        final boolean producerCatchUpMode = extractOptionalBoolean(properties, PRODUCER_CATCH_UP_MODE, false, errorMessages);
+
+        final RoutingEnum routingMode = extractOptionalRoutingMode(properties, ROUTING_MODE, RoutingEnum.BROADCAST, errorMessages);
+        final String routingHeaderName = extractOptionalString(properties, ROUTING_HEADER_NAME, "destination", errorMessages);
+        final String routingFieldName = extractOptionalString(properties, ROUTING_FIELD_NAME, "destination", errorMessages);
+        final Map<String, String> routingTopicMapping = extractOptionalMapping(properties, ROUTING_TOPIC_MAPPING, Collections.emptyMap(), errorMessages);
+
+        final Duration metricsLogInterval = extractOptionalDuration(properties, METRICS_LOG_INTERVAL, Duration.ofMinutes(1), errorMessages);
+
+        final long logSampleEvery = extractOptionalLong(properties, LOG_SAMPLE_EVERY, 1000, errorMessages);
+        final Collection<String> logTraceKeys = extractOptionalList(properties, LOG_TRACE_KEYS, Collections.emptyList(), errorMessages);
+
+        final long adminPort = extractOptionalLong(properties, ADMIN_PORT, 0, errorMessages);
+        final String adminHost = extractOptionalString(properties, ADMIN_HOST, "127.0.0.1", errorMessages);
+
+        final long consumerPipelineCapacity = extractOptionalLong(properties, CONSUMER_PIPELINE_CAPACITY, 0, errorMessages);
+        final long consumerPipelineBatchSize = extractOptionalLong(properties, CONSUMER_PIPELINE_BATCH_SIZE, 256, errorMessages);
+
+        final long consumerParseParallelism = extractOptionalLong(properties, CONSUMER_PARSE_PARALLELISM, 0, errorMessages);
+
+        final String storageChangelogTopic = extractOptionalString(properties, STORAGE_CHANGELOG_TOPIC, "", errorMessages);
+        final boolean storageChangelogStandby = extractOptionalBoolean(properties, STORAGE_CHANGELOG_STANDBY, false, errorMessages);
+        final String storageChangelogOffsetsPath = extractOptionalString(properties, STORAGE_CHANGELOG_OFFSETS_PATH, "changelog.offsets", errorMessages);
+
+        final String rocksDbCheckpointPath = extractOptionalString(properties, ROCKSDB_CHECKPOINT_PATH, "", errorMessages);
+        final Duration rocksDbCheckpointInterval = extractOptionalDuration(properties, ROCKSDB_CHECKPOINT_INTERVAL, Duration.ZERO, errorMessages);
+        final long rocksDbCheckpointRetained = extractOptionalLong(properties, ROCKSDB_CHECKPOINT_RETAINED, 3, errorMessages);
+        final String rocksDbRestoreCheckpoint = extractOptionalString(properties, ROCKSDB_RESTORE_CHECKPOINT, "", errorMessages);
+
+        final String storageMigrationSourcePath = extractOptionalString(properties, STORAGE_MIGRATION_SOURCE_PATH, "", errorMessages);
+        final long storageMigrationBatchSize = extractOptionalLong(properties, STORAGE_MIGRATION_BATCH_SIZE, 1000, errorMessages);
+        final long storageMigrationParallelism = extractOptionalLong(properties, STORAGE_MIGRATION_PARALLELISM, 4, errorMessages);
+        final String storageMigrationProgressPath = extractOptionalString(properties, STORAGE_MIGRATION_PROGRESS_PATH, "migration.progress", errorMessages);
+
+        final Duration storageTieredLookAhead = extractOptionalDuration(properties, STORAGE_TIERED_LOOK_AHEAD, Duration.ofMinutes(1), errorMessages);
+        final Duration storageTieredLoadInterval = extractOptionalDuration(properties, STORAGE_TIERED_LOAD_INTERVAL, Duration.ofSeconds(1), errorMessages);
+
+        final Collection<String> delayTiers = extractOptionalList(properties, DELAY_TIERS, Collections.emptyList(), errorMessages);
+        final String delayTierTopicPrefix = extractOptionalString(properties, DELAY_TIER_TOPIC_PREFIX, "delay-tier", errorMessages);
+        try {
+            DelayTier.of(delayTiers, delayTierTopicPrefix);
+        } catch (final DateTimeParseException | IllegalArgumentException e) {
+            errorMessages.add(String.format("invalid delay tiers %s: %s", delayTiers, e.getMessage()));
+        }
+
+        final Collection<String> rocksDbStripePaths = extractOptionalList(properties, ROCKSDB_STRIPE_PATHS, Collections.emptyList(), errorMessages);
+
+        final String cancelTopic = extractOptionalString(properties, CANCEL_TOPIC, "", errorMessages);
+        final String cancelIdField = extractOptionalString(properties, CANCEL_ID_FIELD, "", errorMessages);
+        final String cancelInstanceId = extractOptionalString(properties, CANCEL_INSTANCE_ID, "", errorMessages);
+
+        final boolean storageUpsert = extractOptionalBoolean(properties, STORAGE_UPSERT, false, errorMessages);
+
+        final long producerEmitBatchSize = extractOptionalLong(properties, PRODUCER_EMIT_BATCH_SIZE, 0, errorMessages);
+
+        final boolean rocksDbStatistics = extractOptionalBoolean(properties, ROCKSDB_STATISTICS, false, errorMessages);
+
         if (!missingFields.isEmpty()) {
             final String missingFieldsJoin = String.join(",", missingFields);
             final String errMsg = String.format("missing required env config values: %s", missingFieldsJoin);
@@ -264,7 +599,51 @@ public class Config implements ConfigFieldNames {
                 timestampFieldName,
                 storageType,
                 rocksDbPath,
-                expiryAge
+                expiryAge,
+                consumerCommitInterval,
+                backpressureMaxPendingEvents,
+                backpressureMaxStorageBytes,
+                backpressureMaxEmitLag,
+                backpressureResumeRatio,
+                emitMaxEventsPerSecond,
+                emitMaxBytesPerSecond,
+                producerMaxEventsPerTick,
+                producerMaxTickTime,
+                producerCatchUpMode,
+                routingMode,
+                routingHeaderName,
+                routingFieldName,
+                routingTopicMapping,
+                metricsLogInterval,
+                logSampleEvery,
+                logTraceKeys,
+                adminPort,
+                adminHost,
+                consumerPipelineCapacity,
+                consumerPipelineBatchSize,
+                consumerParseParallelism,
+                storageChangelogTopic,
+                storageChangelogStandby,
+                storageChangelogOffsetsPath,
+                rocksDbCheckpointPath,
+                rocksDbCheckpointInterval,
+                rocksDbCheckpointRetained,
+                rocksDbRestoreCheckpoint,
+                storageMigrationSourcePath,
+                storageMigrationBatchSize,
+                storageMigrationParallelism,
+                storageMigrationProgressPath,
+                storageTieredLookAhead,
+                storageTieredLoadInterval,
+                delayTiers,
+                delayTierTopicPrefix,
+                rocksDbStripePaths,
+                cancelTopic,
+                cancelIdField,
+                cancelInstanceId,
+                storageUpsert,
+                producerEmitBatchSize,
+                rocksDbStatistics
         );
     }
 
@@ -286,6 +665,208 @@ public class Config implements ConfigFieldNames {
         return Optional.ofNullable(propertyVal).orElse("");
     }
 
+    /**
+     * Extracts the given optional property from the Properties file and parses it as a duration.
+     * If the property is missing, the default value is returned. If it can't be parsed, the error is added to the
+     * 'errorMessages' array.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array to add parsing errors to.
+     * @return The parsed duration, or the default value.
+     */
+    private static Duration extractOptionalDuration(final Properties properties, final String property, final Duration defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Duration.parse(propertyVal);
+        } catch (DateTimeParseException e) {
+            errorMessages.add(String.format("could not parse '%s' %s duration: %s", propertyVal, property, e.getMessage()));
+
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file and parses it as a long.
+     * If the property is missing, the default value is returned. If it can't be parsed, the error is added to the
+     * 'errorMessages' array.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array to add parsing errors to.
+     * @return The parsed long, or the default value.
+     */
+    private static long extractOptionalLong(final Properties properties, final String property, final long defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Long.parseLong(propertyVal);
+        } catch (NumberFormatException e) {
+            errorMessages.add(String.format("could not parse '%s' %s number: %s", propertyVal, property, e.getMessage()));
+
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file and parses it as a double.
+     * If the property is missing, the default value is returned. If it can't be parsed, the error is added to the
+     * 'errorMessages' array.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array to add parsing errors to.
+     * @return The parsed double, or the default value.
+     */
+    private static double extractOptionalDouble(final Properties properties, final String property, final double defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return Double.parseDouble(propertyVal);
+        } catch (NumberFormatException e) {
+            errorMessages.add(String.format("could not parse '%s' %s number: %s", propertyVal, property, e.getMessage()));
+
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file and parses it as a boolean.
+     * If the property is missing, the default value is returned. If it's neither 'true' nor 'false', the error is added
+     * to the 'errorMessages' array.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array to add parsing errors to.
+     * @return The parsed boolean, or the default value.
+     */
+    private static boolean extractOptionalBoolean(final Properties properties, final String property, final boolean defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        if (!propertyVal.equalsIgnoreCase("true") && !propertyVal.equalsIgnoreCase("false")) {
+            errorMessages.add(String.format("could not parse '%s' %s boolean", propertyVal, property));
+
+            return defaultValue;
+        }
+
+        return Boolean.parseBoolean(propertyVal);
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file.
+     * If the property is missing, the default value is returned.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array, unused as a string can't fail to be parsed.
+     * @return The property value, or the default value.
+     */
+    private static String extractOptionalString(final Properties properties, final String property, final String defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        return propertyVal;
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file and splits it as a comma separated list.
+     * If the property is missing, the default value is returned.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array, unused as a list can't fail to be parsed.
+     * @return The list, or the default value.
+     */
+    private static Collection<String> extractOptionalList(final Properties properties, final String property, final Collection<String> defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        return Arrays.asList(propertyVal.split(","));
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file and parses it as a routing mode.
+     * If the property is missing, the default value is returned. If it's not a known mode, the error is added to the
+     * 'errorMessages' array.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array to add parsing errors to.
+     * @return The parsed routing mode, or the default value.
+     */
+    private static RoutingEnum extractOptionalRoutingMode(final Properties properties, final String property, final RoutingEnum defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            return RoutingEnum.valueOf(propertyVal);
+        } catch (IllegalArgumentException e) {
+            errorMessages.add(String.format("unknown routing mode %s", propertyVal));
+
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Extracts the given optional property from the Properties file and parses it as a mapping, in the
+     * 'key1:value1,key2:value2' format.
+     * If the property is missing, an empty mapping is returned. If an entry can't be parsed, the error is added to
+     * the 'errorMessages' array.
+     *
+     * @param properties The properties file to extract the field from.
+     * @param property The property name.
+     * @param defaultValue The value to be used if the property is missing.
+     * @param errorMessages The error message array to add parsing errors to.
+     * @return The parsed mapping, or the default value.
+     */
+    private static Map<String, String> extractOptionalMapping(final Properties properties, final String property, final Map<String, String> defaultValue, final Collection<String> errorMessages) {
+        final String propertyVal = properties.getProperty(property);
+        if (propertyVal == null || propertyVal.isEmpty()) {
+            return defaultValue;
+        }
+
+        final Map<String, String> mapping = new HashMap<>();
+        for (final String entry : propertyVal.split(",")) {
+            final String[] keyValue = entry.split(":");
+
+            if (keyValue.length != 2 || keyValue[0].trim().isEmpty() || keyValue[1].trim().isEmpty()) {
+                errorMessages.add(String.format("could not parse '%s' %s mapping entry", entry, property));
+
+                continue;
+            }
+
+            mapping.put(keyValue[0].trim(), keyValue[1].trim());
+        }
+
+        return mapping;
+    }
+
     /**
      * Get the producer bootstrap servers.
      *
@@ -393,4 +974,400 @@ public class Config implements ConfigFieldNames {
     public Duration getExpiryAge() {
         return expiryAge;
     }
+
+    /**
+     * Get the interval between blocking offset commits.
+     *
+     * @return The interval between blocking offset commits.
+     */
+    public Duration getConsumerCommitInterval() {
+        return consumerCommitInterval;
+    }
+
+    /**
+     * Get the maximum number of pending events before pausing the consumption.
+     *
+     * @return The maximum number of pending events, zero if disabled.
+     */
+    public long getBackpressureMaxPendingEvents() {
+        return backpressureMaxPendingEvents;
+    }
+
+    /**
+     * Get the maximum number of bytes in storage before pausing the consumption.
+     *
+     * @return The maximum number of bytes in storage, zero if disabled.
+     */
+    public long getBackpressureMaxStorageBytes() {
+        return backpressureMaxStorageBytes;
+    }
+
+    /**
+     * Get the maximum emit lag before pausing the consumption.
+     *
+     * @return The maximum emit lag, zero if disabled.
+     */
+    public Duration getBackpressureMaxEmitLag() {
+        return backpressureMaxEmitLag;
+    }
+
+    /**
+     * Get the ratio of the backpressure thresholds to resume the consumption.
+     *
+     * @return The backpressure resume ratio.
+     */
+    public double getBackpressureResumeRatio() {
+        return backpressureResumeRatio;
+    }
+
+    /**
+     * Get the maximum number of events emitted per second.
+     *
+     * @return The maximum number of events emitted per second, zero if unlimited.
+     */
+    public long getEmitMaxEventsPerSecond() {
+        return emitMaxEventsPerSecond;
+    }
+
+    /**
+     * Get the maximum number of bytes emitted per second.
+     *
+     * @return The maximum number of bytes emitted per second, zero if unlimited.
+     */
+    public long getEmitMaxBytesPerSecond() {
+        return emitMaxBytesPerSecond;
+    }
+
+    /**
+     * Get the maximum number of events processed per producer tick.
+     *
+     * @return The maximum number of events per tick, zero if unlimited.
+     */
+    public long getProducerMaxEventsPerTick() {
+        return producerMaxEventsPerTick;
+    }
+
+    /**
+     * Get the maximum duration of a producer tick.
+     *
+     * @return The maximum duration of a producer tick, zero if unlimited.
+     */
+    public Duration getProducerMaxTickTime() {
+        return producerMaxTickTime;
+    }
+
+    /**
+     * Get if producer ticks should be run back to back while they run out of budget.
+     *
+     * @return If the producer catch-up mode is enabled.
+     */
+    public boolean isProducerCatchUpMode() {
+        return producerCatchUpMode;
+    }
+
+    /**
+     * Get how the destination topic of each event is picked.
+     *
+     * @return The routing mode.
+     */
+    public RoutingEnum getRoutingMode() {
+        return routingMode;
+    }
+
+    /**
+     * Get the record header holding the destination topic.
+     *
+     * @return The routing header name.
+     */
+    public String getRoutingHeaderName() {
+        return routingHeaderName;
+    }
+
+    /**
+     * Get the event field holding the destination topic.
+     *
+     * @return The routing field name.
+     */
+    public String getRoutingFieldName() {
+        return routingFieldName;
+    }
+
+    /**
+     * Get the destination topic for each source topic.
+     *
+     * @return The routing topic mapping.
+     */
+    public Map<String, String> getRoutingTopicMapping() {
+        return routingTopicMapping;
+    }
+
+    /**
+     * Get the interval between the metrics and diagnostics summaries in the logs.
+     *
+     * @return The metrics log interval, zero if disabled.
+     */
+    public Duration getMetricsLogInterval() {
+        return metricsLogInterval;
+    }
+
+    /**
+     * Get how often the per event diagnostics are sampled.
+     *
+     * @return One in every this many occurrences is logged.
+     */
+    public long getLogSampleEvery() {
+        return logSampleEvery;
+    }
+
+    /**
+     * Get the record keys whose events are logged in full.
+     *
+     * @return The traced record keys.
+     */
+    public Collection<String> getLogTraceKeys() {
+        return logTraceKeys;
+    }
+
+    /**
+     * Returns the port of the admin HTTP server.
+     *
+     * @return The admin server port, 0 if disabled.
+     */
+    public long getAdminPort() {
+        return adminPort;
+    }
+
+    /**
+     * Returns the address the admin HTTP server binds to.
+     *
+     * @return The admin server address.
+     */
+    public String getAdminHost() {
+        return adminHost;
+    }
+
+    /**
+     * Gets the maximum number of records in the ingest pipeline, 0 if records are parsed and saved on the consumer thread.
+     *
+     * @return The ingest pipeline capacity.
+     */
+    public long getConsumerPipelineCapacity() {
+        return consumerPipelineCapacity;
+    }
+
+    /**
+     * Gets the maximum number of records saved at once by the ingest pipeline.
+     *
+     * @return The ingest pipeline batch size.
+     */
+    public long getConsumerPipelineBatchSize() {
+        return consumerPipelineBatchSize;
+    }
+
+    /**
+     * Gets the number of threads parsing the records of each poll, 0 if they're parsed one by one.
+     *
+     * @return The parse parallelism.
+     */
+    public long getConsumerParseParallelism() {
+        return consumerParseParallelism;
+    }
+
+    /**
+     * Gets the compacted topic every save and delete is mirrored to, empty if disabled.
+     *
+     * @return The changelog topic.
+     */
+    public String getStorageChangelogTopic() {
+        return storageChangelogTopic;
+    }
+
+    /**
+     * Gets if this instance only keeps a replica of the storage from the changelog.
+     *
+     * @return If this instance is a standby.
+     */
+    public boolean isStorageChangelogStandby() {
+        return storageChangelogStandby;
+    }
+
+    /**
+     * Gets the file saving how far the storage has got in the changelog.
+     *
+     * @return The changelog offsets path.
+     */
+    public String getStorageChangelogOffsetsPath() {
+        return storageChangelogOffsetsPath;
+    }
+
+    /**
+     * Gets the directory RocksDB checkpoints are created in, empty if disabled.
+     *
+     * @return The checkpoints directory.
+     */
+    public String getRocksDbCheckpointPath() {
+        return rocksDbCheckpointPath;
+    }
+
+    /**
+     * Gets the interval between periodic RocksDB checkpoints, zero if only created on demand.
+     *
+     * @return The checkpoint interval.
+     */
+    public Duration getRocksDbCheckpointInterval() {
+        return rocksDbCheckpointInterval;
+    }
+
+    /**
+     * Gets how many RocksDB checkpoints are kept.
+     *
+     * @return The number of retained checkpoints.
+     */
+    public long getRocksDbCheckpointRetained() {
+        return rocksDbCheckpointRetained;
+    }
+
+    /**
+     * Gets the checkpoint to restore the RocksDB storage from on startup, empty if disabled.
+     *
+     * @return The checkpoint directory.
+     */
+    public String getRocksDbRestoreCheckpoint() {
+        return rocksDbRestoreCheckpoint;
+    }
+
+    /**
+     * Gets the RocksDB whose values are migrated into the storage on startup.
+     *
+     * @return The source RocksDB path, empty if disabled.
+     */
+    public String getStorageMigrationSourcePath() {
+        return storageMigrationSourcePath;
+    }
+
+    /**
+     * Gets how many values are saved at once when migrating.
+     *
+     * @return The migration batch size.
+     */
+    public long getStorageMigrationBatchSize() {
+        return storageMigrationBatchSize;
+    }
+
+    /**
+     * Gets how many batches are saved at once when migrating.
+     *
+     * @return The migration parallelism.
+     */
+    public long getStorageMigrationParallelism() {
+        return storageMigrationParallelism;
+    }
+
+    /**
+     * Gets the file recording how far the migration has got.
+     *
+     * @return The migration progress path.
+     */
+    public String getStorageMigrationProgressPath() {
+        return storageMigrationProgressPath;
+    }
+
+    /**
+     * Gets how long before being due values are loaded into memory, with the TIERED storage.
+     *
+     * @return The tiered storage look ahead.
+     */
+    public Duration getStorageTieredLookAhead() {
+        return storageTieredLookAhead;
+    }
+
+    /**
+     * Gets how often values entering the look ahead window are loaded into memory, with the TIERED storage.
+     *
+     * @return The tiered storage load interval.
+     */
+    public Duration getStorageTieredLoadInterval() {
+        return storageTieredLoadInterval;
+    }
+
+    /**
+     * Gets the delays of the delay tier topics, in the stateless delay mode.
+     *
+     * @return The delay tiers, empty if disabled.
+     */
+    public Collection<String> getDelayTiers() {
+        return delayTiers;
+    }
+
+    /**
+     * Gets the prefix of the delay tier topics, followed by their delay.
+     *
+     * @return The delay tier topic prefix.
+     */
+    public String getDelayTierTopicPrefix() {
+        return delayTierTopicPrefix;
+    }
+
+    /**
+     * Gets the paths of the RocksDB instances the storage is striped across, e.g. one per disk. Empty for a single instance at the RocksDB path.
+     *
+     * @return The RocksDB stripe paths.
+     */
+    public Collection<String> getRocksDbStripePaths() {
+        return rocksDbStripePaths;
+    }
+
+    /**
+     * Gets the control topic carrying the cancel commands, each one deleting the pending events with its business key. Empty if disabled.
+     *
+     * @return The cancel topic.
+     */
+    public String getCancelTopic() {
+        return cancelTopic;
+    }
+
+    /**
+     * Gets the field holding the business key of events and cancel commands. Empty if their Kafka key is used instead.
+     *
+     * @return The business key field name.
+     */
+    public String getCancelIdField() {
+        return cancelIdField;
+    }
+
+    /**
+     * Gets the id of this instance, naming its own cancel consumer group, so every instance consumes every cancel command. Empty uses the host name.
+     *
+     * @return The instance id, empty for the host name.
+     */
+    public String getCancelInstanceId() {
+        return cancelInstanceId;
+    }
+
+    /**
+     * Checks if a newer event with the same business key, its Kafka key unless the cancel id field is set, replaces the pending one, so only the last one is emitted.
+     *
+     * @return If the storage is in upsert mode.
+     */
+    public boolean isStorageUpsert() {
+        return storageUpsert;
+    }
+
+    /**
+     * Gets how many due events are sent together, e.g. 500. They're handed to the producer together, then the producer is flushed and they're waited for at once. Zero or one sends each event on its own.
+     *
+     * @return The emit batch size.
+     */
+    public long getProducerEmitBatchSize() {
+        return producerEmitBatchSize;
+    }
+
+    /**
+     * Gets if RocksDB collects statistics, such as the time writes were stalled for. They add some overhead to every read and write, so they're off by default.
+     *
+     * @return If RocksDB collects statistics.
+     */
+    public boolean isRocksDbStatistics() {
+        return rocksDbStatistics;
+    }
 }
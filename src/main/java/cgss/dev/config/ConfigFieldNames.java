@@ -18,6 +18,7 @@ public interface ConfigFieldNames {
 
     String CONSUMER_POLL_INTERVAL = "consumer.poll.time";
     String GROUP_ID_FIELD_NAME = ConsumerConfig.GROUP_ID_CONFIG;
+    String CONSUMER_COMMIT_INTERVAL = "consumer.commit.interval";
 
     String PRODUCER_BOOTSTRAP_SERVERS_FIELD_NAME = "producer.bootstrap.servers";
     String PRODUCER_POLL_INTERVAL = "producer.poll.time";
@@ -29,6 +30,68 @@ public interface ConfigFieldNames {
     String ROCKSDB_PATH = "rocksdb.path";
     String EXPIRY_AGE = "expiry.age";
 
+    String BACKPRESSURE_MAX_PENDING_EVENTS = "backpressure.max.pending.events";
+    String BACKPRESSURE_MAX_STORAGE_BYTES = "backpressure.max.storage.bytes";
+    String BACKPRESSURE_MAX_EMIT_LAG = "backpressure.max.emit.lag";
+    String BACKPRESSURE_RESUME_RATIO = "backpressure.resume.ratio";
+
+    String EMIT_MAX_EVENTS_PER_SECOND = "emit.max.events.per.second";
+    String EMIT_MAX_BYTES_PER_SECOND = "emit.max.bytes.per.second";
+
+    String PRODUCER_MAX_EVENTS_PER_TICK = "producer.max.events.per.tick";
+    String PRODUCER_MAX_TICK_TIME = "producer.max.tick.time";
+    String PRODUCER_CATCH_UP_MODE = "producer.catch.up.mode";
+
+    String ROUTING_MODE = "routing.mode";
+    String ROUTING_HEADER_NAME = "routing.header.name";
+    String ROUTING_FIELD_NAME = "routing.field.name";
+    String ROUTING_TOPIC_MAPPING = "routing.topic.mapping";
+
+    String METRICS_LOG_INTERVAL = "metrics.log.interval";
+
+    String LOG_SAMPLE_EVERY = "log.sample.every";
+    String LOG_TRACE_KEYS = "log.trace.keys";
+
+    String ADMIN_PORT = "admin.port";
+    String ADMIN_HOST = "admin.host";
+
+    String CONSUMER_PIPELINE_CAPACITY = "consumer.pipeline.capacity";
+    String CONSUMER_PIPELINE_BATCH_SIZE = "consumer.pipeline.batch.size";
+
+    String CONSUMER_PARSE_PARALLELISM = "consumer.parse.parallelism";
+
+    String STORAGE_CHANGELOG_TOPIC = "storage.changelog.topic";
+    String STORAGE_CHANGELOG_STANDBY = "storage.changelog.standby";
+    String STORAGE_CHANGELOG_OFFSETS_PATH = "storage.changelog.offsets.path";
+
+    String ROCKSDB_CHECKPOINT_PATH = "rocksdb.checkpoint.path";
+    String ROCKSDB_CHECKPOINT_INTERVAL = "rocksdb.checkpoint.interval";
+    String ROCKSDB_CHECKPOINT_RETAINED = "rocksdb.checkpoint.retained";
+    String ROCKSDB_RESTORE_CHECKPOINT = "rocksdb.restore.checkpoint";
+
+    String STORAGE_MIGRATION_SOURCE_PATH = "storage.migration.source.path";
+    String STORAGE_MIGRATION_BATCH_SIZE = "storage.migration.batch.size";
+    String STORAGE_MIGRATION_PARALLELISM = "storage.migration.parallelism";
+    String STORAGE_MIGRATION_PROGRESS_PATH = "storage.migration.progress.path";
+
+    String STORAGE_TIERED_LOOK_AHEAD = "storage.tiered.look.ahead";
+    String STORAGE_TIERED_LOAD_INTERVAL = "storage.tiered.load.interval";
+
+    String DELAY_TIERS = "delay.tiers";
+    String DELAY_TIER_TOPIC_PREFIX = "delay.tier.topic.prefix";
+
+    String ROCKSDB_STRIPE_PATHS = "rocksdb.stripe.paths";
+
+    String CANCEL_TOPIC = "cancel.topic";
+    String CANCEL_ID_FIELD = "cancel.id.field";
+    String CANCEL_INSTANCE_ID = "cancel.instance.id";
+
+    String STORAGE_UPSERT = "storage.upsert";
+
+    String PRODUCER_EMIT_BATCH_SIZE = "producer.emit.batch.size";
+
+    String ROCKSDB_STATISTICS = "rocksdb.statistics";
+
     Collection<String> ALL_FIELD_NAMES = Arrays.asList(
             SINK_TOPICS_FIELD_NAME,
             SOURCE_TOPICS_FIELD_NAME,
@@ -40,6 +103,50 @@ public interface ConfigFieldNames {
             TIMESTAMP_FIELD_NAME,
             STORAGE_TYPE,
             ROCKSDB_PATH,
-            EXPIRY_AGE
+            EXPIRY_AGE,
+            CONSUMER_COMMIT_INTERVAL,
+            BACKPRESSURE_MAX_PENDING_EVENTS,
+            BACKPRESSURE_MAX_STORAGE_BYTES,
+            BACKPRESSURE_MAX_EMIT_LAG,
+            BACKPRESSURE_RESUME_RATIO,
+            EMIT_MAX_EVENTS_PER_SECOND,
+            EMIT_MAX_BYTES_PER_SECOND,
+            PRODUCER_MAX_EVENTS_PER_TICK,
+            PRODUCER_MAX_TICK_TIME,
+            PRODUCER_CATCH_UP_MODE,
+            ROUTING_MODE,
+            ROUTING_HEADER_NAME,
+            ROUTING_FIELD_NAME,
+            ROUTING_TOPIC_MAPPING,
+            METRICS_LOG_INTERVAL,
+            LOG_SAMPLE_EVERY,
+            LOG_TRACE_KEYS,
+            ADMIN_PORT,
+            ADMIN_HOST,
+            CONSUMER_PIPELINE_CAPACITY,
+            CONSUMER_PIPELINE_BATCH_SIZE,
+            CONSUMER_PARSE_PARALLELISM,
+            STORAGE_CHANGELOG_TOPIC,
+            STORAGE_CHANGELOG_STANDBY,
+            STORAGE_CHANGELOG_OFFSETS_PATH,
+            ROCKSDB_CHECKPOINT_PATH,
+            ROCKSDB_CHECKPOINT_INTERVAL,
+            ROCKSDB_CHECKPOINT_RETAINED,
+            ROCKSDB_RESTORE_CHECKPOINT,
+            STORAGE_MIGRATION_SOURCE_PATH,
+            STORAGE_MIGRATION_BATCH_SIZE,
+            STORAGE_MIGRATION_PARALLELISM,
+            STORAGE_MIGRATION_PROGRESS_PATH,
+            STORAGE_TIERED_LOOK_AHEAD,
+            STORAGE_TIERED_LOAD_INTERVAL,
+            DELAY_TIERS,
+            DELAY_TIER_TOPIC_PREFIX,
+            ROCKSDB_STRIPE_PATHS,
+            CANCEL_TOPIC,
+            CANCEL_ID_FIELD,
+            CANCEL_INSTANCE_ID,
+            STORAGE_UPSERT,
+            PRODUCER_EMIT_BATCH_SIZE,
+            ROCKSDB_STATISTICS
     );
 }
@@ -0,0 +1,164 @@
+package cgss.dev.logging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A logger for the per event diagnostics of the hot path.
+ * Every occurrence of a kind of diagnostic is counted, but only one in every 'sampleEvery' is actually logged, and the
+ * counts are logged every so often as a summary. Callers ask shouldLog first, and only format the message if it says
+ * so, so nothing gets allocated for the occurrences that aren't logged.
+ * Events with a traced key are always logged in full, regardless of the sampling.
+ * Like java.util.logging loggers, sampled loggers are shared per name, and configured globally.
+ */
+public class SampledLogger {
+    /**
+     * The sampled loggers created so far, per name.
+     */
+    private static final ConcurrentMap<String, SampledLogger> sampledLoggers = new ConcurrentHashMap<>();
+    /**
+     * One in every this many occurrences of each kind of diagnostic is logged.
+     */
+    private static volatile long sampleEvery = 1000;
+    /**
+     * The record keys whose events are logged in full.
+     */
+    private static volatile Set<String> traceKeys = Collections.emptySet();
+
+    /**
+     * The underlying logger.
+     */
+    private final Logger logger;
+    /**
+     * The number of occurrences of each kind of diagnostic.
+     */
+    private final ConcurrentMap<String, AtomicLong> counts;
+    /**
+     * The counts as of the last summary, to summarize only what happened since.
+     */
+    private final Map<String, Long> lastSummaryCounts;
+
+    /**
+     * Constructor for the sampled logger.
+     *
+     * @param logger The underlying logger.
+     */
+    private SampledLogger(final Logger logger) {
+        this.logger = logger;
+        this.counts = new ConcurrentHashMap<>();
+        this.lastSummaryCounts = new HashMap<>();
+    }
+
+    /**
+     * Gets the sampled logger with the given name, creating it if needed.
+     *
+     * @param name The logger name, also used for the underlying logger.
+     * @return The sampled logger.
+     */
+    public static SampledLogger getLogger(final String name) {
+        return sampledLoggers.computeIfAbsent(name, n -> new SampledLogger(Logger.getLogger(n)));
+    }
+
+    /**
+     * Configures all the sampled loggers.
+     *
+     * @param sampleEvery One in every this many occurrences of each kind of diagnostic is logged, 1 logs them all.
+     * @param traceKeys The record keys whose events are logged in full.
+     */
+    public static void configure(final long sampleEvery, final Collection<String> traceKeys) {
+        SampledLogger.sampleEvery = Math.max(1, sampleEvery);
+        SampledLogger.traceKeys = Collections.unmodifiableSet(new HashSet<>(traceKeys));
+    }
+
+    /**
+     * Logs the summary of every sampled logger.
+     */
+    public static void logSummaries() {
+        sampledLoggers.values().forEach(SampledLogger::logSummary);
+    }
+
+    /**
+     * Checks if the event with the given record key should be logged in full.
+     *
+     * @param key The record key, can be null.
+     * @return If the key is traced.
+     */
+    public static boolean isTraced(final byte[] key) {
+        final Set<String> keys = traceKeys;
+
+        return !keys.isEmpty() && key != null && keys.contains(new String(key, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Counts an occurrence of the given kind of diagnostic, and checks if it should be logged.
+     * The first occurrence is always logged, then one in every 'sampleEvery'.
+     *
+     * @param level The level the diagnostic would be logged at.
+     * @param kind The kind of diagnostic, a constant, as it's used in the summaries.
+     * @return If the diagnostic should be logged.
+     */
+    public boolean shouldLog(final Level level, final String kind) {
+        AtomicLong count = counts.get(kind);
+        if (count == null) {
+            count = counts.computeIfAbsent(kind, k -> new AtomicLong());
+        }
+
+        final long occurrence = count.incrementAndGet();
+
+        return logger.isLoggable(level) && (occurrence - 1) % sampleEvery == 0;
+    }
+
+    /**
+     * Logs a diagnostic that shouldLog allowed.
+     *
+     * @param level The level to log at.
+     * @param kind The kind of diagnostic.
+     * @param message The message.
+     */
+    public void log(final Level level, final String kind, final String message) {
+        final AtomicLong count = counts.get(kind);
+
+        logger.log(level, String.format("%s (%s #%d)", message, kind, count == null ? 0 : count.get()));
+    }
+
+    /**
+     * Logs the full details of an event with a traced key.
+     *
+     * @param message The message.
+     */
+    public void trace(final String message) {
+        logger.info(String.format("[trace] %s", message));
+    }
+
+    /**
+     * Logs how many occurrences of each kind of diagnostic happened since the last summary, if any did.
+     */
+    public synchronized void logSummary() {
+        final Map<String, Long> intervalCounts = new TreeMap<>();
+
+        counts.forEach((kind, count) -> {
+            final long total = count.get();
+            final Long lastTotal = lastSummaryCounts.put(kind, total);
+            final long intervalCount = total - (lastTotal == null ? 0 : lastTotal);
+
+            if (intervalCount > 0) {
+                intervalCounts.put(kind, intervalCount);
+            }
+        });
+
+        if (!intervalCounts.isEmpty() && logger.isLoggable(Level.INFO)) {
+            logger.info(String.format("Summary since last one: %s", intervalCounts));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cgss.dev.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Measures how accurately events are released: how late each one is sent past its due time, and how long it stayed
+ * in the service, from being consumed to being sent. Both are kept in histograms per source topic.
+ * Events saved by older versions don't know their source topic nor when they were consumed, so they are recorded
+ * under 'unknown', and without a dwell time.
+ */
+public class EmitAccuracyMetrics implements EmitAccuracyMetricsMXBean {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(EmitAccuracyMetrics.class.getSimpleName());
+    /**
+     * The source topic events without one are recorded under.
+     */
+    static final String UNKNOWN_SOURCE_TOPIC = "unknown";
+    /**
+     * The emit lateness histogram of each source topic, in millis.
+     */
+    private final ConcurrentMap<String, LatencyHistogram> emitLatenessHistograms;
+    /**
+     * The dwell time histogram of each source topic, in millis.
+     */
+    private final ConcurrentMap<String, LatencyHistogram> dwellTimeHistograms;
+    /**
+     * The snapshots taken by the last summary, to summarize only what was recorded since.
+     * Only used by the summary, which is never run concurrently.
+     */
+    private final Map<String, HistogramSnapshot> lastSummarySnapshots;
+
+    /**
+     * Constructor for the emit accuracy metrics, with nothing recorded.
+     */
+    public EmitAccuracyMetrics() {
+        this.emitLatenessHistograms = new ConcurrentHashMap<>();
+        this.dwellTimeHistograms = new ConcurrentHashMap<>();
+        this.lastSummarySnapshots = new HashMap<>();
+    }
+
+    /**
+     * Records a sent event.
+     *
+     * @param sourceTopic The topic the event was consumed from, can be null.
+     * @param emitLatenessMillis How long past its due time the event was sent.
+     * @param dwellTimeMillis How long the event stayed in the service, negative if unknown.
+     */
+    public void recordEmit(final String sourceTopic, final long emitLatenessMillis, final long dwellTimeMillis) {
+        final String topic = sourceTopic == null ? UNKNOWN_SOURCE_TOPIC : sourceTopic;
+
+        emitLatenessHistograms.computeIfAbsent(topic, t -> new LatencyHistogram()).record(emitLatenessMillis);
+
+        if (dwellTimeMillis >= 0) {
+            dwellTimeHistograms.computeIfAbsent(topic, t -> new LatencyHistogram()).record(dwellTimeMillis);
+        }
+    }
+
+    /**
+     * Logs the p50, p99 and p999 of what was recorded since the last summary, for each source topic that had events
+     * sent in between.
+     */
+    public synchronized void logSummary() {
+        summarize("Emit lateness", emitLatenessHistograms);
+        summarize("Dwell time", dwellTimeHistograms);
+    }
+
+    @Override
+    public Map<String, Long> getEmitLatenessP50Millis() {
+        return percentiles(emitLatenessHistograms, 0.5);
+    }
+
+    @Override
+    public Map<String, Long> getEmitLatenessP99Millis() {
+        return percentiles(emitLatenessHistograms, 0.99);
+    }
+
+    @Override
+    public Map<String, Long> getEmitLatenessP999Millis() {
+        return percentiles(emitLatenessHistograms, 0.999);
+    }
+
+    @Override
+    public Map<String, Long> getDwellTimeP50Millis() {
+        return percentiles(dwellTimeHistograms, 0.5);
+    }
+
+    @Override
+    public Map<String, Long> getDwellTimeP99Millis() {
+        return percentiles(dwellTimeHistograms, 0.99);
+    }
+
+    @Override
+    public Map<String, Long> getDwellTimeP999Millis() {
+        return percentiles(dwellTimeHistograms, 0.999);
+    }
+
+    /**
+     * Logs the summary of the given histograms, since the last summary.
+     *
+     * @param name The name of what the histograms measure.
+     * @param histograms The histogram of each source topic.
+     */
+    private void summarize(final String name, final Map<String, LatencyHistogram> histograms) {
+        for (final Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(histograms).entrySet()) {
+            final String snapshotKey = name + "/" + entry.getKey();
+            final HistogramSnapshot snapshot = entry.getValue().snapshot();
+            final HistogramSnapshot lastSnapshot = lastSummarySnapshots.put(snapshotKey, snapshot);
+            final HistogramSnapshot interval = lastSnapshot == null ? snapshot : snapshot.since(lastSnapshot);
+
+            if (interval.getTotalCount() == 0) {
+                continue;
+            }
+
+            logger.info(String.format(
+                    "%s of %s: count=%d p50=%dms p99=%dms p999=%dms",
+                    name,
+                    entry.getKey(),
+                    interval.getTotalCount(),
+                    interval.getValueAtPercentile(0.5),
+                    interval.getValueAtPercentile(0.99),
+                    interval.getValueAtPercentile(0.999)
+            ));
+        }
+    }
+
+    /**
+     * Computes the given percentile of each of the given histograms.
+     *
+     * @param histograms The histogram of each source topic.
+     * @param percentile The fraction, e.g. 0.99 for the 99th percentile.
+     * @return The percentile of each source topic.
+     */
+    private static Map<String, Long> percentiles(final Map<String, LatencyHistogram> histograms, final double percentile) {
+        final Map<String, Long> percentiles = new TreeMap<>();
+
+        histograms.forEach((topic, histogram) -> percentiles.put(topic, histogram.snapshot().getValueAtPercentile(percentile)));
+
+        return percentiles;
+    }
+}
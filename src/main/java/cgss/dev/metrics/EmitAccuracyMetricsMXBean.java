@@ -0,0 +1,52 @@
+package cgss.dev.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface for the emit accuracy metrics.
+ * Every attribute maps each source topic to a percentile, in millis, of everything recorded since the application
+ * started.
+ */
+public interface EmitAccuracyMetricsMXBean {
+    /**
+     * Returns the median of how late events were sent, past their due time.
+     *
+     * @return The p50 emit lateness per source topic.
+     */
+    Map<String, Long> getEmitLatenessP50Millis();
+
+    /**
+     * Returns the 99th percentile of how late events were sent, past their due time.
+     *
+     * @return The p99 emit lateness per source topic.
+     */
+    Map<String, Long> getEmitLatenessP99Millis();
+
+    /**
+     * Returns the 99.9th percentile of how late events were sent, past their due time.
+     *
+     * @return The p999 emit lateness per source topic.
+     */
+    Map<String, Long> getEmitLatenessP999Millis();
+
+    /**
+     * Returns the median of how long events stayed in the service, from being consumed to being sent.
+     *
+     * @return The p50 dwell time per source topic.
+     */
+    Map<String, Long> getDwellTimeP50Millis();
+
+    /**
+     * Returns the 99th percentile of how long events stayed in the service, from being consumed to being sent.
+     *
+     * @return The p99 dwell time per source topic.
+     */
+    Map<String, Long> getDwellTimeP99Millis();
+
+    /**
+     * Returns the 99.9th percentile of how long events stayed in the service, from being consumed to being sent.
+     *
+     * @return The p999 dwell time per source topic.
+     */
+    Map<String, Long> getDwellTimeP999Millis();
+}
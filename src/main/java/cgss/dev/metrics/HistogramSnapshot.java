@@ -0,0 +1,81 @@
+package cgss.dev.metrics;
+
+/**
+ * An immutable copy of the counts of a LatencyHistogram, from which percentiles are computed.
+ */
+public class HistogramSnapshot {
+    /**
+     * The count of recorded values per bucket.
+     */
+    private final long[] counts;
+    /**
+     * The total number of recorded values.
+     */
+    private final long totalCount;
+
+    /**
+     * Constructor for the snapshot.
+     *
+     * @param counts The count of recorded values per bucket, owned by the snapshot from now on.
+     */
+    HistogramSnapshot(final long[] counts) {
+        this.counts = counts;
+
+        long total = 0;
+        for (final long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    /**
+     * Returns the number of recorded values.
+     *
+     * @return The number of recorded values.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values fall.
+     * The value is the highest one of its bucket, so it's never under-reported.
+     *
+     * @param percentile The fraction, e.g. 0.99 for the 99th percentile.
+     * @return The percentile value, zero if nothing was recorded.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+
+        final long targetCount = Math.max(1, (long) Math.ceil(percentile * totalCount));
+        long seenCount = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seenCount += counts[i];
+
+            if (seenCount >= targetCount) {
+                return LatencyHistogram.highestValueOf(i);
+            }
+        }
+
+        return LatencyHistogram.highestValueOf(counts.length - 1);
+    }
+
+    /**
+     * Returns the values recorded since the given, earlier, snapshot of the same histogram.
+     *
+     * @param earlier The earlier snapshot.
+     * @return A snapshot with the values recorded in between.
+     */
+    public HistogramSnapshot since(final HistogramSnapshot earlier) {
+        final long[] intervalCounts = new long[counts.length];
+
+        for (int i = 0; i < counts.length; i++) {
+            intervalCounts[i] = counts[i] - earlier.counts[i];
+        }
+
+        return new HistogramSnapshot(intervalCounts);
+    }
+}
@@ -0,0 +1,101 @@
+package cgss.dev.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of non-negative values, laid out like HdrHistogram.
+ * Values below 128 get a bucket each, larger values share buckets that keep 64 sub-buckets per power of two, so any
+ * recorded value is off by less than 1.6%. Recording is a single atomic increment, with no allocation, so it can be
+ * done from the hot path; percentiles are computed from snapshots.
+ */
+public class LatencyHistogram {
+    /**
+     * The number of bits used for the sub-buckets.
+     */
+    private static final int SUB_BUCKET_BITS = 7;
+    /**
+     * The number of values below which every value gets its own bucket.
+     */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    /**
+     * The number of sub-buckets per power of two, above the linear range.
+     */
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+    /**
+     * The number of buckets needed to hold any long.
+     */
+    static final int BUCKET_COUNT = indexOf(Long.MAX_VALUE) + 1;
+
+    /**
+     * The count of recorded values per bucket.
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * Constructor for an empty histogram.
+     */
+    public LatencyHistogram() {
+        this.counts = new AtomicLongArray(BUCKET_COUNT);
+    }
+
+    /**
+     * Records the given value. Negative values are recorded as zero.
+     *
+     * @param value The value to be recorded.
+     */
+    public void record(final long value) {
+        counts.incrementAndGet(indexOf(Math.max(0, value)));
+    }
+
+    /**
+     * Takes a snapshot of the recorded values.
+     * Values recorded while the snapshot is taken may or may not be part of it.
+     *
+     * @return The snapshot.
+     */
+    public HistogramSnapshot snapshot() {
+        final long[] snapshotCounts = new long[BUCKET_COUNT];
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshotCounts[i] = counts.get(i);
+        }
+
+        return new HistogramSnapshot(snapshotCounts);
+    }
+
+    /**
+     * Returns the bucket the given value belongs to.
+     *
+     * @param value A non-negative value.
+     * @return The bucket index.
+     */
+    static int indexOf(final long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+
+        // Values in [2^(shift + 6), 2^(shift + 7)) are divided into 64 sub-buckets of 2^shift each.
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * Returns the highest value that belongs to the given bucket.
+     *
+     * @param index The bucket index.
+     * @return The highest value of the bucket.
+     */
+    static long highestValueOf(final int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+
+        final int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        final long subBucket = index - (long) shift * SUB_BUCKET_HALF_COUNT;
+        final long highestValue = ((subBucket + 1) << shift) - 1;
+
+        // The very last bucket would overflow.
+        return highestValue < 0 ? Long.MAX_VALUE : highestValue;
+    }
+}
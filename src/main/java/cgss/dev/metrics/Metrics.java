@@ -0,0 +1,47 @@
+package cgss.dev.metrics;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+/**
+ * Registers the metrics MBeans on the platform MBean server, under the 'cgss.dev' domain.
+ */
+public final class Metrics {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(Metrics.class.getSimpleName());
+    /**
+     * The JMX domain of the MBeans.
+     */
+    public static final String DOMAIN = "cgss.dev";
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private Metrics() {}
+
+    /**
+     * Registers the given MBean, replacing any previous one with the same name.
+     * Failing to register is logged, as the application can run without its metrics.
+     *
+     * @param type The type of the MBean, e.g. 'Pipeline'.
+     * @param name The name of the MBean, to tell apart MBeans of the same type.
+     * @param mbean The MBean to be registered.
+     */
+    public static void register(final String type, final String name, final Object mbean) {
+        try {
+            final ObjectName objectName = new ObjectName(String.format("%s:type=%s,name=%s", DOMAIN, type, ObjectName.quote(name)));
+
+            if (ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+        } catch (final JMException e) {
+            logger.warning(String.format("Failed registering the %s %s MBean: %s", type, name, e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package cgss.dev.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters and latencies of the Kafka to storage and storage to Kafka pipelines.
+ * Everything is recorded with adders and atomics, so the pipelines never block on it.
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+    /**
+     * The number of records consumed from Kafka.
+     */
+    private final LongAdder consumedCount;
+    /**
+     * The number of consumed records that weren't valid events.
+     */
+    private final LongAdder invalidCount;
+    /**
+     * The number of events saved to the storage.
+     */
+    private final LongAdder storedCount;
+    /**
+     * The number of events that failed to be saved to the storage.
+     */
+    private final LongAdder storeFailedCount;
+    /**
+     * The number of expired events sent to Kafka.
+     */
+    private final LongAdder emittedCount;
+    /**
+     * The number of expired events that failed to be sent to Kafka.
+     */
+    private final LongAdder emitFailedCount;
+    /**
+     * The number of sends to Kafka that haven't been acknowledged yet.
+     */
+    private final AtomicLong inFlightSends;
+    /**
+     * How long saving an event to the storage takes.
+     */
+    private final StageLatency storeLatency;
+    /**
+     * How long sending an expired event to all its topics takes.
+     */
+    private final StageLatency emitLatency;
+    /**
+     * How long a producer tick takes.
+     */
+    private final StageLatency tickLatency;
+    /**
+     * How accurately the expired events are released.
+     */
+    private final EmitAccuracyMetrics emitAccuracyMetrics;
+
+    /**
+     * Constructor for the pipeline metrics, starting from zero.
+     */
+    public PipelineMetrics() {
+        this.consumedCount = new LongAdder();
+        this.invalidCount = new LongAdder();
+        this.storedCount = new LongAdder();
+        this.storeFailedCount = new LongAdder();
+        this.emittedCount = new LongAdder();
+        this.emitFailedCount = new LongAdder();
+        this.inFlightSends = new AtomicLong();
+        this.storeLatency = new StageLatency();
+        this.emitLatency = new StageLatency();
+        this.tickLatency = new StageLatency();
+        this.emitAccuracyMetrics = new EmitAccuracyMetrics();
+    }
+
+    /**
+     * Records a record consumed from Kafka.
+     */
+    public void recordConsumed() {
+        consumedCount.increment();
+    }
+
+    /**
+     * Records a consumed record that wasn't a valid event.
+     */
+    public void recordInvalid() {
+        invalidCount.increment();
+    }
+
+    /**
+     * Records an event saved to the storage.
+     *
+     * @param nanos How long saving it took.
+     */
+    public void recordStored(final long nanos) {
+        storedCount.increment();
+        storeLatency.record(nanos);
+    }
+
+    /**
+     * Records an event that failed to be saved to the storage.
+     */
+    public void recordStoreFailed() {
+        storeFailedCount.increment();
+    }
+
+    /**
+     * Records an expired event sent to Kafka.
+     *
+     * @param nanos How long sending it to all its topics took.
+     */
+    public void recordEmitted(final long nanos) {
+        emittedCount.increment();
+        emitLatency.record(nanos);
+    }
+
+    /**
+     * Records an expired event that failed to be sent to Kafka.
+     */
+    public void recordEmitFailed() {
+        emitFailedCount.increment();
+    }
+
+    /**
+     * Records a producer tick.
+     *
+     * @param nanos How long the tick took.
+     */
+    public void recordTick(final long nanos) {
+        tickLatency.record(nanos);
+    }
+
+    /**
+     * Records a send to Kafka that has been issued.
+     */
+    public void sendStarted() {
+        inFlightSends.incrementAndGet();
+    }
+
+    /**
+     * Records a send to Kafka that has been acknowledged, either successfully or not.
+     */
+    public void sendCompleted() {
+        inFlightSends.decrementAndGet();
+    }
+
+    /**
+     * Returns the histograms of how accurately the expired events are released.
+     * They are exposed as an MBean of their own.
+     *
+     * @return The emit accuracy metrics.
+     */
+    public EmitAccuracyMetrics emitAccuracy() {
+        return emitAccuracyMetrics;
+    }
+
+    @Override
+    public long getConsumedCount() {
+        return consumedCount.sum();
+    }
+
+    @Override
+    public long getInvalidCount() {
+        return invalidCount.sum();
+    }
+
+    @Override
+    public long getStoredCount() {
+        return storedCount.sum();
+    }
+
+    @Override
+    public long getStoreFailedCount() {
+        return storeFailedCount.sum();
+    }
+
+    @Override
+    public long getEmittedCount() {
+        return emittedCount.sum();
+    }
+
+    @Override
+    public long getEmitFailedCount() {
+        return emitFailedCount.sum();
+    }
+
+    @Override
+    public long getInFlightSends() {
+        return inFlightSends.get();
+    }
+
+    @Override
+    public double getStoreLatencyMeanMicros() {
+        return storeLatency.getMeanMicros();
+    }
+
+    @Override
+    public long getStoreLatencyMaxMicros() {
+        return storeLatency.getMaxMicros();
+    }
+
+    @Override
+    public double getEmitLatencyMeanMicros() {
+        return emitLatency.getMeanMicros();
+    }
+
+    @Override
+    public long getEmitLatencyMaxMicros() {
+        return emitLatency.getMaxMicros();
+    }
+
+    @Override
+    public double getTickLatencyMeanMicros() {
+        return tickLatency.getMeanMicros();
+    }
+
+    @Override
+    public long getTickLatencyMaxMicros() {
+        return tickLatency.getMaxMicros();
+    }
+}
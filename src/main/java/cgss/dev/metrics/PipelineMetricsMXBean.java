@@ -0,0 +1,98 @@
+package cgss.dev.metrics;
+
+/**
+ * The management interface for the pipeline metrics.
+ * Counts are totals since the application started, latencies are in microseconds.
+ */
+public interface PipelineMetricsMXBean {
+    /**
+     * Returns the number of records consumed from Kafka.
+     *
+     * @return The number of records consumed from Kafka.
+     */
+    long getConsumedCount();
+
+    /**
+     * Returns the number of consumed records that weren't valid events.
+     *
+     * @return The number of consumed records that weren't valid events.
+     */
+    long getInvalidCount();
+
+    /**
+     * Returns the number of events saved to the storage.
+     *
+     * @return The number of events saved to the storage.
+     */
+    long getStoredCount();
+
+    /**
+     * Returns the number of events that failed to be saved to the storage.
+     *
+     * @return The number of events that failed to be saved to the storage.
+     */
+    long getStoreFailedCount();
+
+    /**
+     * Returns the number of expired events sent to Kafka.
+     *
+     * @return The number of expired events sent to Kafka.
+     */
+    long getEmittedCount();
+
+    /**
+     * Returns the number of expired events that failed to be sent to Kafka.
+     *
+     * @return The number of expired events that failed to be sent to Kafka.
+     */
+    long getEmitFailedCount();
+
+    /**
+     * Returns the number of sends to Kafka that haven't been acknowledged yet.
+     *
+     * @return The number of sends to Kafka that haven't been acknowledged yet.
+     */
+    long getInFlightSends();
+
+    /**
+     * Returns the mean time it takes to save an event to the storage.
+     *
+     * @return The mean time it takes to save an event to the storage.
+     */
+    double getStoreLatencyMeanMicros();
+
+    /**
+     * Returns the longest time it took to save an event to the storage.
+     *
+     * @return The longest time it took to save an event to the storage.
+     */
+    long getStoreLatencyMaxMicros();
+
+    /**
+     * Returns the mean time it takes to send an expired event to all its topics.
+     *
+     * @return The mean time it takes to send an expired event to all its topics.
+     */
+    double getEmitLatencyMeanMicros();
+
+    /**
+     * Returns the longest time it took to send an expired event to all its topics.
+     *
+     * @return The longest time it took to send an expired event to all its topics.
+     */
+    long getEmitLatencyMaxMicros();
+
+    /**
+     * Returns the mean duration of a producer tick.
+     *
+     * @return The mean duration of a producer tick.
+     */
+    double getTickLatencyMeanMicros();
+
+    /**
+     * Returns the longest duration of a producer tick.
+     *
+     * @return The longest duration of a producer tick.
+     */
+    long getTickLatencyMaxMicros();
+}
@@ -0,0 +1,64 @@
+package cgss.dev.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps track of how long a pipeline stage takes: the number of measurements, their total and the longest one.
+ * Recording is lock free, so it can be done from the hot path.
+ */
+class StageLatency {
+    /**
+     * The number of recorded measurements.
+     */
+    private final LongAdder count;
+    /**
+     * The sum of the recorded measurements, in nanos.
+     */
+    private final LongAdder totalNanos;
+    /**
+     * The longest recorded measurement, in nanos.
+     */
+    private final AtomicLong maxNanos;
+
+    /**
+     * Constructor for the stage latency.
+     */
+    StageLatency() {
+        this.count = new LongAdder();
+        this.totalNanos = new LongAdder();
+        this.maxNanos = new AtomicLong();
+    }
+
+    /**
+     * Records a single measurement.
+     *
+     * @param nanos How long the stage took, in nanos.
+     */
+    void record(final long nanos) {
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * Returns the mean of the recorded measurements.
+     *
+     * @return The mean latency in micros, zero if nothing was recorded.
+     */
+    double getMeanMicros() {
+        final long recorded = count.sum();
+
+        return recorded == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalNanos.sum()) / recorded;
+    }
+
+    /**
+     * Returns the longest recorded measurement.
+     *
+     * @return The max latency in micros.
+     */
+    long getMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxNanos.get());
+    }
+}
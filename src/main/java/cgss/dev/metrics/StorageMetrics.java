@@ -0,0 +1,142 @@
+package cgss.dev.metrics;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Exposes the backlog of a storage.
+ * Values are read from the storage when asked for, so nothing is recorded on the hot path. The oldest pending event
+ * is the first one in key order, so it's only accurate for storages that keep their keys sorted.
+ */
+public class StorageMetrics implements StorageMetricsMXBean {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(StorageMetrics.class.getSimpleName());
+    /**
+     * The storage to read the metrics from.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * How old an event needs to be in order to be considered expired.
+     */
+    private final Duration expiryAge;
+
+    /**
+     * Constructor for the storage metrics.
+     *
+     * @param kvStorage The storage to read the metrics from.
+     * @param expiryAge How old an event needs to be in order to be considered expired.
+     */
+    public StorageMetrics(final KVStorage kvStorage, final Duration expiryAge) {
+        this.kvStorage = kvStorage;
+        this.expiryAge = expiryAge;
+    }
+
+    @Override
+    public long getPendingEvents() {
+        try {
+            return kvStorage.CountValues();
+        } catch (final KVStorageException e) {
+            logger.warning(String.format("Failed reading the pending events: %s", e.getMessage()));
+
+            return -1;
+        }
+    }
+
+    @Override
+    public long getPendingBytes() {
+        try {
+            return kvStorage.SizeInBytes();
+        } catch (final KVStorageException e) {
+            logger.warning(String.format("Failed reading the pending bytes: %s", e.getMessage()));
+
+            return -1;
+        }
+    }
+
+    @Override
+    public String getOldestPendingDueTime() {
+        return findOldestPendingDueTime().map(Instant::toString).orElse("");
+    }
+
+    @Override
+    public long getOldestPendingOverdueMillis() {
+        return findOldestPendingDueTime()
+                .map(dueTime -> Math.max(0, Duration.between(dueTime, Instant.now()).toMillis()))
+                .orElse(0L);
+    }
+
+    @Override
+    public Map<String, Long> getEngineProperties() {
+        try {
+            return kvStorage.GetProperties();
+        } catch (final KVStorageException e) {
+            logger.warning(String.format("Failed reading the engine properties: %s", e.getMessage()));
+
+            return new LinkedHashMap<>();
+        }
+    }
+
+    /**
+     * Counts the pending events by when they are due, in buckets of the given width, starting from now.
+     * This reads every key in the storage, so it's meant to be asked for on demand, not polled.
+     *
+     * @param bucketWidth The width of each bucket.
+     * @param bucketCount The number of buckets, after which events are counted as due later.
+     * @return The number of events per bucket, labeled by the upper bound of the bucket, in due order, starting with
+     *         the overdue ones.
+     */
+    public Map<String, Long> getPendingDistribution(final Duration bucketWidth, final int bucketCount) {
+        final long nowMillis = Instant.now().toEpochMilli();
+        final long bucketWidthMillis = Math.max(1, bucketWidth.toMillis());
+        final long[] counts = new long[bucketCount + 2];
+
+        try (final Stream<KeyValue> storedValues = kvStorage.StreamValues()) {
+            final Iterator<KeyValue> iterator = storedValues.iterator();
+
+            while (iterator.hasNext()) {
+                final long dueMillis = StorageKey.getTimestamp(iterator.next().getKey()).plus(expiryAge).toEpochMilli();
+
+                if (dueMillis <= nowMillis) {
+                    counts[0]++;
+                } else {
+                    counts[1 + (int) Math.min(bucketCount, (dueMillis - nowMillis - 1) / bucketWidthMillis)]++;
+                }
+            }
+        }
+
+        final Map<String, Long> distribution = new LinkedHashMap<>();
+        distribution.put("overdue", counts[0]);
+        for (int i = 1; i <= bucketCount; i++) {
+            distribution.put(String.format("within %s", bucketWidth.multipliedBy(i)), counts[i]);
+        }
+        distribution.put("later", counts[bucketCount + 1]);
+
+        return distribution;
+    }
+
+    /**
+     * Finds when the oldest pending event is due.
+     *
+     * @return An optional containing the due time, empty if there are no pending events.
+     */
+    private Optional<Instant> findOldestPendingDueTime() {
+        try (final Stream<KeyValue> storedValues = kvStorage.StreamValues()) {
+            return storedValues
+                    .findFirst()
+                    .map(keyValue -> StorageKey.getTimestamp(keyValue.getKey()).plus(expiryAge));
+        }
+    }
+}
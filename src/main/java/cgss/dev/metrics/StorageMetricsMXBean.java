@@ -0,0 +1,44 @@
+package cgss.dev.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface for the storage metrics.
+ * Values that fail to be read from the storage are reported as -1.
+ */
+public interface StorageMetricsMXBean {
+    /**
+     * Returns the number of events waiting in the storage.
+     *
+     * @return The number of events waiting in the storage.
+     */
+    long getPendingEvents();
+
+    /**
+     * Returns the number of bytes used by the storage.
+     *
+     * @return The number of bytes used by the storage.
+     */
+    long getPendingBytes();
+
+    /**
+     * Returns when the oldest pending event is due, as an ISO instant, empty if there are none.
+     *
+     * @return When the oldest pending event is due, as an ISO instant, empty if there are none.
+     */
+    String getOldestPendingDueTime();
+
+    /**
+     * Returns how long past its due time the oldest pending event is, in millis, zero if it isn't due yet.
+     *
+     * @return How long past its due time the oldest pending event is, in millis, zero if it isn't due yet.
+     */
+    long getOldestPendingOverdueMillis();
+
+    /**
+     * Returns the engine specific properties, e.g. RocksDB memtable size and pending compaction bytes.
+     *
+     * @return The engine specific properties, e.g. RocksDB memtable size and pending compaction bytes.
+     */
+    Map<String, Long> getEngineProperties();
+}
@@ -0,0 +1,214 @@
+package cgss.dev.model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * POJO that wraps a consumed event, together with what we need to know about it when it expires.
+ * This is what gets saved to the storage. It has its own binary format, which starts with a version byte, so it can
+ * be told apart from the Java serialized KeyValue saved by older versions.
+ */
+public class EventEnvelope {
+    /**
+     * The version of the binary format.
+     * Version 2 added the consume time, version 1 envelopes are still decoded, without it.
+     */
+    public static final byte VERSION = 2;
+    /**
+     * The first version of the binary format, without the consume time.
+     */
+    private static final byte VERSION_1 = 1;
+
+    /**
+     * The topic the event was consumed from.
+     */
+    private final String sourceTopic;
+    /**
+     * The topic the event should be sent to once it expires. Null means all the sink topics.
+     */
+    private final String destination;
+    /**
+     * When the event was consumed. Null if unknown.
+     */
+    private final Instant consumedAt;
+    /**
+     * The Kafka key of the event.
+     */
+    private final byte[] key;
+    /**
+     * The Kafka value of the event.
+     */
+    private final byte[] value;
+
+    /**
+     * Constructor for the event envelope.
+     *
+     * @param sourceTopic The topic the event was consumed from, can be null.
+     * @param destination The topic the event should be sent to, null for all the sink topics.
+     * @param consumedAt When the event was consumed, can be null.
+     * @param key The Kafka key of the event, can be null.
+     * @param value The Kafka value of the event.
+     */
+    public EventEnvelope(final String sourceTopic, final String destination, final Instant consumedAt, final byte[] key, final byte[] value) {
+        this.sourceTopic = sourceTopic;
+        this.destination = destination;
+        this.consumedAt = consumedAt;
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Encodes this envelope into its binary format.
+     *
+     * @return The encoded envelope.
+     */
+    public byte[] encode() {
+        final byte[] sourceTopicBytes = sourceTopic == null ? null : sourceTopic.getBytes(StandardCharsets.UTF_8);
+        final byte[] destinationBytes = destination == null ? null : destination.getBytes(StandardCharsets.UTF_8);
+
+        final ByteBuffer byteBuffer = ByteBuffer.allocate(1 + Long.BYTES + sizeOf(sourceTopicBytes) + sizeOf(destinationBytes) + sizeOf(key) + sizeOf(value));
+        byteBuffer.put(VERSION);
+        byteBuffer.putLong(consumedAt == null ? -1 : consumedAt.toEpochMilli());
+        putBytes(byteBuffer, sourceTopicBytes);
+        putBytes(byteBuffer, destinationBytes);
+        putBytes(byteBuffer, key);
+        putBytes(byteBuffer, value);
+
+        return byteBuffer.array();
+    }
+
+    /**
+     * Decodes an envelope from its binary format.
+     *
+     * @param bytes The encoded envelope.
+     * @return An optional containing the envelope, empty if the bytes aren't an encoded envelope.
+     */
+    public static Optional<EventEnvelope> decode(final byte[] bytes) {
+        if (!isEnvelope(bytes)) {
+            return Optional.empty();
+        }
+
+        try {
+            final ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+            final long consumedAtMillis = bytes[0] == VERSION_1 ? -1 : byteBuffer.getLong();
+            final byte[] sourceTopicBytes = getBytes(byteBuffer);
+            final byte[] destinationBytes = getBytes(byteBuffer);
+            final byte[] key = getBytes(byteBuffer);
+            final byte[] value = getBytes(byteBuffer);
+
+            return Optional.of(new EventEnvelope(
+                    sourceTopicBytes == null ? null : new String(sourceTopicBytes, StandardCharsets.UTF_8),
+                    destinationBytes == null ? null : new String(destinationBytes, StandardCharsets.UTF_8),
+                    consumedAtMillis < 0 ? null : Instant.ofEpochMilli(consumedAtMillis),
+                    key,
+                    value
+            ));
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Checks if the given bytes are in the envelope binary format.
+     *
+     * @param bytes The bytes to be checked.
+     * @return If the bytes start like an encoded envelope, of any known version.
+     */
+    public static boolean isEnvelope(final byte[] bytes) {
+        return bytes != null && bytes.length > 0 && (bytes[0] == VERSION || bytes[0] == VERSION_1);
+    }
+
+    /**
+     * Gets the topic the event was consumed from.
+     *
+     * @return The source topic, can be null.
+     */
+    public String getSourceTopic() {
+        return sourceTopic;
+    }
+
+    /**
+     * Gets the topic the event should be sent to.
+     *
+     * @return The destination topic, null for all the sink topics.
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Gets when the event was consumed.
+     *
+     * @return The consume time, null if unknown.
+     */
+    public Instant getConsumedAt() {
+        return consumedAt;
+    }
+
+    /**
+     * Gets the Kafka key of the event.
+     *
+     * @return The event key, can be null.
+     */
+    public byte[] getKey() {
+        return key;
+    }
+
+    /**
+     * Gets the Kafka value of the event.
+     *
+     * @return The event value.
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * Returns how many bytes the given array takes in the binary format: its length, followed by its bytes.
+     *
+     * @param bytes The array, can be null.
+     * @return The size of the array in the binary format.
+     */
+    private static int sizeOf(final byte[] bytes) {
+        return Integer.BYTES + (bytes == null ? 0 : bytes.length);
+    }
+
+    /**
+     * Writes the given array into the buffer. Null arrays are written with a length of -1.
+     *
+     * @param byteBuffer The buffer to write to.
+     * @param bytes The array, can be null.
+     */
+    private static void putBytes(final ByteBuffer byteBuffer, final byte[] bytes) {
+        if (bytes == null) {
+            byteBuffer.putInt(-1);
+        } else {
+            byteBuffer.putInt(bytes.length);
+            byteBuffer.put(bytes);
+        }
+    }
+
+    /**
+     * Reads an array written by putBytes from the buffer.
+     *
+     * @param byteBuffer The buffer to read from.
+     * @return The array, can be null.
+     */
+    private static byte[] getBytes(final ByteBuffer byteBuffer) {
+        final int length = byteBuffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > byteBuffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+
+        final byte[] bytes = new byte[length];
+        byteBuffer.get(bytes);
+
+        return bytes;
+    }
+}
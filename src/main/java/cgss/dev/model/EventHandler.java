@@ -1,5 +1,6 @@
 package cgss.dev.model;
 
+import cgss.dev.logging.SampledLogger;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -7,7 +8,7 @@ import com.google.gson.JsonObject;
 import java.time.Instant;
 import java.time.format.DateTimeFormatter;
 import java.util.Optional;
-import java.util.logging.Logger;
+import java.util.logging.Level;
 
 /**
  * The event model business object.
@@ -15,9 +16,9 @@ import java.util.logging.Logger;
 public class EventHandler {
 
     /**
-     * Default logger for the event handler class.
+     * Default logger for the event handler class. It's sampled, as it's called for every event.
      */
-    private final static Logger logger = Logger.getLogger(EventHandler.class.getSimpleName());
+    private final static SampledLogger logger = SampledLogger.getLogger(EventHandler.class.getSimpleName());
     /**
      * The name of the timestamp field in the event. We will check the JSON for this field name. The idea is that you
      * can configure your own timestamp event name in the JSON.
@@ -59,7 +60,9 @@ public class EventHandler {
 
         final boolean isValid = extractInstant(possibleEvent).isPresent();
         if (!isValid){
-            logger.warning(String.format("Invalid event received: %s", new String(possibleEvent)));
+            if (logger.shouldLog(Level.WARNING, "invalid")) {
+                logger.log(Level.WARNING, "invalid", String.format("Invalid event received, %d bytes long", possibleEvent.length));
+            }
         }
 
         return isValid;
@@ -77,6 +80,32 @@ public class EventHandler {
         return optionalInstant.map(Event::new);
     }
 
+    /**
+     * Tries to extract a top level string field from the given possible event.
+     *
+     * @param possibleEvent The byte array for the event.
+     * @param fieldName The name of the field.
+     * @return An optional containing the field value if the event has it, empty otherwise.
+     */
+    public Optional<String> extractField(final byte[] possibleEvent, final String fieldName) {
+        try {
+            final JsonObject jsonObject = gson.fromJson(new String(possibleEvent), JsonElement.class).getAsJsonObject();
+
+            final JsonElement possibleJsonElement = jsonObject.get(fieldName);
+            if (possibleJsonElement == null || !possibleJsonElement.isJsonPrimitive()) {
+                return Optional.empty();
+            }
+
+            return Optional.of(possibleJsonElement.getAsString());
+        } catch (final Throwable e) {
+            if (logger.shouldLog(Level.WARNING, "invalid-field")) {
+                logger.log(Level.WARNING, "invalid-field", String.format("Invalid field %s: %s", fieldName, e.getMessage()));
+            }
+
+            return Optional.empty();
+        }
+    }
+
     /**
      * Tries to extract the instant from the given byte array.
      *
@@ -96,7 +125,9 @@ public class EventHandler {
 
             return Optional.ofNullable(Instant.from(dateTimeFormatter.parse(timestampStr)));
         } catch (final Throwable e) {
-            logger.warning(String.format("Invalid instant: %s", e.getMessage()));
+            if (logger.shouldLog(Level.WARNING, "invalid-instant")) {
+                logger.log(Level.WARNING, "invalid-instant", String.format("Invalid instant: %s", e.getMessage()));
+            }
 
             return Optional.empty();
         }
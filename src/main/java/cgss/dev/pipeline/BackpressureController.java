@@ -0,0 +1,144 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Decides if the consumption of events should be paused, based on how loaded the storage and the emission are.
+ * Consumption gets paused once any of the thresholds is crossed, and only resumes once all of them are below the
+ * resume ratio of their thresholds, so it doesn't keep flipping around the thresholds.
+ * A threshold of zero disables its check.
+ */
+public class BackpressureController {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(BackpressureController.class.getSimpleName());
+    /**
+     * The storage to check the load of.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * Supplies how far behind the emission is.
+     */
+    private final Supplier<Duration> emitLagSupplier;
+    /**
+     * The maximum number of pending events in the storage.
+     */
+    private final long maxPendingEvents;
+    /**
+     * The maximum number of bytes used by the storage.
+     */
+    private final long maxStorageBytes;
+    /**
+     * The maximum emit lag.
+     */
+    private final Duration maxEmitLag;
+    /**
+     * The ratio of the thresholds the values need to get below of in order to resume the consumption.
+     */
+    private final double resumeRatio;
+    /**
+     * The reason for the consumption being paused, empty if it isn't.
+     */
+    private Optional<String> pauseReason;
+
+    /**
+     * Constructor for the backpressure controller.
+     *
+     * @param kvStorage The storage to check the load of.
+     * @param emitLagSupplier Supplies how far behind the emission is.
+     * @param maxPendingEvents The maximum number of pending events in the storage, zero to disable.
+     * @param maxStorageBytes The maximum number of bytes used by the storage, zero to disable.
+     * @param maxEmitLag The maximum emit lag, zero to disable.
+     * @param resumeRatio The ratio of the thresholds the values need to get below of in order to resume.
+     */
+    public BackpressureController(
+            final KVStorage kvStorage,
+            final Supplier<Duration> emitLagSupplier,
+            final long maxPendingEvents,
+            final long maxStorageBytes,
+            final Duration maxEmitLag,
+            final double resumeRatio) {
+        this.kvStorage = kvStorage;
+        this.emitLagSupplier = emitLagSupplier;
+        this.maxPendingEvents = maxPendingEvents;
+        this.maxStorageBytes = maxStorageBytes;
+        this.maxEmitLag = maxEmitLag;
+        this.resumeRatio = resumeRatio;
+        this.pauseReason = Optional.empty();
+    }
+
+    /**
+     * Checks the storage and emission load and decides if the consumption should be paused.
+     *
+     * @return If the consumption should be paused.
+     */
+    public boolean shouldPause() {
+        // While paused, the values need to go below the resume ratio of the thresholds.
+        final double ratio = pauseReason.isPresent() ? resumeRatio : 1.0;
+
+        pauseReason = findPauseReason(ratio);
+
+        return pauseReason.isPresent();
+    }
+
+    /**
+     * Returns why the consumption should be paused, as of the last check.
+     *
+     * @return The reason for pausing, empty if it shouldn't be paused.
+     */
+    public Optional<String> getPauseReason() {
+        return pauseReason;
+    }
+
+    /**
+     * Checks each of the enabled thresholds, looking for one that has been crossed.
+     *
+     * @param ratio The ratio of the thresholds to be used.
+     * @return The reason for pausing, empty if no threshold was crossed.
+     */
+    private Optional<String> findPauseReason(final double ratio) {
+        try {
+            if (kvStorage.IsWriteStalled()) {
+                return Optional.of("storage is stalling writes");
+            }
+
+            if (maxPendingEvents > 0) {
+                final long pendingEvents = kvStorage.CountValues();
+
+                if (pendingEvents > maxPendingEvents * ratio) {
+                    return Optional.of(String.format("%d pending events", pendingEvents));
+                }
+            }
+
+            if (maxStorageBytes > 0) {
+                final long storageBytes = kvStorage.SizeInBytes();
+
+                if (storageBytes > maxStorageBytes * ratio) {
+                    return Optional.of(String.format("%d bytes in storage", storageBytes));
+                }
+            }
+        } catch (final KVStorageException e) {
+            logger.warning(String.format("Failed reading the storage load: %s", e.getMessage()));
+
+            // Without knowing the load, we keep doing what we were doing.
+            return pauseReason;
+        }
+
+        if (!maxEmitLag.isZero()) {
+            final Duration emitLag = emitLagSupplier.get();
+
+            if (emitLag.toMillis() > maxEmitLag.toMillis() * ratio) {
+                return Optional.of(String.format("emit lag of %s", emitLag));
+            }
+        }
+
+        return Optional.empty();
+    }
+}
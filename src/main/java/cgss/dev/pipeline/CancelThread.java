@@ -0,0 +1,171 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.logging.SampledLogger;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.indexed.IndexedStorage;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Consumes the cancel commands of the control topic, deleting the pending events with the business key of each one.
+ * A command carries the business key as its Kafka key, or in the same field the events have it in.
+ * Offsets are committed once the commands polled are applied; cancelling twice is harmless. Commands for events that
+ * aren't stored yet, or are being emitted already, have no effect.
+ */
+public class CancelThread extends Thread {
+    /**
+     * The default logger for this class. It's sampled, as it's called for every command.
+     */
+    private final static SampledLogger logger = SampledLogger.getLogger(CancelThread.class.getSimpleName());
+
+    /**
+     * The consumer of the control topic.
+     */
+    private final Consumer<byte[], byte[]> kafkaConsumer;
+    /**
+     * How long to poll for at most.
+     */
+    private final Duration pollIntervalDuration;
+    /**
+     * The storage the events are cancelled from.
+     */
+    private final IndexedStorage indexedStorage;
+    /**
+     * The event business object, extracting the business key field.
+     */
+    private final EventHandler eventHandler;
+    /**
+     * The field holding the business key of each command, empty to use its Kafka key.
+     */
+    private final String idFieldName;
+    /**
+     * How many events have been cancelled.
+     */
+    private final AtomicLong cancelledEvents;
+    /**
+     * If the thread has been asked to stop.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the cancel thread.
+     *
+     * @param kafkaConsumer The consumer of the control topic, already subscribed.
+     * @param pollIntervalDuration How long to poll for at most.
+     * @param indexedStorage The storage the events are cancelled from.
+     * @param eventHandler The event business object, extracting the business key field.
+     * @param idFieldName The field holding the business key of each command, empty to use its Kafka key.
+     */
+    public CancelThread(
+            final Consumer<byte[], byte[]> kafkaConsumer,
+            final Duration pollIntervalDuration,
+            final IndexedStorage indexedStorage,
+            final EventHandler eventHandler,
+            final String idFieldName) {
+        this.kafkaConsumer = kafkaConsumer;
+        this.pollIntervalDuration = pollIntervalDuration;
+        this.indexedStorage = indexedStorage;
+        this.eventHandler = eventHandler;
+        this.idFieldName = idFieldName;
+        this.cancelledEvents = new AtomicLong();
+        this.stopped = false;
+    }
+
+    /**
+     * Polls and applies the cancel commands until interrupted. If the storage fails, the commands are polled again
+     * from the last committed offsets.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                final ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(pollIntervalDuration);
+
+                if (consumerRecords.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    for (final ConsumerRecord<byte[], byte[]> record : consumerRecords) {
+                        cancel(record);
+                    }
+
+                    kafkaConsumer.commitSync();
+                } catch (final KVStorageException e) {
+                    if (logger.shouldLog(Level.WARNING, "failed")) {
+                        logger.log(Level.WARNING, "failed", String.format("Failed cancelling events, consuming the commands again: %s", e.getMessage()));
+                    }
+
+                    consumerRecords.partitions().forEach(topicPartition -> {
+                        final Long committedOffset = Optional
+                                .ofNullable(kafkaConsumer.committed(topicPartition))
+                                .map(OffsetAndMetadata::offset)
+                                .orElse(consumerRecords.records(topicPartition).get(0).offset());
+
+                        kafkaConsumer.seek(topicPartition, committedOffset);
+                    });
+                }
+            }
+        } catch (final WakeupException e) {
+            // We are shutting down.
+        } finally {
+            kafkaConsumer.close();
+        }
+    }
+
+    /**
+     * Stops the thread, waking the consumer up if it's polling.
+     */
+    @Override
+    public void interrupt() {
+        stopped = true;
+
+        kafkaConsumer.wakeup();
+    }
+
+    /**
+     * Gets how many events have been cancelled.
+     *
+     * @return The number of cancelled events.
+     */
+    public long getCancelledEvents() {
+        return cancelledEvents.get();
+    }
+
+    /**
+     * Cancels the events with the business key of the given command.
+     *
+     * @param record The cancel command.
+     * @throws KVStorageException If it fails to delete the events.
+     */
+    private void cancel(final ConsumerRecord<byte[], byte[]> record) throws KVStorageException {
+        final Optional<byte[]> businessKeyOpt = idFieldName.isEmpty()
+                ? Optional.ofNullable(record.key())
+                : Optional.ofNullable(record.value()).flatMap(value -> eventHandler.extractField(value, idFieldName)).map(id -> id.getBytes(StandardCharsets.UTF_8));
+
+        if (!businessKeyOpt.isPresent()) {
+            if (logger.shouldLog(Level.WARNING, "invalid")) {
+                logger.log(Level.WARNING, "invalid", String.format("Ignoring the cancel command without a business key at %s-%d offset %d.", record.topic(), record.partition(), record.offset()));
+            }
+
+            return;
+        }
+
+        final int cancelled = indexedStorage.cancel(businessKeyOpt.get());
+        cancelledEvents.addAndGet(cancelled);
+
+        if (logger.shouldLog(Level.FINE, "cancelled")) {
+            logger.log(Level.FINE, "cancelled", String.format("Cancelled %d events for %s.", cancelled, new String(businessKeyOpt.get(), StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package cgss.dev.pipeline;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * One of the internal topics of the stateless delay mode. Every record in it is held back for the same delay, counted
+ * from when it was appended, so records are released in the order they were appended, and only the head of each
+ * partition ever needs to be checked.
+ */
+public class DelayTier {
+    /**
+     * How long each record is held back for.
+     */
+    private final Duration delay;
+    /**
+     * The internal topic of the tier.
+     */
+    private final String topic;
+
+    /**
+     * Constructor for the delay tier.
+     *
+     * @param delay How long each record is held back for.
+     * @param topic The internal topic of the tier.
+     */
+    public DelayTier(final Duration delay, final String topic) {
+        this.delay = delay;
+        this.topic = topic;
+    }
+
+    /**
+     * Creates the tiers with the given delays, whose topics are named after the prefix and the delay, e.g.
+     * delay-tier-PT1M.
+     *
+     * @param delays The delays of the tiers, as ISO-8601 durations.
+     * @param topicPrefix The prefix of the tier topics.
+     * @return The tiers, from the shortest delay to the longest.
+     * @throws IllegalArgumentException If any delay isn't a positive duration.
+     */
+    public static List<DelayTier> of(final Collection<String> delays, final String topicPrefix) {
+        return delays
+                .stream()
+                .map(Duration::parse)
+                .peek(delay -> {
+                    if (delay.isNegative() || delay.isZero()) {
+                        throw new IllegalArgumentException(String.format("the delay tier %s isn't positive", delay));
+                    }
+                })
+                .distinct()
+                .sorted()
+                .map(delay -> new DelayTier(delay, String.format("%s-%s", topicPrefix, delay)))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Gets how long each record is held back for.
+     *
+     * @return The delay of the tier.
+     */
+    public Duration getDelay() {
+        return delay;
+    }
+
+    /**
+     * Gets the internal topic of the tier.
+     *
+     * @return The tier topic.
+     */
+    public String getTopic() {
+        return topic;
+    }
+}
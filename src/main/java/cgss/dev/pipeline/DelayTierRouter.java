@@ -0,0 +1,189 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.logging.SampledLogger;
+import cgss.dev.model.Event;
+import cgss.dev.model.EventHandler;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Level;
+
+/**
+ * Picks where each record goes next in the stateless delay mode: the longest delay tier that doesn't go past its due
+ * time, or its sink topics once it's due.
+ * The due time and the destination are resolved from the event when it's first consumed, and carried along in
+ * headers, so the event is never parsed again. Records due sooner than the shortest tier still go through it, so
+ * they're never sent early; they're late by at most the shortest delay.
+ */
+public class DelayTierRouter {
+    /**
+     * The header carrying the due time, in epoch milliseconds.
+     */
+    public static final String DUE_HEADER = "delay-due";
+    /**
+     * The header carrying the destination topic, missing for all the sink topics.
+     */
+    public static final String DESTINATION_HEADER = "delay-destination";
+    /**
+     * The default logger for this class. It's sampled, as it's called for every event.
+     */
+    private final static SampledLogger logger = SampledLogger.getLogger(DelayTierRouter.class.getSimpleName());
+
+    /**
+     * The delay tiers, from the shortest delay to the longest.
+     */
+    private final List<DelayTier> delayTiers;
+    /**
+     * The event business object, extracting the timestamp of newly consumed events.
+     */
+    private final EventHandler eventHandler;
+    /**
+     * Picks the destination of newly consumed events.
+     */
+    private final EventRouter eventRouter;
+    /**
+     * The topics due events are sent to, unless they have a destination.
+     */
+    private final Collection<String> sinkTopics;
+    /**
+     * How old an event needs to be in order to be considered expired, so due.
+     */
+    private final Duration expiryAge;
+
+    /**
+     * Constructor for the delay tier router.
+     *
+     * @param delayTiers The delay tiers, from the shortest delay to the longest. There must be at least one.
+     * @param eventHandler The event business object, extracting the timestamp of newly consumed events.
+     * @param eventRouter Picks the destination of newly consumed events.
+     * @param sinkTopics The topics due events are sent to, unless they have a destination.
+     * @param expiryAge How old an event needs to be in order to be considered expired, so due.
+     */
+    public DelayTierRouter(
+            final List<DelayTier> delayTiers,
+            final EventHandler eventHandler,
+            final EventRouter eventRouter,
+            final Collection<String> sinkTopics,
+            final Duration expiryAge) {
+        if (delayTiers.isEmpty()) {
+            throw new IllegalArgumentException("there must be at least one delay tier");
+        }
+
+        this.delayTiers = delayTiers;
+        this.eventHandler = eventHandler;
+        this.eventRouter = eventRouter;
+        this.sinkTopics = sinkTopics;
+        this.expiryAge = expiryAge;
+    }
+
+    /**
+     * Builds the records the given one should be sent as, either to a delay tier or to its sink topics.
+     *
+     * @param record The consumed record, from a source topic or a delay tier.
+     * @param now The current time.
+     * @return The records to be sent, empty if it isn't a valid event.
+     */
+    public List<ProducerRecord<byte[], byte[]>> route(final ConsumerRecord<byte[], byte[]> record, final Instant now) {
+        final Optional<Instant> dueTimeOpt = findDueTime(record);
+
+        if (!dueTimeOpt.isPresent()) {
+            if (logger.shouldLog(Level.WARNING, "invalid")) {
+                logger.log(Level.WARNING, "invalid", String.format("Dropping the invalid event at %s-%d offset %d.", record.topic(), record.partition(), record.offset()));
+            }
+
+            return Collections.emptyList();
+        }
+
+        final Instant dueTime = dueTimeOpt.get();
+        final String destination = findDestination(record);
+
+        if (!dueTime.isAfter(now)) {
+            final Collection<String> destinations = destination == null ? sinkTopics : Collections.singletonList(destination);
+            final List<ProducerRecord<byte[], byte[]>> producerRecords = new ArrayList<>(destinations.size());
+
+            for (final String topic : destinations) {
+                producerRecords.add(new ProducerRecord<>(topic, record.key(), record.value()));
+            }
+
+            return producerRecords;
+        }
+
+        final DelayTier delayTier = pickTier(Duration.between(now, dueTime));
+
+        final RecordHeaders headers = new RecordHeaders();
+        headers.add(DUE_HEADER, String.valueOf(dueTime.toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+        if (destination != null) {
+            headers.add(DESTINATION_HEADER, destination.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // The tier holds it back from this timestamp on, so it's set rather than left to the producer.
+        return Collections.singletonList(new ProducerRecord<>(delayTier.getTopic(), null, now.toEpochMilli(), record.key(), record.value(), headers));
+    }
+
+    /**
+     * Picks the longest tier whose delay doesn't go past the remaining time, or the shortest one if all of them do.
+     *
+     * @param remaining How long until the record is due.
+     * @return The tier it should be held back in.
+     */
+    private DelayTier pickTier(final Duration remaining) {
+        DelayTier picked = delayTiers.get(0);
+
+        for (final DelayTier delayTier : delayTiers) {
+            if (delayTier.getDelay().compareTo(remaining) <= 0) {
+                picked = delayTier;
+            }
+        }
+
+        return picked;
+    }
+
+    /**
+     * Finds when the given record is due, from its header if it went through a tier already, or from the event.
+     *
+     * @param record The consumed record.
+     * @return An optional containing the due time, empty if it isn't a valid event.
+     */
+    private Optional<Instant> findDueTime(final ConsumerRecord<byte[], byte[]> record) {
+        final Header dueHeader = record.headers().lastHeader(DUE_HEADER);
+
+        if (dueHeader != null && dueHeader.value() != null) {
+            try {
+                return Optional.of(Instant.ofEpochMilli(Long.parseLong(new String(dueHeader.value(), StandardCharsets.UTF_8))));
+            } catch (final NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+
+        return eventHandler.unmarshallEvent(record.value()).map(Event::getTimestamp).map(timestamp -> timestamp.plus(expiryAge));
+    }
+
+    /**
+     * Finds the destination of the given record, from its header if it went through a tier already, or from the
+     * event router.
+     *
+     * @param record The consumed record.
+     * @return The destination topic, or null if the event should be sent to all the sink topics.
+     */
+    private String findDestination(final ConsumerRecord<byte[], byte[]> record) {
+        if (record.headers().lastHeader(DUE_HEADER) != null) {
+            final Header destinationHeader = record.headers().lastHeader(DESTINATION_HEADER);
+
+            return destinationHeader == null || destinationHeader.value() == null
+                    ? null
+                    : new String(destinationHeader.value(), StandardCharsets.UTF_8);
+        }
+
+        return eventRouter.route(record);
+    }
+}
@@ -0,0 +1,276 @@
+package cgss.dev.pipeline;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.javatuples.Pair;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Moves records along in the stateless delay mode, without any local state. It's run for the source topics, passing
+ * each record on right away, and once for each delay tier, holding its records back for the tier delay.
+ * <p>
+ * Tiers are FIFO, so only the head of each partition is checked. While it isn't due, the partition is paused, and the
+ * consumer seeks back to it, so it's fetched again once resumed; every other partition keeps going. Offsets are
+ * committed once the records before them have been sent, so a restart never loses one, though it might send some
+ * twice. It should be set as the rebalance listener of the consumer.
+ */
+public class DelayTierThread extends Thread implements ConsumerRebalanceListener {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(DelayTierThread.class.getSimpleName());
+
+    /**
+     * The consumer of the source topics or the tier topic, subscribed with this thread as its rebalance listener.
+     */
+    private final Consumer<byte[], byte[]> kafkaConsumer;
+    /**
+     * The producer sending the records to the next tier or their sink topics.
+     */
+    private final Producer<byte[], byte[]> kafkaProducer;
+    /**
+     * How long to poll for at most.
+     */
+    private final Duration pollIntervalDuration;
+    /**
+     * How long each record is held back for, zero for the source topics.
+     */
+    private final Duration delay;
+    /**
+     * Picks where each record goes next.
+     */
+    private final DelayTierRouter delayTierRouter;
+    /**
+     * The clock the records are held back against.
+     */
+    private final Clock clock;
+    /**
+     * The paused partitions, with when their head record is due.
+     */
+    private final Map<TopicPartition, Instant> pausedPartitions;
+    /**
+     * If the thread has been asked to stop.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the delay tier thread.
+     *
+     * @param kafkaConsumer The consumer of the source topics or the tier topic.
+     * @param kafkaProducer The producer sending the records to the next tier or their sink topics.
+     * @param pollIntervalDuration How long to poll for at most.
+     * @param delay How long each record is held back for, zero for the source topics.
+     * @param delayTierRouter Picks where each record goes next.
+     * @param clock The clock the records are held back against.
+     */
+    public DelayTierThread(
+            final Consumer<byte[], byte[]> kafkaConsumer,
+            final Producer<byte[], byte[]> kafkaProducer,
+            final Duration pollIntervalDuration,
+            final Duration delay,
+            final DelayTierRouter delayTierRouter,
+            final Clock clock) {
+        this.kafkaConsumer = kafkaConsumer;
+        this.kafkaProducer = kafkaProducer;
+        this.pollIntervalDuration = pollIntervalDuration;
+        this.delay = delay;
+        this.delayTierRouter = delayTierRouter;
+        this.clock = clock;
+        this.pausedPartitions = new ConcurrentHashMap<>();
+        this.stopped = false;
+    }
+
+    /**
+     * Polls and moves records along until interrupted. Polls wait until the next paused partition is due at most.
+     */
+    @Override
+    public void run() {
+        try {
+            while (!stopped) {
+                final Duration pollDuration = resumeDuePartitions();
+                final ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(pollDuration);
+
+                if (!consumerRecords.isEmpty()) {
+                    forward(consumerRecords);
+                }
+            }
+        } catch (final WakeupException e) {
+            // We are shutting down.
+        } finally {
+            kafkaConsumer.close();
+        }
+    }
+
+    /**
+     * Stops the thread, waking the consumer up if it's polling.
+     */
+    @Override
+    public void interrupt() {
+        stopped = true;
+
+        kafkaConsumer.wakeup();
+    }
+
+    /**
+     * Forgets the pauses of the revoked partitions. Their offsets were committed already.
+     *
+     * @param partitions The revoked partitions.
+     */
+    @Override
+    public void onPartitionsRevoked(final Collection<TopicPartition> partitions) {
+        pausedPartitions.keySet().removeAll(partitions);
+    }
+
+    /**
+     * Assigned partitions start unpaused, from their committed offsets.
+     *
+     * @param partitions The assigned partitions.
+     */
+    @Override
+    public void onPartitionsAssigned(final Collection<TopicPartition> partitions) {
+        // Nothing to do, their heads are checked once fetched.
+    }
+
+    /**
+     * Gets the partitions currently held back.
+     *
+     * @return The paused partitions.
+     */
+    public Collection<TopicPartition> getPausedPartitions() {
+        return Collections.unmodifiableSet(new HashSet<>(pausedPartitions.keySet()));
+    }
+
+    /**
+     * Resumes the paused partitions whose head record is due.
+     *
+     * @return How long to poll for, until the next paused partition is due at most.
+     */
+    private Duration resumeDuePartitions() {
+        final Instant now = clock.instant();
+        final List<TopicPartition> duePartitions = new ArrayList<>();
+        Duration pollDuration = pollIntervalDuration;
+
+        for (final Map.Entry<TopicPartition, Instant> entry : pausedPartitions.entrySet()) {
+            if (entry.getValue().isAfter(now)) {
+                final Duration untilDue = Duration.between(now, entry.getValue());
+                if (untilDue.compareTo(pollDuration) < 0) {
+                    pollDuration = untilDue;
+                }
+            } else {
+                duePartitions.add(entry.getKey());
+            }
+        }
+
+        if (!duePartitions.isEmpty()) {
+            kafkaConsumer.resume(duePartitions);
+            pausedPartitions.keySet().removeAll(duePartitions);
+        }
+
+        return pollDuration;
+    }
+
+    /**
+     * Sends the due records along, pausing each partition at its first record that isn't due yet, then commits the
+     * offsets of the ones sent. If a send fails, the partition is consumed again from that record.
+     *
+     * @param consumerRecords The polled records.
+     */
+    private void forward(final ConsumerRecords<byte[], byte[]> consumerRecords) {
+        final Instant now = clock.instant();
+        final Map<TopicPartition, List<Pair<Long, List<Future<RecordMetadata>>>>> sentRecords = new HashMap<>();
+
+        for (final TopicPartition topicPartition : consumerRecords.partitions()) {
+            final List<Pair<Long, List<Future<RecordMetadata>>>> sentPartitionRecords = new ArrayList<>();
+
+            for (final ConsumerRecord<byte[], byte[]> record : consumerRecords.records(topicPartition)) {
+                final Instant releaseTime = Instant.ofEpochMilli(record.timestamp()).plus(delay);
+
+                if (!delay.isZero() && releaseTime.isAfter(now)) {
+                    // The records after it were appended later, so they aren't due either.
+                    kafkaConsumer.seek(topicPartition, record.offset());
+                    kafkaConsumer.pause(Collections.singletonList(topicPartition));
+                    pausedPartitions.put(topicPartition, releaseTime);
+                    break;
+                }
+
+                final List<Future<RecordMetadata>> futures = new ArrayList<>();
+                for (final ProducerRecord<byte[], byte[]> producerRecord : delayTierRouter.route(record, now)) {
+                    futures.add(kafkaProducer.send(producerRecord));
+                }
+                sentPartitionRecords.add(Pair.with(record.offset(), futures));
+            }
+
+            sentRecords.put(topicPartition, sentPartitionRecords);
+        }
+
+        final Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<>();
+        for (final Map.Entry<TopicPartition, List<Pair<Long, List<Future<RecordMetadata>>>>> entry : sentRecords.entrySet()) {
+            final Long sentUpTo = awaitSent(entry.getKey(), entry.getValue());
+
+            if (sentUpTo != null) {
+                offsets.put(entry.getKey(), new OffsetAndMetadata(sentUpTo + 1));
+            }
+        }
+
+        if (!offsets.isEmpty()) {
+            kafkaConsumer.commitSync(offsets);
+        }
+    }
+
+    /**
+     * Waits for the records of a partition to be sent, in offset order, seeking back to the first one that failed.
+     *
+     * @param topicPartition The partition.
+     * @param sentPartitionRecords The offset of each record, with its sends.
+     * @return The offset of the last record sent with the ones before it, null if none.
+     */
+    private Long awaitSent(final TopicPartition topicPartition, final List<Pair<Long, List<Future<RecordMetadata>>>> sentPartitionRecords) {
+        Long sentUpTo = null;
+
+        for (final Pair<Long, List<Future<RecordMetadata>>> sentRecord : sentPartitionRecords) {
+            try {
+                for (final Future<RecordMetadata> future : sentRecord.getValue1()) {
+                    future.get();
+                }
+            } catch (final InterruptedException | ExecutionException e) {
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+
+                logger.warning(String.format("Failed sending %s at offset %d, consuming it again: %s", topicPartition, sentRecord.getValue0(), e.getMessage()));
+
+                // If the partition was paused at a later record, it's resumed right away, as this one is due.
+                kafkaConsumer.seek(topicPartition, sentRecord.getValue0());
+                pausedPartitions.computeIfPresent(topicPartition, (partition, releaseTime) -> clock.instant());
+
+                return sentUpTo;
+            }
+
+            sentUpTo = sentRecord.getValue0();
+        }
+
+        return sentUpTo;
+    }
+}
@@ -0,0 +1,68 @@
+package cgss.dev.pipeline;
+
+/**
+ * Limits how many events, and how many bytes, are emitted per second.
+ * Used to smooth out the emission when many events expire at the same time, so the sink topics don't get flooded.
+ * The limits can be changed at runtime.
+ */
+public class EmitRateLimiter {
+    /**
+     * Limits the number of emitted events.
+     */
+    private final TokenBucket eventsBucket;
+    /**
+     * Limits the number of emitted bytes.
+     */
+    private final TokenBucket bytesBucket;
+
+    /**
+     * Constructor for the emit rate limiter.
+     *
+     * @param maxEventsPerSecond The maximum number of events to be emitted per second, zero for no limit.
+     * @param maxBytesPerSecond The maximum number of bytes to be emitted per second, zero for no limit.
+     */
+    public EmitRateLimiter(final long maxEventsPerSecond, final long maxBytesPerSecond) {
+        this.eventsBucket = new TokenBucket(maxEventsPerSecond);
+        this.bytesBucket = new TokenBucket(maxBytesPerSecond);
+    }
+
+    /**
+     * Waits until an event of the given size can be emitted.
+     *
+     * @param eventBytes The size of the event to be emitted.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void acquire(final long eventBytes) throws InterruptedException {
+        eventsBucket.acquire(1);
+        bytesBucket.acquire(eventBytes);
+    }
+
+    /**
+     * Changes the limits. They are used from the next emitted event on.
+     *
+     * @param maxEventsPerSecond The maximum number of events to be emitted per second, zero for no limit.
+     * @param maxBytesPerSecond The maximum number of bytes to be emitted per second, zero for no limit.
+     */
+    public void setLimits(final long maxEventsPerSecond, final long maxBytesPerSecond) {
+        eventsBucket.setTokensPerSecond(maxEventsPerSecond);
+        bytesBucket.setTokensPerSecond(maxBytesPerSecond);
+    }
+
+    /**
+     * Returns the maximum number of events emitted per second.
+     *
+     * @return The maximum number of events per second, zero for no limit.
+     */
+    public long getMaxEventsPerSecond() {
+        return eventsBucket.getTokensPerSecond();
+    }
+
+    /**
+     * Returns the maximum number of bytes emitted per second.
+     *
+     * @return The maximum number of bytes per second, zero for no limit.
+     */
+    public long getMaxBytesPerSecond() {
+        return bytesBucket.getTokensPerSecond();
+    }
+}
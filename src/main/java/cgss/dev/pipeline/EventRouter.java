@@ -0,0 +1,136 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.logging.SampledLogger;
+import cgss.dev.model.EventHandler;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+
+/**
+ * Picks the topic each consumed event should be sent to once it expires.
+ * The destination is resolved when the event is consumed, and saved along with it, so the producer doesn't need to
+ * parse the event again. Only sink topics are accepted as destinations; events without a valid destination are
+ * broadcast to all the sink topics, as before.
+ */
+public class EventRouter {
+    /**
+     * The default logger for this class. It's sampled, as it's called for every event.
+     */
+    private final static SampledLogger logger = SampledLogger.getLogger(EventRouter.class.getSimpleName());
+    /**
+     * How the destination is picked.
+     */
+    private final RoutingEnum routingMode;
+    /**
+     * The topics events are allowed to be sent to.
+     */
+    private final Collection<String> sinkTopics;
+    /**
+     * The event business object.
+     */
+    private final EventHandler eventHandler;
+    /**
+     * The header or event field holding the destination, depending on the routing mode.
+     */
+    private final String destinationName;
+    /**
+     * The destination for each source topic, when routing by source topic.
+     */
+    private final Map<String, String> topicMapping;
+
+    /**
+     * Constructor for the event router.
+     *
+     * @param routingMode How the destination is picked.
+     * @param sinkTopics The topics events are allowed to be sent to.
+     * @param eventHandler The event business object.
+     * @param destinationName The header or event field holding the destination, depending on the routing mode.
+     * @param topicMapping The destination for each source topic, when routing by source topic.
+     */
+    public EventRouter(
+            final RoutingEnum routingMode,
+            final Collection<String> sinkTopics,
+            final EventHandler eventHandler,
+            final String destinationName,
+            final Map<String, String> topicMapping) {
+        this.routingMode = routingMode;
+        this.sinkTopics = sinkTopics;
+        this.eventHandler = eventHandler;
+        this.destinationName = destinationName;
+        this.topicMapping = topicMapping;
+    }
+
+    /**
+     * Creates a router that broadcasts every event to all the sink topics.
+     *
+     * @return The broadcasting router.
+     */
+    public static EventRouter broadcast() {
+        return new EventRouter(RoutingEnum.BROADCAST, Collections.emptyList(), null, null, Collections.emptyMap());
+    }
+
+    /**
+     * Picks the destination of the given record.
+     *
+     * @param record The consumed record.
+     * @return The destination topic, or null if the event should be sent to all the sink topics.
+     */
+    public String route(final ConsumerRecord<byte[], byte[]> record) {
+        if (routingMode == RoutingEnum.BROADCAST) {
+            return null;
+        }
+
+        final Optional<String> destinationOpt = findDestination(record);
+
+        if (!destinationOpt.isPresent()) {
+            if (logger.shouldLog(Level.WARNING, "no-destination")) {
+                logger.log(Level.WARNING, "no-destination", String.format("No destination found for %s-%d at offset %d, sending it to all sink topics.", record.topic(), record.partition(), record.offset()));
+            }
+
+            return null;
+        }
+
+        final String destination = destinationOpt.get();
+
+        if (!sinkTopics.contains(destination)) {
+            if (logger.shouldLog(Level.WARNING, "unknown-destination")) {
+                logger.log(Level.WARNING, "unknown-destination", String.format("Unknown destination %s for %s-%d at offset %d, sending it to all sink topics.", destination, record.topic(), record.partition(), record.offset()));
+            }
+
+            return null;
+        }
+
+        return destination;
+    }
+
+    /**
+     * Looks the destination of the given record up, according to the routing mode.
+     *
+     * @param record The consumed record.
+     * @return An optional containing the destination, empty if the record doesn't have one.
+     */
+    private Optional<String> findDestination(final ConsumerRecord<byte[], byte[]> record) {
+        switch (routingMode) {
+            case HEADER:
+                final Header header = record.headers().lastHeader(destinationName);
+
+                if (header == null || header.value() == null) {
+                    return Optional.empty();
+                }
+
+                return Optional.of(new String(header.value(), StandardCharsets.UTF_8));
+            case FIELD:
+                return eventHandler.extractField(record.value(), destinationName);
+            case SOURCE_TOPIC:
+                return Optional.ofNullable(topicMapping.get(record.topic()));
+            default:
+                return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.storage.KeyValue;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import java.util.logging.Logger;
+
+/**
+ * Splits the ingest into stages, each on its own thread, so polling, parsing and storing overlap instead of running
+ * one after the other. The consumer thread offers the polled records, the parse stage turns them into the key values
+ * to be stored, and the store stage saves them in batches, handing the outcome of each record back to the consumer
+ * thread, which marks them as processed. Stages are connected by single producer, single consumer ring buffers.
+ * <p>
+ * Records of each partition go through the stages in offset order, so their outcomes come back in offset order too.
+ * When a record fails to be stored, the later records of its partition are skipped, until the consumer thread
+ * rewinds the partition and offers them again, with a new epoch.
+ * Notice that offering and draining the outcomes must be done by the same thread, the one owning the consumer.
+ */
+class IngestPipeline {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(IngestPipeline.class.getSimpleName());
+    /**
+     * How long an idle stage waits before checking for entries again.
+     */
+    private static final long IDLE_NANOS = 50_000;
+
+    /**
+     * What happened to a record in the pipeline.
+     */
+    enum Outcome {
+        /**
+         * The record was saved to the storage.
+         */
+        STORED,
+        /**
+         * The record isn't a valid event, so it wasn't saved.
+         */
+        INVALID,
+        /**
+         * The record failed to be saved, its partition should be rewound to it.
+         */
+        FAILED,
+        /**
+         * The record was skipped, as an earlier record of its partition failed.
+         */
+        SKIPPED
+    }
+
+    /**
+     * A record going through the pipeline. Entries are preallocated by the ring buffers, and copied from one to
+     * the next.
+     */
+    static final class Entry {
+        /**
+         * The consumed record.
+         */
+        ConsumerRecord<byte[], byte[]> record;
+        /**
+         * The epoch of the record's partition when it was offered.
+         */
+        long epoch;
+        /**
+         * When the record was consumed.
+         */
+        Instant consumedAt;
+        /**
+         * The key value to be stored, null if the record isn't a valid event.
+         */
+        KeyValue keyValue;
+        /**
+         * What happened to the record.
+         */
+        Outcome outcome;
+
+        /**
+         * Copies the given entry into this one.
+         *
+         * @param other The entry to be copied.
+         */
+        void copyFrom(final Entry other) {
+            this.record = other.record;
+            this.epoch = other.epoch;
+            this.consumedAt = other.consumedAt;
+            this.keyValue = other.keyValue;
+            this.outcome = other.outcome;
+        }
+
+        /**
+         * Drops the references held by this entry, so a released entry doesn't keep the record alive.
+         */
+        void clear() {
+            this.record = null;
+            this.consumedAt = null;
+            this.keyValue = null;
+            this.outcome = null;
+        }
+    }
+
+    /**
+     * The records offered by the consumer thread, to be parsed.
+     */
+    private final SpscRingBuffer<Entry> offered;
+    /**
+     * The parsed records, to be stored.
+     */
+    private final SpscRingBuffer<Entry> parsed;
+    /**
+     * The outcome of each record, to be drained by the consumer thread.
+     */
+    private final SpscRingBuffer<Entry> completed;
+    /**
+     * The maximum number of entries handled at once by each stage.
+     */
+    private final int batchSize;
+    /**
+     * Turns a record into the key value to be stored, null if it isn't a valid event.
+     */
+    private final BiFunction<ConsumerRecord<byte[], byte[]>, Instant, KeyValue> parser;
+    /**
+     * Stores a batch of entries, returning how many, from the start, were stored before one failed.
+     */
+    private final ToIntFunction<List<Entry>> storer;
+    /**
+     * The thread running the parse stage.
+     */
+    private final Thread parseThread;
+    /**
+     * The thread running the store stage.
+     */
+    private final Thread storeThread;
+    /**
+     * The batch being handled by the store stage, preallocated.
+     */
+    private final Entry[] storeBatch;
+    /**
+     * The epoch of the last failed record of each partition, only used by the store stage.
+     */
+    private final Map<TopicPartition, Long> failedEpochs;
+    /**
+     * If the stages should keep running.
+     */
+    private volatile boolean running;
+    /**
+     * The number of records offered and not drained yet, only used by the consumer thread.
+     */
+    private long inFlight;
+
+    /**
+     * Constructor for the ingest pipeline.
+     *
+     * @param name The name of the pipeline, used to name the stage threads.
+     * @param capacity The maximum number of records in the pipeline.
+     * @param batchSize The maximum number of entries handled at once by each stage.
+     * @param parser Turns a record into the key value to be stored, null if it isn't a valid event.
+     * @param storer Stores a batch of entries, returning how many, from the start, were stored before one failed.
+     */
+    IngestPipeline(
+            final String name,
+            final int capacity,
+            final int batchSize,
+            final BiFunction<ConsumerRecord<byte[], byte[]>, Instant, KeyValue> parser,
+            final ToIntFunction<List<Entry>> storer) {
+        this.offered = new SpscRingBuffer<>(capacity, Entry::new);
+        this.parsed = new SpscRingBuffer<>(capacity, Entry::new);
+        this.completed = new SpscRingBuffer<>(capacity, Entry::new);
+        this.batchSize = Math.max(1, batchSize);
+        this.parser = parser;
+        this.storer = storer;
+        this.parseThread = new Thread(this::runParseStage, name + "-parse");
+        this.storeThread = new Thread(this::runStoreStage, name + "-store");
+        this.storeBatch = new Entry[this.batchSize];
+        for (int i = 0; i < this.batchSize; i++) {
+            storeBatch[i] = new Entry();
+        }
+        this.failedEpochs = new HashMap<>();
+        this.running = false;
+        this.inFlight = 0;
+
+        parseThread.setDaemon(true);
+        storeThread.setDaemon(true);
+    }
+
+    /**
+     * Starts the stage threads.
+     */
+    void start() {
+        running = true;
+
+        parseThread.start();
+        storeThread.start();
+    }
+
+    /**
+     * Stops the stage threads, waiting for them to exit. Records still in the pipeline are dropped.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    void stop() throws InterruptedException {
+        running = false;
+
+        parseThread.join();
+        storeThread.join();
+    }
+
+    /**
+     * Checks if the stage threads are running.
+     *
+     * @return If both stages are running.
+     */
+    boolean isRunning() {
+        return running && parseThread.isAlive() && storeThread.isAlive();
+    }
+
+    /**
+     * Offers a record to the pipeline.
+     *
+     * @param record The consumed record.
+     * @param epoch The epoch of the record's partition.
+     * @param consumedAt When the record was consumed.
+     * @return If the record was taken, false if the pipeline is full.
+     */
+    boolean offer(final ConsumerRecord<byte[], byte[]> record, final long epoch, final Instant consumedAt) {
+        if (inFlight >= offered.capacity()) {
+            return false;
+        }
+
+        final Entry entry = offered.claim();
+        if (entry == null) {
+            return false;
+        }
+
+        entry.record = record;
+        entry.epoch = epoch;
+        entry.consumedAt = consumedAt;
+        offered.publish();
+        inFlight++;
+
+        return true;
+    }
+
+    /**
+     * Hands the outcomes of the records that went through the pipeline to the given handler, in the order they
+     * were stored, which is offset order for each partition.
+     *
+     * @param handler Handles each outcome. The entry is reused once it returns.
+     * @return The number of drained outcomes.
+     */
+    int drainCompleted(final Consumer<Entry> handler) {
+        final int drained = completed.drain(entry -> {
+            handler.accept(entry);
+            entry.clear();
+
+            return true;
+        }, Integer.MAX_VALUE);
+
+        inFlight -= drained;
+
+        return drained;
+    }
+
+    /**
+     * Returns the number of records that have been offered, and whose outcome hasn't been drained yet.
+     *
+     * @return The number of records in the pipeline.
+     */
+    long getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the maximum number of records in the pipeline.
+     *
+     * @return The pipeline capacity.
+     */
+    int getCapacity() {
+        return offered.capacity();
+    }
+
+    /**
+     * Runs the parse stage, turning the offered records into key values until stopped.
+     */
+    private void runParseStage() {
+        while (running) {
+            final int handled = offered.drain(offeredEntry -> {
+                final Entry parsedEntry = parsed.claim();
+                if (parsedEntry == null) {
+                    return false;
+                }
+
+                parsedEntry.copyFrom(offeredEntry);
+                try {
+                    parsedEntry.keyValue = parser.apply(offeredEntry.record, offeredEntry.consumedAt);
+                } catch (final RuntimeException e) {
+                    logger.warning(String.format("Failed parsing %s-%d at offset %d: %s", offeredEntry.record.topic(), offeredEntry.record.partition(), offeredEntry.record.offset(), e.getMessage()));
+
+                    parsedEntry.keyValue = null;
+                }
+                parsed.publish();
+                offeredEntry.clear();
+
+                return true;
+            }, batchSize);
+
+            if (handled == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Runs the store stage, saving the parsed records in batches until stopped.
+     */
+    private void runStoreStage() {
+        final List<Entry> toStore = new ArrayList<>(batchSize);
+        final int[] batchLength = {0};
+
+        while (running) {
+            batchLength[0] = 0;
+            parsed.drain(parsedEntry -> {
+                storeBatch[batchLength[0]++].copyFrom(parsedEntry);
+                parsedEntry.clear();
+
+                return true;
+            }, batchSize);
+
+            if (batchLength[0] == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+
+                continue;
+            }
+
+            storeBatch(batchLength[0], toStore);
+            complete(batchLength[0]);
+        }
+    }
+
+    /**
+     * Stores the first entries of the store batch, setting the outcome of each of them.
+     * When an entry fails, the later ones of its partition are skipped, and the others are stored again.
+     *
+     * @param batchLength The number of entries in the batch.
+     * @param toStore A list to be reused, holding the entries left to be stored.
+     */
+    private void storeBatch(final int batchLength, final List<Entry> toStore) {
+        toStore.clear();
+
+        for (int i = 0; i < batchLength; i++) {
+            final Entry entry = storeBatch[i];
+
+            if (isSkipped(entry)) {
+                entry.outcome = Outcome.SKIPPED;
+            } else if (entry.keyValue == null) {
+                entry.outcome = Outcome.INVALID;
+            } else {
+                toStore.add(entry);
+            }
+        }
+
+        while (!toStore.isEmpty()) {
+            int stored;
+            try {
+                stored = storer.applyAsInt(toStore);
+            } catch (final RuntimeException e) {
+                logger.warning(String.format("Failed storing a batch of %d records: %s", toStore.size(), e.getMessage()));
+
+                stored = 0;
+            }
+
+            for (int i = 0; i < stored; i++) {
+                toStore.get(i).outcome = Outcome.STORED;
+            }
+
+            if (stored >= toStore.size()) {
+                return;
+            }
+
+            final Entry failed = toStore.get(stored);
+            failed.outcome = Outcome.FAILED;
+            failedEpochs.put(partitionOf(failed), failed.epoch);
+
+            final List<Entry> remaining = new ArrayList<>(toStore.subList(stored + 1, toStore.size()));
+            toStore.clear();
+
+            for (final Entry entry : remaining) {
+                if (isSkipped(entry)) {
+                    entry.outcome = Outcome.SKIPPED;
+                } else {
+                    toStore.add(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks if the given entry should be skipped, as an earlier record of its partition failed in the same epoch.
+     * An entry of a later epoch means the partition has been rewound, so its records are stored again from then on.
+     *
+     * @param entry The entry to be checked.
+     * @return If the entry should be skipped.
+     */
+    private boolean isSkipped(final Entry entry) {
+        if (failedEpochs.isEmpty()) {
+            return false;
+        }
+
+        final TopicPartition topicPartition = partitionOf(entry);
+        final Long failedEpoch = failedEpochs.get(topicPartition);
+
+        if (failedEpoch == null) {
+            return false;
+        }
+        if (entry.epoch > failedEpoch) {
+            failedEpochs.remove(topicPartition);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Hands the outcomes of the first entries of the store batch back to the consumer thread, in order.
+     *
+     * @param batchLength The number of entries in the batch.
+     */
+    private void complete(final int batchLength) {
+        for (int i = 0; i < batchLength; i++) {
+            Entry completedEntry = completed.claim();
+
+            // The consumer thread never has more records in flight than the buffer holds, so this shouldn't wait.
+            while (completedEntry == null && running) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                completedEntry = completed.claim();
+            }
+            if (completedEntry == null) {
+                return;
+            }
+
+            completedEntry.copyFrom(storeBatch[i]);
+            completed.publish();
+            storeBatch[i].clear();
+        }
+    }
+
+    /**
+     * Returns the partition of the given entry's record.
+     *
+     * @param entry The entry.
+     * @return The record's partition.
+     */
+    private static TopicPartition partitionOf(final Entry entry) {
+        return new TopicPartition(entry.record.topic(), entry.record.partition());
+    }
+}
@@ -1,24 +1,35 @@
 package cgss.dev.pipeline;
 
+import cgss.dev.logging.SampledLogger;
+import cgss.dev.metrics.PipelineMetrics;
 import cgss.dev.model.Event;
+import cgss.dev.model.EventEnvelope;
 import cgss.dev.model.EventHandler;
 import cgss.dev.storage.KVStorage;
 import cgss.dev.storage.KVStorageException;
 import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
 import org.apache.kafka.clients.producer.Producer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
 import org.javatuples.Pair;
 
 import java.io.ByteArrayInputStream;
 import java.io.ObjectInputStream;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * A runnable responsible for running the storage to Kafka pipeline.
@@ -30,6 +41,10 @@ public class KafkaDelayedProducerRunnable implements Runnable {
      * The default logger for this class.
      */
     private final static Logger logger = Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName());
+    /**
+     * Sampled logger for the per event diagnostics.
+     */
+    private final static SampledLogger sampledLogger = SampledLogger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName());
     /**
      * Kafka producer to produce the expired events to.
      */
@@ -48,9 +63,50 @@ public class KafkaDelayedProducerRunnable implements Runnable {
      */
     private final Duration expiryAge;
     /**
-     * The topics to send the events to.
+     * The topics to send the events to, when they don't have a destination of their own.
      */
     private final Collection<String> sinkTopics;
+    /**
+     * Limits how fast the expired events are sent to Kafka.
+     */
+    private final EmitRateLimiter emitRateLimiter;
+    /**
+     * The maximum number of events processed per tick. Zero means there's no limit. It can be changed at runtime.
+     */
+    private volatile long maxEventsPerTick;
+    /**
+     * The maximum duration of a tick. Zero means there's no limit. It can be changed at runtime.
+     */
+    private volatile Duration maxTickDuration;
+    /**
+     * If ticks should be run back to back while they run out of budget.
+     */
+    private final boolean catchUpMode;
+    /**
+     * How many due events are sent together, flushed, and waited for at once. Zero or one sends each event on its
+     * own.
+     */
+    private final long emitBatchSize;
+    /**
+     * The metrics to record the emitted events into.
+     */
+    private final PipelineMetrics pipelineMetrics;
+    /**
+     * The clock telling when events expire.
+     */
+    private final Clock clock;
+    /**
+     * The key the next tick starts reading the storage from, null for the start of the storage.
+     */
+    private byte[] scanCursor;
+    /**
+     * How far past its expiry, in millis, the last expired event was when it got sent.
+     */
+    private volatile long emitLagMillis;
+    /**
+     * If the emission has been paused by an operator.
+     */
+    private volatile boolean emitPaused;
 
     /**
      * The constructor for this runnable.
@@ -60,39 +116,377 @@ public class KafkaDelayedProducerRunnable implements Runnable {
      * @param eventHandler The event business object.
      * @param expiryAge How old an event needs to be in order to be considered expired.
      * @param sinkTopics The topics to send expired events to.
+     * @param emitRateLimiter Limits how fast the expired events are sent to Kafka.
+     * @param maxEventsPerTick The maximum number of events processed per tick, zero for no limit.
+     * @param maxTickDuration The maximum duration of a tick, zero for no limit.
+     * @param catchUpMode If ticks should be run back to back while they run out of budget.
+     * @param pipelineMetrics The metrics to record the emitted events into.
+     * @param clock The clock telling when events expire.
      */
     public KafkaDelayedProducerRunnable(
             final Producer<byte[], byte[]> kafkaProducer,
             final KVStorage kvStorage,
             final EventHandler eventHandler,
             final Duration expiryAge,
-            final Collection<String> sinkTopics) {
+            final Collection<String> sinkTopics,
+            final EmitRateLimiter emitRateLimiter,
+            final long maxEventsPerTick,
+            final Duration maxTickDuration,
+            final boolean catchUpMode,
+            final PipelineMetrics pipelineMetrics,
+            final Clock clock) {
+        this(kafkaProducer, kvStorage, eventHandler, expiryAge, sinkTopics, emitRateLimiter, maxEventsPerTick, maxTickDuration, catchUpMode, 0, pipelineMetrics, clock);
+    }
+
+    /**
+     * The constructor for this runnable, sending the due events in batches.
+     *
+     * @param kafkaProducer The Kafka producer to send events to.
+     * @param kvStorage The storage to read events from.
+     * @param eventHandler The event business object.
+     * @param expiryAge How old an event needs to be in order to be considered expired.
+     * @param sinkTopics The topics to send expired events to.
+     * @param emitRateLimiter Limits how fast the expired events are sent to Kafka.
+     * @param maxEventsPerTick The maximum number of events processed per tick, zero for no limit.
+     * @param maxTickDuration The maximum duration of a tick, zero for no limit.
+     * @param catchUpMode If ticks should be run back to back while they run out of budget.
+     * @param emitBatchSize How many due events are sent together, zero or one to send each event on its own.
+     * @param pipelineMetrics The metrics to record the emitted events into.
+     * @param clock The clock telling when events expire.
+     */
+    public KafkaDelayedProducerRunnable(
+            final Producer<byte[], byte[]> kafkaProducer,
+            final KVStorage kvStorage,
+            final EventHandler eventHandler,
+            final Duration expiryAge,
+            final Collection<String> sinkTopics,
+            final EmitRateLimiter emitRateLimiter,
+            final long maxEventsPerTick,
+            final Duration maxTickDuration,
+            final boolean catchUpMode,
+            final long emitBatchSize,
+            final PipelineMetrics pipelineMetrics,
+            final Clock clock) {
         this.kafkaProducer = kafkaProducer;
         this.kvStorage = kvStorage;
         this.eventHandler = eventHandler;
         this.expiryAge = expiryAge;
         this.sinkTopics = sinkTopics;
+        this.emitRateLimiter = emitRateLimiter;
+        this.maxEventsPerTick = maxEventsPerTick;
+        this.maxTickDuration = maxTickDuration;
+        this.catchUpMode = catchUpMode;
+        this.emitBatchSize = emitBatchSize;
+        this.pipelineMetrics = pipelineMetrics;
+        this.clock = clock;
+        this.scanCursor = null;
+        this.emitLagMillis = 0;
+        this.emitPaused = false;
+    }
+
+    /**
+     * The constructor for this runnable, without limiting the emission rate nor the work done per tick, using the
+     * system clock.
+     *
+     * @param kafkaProducer The Kafka producer to send events to.
+     * @param kvStorage The storage to read events from.
+     * @param eventHandler The event business object.
+     * @param expiryAge How old an event needs to be in order to be considered expired.
+     * @param sinkTopics The topics to send expired events to.
+     */
+    public KafkaDelayedProducerRunnable(
+            final Producer<byte[], byte[]> kafkaProducer,
+            final KVStorage kvStorage,
+            final EventHandler eventHandler,
+            final Duration expiryAge,
+            final Collection<String> sinkTopics) {
+        this(kafkaProducer, kvStorage, eventHandler, expiryAge, sinkTopics, new EmitRateLimiter(0, 0), 0, Duration.ZERO, false, new PipelineMetrics(), Clock.systemUTC());
     }
 
     /**
      * Runs the pipeline.
+     * Each tick processes the storage up to its work budget. In catch-up mode, ticks are run back to back until one
+     * of them doesn't run out of budget, meaning every expired event has been processed.
+     * Nothing is done while the emission is paused.
      */
     @Override
     public void run() {
-        logger.info("Polling storage for expired events.");
+        if (emitPaused) {
+            logger.fine("Emission paused, skipping the storage poll.");
 
-        try {
-            kvStorage
-                    .StreamValues()
-                    .map(this::extractPayload)
-                    .filter(Optional::isPresent)
-                    .map(Optional::get)
-                    .filter(this::validatePayload)
-                    .map(this::sendPayload)
-                    .forEach(this::deleteFromStorage);
+            return;
+        }
+
+        logger.fine("Polling storage for expired events.");
+
+        boolean ranOutOfBudget;
+
+        do {
+            ranOutOfBudget = tick();
+        } while (catchUpMode && ranOutOfBudget && !Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Runs a single tick of the pipeline.
+     * The storage keys are sorted by the event timestamps, so the oldest events are sent first, and the storage is
+     * only read up to the first event that wasn't expired when the tick started.
+     * The tick starts reading from the scan cursor, and stops once it runs out of budget, moving the cursor to where it
+     * stopped. Once the expired events run out, the cursor goes back to the start of the storage, as events that are
+     * left to be retried, or that arrive late, can be behind it.
+     * The clock is read once per tick, and events are checked for expiry against that reading.
+     * With an emit batch size, the values are collected until there are as many, or the tick ends, then sent together.
+     *
+     * @return If the tick ran out of budget before processing all the expired events.
+     */
+    private boolean tick() {
+        final Instant tickStart = clock.instant();
+        final long tickStartNanos = System.nanoTime();
+        final List<KeyValue> batchValues = new ArrayList<>();
+        long processedValues = 0;
+
+        try (final Stream<KeyValue> storedValues = scanCursor == null ? kvStorage.StreamValues() : kvStorage.StreamValuesFrom(scanCursor)) {
+            final Iterator<KeyValue> iterator = storedValues.iterator();
+
+            while (iterator.hasNext()) {
+                final KeyValue keyValue = iterator.next();
+                final Instant timestamp = StorageKey.getTimestamp(keyValue.getKey());
+
+                if (!isExpired(timestamp, tickStart)) {
+                    break;
+                }
+
+                if (isOutOfBudget(processedValues, tickStartNanos)) {
+                    processBatch(batchValues, tickStart);
+                    scanCursor = keyValue.getKey();
+
+                    return true;
+                }
+
+                if (emitBatchSize <= 1) {
+                    processValue(keyValue, tickStart);
+                } else {
+                    batchValues.add(keyValue);
+                    if (batchValues.size() >= emitBatchSize) {
+                        processBatch(batchValues, tickStart);
+                    }
+                }
+                processedValues++;
+            }
+
+            processBatch(batchValues, tickStart);
+
+            // Every expired event has been processed, so we are caught up.
+            scanCursor = null;
+            emitLagMillis = 0;
         } catch (final Throwable e) {
             logger.warning(String.format("Failed parsing pipeline: %s", e.getMessage()));
+        } finally {
+            pipelineMetrics.recordTick(System.nanoTime() - tickStartNanos);
         }
+
+        return false;
+    }
+
+    /**
+     * Checks if the tick has used up its work budget.
+     *
+     * @param processedValues How many values the tick has processed.
+     * @param tickStartNanos When the tick started, in nanos.
+     * @return If the tick is out of budget.
+     */
+    private boolean isOutOfBudget(final long processedValues, final long tickStartNanos) {
+        final long maxEvents = maxEventsPerTick;
+        final Duration maxDuration = maxTickDuration;
+
+        if (maxEvents > 0 && processedValues >= maxEvents) {
+            return true;
+        }
+
+        return !maxDuration.isZero() && System.nanoTime() - tickStartNanos >= maxDuration.toNanos();
+    }
+
+    /**
+     * Processes a single stored value, sending it to Kafka if it's an expired event and deleting it once sent.
+     * Events that haven't expired yet, or that failed to be sent, are left in the storage.
+     *
+     * @param keyValue The stored value.
+     * @param tickStart When the tick started, which events are checked for expiry against.
+     */
+    private void processValue(final KeyValue keyValue, final Instant tickStart) {
+        extractPayload(keyValue)
+                .filter(this::validatePayload)
+                .flatMap(payload -> sendPayload(payload, tickStart))
+                .ifPresent(this::deleteFromStorage);
+    }
+
+    /**
+     * Sends the expired events of a batch together, then deletes the ones sent, and clears the batch.
+     * Each event is still rate limited as it's sent, and the producer is flushed once the whole batch is handed over,
+     * so the records don't wait for the linger time, and they're all waited for together. Grouping the records by
+     * partition is left to the producer, which batches them per partition on its own.
+     *
+     * @param batchValues The stored values of the batch, cleared once processed.
+     * @param tickStart When the tick started, which the events are checked for expiry against.
+     */
+    private void processBatch(final List<KeyValue> batchValues, final Instant tickStart) {
+        if (batchValues.isEmpty()) {
+            return;
+        }
+
+        final List<BatchEvent> batchEvents = new ArrayList<>(batchValues.size());
+
+        for (final KeyValue keyValue : batchValues) {
+            final Optional<Pair<byte[], EventEnvelope>> payloadOpt = extractPayload(keyValue).filter(this::validatePayload);
+            if (!payloadOpt.isPresent()) {
+                continue;
+            }
+
+            final EventEnvelope eventEnvelope = payloadOpt.get().getValue1();
+            final Optional<Event> eventOpt = eventHandler.unmarshallEvent(eventEnvelope.getValue());
+            if (eventOpt.isPresent() && isExpired(eventOpt.get().getTimestamp(), tickStart)) {
+                batchEvents.add(new BatchEvent(payloadOpt.get().getValue0(), eventEnvelope, eventOpt.get()));
+            }
+        }
+        batchValues.clear();
+
+        final long sendStartNanos = System.nanoTime();
+        final List<BatchEvent> sentEvents = new ArrayList<>(batchEvents.size());
+
+        for (final BatchEvent batchEvent : batchEvents) {
+            final EventEnvelope eventEnvelope = batchEvent.eventEnvelope;
+
+            try {
+                emitRateLimiter.acquire(eventEnvelope.getValue().length);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                break;
+            }
+
+            final Collection<String> destinations = eventEnvelope.getDestination() == null
+                    ? sinkTopics
+                    : Collections.singletonList(eventEnvelope.getDestination());
+            logSending(eventEnvelope, batchEvent.event, destinations);
+
+            synchronized (kafkaProducer) {
+                for (final String topic : destinations) {
+                    pipelineMetrics.sendStarted();
+                    batchEvent.futures.add(kafkaProducer.send(
+                            new ProducerRecord<>(topic, eventEnvelope.getKey(), eventEnvelope.getValue()),
+                            (metadata, e) -> pipelineMetrics.sendCompleted()
+                    ));
+                }
+            }
+            sentEvents.add(batchEvent);
+        }
+
+        kafkaProducer.flush();
+
+        for (final BatchEvent batchEvent : sentEvents) {
+            final boolean sentToAllTopics = awaitSent(batchEvent.futures, batchEvent.eventEnvelope, batchEvent.event, sendStartNanos);
+
+            deleteFromStorage(new Pair<>(sentToAllTopics, batchEvent.storageKey));
+        }
+    }
+
+    /**
+     * An expired event of an emit batch, with the sends of its records.
+     */
+    private static class BatchEvent {
+        /**
+         * The storage key of the event.
+         */
+        private final byte[] storageKey;
+        /**
+         * The stored envelope.
+         */
+        private final EventEnvelope eventEnvelope;
+        /**
+         * The event.
+         */
+        private final Event event;
+        /**
+         * The sends of the event records, one per destination.
+         */
+        private final List<Future<RecordMetadata>> futures;
+
+        /**
+         * Constructor for the batch event.
+         *
+         * @param storageKey The storage key of the event.
+         * @param eventEnvelope The stored envelope.
+         * @param event The event.
+         */
+        private BatchEvent(final byte[] storageKey, final EventEnvelope eventEnvelope, final Event event) {
+            this.storageKey = storageKey;
+            this.eventEnvelope = eventEnvelope;
+            this.event = event;
+            this.futures = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Gets the maximum number of events processed per tick.
+     *
+     * @return The maximum number of events per tick, zero for no limit.
+     */
+    public long getMaxEventsPerTick() {
+        return maxEventsPerTick;
+    }
+
+    /**
+     * Changes the maximum number of events processed per tick. It's used from the next tick on.
+     *
+     * @param maxEventsPerTick The maximum number of events per tick, zero for no limit.
+     */
+    public void setMaxEventsPerTick(final long maxEventsPerTick) {
+        this.maxEventsPerTick = maxEventsPerTick;
+    }
+
+    /**
+     * Gets the maximum duration of a tick.
+     *
+     * @return The maximum duration of a tick, zero for no limit.
+     */
+    public Duration getMaxTickDuration() {
+        return maxTickDuration;
+    }
+
+    /**
+     * Changes the maximum duration of a tick. It's used from the next tick on.
+     *
+     * @param maxTickDuration The maximum duration of a tick, zero for no limit.
+     */
+    public void setMaxTickDuration(final Duration maxTickDuration) {
+        this.maxTickDuration = maxTickDuration;
+    }
+
+    /**
+     * Gets if the emission has been paused by an operator.
+     *
+     * @return If the emission is paused.
+     */
+    public boolean isEmitPaused() {
+        return emitPaused;
+    }
+
+    /**
+     * Pauses or resumes the emission. A tick that is running when the emission gets paused runs to its end.
+     *
+     * @param emitPaused If the emission should be paused.
+     */
+    public void setEmitPaused(final boolean emitPaused) {
+        this.emitPaused = emitPaused;
+    }
+
+    /**
+     * Returns how far behind the emission is, that is, how far past its expiry the last expired event was when it got
+     * sent. It's zero once all the expired events have been sent.
+     *
+     * @return The emit lag.
+     */
+    public Duration getEmitLag() {
+        return Duration.ofMillis(emitLagMillis);
     }
 
     /**
@@ -108,56 +502,144 @@ public class KafkaDelayedProducerRunnable implements Runnable {
             try {
                 kvStorage.DeleteValue(pair.getValue1());
             } catch (KVStorageException e) {
-                logger.warning(String.format("Failed to delete value with key %s: %s", new String(pair.getValue1()), e.getMessage()));
+                if (sampledLogger.shouldLog(Level.WARNING, "delete-failed")) {
+                    sampledLogger.log(Level.WARNING, "delete-failed", String.format("Failed to delete value timestamped %s: %s", StorageKey.getTimestamp(pair.getValue1()), e.getMessage()));
+                }
             }
-        } else {
-            logger.warning(String.format("Unsent key %s", new String(pair.getValue1())));
+        } else if (sampledLogger.shouldLog(Level.WARNING, "unsent")) {
+            sampledLogger.log(Level.WARNING, "unsent", String.format("Unsent value timestamped %s", StorageKey.getTimestamp(pair.getValue1())));
         }
     }
 
     /**
      * Sends the given payload to Kafka.
+     * The event is sent to its destination, or to all the sink topics if it doesn't have one. The records are all
+     * sent before waiting on any of them, so sending to several topics takes a single round trip.
      *
-     * @param payload A pair where the first val is the key and the second the key value to be sent to Kafka.
-     * @return A pair containing if the given payload has been sent successfully, and the key of the payload.
+     * @param payload A pair where the first val is the storage key and the second the envelope to be sent to Kafka.
+     * @param tickStart When the tick started, which the event is checked for expiry against.
+     * @return A pair containing if the given payload has been sent successfully, and the key of the payload. Empty if
+     *         the event hasn't expired yet.
      */
-    private Pair<Boolean, byte[]> sendPayload(final Pair<byte[], KeyValue> payload) {
-        final KeyValue keyValueEvent = payload.getValue1();
-        final Optional<Event> eventOpt = eventHandler.unmarshallEvent(keyValueEvent.getValue());
+    private Optional<Pair<Boolean, byte[]>> sendPayload(final Pair<byte[], EventEnvelope> payload, final Instant tickStart) {
+        final EventEnvelope eventEnvelope = payload.getValue1();
+        final Optional<Event> eventOpt = eventHandler.unmarshallEvent(eventEnvelope.getValue());
 
         if(eventOpt.isPresent()){
             final Event event = eventOpt.get();
-            final long eventAge = Instant.now().toEpochMilli() - event.getTimestamp().toEpochMilli();
-
-            if(eventAge > expiryAge.toMillis()) {
-                logger.info(String.format("Sending to Kafka: %s", keyValueEvent));
-
-                // Send the value to all Kafka topics.
-                final Collection<ProducerRecord<byte[], byte[]>> producerRecords = sinkTopics
-                        .stream()
-                        .map(topic -> new ProducerRecord<>(topic, keyValueEvent.getKey(), keyValueEvent.getValue()))
-                        .collect(Collectors.toCollection(ArrayList::new));
-                // If one of the topics failed to send, we must try sending it again later.
-                boolean sentToAllTopics = true;
-
-                for(final ProducerRecord<byte[], byte[]> record : producerRecords) {
-                    try {
-                        synchronized (kafkaProducer) {
-                            kafkaProducer.send(record).get();
-                        }
-                    } catch (final InterruptedException | ExecutionException e) {
-                        logger.warning(String.format("Failed to send %s to Kafka topic %s: %s", keyValueEvent, record.topic(), e.getMessage()));
-                        sentToAllTopics = false;
-
-                        break;
+            if(isExpired(event.getTimestamp(), tickStart)) {
+                try {
+                    emitRateLimiter.acquire(eventEnvelope.getValue().length);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    return Optional.of(new Pair<>(false, payload.getValue0()));
+                }
+
+                final Collection<String> destinations = eventEnvelope.getDestination() == null
+                        ? sinkTopics
+                        : Collections.singletonList(eventEnvelope.getDestination());
+
+                logSending(eventEnvelope, event, destinations);
+
+                final long sendStartNanos = System.nanoTime();
+                final List<Future<RecordMetadata>> futures = new ArrayList<>(destinations.size());
+
+                synchronized (kafkaProducer) {
+                    for (final String topic : destinations) {
+                        pipelineMetrics.sendStarted();
+                        futures.add(kafkaProducer.send(
+                                new ProducerRecord<>(topic, eventEnvelope.getKey(), eventEnvelope.getValue()),
+                                (metadata, e) -> pipelineMetrics.sendCompleted()
+                        ));
                     }
                 }
 
-                return new Pair<>(sentToAllTopics, payload.getValue0());
+                final boolean sentToAllTopics = awaitSent(futures, eventEnvelope, event, sendStartNanos);
+
+                return Optional.of(new Pair<>(sentToAllTopics, payload.getValue0()));
             }
         }
 
-        return new Pair<>(true, payload.getValue0());
+        return Optional.empty();
+    }
+
+    /**
+     * Logs an event about to be sent, fully if its key is traced, sampled otherwise.
+     *
+     * @param eventEnvelope The stored envelope.
+     * @param event The event.
+     * @param destinations The topics it's sent to.
+     */
+    private void logSending(final EventEnvelope eventEnvelope, final Event event, final Collection<String> destinations) {
+        if (SampledLogger.isTraced(eventEnvelope.getKey())) {
+            sampledLogger.trace(String.format("Sending to Kafka topics %s: %s", destinations, new String(eventEnvelope.getValue())));
+        } else if (sampledLogger.shouldLog(Level.FINE, "sent")) {
+            sampledLogger.log(Level.FINE, "sent", String.format("Sending to Kafka topics %s an event timestamped %s", destinations, event.getTimestamp()));
+        }
+    }
+
+    /**
+     * Waits for the records of an event to be sent, and records how late it was emitted.
+     *
+     * @param futures The sends of the event records, one per destination.
+     * @param eventEnvelope The stored envelope.
+     * @param event The event.
+     * @param sendStartNanos When the records started to be sent, in nanos.
+     * @return If it was sent to all its destinations.
+     */
+    private boolean awaitSent(final List<Future<RecordMetadata>> futures, final EventEnvelope eventEnvelope, final Event event, final long sendStartNanos) {
+        final boolean traced = SampledLogger.isTraced(eventEnvelope.getKey());
+
+        // If one of the topics failed to send, we must try sending it again later.
+        boolean sentToAllTopics = true;
+
+        for (final Future<RecordMetadata> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException | ExecutionException e) {
+                if (traced) {
+                    sampledLogger.trace(String.format("Failed to send %s to Kafka: %s", new String(eventEnvelope.getValue()), e.getMessage()));
+                } else if (sampledLogger.shouldLog(Level.WARNING, "send-failed")) {
+                    sampledLogger.log(Level.WARNING, "send-failed", String.format("Failed to send an event timestamped %s to Kafka: %s", event.getTimestamp(), e.getMessage()));
+                }
+                sentToAllTopics = false;
+
+                if (e instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+
+                    break;
+                }
+            }
+        }
+
+        final long sentAtMillis = clock.millis();
+        final long emitLatenessMillis = sentAtMillis - event.getTimestamp().plus(expiryAge).toEpochMilli();
+        emitLagMillis = emitLatenessMillis;
+
+        if (sentToAllTopics) {
+            pipelineMetrics.recordEmitted(System.nanoTime() - sendStartNanos);
+            pipelineMetrics.emitAccuracy().recordEmit(
+                    eventEnvelope.getSourceTopic(),
+                    emitLatenessMillis,
+                    eventEnvelope.getConsumedAt() == null ? -1 : sentAtMillis - eventEnvelope.getConsumedAt().toEpochMilli()
+            );
+        } else {
+            pipelineMetrics.recordEmitFailed();
+        }
+
+        return sentToAllTopics;
+    }
+
+    /**
+     * Checks if an event with the given timestamp has expired at the given instant.
+     *
+     * @param timestamp The event timestamp.
+     * @param now The instant to check against.
+     * @return If the event has expired.
+     */
+    private boolean isExpired(final Instant timestamp, final Instant now) {
+        return now.toEpochMilli() - timestamp.toEpochMilli() > expiryAge.toMillis();
     }
 
     /**
@@ -167,23 +649,36 @@ public class KafkaDelayedProducerRunnable implements Runnable {
      * @param payload Payload to be validated.
      * @return If the payload is valid or not.
      */
-    private boolean validatePayload(final Pair<byte[], KeyValue> payload) {
+    private boolean validatePayload(final Pair<byte[], EventEnvelope> payload) {
         if (payload == null || payload.getValue1() == null || payload.getValue0() == null) {
             return false;
         }
 
-        final KeyValue keyValue = payload.getValue1();
-        return eventHandler.validateEvent(keyValue.getValue());
+        final EventEnvelope eventEnvelope = payload.getValue1();
+        return eventEnvelope.getValue() != null && eventHandler.validateEvent(eventEnvelope.getValue());
     }
 
     /**
      * Extracts the payload event from the given KeyValue.
-     * The idea is that the KeyValue has been extracted from the storage.
+     * The idea is that the KeyValue has been extracted from the storage. Values saved by older versions, as a Java
+     * serialized KeyValue, are still read, and are sent to all the sink topics.
      *
      * @param keyValue KeyValue with a possible event.
-     * @return Optional pair containing the key value event if it successfully extracted it.
+     * @return Optional pair containing the storage key and the event envelope if it successfully extracted it.
      */
-    private Optional<Pair<byte[], KeyValue>> extractPayload(final KeyValue keyValue) {
+    private Optional<Pair<byte[], EventEnvelope>> extractPayload(final KeyValue keyValue) {
+        if (EventEnvelope.isEnvelope(keyValue.getValue())) {
+            final Optional<EventEnvelope> eventEnvelopeOpt = EventEnvelope.decode(keyValue.getValue());
+
+            if (!eventEnvelopeOpt.isPresent()) {
+                if (sampledLogger.shouldLog(Level.WARNING, "malformed")) {
+                    sampledLogger.log(Level.WARNING, "malformed", "Failed extracting payload: malformed envelope");
+                }
+            }
+
+            return eventEnvelopeOpt.map(eventEnvelope -> new Pair<>(keyValue.getKey(), eventEnvelope));
+        }
+
         try {
             final ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(keyValue.getValue());
             final ObjectInputStream objectInputStream = new ObjectInputStream(byteArrayInputStream);
@@ -192,12 +687,14 @@ public class KafkaDelayedProducerRunnable implements Runnable {
             if (obj instanceof KeyValue) {
                 final KeyValue keyValuePayload = (KeyValue) obj;
 
-                return Optional.of(new Pair<>(keyValue.getKey(), keyValuePayload));
+                return Optional.of(new Pair<>(keyValue.getKey(), new EventEnvelope(null, null, null, keyValuePayload.getKey(), keyValuePayload.getValue())));
             } else {
                 return Optional.empty();
             }
         } catch (final Throwable e) {
-            logger.warning(String.format("Failed extracting payload: %s", e.getMessage()));
+            if (sampledLogger.shouldLog(Level.WARNING, "malformed")) {
+                sampledLogger.log(Level.WARNING, "malformed", String.format("Failed extracting payload: %s", e.getMessage()));
+            }
 
             return Optional.empty();
         }
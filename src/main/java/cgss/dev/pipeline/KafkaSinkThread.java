@@ -1,37 +1,75 @@
 package cgss.dev.pipeline;
 
+import cgss.dev.logging.SampledLogger;
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.model.Event;
+import cgss.dev.model.EventEnvelope;
 import cgss.dev.model.EventHandler;
 import cgss.dev.storage.KVStorage;
 import cgss.dev.storage.KVStorageException;
 import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.javatuples.Pair;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Clock;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.StreamSupport;
+import java.util.stream.Collectors;
 
 /**
  * Thread that runs the Kafka to KVStorage pipeline.
+ * By default, records are parsed and saved by this thread, right after being polled. When an ingest pipeline capacity
+ * is given, they're handed to an ingest pipeline instead, so polling, parsing and saving overlap, and records are
+ * saved in batches.
+ * When a parse parallelism is given, the records of each poll are parsed on a pool of that size, and then saved by
+ * this thread, in offset order.
  */
 public class KafkaSinkThread extends Thread {
     /**
      * Default logger for this class.
      */
     private final static Logger logger = Logger.getLogger(KafkaSinkThread.class.getSimpleName());
+    /**
+     * Sampled logger for the per event diagnostics.
+     */
+    private final static SampledLogger sampledLogger = SampledLogger.getLogger(KafkaSinkThread.class.getSimpleName());
+    /**
+     * How long to poll for while records are in the ingest pipeline, so their outcomes are handled soon.
+     */
+    private static final Duration PIPELINE_POLL_INTERVAL = Duration.ofMillis(1);
+    /**
+     * How long to wait between checks when waiting for the ingest pipeline to be drained.
+     */
+    private static final long PIPELINE_DRAIN_WAIT_NANOS = 100_000;
     /**
      * Kafka consumer to consumer the events from.
      */
     private final Consumer<byte[], byte[]> kafkaConsumer;
     /**
-     * Pool interval for consuming events.
+     * Pool interval for consuming events. It can be changed at runtime.
      */
-    private final Duration pollIntervalDuration;
+    private volatile Duration pollIntervalDuration;
     /**
      * The key value storage to store the Kafka events in.
      */
@@ -41,9 +79,67 @@ public class KafkaSinkThread extends Thread {
      */
     private final EventHandler eventHandler;
     /**
-     * The number of consumed messages. This is used as a key for the KVStorage.
+     * Keeps track of the saved offsets and commits them.
+     */
+    private final OffsetCommitter offsetCommitter;
+    /**
+     * Decides when the consumption should be paused.
+     */
+    private final BackpressureController backpressureController;
+    /**
+     * Picks the destination of each event.
+     */
+    private final EventRouter eventRouter;
+    /**
+     * The metrics to record the consumed events into.
+     */
+    private final PipelineMetrics pipelineMetrics;
+    /**
+     * The clock telling when events are consumed.
+     */
+    private final Clock clock;
+    /**
+     * The pool parsing the records of each poll, null if they're parsed one by one.
+     */
+    private final ForkJoinPool parsePool;
+    /**
+     * The pipeline parsing and saving the records, null if they're parsed and saved by this thread.
+     */
+    private final IngestPipeline ingestPipeline;
+    /**
+     * The records polled but not taken by the ingest pipeline yet, as it was full, with when they were consumed.
+     */
+    private final Deque<Pair<ConsumerRecord<byte[], byte[]>, Instant>> pendingRecords;
+    /**
+     * The epoch of each partition, bumped whenever it's rewound, so the outcomes of the records offered before can
+     * be told apart.
+     */
+    private final Map<TopicPartition, Long> partitionEpochs;
+    /**
+     * Creates the storage checkpoints, null if disabled.
+     */
+    private volatile StorageCheckpointer storageCheckpointer;
+    /**
+     * A pending on demand checkpoint, completed with its directory once created. Null if there's none.
+     */
+    private final AtomicReference<CompletableFuture<Path>> checkpointRequest;
+    /**
+     * If the consumption is paused only because the ingest pipeline is full.
+     */
+    private boolean pipelinePaused;
+    /**
+     * Tells apart events with the same timestamp in the KVStorage keys. It's seeded from the clock, so it keeps
+     * growing across restarts. It's only used by the thread parsing the records.
      */
-    private Long numConsumedMessages;
+    private long sequence;
+    /**
+     * If the thread has been asked to stop.
+     */
+    private volatile boolean stopped;
+    /**
+     * If the consumption has been paused by an operator, regardless of the backpressure.
+     */
+    private volatile boolean ingestPaused;
 
     /**
      * The constructor for the Kafka sink pipeline thread.
@@ -52,97 +148,616 @@ public class KafkaSinkThread extends Thread {
      * @param pollIntervalDuration How often to poll the consumer for messages.
      * @param kvStorage The storage to save the events into.
      * @param eventHandler The event business object.
+     * @param offsetCommitter The committer for the saved offsets. It should be the one listening for rebalances on
+     *                        the given consumer.
+     * @param backpressureController Decides when the consumption should be paused.
+     * @param eventRouter Picks the destination of each event.
+     * @param pipelineMetrics The metrics to record the consumed events into.
+     * @param clock The clock telling when events are consumed.
+     * @param pipelineCapacity The maximum number of records in the ingest pipeline, 0 to parse and save them on this
+     *                         thread instead.
+     * @param pipelineBatchSize The maximum number of records saved at once by the ingest pipeline.
+     * @param parseParallelism The number of threads parsing the records of each poll, 0 to parse them one by one.
+     *                         Not used with the ingest pipeline, which has its own parse stage.
      */
     public KafkaSinkThread(
             final Consumer<byte[], byte[]> kafkaConsumer,
             final Duration pollIntervalDuration,
             final KVStorage kvStorage,
-            final EventHandler eventHandler
+            final EventHandler eventHandler,
+            final OffsetCommitter offsetCommitter,
+            final BackpressureController backpressureController,
+            final EventRouter eventRouter,
+            final PipelineMetrics pipelineMetrics,
+            final Clock clock,
+            final int pipelineCapacity,
+            final int pipelineBatchSize,
+            final int parseParallelism
     ) {
         this.kafkaConsumer = kafkaConsumer;
         this.pollIntervalDuration = pollIntervalDuration;
         this.kvStorage = kvStorage;
         this.eventHandler = eventHandler;
-        this.numConsumedMessages = Long.MIN_VALUE;
+        this.offsetCommitter = offsetCommitter;
+        this.backpressureController = backpressureController;
+        this.eventRouter = eventRouter;
+        this.pipelineMetrics = pipelineMetrics;
+        this.clock = clock;
+        this.parsePool = parseParallelism <= 0 || pipelineCapacity > 0 ? null : new ForkJoinPool(parseParallelism);
+        this.ingestPipeline = pipelineCapacity <= 0 ? null : new IngestPipeline(
+                getName() + "-ingest",
+                pipelineCapacity,
+                pipelineBatchSize,
+                (record, consumedAt) -> encodeRecord(record, consumedAt).map(this::toKeyValue).orElse(null),
+                this::saveBatch
+        );
+        this.pendingRecords = new ArrayDeque<>();
+        this.partitionEpochs = new HashMap<>();
+        this.storageCheckpointer = null;
+        this.checkpointRequest = new AtomicReference<>();
+        this.pipelinePaused = false;
+        this.sequence = clock.millis() * 1_000_000;
+        this.stopped = false;
+        this.ingestPaused = false;
+    }
+
+    /**
+     * Constructor that creates its own offset committer, doing a blocking commit every poll interval, never pauses
+     * the consumption, sends every event to all the sink topics, uses the system clock, and saves the records on this
+     * thread, one by one.
+     *
+     * @param kafkaConsumer The Kafka consumer to read messages from.
+     * @param pollIntervalDuration How often to poll the consumer for messages.
+     * @param kvStorage The storage to save the events into.
+     * @param eventHandler The event business object.
+     */
+    public KafkaSinkThread(
+            final Consumer<byte[], byte[]> kafkaConsumer,
+            final Duration pollIntervalDuration,
+            final KVStorage kvStorage,
+            final EventHandler eventHandler
+    ) {
+        this(
+                kafkaConsumer,
+                pollIntervalDuration,
+                kvStorage,
+                eventHandler,
+                new OffsetCommitter(kafkaConsumer, pollIntervalDuration),
+                new BackpressureController(kvStorage, () -> Duration.ZERO, 0, 0, Duration.ZERO, 1),
+                EventRouter.broadcast(),
+                new PipelineMetrics(),
+                Clock.systemUTC(),
+                0,
+                0,
+                0
+        );
     }
 
     /**
-     * Stops the pipeline and closes the Kafka consumer.
+     * Stops the pipeline.
+     * The consumer is woken up and closed by the pipeline thread itself, after committing the saved offsets. The
+     * thread itself isn't interrupted, otherwise the consumer would refuse to do the final commit.
      */
     @Override
     public void interrupt() {
-        super.interrupt();
+        stopped = true;
 
-        kafkaConsumer.close();
+        kafkaConsumer.wakeup();
+    }
+
+    /**
+     * Gets the poll interval for consuming events.
+     *
+     * @return The poll interval.
+     */
+    public Duration getPollInterval() {
+        return pollIntervalDuration;
+    }
+
+    /**
+     * Changes the poll interval for consuming events. It's used from the next poll on.
+     *
+     * @param pollIntervalDuration The poll interval.
+     */
+    public void setPollInterval(final Duration pollIntervalDuration) {
+        this.pollIntervalDuration = pollIntervalDuration;
+    }
+
+    /**
+     * Sets the checkpointer creating the storage checkpoints, periodically and on demand. Checkpoints are created by
+     * the pipeline thread, between polls, as the offsets they correspond to are only known there.
+     *
+     * @param storageCheckpointer The checkpointer, null to disable checkpoints.
+     */
+    public void setStorageCheckpointer(final StorageCheckpointer storageCheckpointer) {
+        this.storageCheckpointer = storageCheckpointer;
+    }
+
+    /**
+     * Asks for a checkpoint of the storage to be created, before the next poll.
+     *
+     * @return A future completed with the checkpoint directory once created, or failed if it couldn't be.
+     */
+    public CompletableFuture<Path> requestCheckpoint() {
+        if (storageCheckpointer == null) {
+            final CompletableFuture<Path> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("checkpoints are disabled"));
+
+            return failed;
+        }
+
+        final CompletableFuture<Path> request = new CompletableFuture<>();
+        final CompletableFuture<Path> pendingRequest = checkpointRequest.getAndUpdate(current -> current == null ? request : current);
+
+        return pendingRequest == null ? request : pendingRequest;
+    }
+
+    /**
+     * Gets if the consumption has been paused by an operator.
+     *
+     * @return If the ingest is paused.
+     */
+    public boolean isIngestPaused() {
+        return ingestPaused;
+    }
+
+    /**
+     * Pauses or resumes the consumption, regardless of the backpressure. It's applied before the next poll.
+     * The consumer keeps being polled while paused, so it stays in the group.
+     *
+     * @param ingestPaused If the ingest should be paused.
+     */
+    public void setIngestPaused(final boolean ingestPaused) {
+        this.ingestPaused = ingestPaused;
     }
 
     /**
      * Runs the consumer thread.
+     * Records are saved partition by partition, and the offsets are committed up to the last contiguous saved record
+     * of each partition. If a record fails to be saved, the partition is rewound to it, so only the records from it
+     * onwards are consumed again.
      */
     @Override
     public void run() {
-        while (!this.isInterrupted()){
-            final ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(pollIntervalDuration);
+        if (ingestPipeline != null) {
+            runPipelined();
+
+            return;
+        }
+
+        try {
+            while (!stopped) {
+                maybeCheckpoint();
+                applyBackpressure();
+
+                final ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(pollIntervalDuration);
+
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("Got %d records from Kafka.", consumerRecords.count()));
+                }
+
+                // The whole batch is consumed at once, so the clock is read once for all of it.
+                final Instant consumedAt = clock.instant();
+
+                final List<ConsumerRecord<byte[], byte[]>> records = new ArrayList<>(consumerRecords.count());
+                for (final TopicPartition topicPartition : consumerRecords.partitions()) {
+                    records.addAll(consumerRecords.records(topicPartition));
+                }
+
+                final List<Optional<Pair<Instant, byte[]>>> encodedRecords = encodeRecords(records, consumedAt);
+
+                int index = 0;
+                for (final TopicPartition topicPartition : consumerRecords.partitions()) {
+                    final int partitionSize = consumerRecords.records(topicPartition).size();
+
+                    savePartitionRecords(topicPartition, records.subList(index, index + partitionSize), encodedRecords.subList(index, index + partitionSize));
+                    index += partitionSize;
+                }
+
+                offsetCommitter.commit();
+            }
+        } catch (final WakeupException e) {
+            // We are shutting down.
+        } finally {
+            try {
+                offsetCommitter.commitSync();
+            } catch (final Throwable e) {
+                logger.warning(String.format("Failed committing offsets on shutdown: %s", e.getMessage()));
+            }
+
+            if (parsePool != null) {
+                parsePool.shutdown();
+            }
+
+            kafkaConsumer.close();
+        }
+    }
+
+    /**
+     * Creates a checkpoint of the storage if one has been asked for, or a periodic one is due.
+     * The processed offsets are read first, so the checkpoint holds every record before them. With the ingest
+     * pipeline, it's drained first, so fewer records are consumed again when restoring.
+     */
+    private void maybeCheckpoint() {
+        final StorageCheckpointer checkpointer = storageCheckpointer;
+        if (checkpointer == null) {
+            return;
+        }
+
+        final CompletableFuture<Path> request = checkpointRequest.getAndSet(null);
+        if (request == null && !checkpointer.isDue()) {
+            return;
+        }
+
+        if (ingestPipeline != null) {
+            drainPipeline();
+        }
+
+        try {
+            final Path checkpointPath = checkpointer.checkpoint(offsetCommitter.getProcessedOffsets());
+
+            if (request != null) {
+                request.complete(checkpointPath);
+            }
+        } catch (final KVStorageException | IOException e) {
+            logger.warning(String.format("Failed creating a checkpoint: %s", e.getMessage()));
+
+            if (request != null) {
+                request.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Parses and encodes the given records, on the parse pool if there's one. The results are in the same order as
+     * the records, as the keys are only given to them afterwards, by this thread, so they keep growing in offset order.
+     *
+     * @param records The records to be encoded.
+     * @param consumedAt When the records were consumed.
+     * @return The event timestamp and encoded envelope of each record, empty for invalid records.
+     */
+    private List<Optional<Pair<Instant, byte[]>>> encodeRecords(final List<ConsumerRecord<byte[], byte[]>> records, final Instant consumedAt) {
+        if (parsePool == null || records.size() < 2) {
+            final List<Optional<Pair<Instant, byte[]>>> encodedRecords = new ArrayList<>(records.size());
+            for (final ConsumerRecord<byte[], byte[]> record : records) {
+                encodedRecords.add(encodeRecord(record, consumedAt));
+            }
+
+            return encodedRecords;
+        }
+
+        // A parallel stream started from within the pool runs on its threads, instead of the common pool.
+        return parsePool.submit(() -> records
+                .parallelStream()
+                .map(record -> encodeRecord(record, consumedAt))
+                .collect(Collectors.toList())
+        ).join();
+    }
+
+    /**
+     * Runs the consumer thread with the ingest pipeline.
+     * Polled records are offered to the pipeline, in offset order for each partition, and the offsets are committed
+     * up to the last contiguous saved record of each partition, as the outcomes come back. If a record fails to be
+     * saved, the partition is rewound to it, and its epoch is bumped, so the outcomes of its later records, still in
+     * the pipeline, are ignored.
+     */
+    private void runPipelined() {
+        offsetCommitter.setRevocationListener(this::onPartitionsRevoked);
+        ingestPipeline.start();
+
+        try {
+            while (!stopped) {
+                ingestPipeline.drainCompleted(this::handleOutcome);
+                maybeCheckpoint();
+                offerPendingRecords();
+                applyBackpressure();
+
+                final Duration pollDuration = ingestPipeline.getInFlight() > 0 ? PIPELINE_POLL_INTERVAL : pollIntervalDuration;
+                final ConsumerRecords<byte[], byte[]> consumerRecords = kafkaConsumer.poll(pollDuration);
+
+                if (logger.isLoggable(Level.FINE) && !consumerRecords.isEmpty()) {
+                    logger.fine(String.format("Got %d records from Kafka.", consumerRecords.count()));
+                }
+
+                final Instant consumedAt = clock.instant();
+
+                for (final TopicPartition topicPartition : consumerRecords.partitions()) {
+                    for (final ConsumerRecord<byte[], byte[]> record : consumerRecords.records(topicPartition)) {
+                        pipelineMetrics.recordConsumed();
+                        pendingRecords.add(Pair.with(record, consumedAt));
+                    }
+                }
+
+                offerPendingRecords();
+                offsetCommitter.commit();
+            }
+        } catch (final WakeupException e) {
+            // We are shutting down.
+        } finally {
+            try {
+                drainPipeline();
+                ingestPipeline.stop();
+                offsetCommitter.commitSync();
+            } catch (final Throwable e) {
+                logger.warning(String.format("Failed committing offsets on shutdown: %s", e.getMessage()));
+            }
+
+            kafkaConsumer.close();
+        }
+    }
+
+    /**
+     * Offers the pending records to the ingest pipeline, in order, until it's full.
+     */
+    private void offerPendingRecords() {
+        while (!pendingRecords.isEmpty()) {
+            final Pair<ConsumerRecord<byte[], byte[]>, Instant> pendingRecord = pendingRecords.peekFirst();
+            final ConsumerRecord<byte[], byte[]> record = pendingRecord.getValue0();
+            final long epoch = partitionEpochs.getOrDefault(new TopicPartition(record.topic(), record.partition()), 0L);
+
+            if (!ingestPipeline.offer(record, epoch, pendingRecord.getValue1())) {
+                return;
+            }
+
+            pendingRecords.pollFirst();
+        }
+    }
+
+    /**
+     * Handles the outcome of a record that went through the ingest pipeline.
+     * Saved and invalid records are marked as processed. When a record fails to be saved, its partition is rewound to
+     * it, and the pending records of the partition are dropped, as they'll be consumed again.
+     * Outcomes of records offered before the partition was last rewound are ignored.
+     *
+     * @param entry The record and its outcome.
+     */
+    private void handleOutcome(final IngestPipeline.Entry entry) {
+        final ConsumerRecord<byte[], byte[]> record = entry.record;
+        final TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+        final long epoch = partitionEpochs.getOrDefault(topicPartition, 0L);
+
+        if (entry.epoch != epoch) {
+            return;
+        }
+
+        switch (entry.outcome) {
+            case STORED:
+            case INVALID:
+                offsetCommitter.markProcessed(record);
+                break;
+            case FAILED:
+                logger.warning(String.format("Failed saving to storage, rewinding %s to offset %d.", topicPartition, record.offset()));
+
+                kafkaConsumer.seek(topicPartition, record.offset());
+                partitionEpochs.put(topicPartition, epoch + 1);
+                pendingRecords.removeIf(pendingRecord -> topicPartition.topic().equals(pendingRecord.getValue0().topic()) && topicPartition.partition() == pendingRecord.getValue0().partition());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Waits for the records in the ingest pipeline to be saved, handling their outcomes, so their offsets can be
+     * committed. Gives up if the pipeline stops running.
+     */
+    private void drainPipeline() {
+        while (ingestPipeline.getInFlight() > 0 && ingestPipeline.isRunning()) {
+            if (ingestPipeline.drainCompleted(this::handleOutcome) == 0) {
+                LockSupport.parkNanos(PIPELINE_DRAIN_WAIT_NANOS);
+            }
+        }
+    }
 
-            logger.info(String.format("Got %d records from Kafka.", consumerRecords.count()));
+    /**
+     * Finishes the records in the ingest pipeline before the revoked partitions are committed, and drops the pending
+     * records of the revoked partitions, as they'll be consumed by their next owner.
+     *
+     * @param partitions The revoked partitions.
+     */
+    private void onPartitionsRevoked(final Collection<TopicPartition> partitions) {
+        drainPipeline();
 
-            final boolean savingFailed = StreamSupport
-                    .stream(consumerRecords.spliterator(), false)
-                    .filter(this::validateRecord)
-                    .map(this::trySaveToStorage)
-                    .anyMatch(succeeded -> !succeeded);
+        pendingRecords.removeIf(pendingRecord -> partitions.contains(new TopicPartition(pendingRecord.getValue0().topic(), pendingRecord.getValue0().partition())));
+    }
+
+    /**
+     * Pauses the assigned partitions if the ingest has been paused, or if the backpressure controller says so, resuming
+     * them once neither does anymore. They're also paused while the ingest pipeline is too full to take the records
+     * already polled, which is expected under load, so it's only logged as fine.
+     * The consumer keeps being polled while paused, so it doesn't get kicked out of the group.
+     */
+    private void applyBackpressure() {
+        final boolean alreadyPaused = !kafkaConsumer.paused().isEmpty();
+
+        if (ingestPaused || backpressureController.shouldPause()) {
+            if (!alreadyPaused || pipelinePaused) {
+                final String pauseReason = ingestPaused ? "paused by an operator" : backpressureController.getPauseReason().orElse("");
+
+                logger.warning(String.format("Pausing consumption: %s.", pauseReason));
+            }
 
-            if (!savingFailed) {
-                kafkaConsumer.commitSync();
+            pipelinePaused = false;
+
+            // Always pause the whole assignment, as it might have changed after a rebalance.
+            kafkaConsumer.pause(kafkaConsumer.assignment());
+        } else if (!pendingRecords.isEmpty()) {
+            if (!alreadyPaused) {
+                logger.fine("Pausing consumption: the ingest pipeline is full.");
+
+                pipelinePaused = true;
+            }
+
+            kafkaConsumer.pause(kafkaConsumer.assignment());
+        } else if (alreadyPaused) {
+            if (pipelinePaused) {
+                logger.fine("Resuming consumption.");
             } else {
-                logger.warning("Failed saving to storage.");
+                logger.info("Resuming consumption.");
+            }
+
+            pipelinePaused = false;
+            kafkaConsumer.resume(kafkaConsumer.paused());
+        }
+    }
+
+    /**
+     * Saves the records of the given partition, in offset order, marking each as processed.
+     * Invalid records are marked as processed as well, as consuming them again wouldn't make them valid.
+     * Stops on the first record that fails to be saved, seeking the partition back to it.
+     *
+     * @param topicPartition The partition to save the records of.
+     * @param records The records of the partition returned by the poll.
+     * @param encodedRecords The encoded records, in the same order.
+     */
+    private void savePartitionRecords(final TopicPartition topicPartition, final List<ConsumerRecord<byte[], byte[]>> records, final List<Optional<Pair<Instant, byte[]>>> encodedRecords) {
+        for (int i = 0; i < records.size(); i++) {
+            final ConsumerRecord<byte[], byte[]> record = records.get(i);
+            final Optional<Pair<Instant, byte[]>> encodedRecordOpt = encodedRecords.get(i);
+
+            pipelineMetrics.recordConsumed();
+
+            if (encodedRecordOpt.isPresent() && !trySaveToStorage(record, toKeyValue(encodedRecordOpt.get()))) {
+                logger.warning(String.format("Failed saving to storage, rewinding %s to offset %d.", topicPartition, record.offset()));
+
+                kafkaConsumer.seek(topicPartition, record.offset());
+
+                return;
             }
+
+            offsetCommitter.markProcessed(record);
         }
     }
 
     /**
-     * Validates if the given record is a valid event.
+     * Parses the event out of the given record.
      *
-     * @param record The record to be checked.
-     * @return If the given record is valid or not.
+     * @param record The record to be parsed.
+     * @return An optional containing the event if the record is a valid one, empty otherwise.
      */
-    private boolean validateRecord(final ConsumerRecord<byte[], byte[]> record) {
-        final boolean isValid = eventHandler.validateEvent(record.value());
+    private Optional<Event> parseRecord(final ConsumerRecord<byte[], byte[]> record) {
+        final Optional<Event> eventOpt = record.value() == null ? Optional.empty() : eventHandler.unmarshallEvent(record.value());
 
-        if (!isValid){
-            logger.warning(String.format("Invalid event received: %s", record));
+        if (!eventOpt.isPresent()){
+            pipelineMetrics.recordInvalid();
+
+            if (SampledLogger.isTraced(record.key())) {
+                sampledLogger.trace(String.format("Invalid event received: %s", record));
+            } else if (sampledLogger.shouldLog(Level.WARNING, "invalid")) {
+                sampledLogger.log(Level.WARNING, "invalid", String.format("Invalid event received from %s-%d at offset %d", record.topic(), record.partition(), record.offset()));
+            }
         }
 
-        return isValid;
+        return eventOpt;
     }
 
     /**
-     * Tries to save the given record to the key value storage.
+     * Parses the given record, and encodes it into the envelope it should be saved as, along with its destination.
+     * It doesn't change any state, so records can be encoded in parallel.
      *
-     * @param record The record to be saved.
-     * @return If it successfully saved the record.
+     * @param record The record to be encoded.
+     * @param consumedAt When the record was consumed.
+     * @return An optional containing the event timestamp and the encoded envelope, empty if the record is invalid.
      */
-    private boolean trySaveToStorage(final ConsumerRecord<byte[], byte[]> record) {
-        final byte[] key = ByteBuffer.allocate(Long.BYTES).putLong(numConsumedMessages++).array();
-        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+    private Optional<Pair<Instant, byte[]>> encodeRecord(final ConsumerRecord<byte[], byte[]> record, final Instant consumedAt) {
+        return parseRecord(record).map(event -> {
+            final EventEnvelope eventEnvelope = new EventEnvelope(record.topic(), eventRouter.route(record), consumedAt, record.key(), record.value());
+
+            return Pair.with(event.getTimestamp(), eventEnvelope.encode());
+        });
+    }
+
+    /**
+     * Builds the key value an encoded record should be saved as.
+     * The record is keyed by its event timestamp, so the storage keeps the events sorted by when they expire.
+     * Keys must be built in offset order, by a single thread, as each takes the next sequence.
+     *
+     * @param encodedRecord The event timestamp and the encoded envelope.
+     * @return The key value to be saved.
+     */
+    private KeyValue toKeyValue(final Pair<Instant, byte[]> encodedRecord) {
+        return new KeyValue(StorageKey.encode(encodedRecord.getValue0(), sequence++), encodedRecord.getValue1());
+    }
+
+    /**
+     * Saves a batch of entries from the ingest pipeline at once. If the batch fails, they're saved one by one instead,
+     * to find which one fails.
+     *
+     * @param entries The entries to be saved, all of them valid events.
+     * @return The number of entries, from the start, that were saved before one failed.
+     */
+    private int saveBatch(final List<IngestPipeline.Entry> entries) {
+        final List<KeyValue> keyValues = new ArrayList<>(entries.size());
+        for (final IngestPipeline.Entry entry : entries) {
+            keyValues.add(entry.keyValue);
+        }
+
+        final long startNanos = System.nanoTime();
 
         try {
-            final ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+            kvStorage.SaveValues(keyValues);
+        } catch (final KVStorageException e) {
+            if (sampledLogger.shouldLog(Level.WARNING, "batch-failed")) {
+                sampledLogger.log(Level.WARNING, "batch-failed", String.format("Failed saving a batch of %d records, saving them one by one: %s", entries.size(), e.getMessage()));
+            }
 
-            objectOutputStream.writeObject(new KeyValue(record.key(), record.value()));
-            objectOutputStream.close();
+            for (int i = 0; i < entries.size(); i++) {
+                if (!trySaveToStorage(entries.get(i).record, entries.get(i).keyValue)) {
+                    return i;
+                }
+            }
 
-            kvStorage.SaveValue(new KeyValue(key, byteArrayOutputStream.toByteArray()));
+            return entries.size();
+        }
 
-            logger.info(String.format("Saved %s", record));
-        } catch (final KVStorageException | IOException e) {
-            numConsumedMessages--;
+        // The batch is saved at once, so its time is spread over its records.
+        final long nanosPerRecord = (System.nanoTime() - startNanos) / entries.size();
+
+        for (final IngestPipeline.Entry entry : entries) {
+            pipelineMetrics.recordStored(nanosPerRecord);
+            logSaved(entry.record);
+        }
 
-            logger.warning(String.format("Failed saving %s", record));
+        return entries.size();
+    }
+
+    /**
+     * Tries to save the given record to the key value storage.
+     *
+     * @param record The record to be saved.
+     * @param keyValue The key value the record should be saved as.
+     * @return If it successfully saved the record.
+     */
+    private boolean trySaveToStorage(final ConsumerRecord<byte[], byte[]> record, final KeyValue keyValue) {
+        final long startNanos = System.nanoTime();
+
+        try {
+            kvStorage.SaveValue(keyValue);
+            pipelineMetrics.recordStored(System.nanoTime() - startNanos);
+            logSaved(record);
+        } catch (final KVStorageException e) {
+            pipelineMetrics.recordStoreFailed();
+
+            if (sampledLogger.shouldLog(Level.WARNING, "store-failed")) {
+                sampledLogger.log(Level.WARNING, "store-failed", String.format("Failed saving %s-%d at offset %d: %s", record.topic(), record.partition(), record.offset(), e.getMessage()));
+            }
 
             return false;
         }
 
         return true;
     }
+
+    /**
+     * Logs that the given record was saved, if it's traced or sampled.
+     *
+     * @param record The saved record.
+     */
+    private static void logSaved(final ConsumerRecord<byte[], byte[]> record) {
+        if (SampledLogger.isTraced(record.key())) {
+            sampledLogger.trace(String.format("Saved %s", record));
+        } else if (sampledLogger.shouldLog(Level.FINE, "saved")) {
+            sampledLogger.log(Level.FINE, "saved", String.format("Saved %s-%d at offset %d", record.topic(), record.partition(), record.offset()));
+        }
+    }
 }
@@ -0,0 +1,221 @@
+package cgss.dev.pipeline;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of the offsets that have been processed on each partition and commits them.
+ * Commits are done asynchronously, except every so often, when a blocking commit is done to make sure the offsets are
+ * actually stored. Offsets of revoked partitions are always committed synchronously, so the next owner doesn't
+ * re-consume them. Blocking commits include every processed offset, as an asynchronous commit before them may have
+ * failed.
+ * Notice that this is not thread safe, it should only be used by the thread that owns the Kafka consumer.
+ */
+public class OffsetCommitter implements ConsumerRebalanceListener {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(OffsetCommitter.class.getSimpleName());
+    /**
+     * The Kafka consumer to commit the offsets to.
+     */
+    private final Consumer<byte[], byte[]> kafkaConsumer;
+    /**
+     * The interval between blocking commits.
+     */
+    private final Duration syncCommitInterval;
+    /**
+     * The offsets that have been processed but not committed yet, per partition.
+     * The offset is the one of the next record to be consumed, as expected by Kafka.
+     */
+    private final Map<TopicPartition, OffsetAndMetadata> uncommittedOffsets;
+    /**
+     * The last processed offset of each assigned partition, committed or not.
+     */
+    private final Map<TopicPartition, OffsetAndMetadata> processedOffsets;
+    /**
+     * The offsets to start from, for the partitions that haven't been assigned yet. Used when the storage is restored
+     * from a checkpoint, whose offsets can be behind the committed ones.
+     */
+    private final Map<TopicPartition, Long> initialOffsets;
+    /**
+     * When the last blocking commit happened, in epoch millis.
+     */
+    private long lastSyncCommitMillis;
+    /**
+     * Called with the revoked partitions before their offsets are committed, so records still being processed can be
+     * finished first.
+     */
+    private java.util.function.Consumer<Collection<TopicPartition>> revocationListener;
+
+    /**
+     * Constructor for the offset committer.
+     *
+     * @param kafkaConsumer The Kafka consumer to commit the offsets to.
+     * @param syncCommitInterval The interval between blocking commits.
+     */
+    public OffsetCommitter(final Consumer<byte[], byte[]> kafkaConsumer, final Duration syncCommitInterval) {
+        this.kafkaConsumer = kafkaConsumer;
+        this.syncCommitInterval = syncCommitInterval;
+        this.uncommittedOffsets = new HashMap<>();
+        this.processedOffsets = new HashMap<>();
+        this.initialOffsets = new HashMap<>();
+        this.lastSyncCommitMillis = System.currentTimeMillis();
+        this.revocationListener = partitions -> {};
+    }
+
+    /**
+     * Sets what should be done with the revoked partitions before their offsets are committed.
+     * It's called from within the consumer poll, by the thread owning the consumer.
+     *
+     * @param revocationListener Called with the revoked partitions.
+     */
+    public void setRevocationListener(final java.util.function.Consumer<Collection<TopicPartition>> revocationListener) {
+        this.revocationListener = revocationListener;
+    }
+
+    /**
+     * Sets the offsets to start from, instead of the committed ones. Each partition is sought to its offset when it's
+     * first assigned.
+     *
+     * @param initialOffsets The offset of the next record to be consumed, per partition.
+     */
+    public void setInitialOffsets(final Map<TopicPartition, Long> initialOffsets) {
+        this.initialOffsets.putAll(initialOffsets);
+    }
+
+    /**
+     * Gets the offset of the next record to be processed of each assigned partition: the processed one, or the
+     * committed one if nothing has been processed on it yet.
+     *
+     * @return The offsets, per assigned partition. Partitions never committed are left out.
+     */
+    public Map<TopicPartition, Long> getProcessedOffsets() {
+        final Map<TopicPartition, Long> offsets = new HashMap<>();
+
+        for (final TopicPartition topicPartition : kafkaConsumer.assignment()) {
+            OffsetAndMetadata offset = processedOffsets.get(topicPartition);
+            if (offset == null) {
+                offset = kafkaConsumer.committed(topicPartition);
+            }
+
+            if (offset != null) {
+                offsets.put(topicPartition, offset.offset());
+            }
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Marks the given record as processed.
+     * Records must be marked in offset order for each partition, the first record that fails to be processed should
+     * never be marked, neither should the ones after it.
+     *
+     * @param record The record that has been processed.
+     */
+    public void markProcessed(final ConsumerRecord<byte[], byte[]> record) {
+        final TopicPartition topicPartition = new TopicPartition(record.topic(), record.partition());
+
+        final OffsetAndMetadata offset = new OffsetAndMetadata(record.offset() + 1);
+
+        uncommittedOffsets.put(topicPartition, offset);
+        processedOffsets.put(topicPartition, offset);
+    }
+
+    /**
+     * Commits the processed offsets, if any.
+     * It will be a blocking commit if the sync commit interval has elapsed, an asynchronous one otherwise.
+     */
+    public void commit() {
+        if (System.currentTimeMillis() - lastSyncCommitMillis >= syncCommitInterval.toMillis()) {
+            commitSync();
+
+            return;
+        }
+
+        if (uncommittedOffsets.isEmpty()) {
+            return;
+        }
+
+        kafkaConsumer.commitAsync(new HashMap<>(uncommittedOffsets), (offsets, e) -> {
+            if (e != null) {
+                logger.warning(String.format("Failed committing offsets %s: %s", offsets, e.getMessage()));
+            }
+        });
+        uncommittedOffsets.clear();
+    }
+
+    /**
+     * Commits the processed offsets of the assigned partitions, if any, blocking until it's done. The ones already
+     * committed asynchronously are committed again, as those commits may have failed.
+     * Should be called before closing the consumer.
+     */
+    public void commitSync() {
+        lastSyncCommitMillis = System.currentTimeMillis();
+
+        if (processedOffsets.isEmpty()) {
+            return;
+        }
+
+        kafkaConsumer.commitSync(new HashMap<>(processedOffsets));
+        uncommittedOffsets.clear();
+    }
+
+    /**
+     * Commits the processed offsets of the revoked partitions, so the next owner starts from where we stopped.
+     * The revocation listener is called first.
+     *
+     * @param partitions The revoked partitions.
+     */
+    @Override
+    public void onPartitionsRevoked(final Collection<TopicPartition> partitions) {
+        revocationListener.accept(partitions);
+
+        final Map<TopicPartition, OffsetAndMetadata> revokedOffsets = new HashMap<>();
+
+        for (final TopicPartition topicPartition : partitions) {
+            uncommittedOffsets.remove(topicPartition);
+
+            // Committed again even if committed asynchronously already, as that commit may have failed.
+            final OffsetAndMetadata offset = processedOffsets.remove(topicPartition);
+
+            if (offset != null) {
+                revokedOffsets.put(topicPartition, offset);
+            }
+        }
+
+        if (!revokedOffsets.isEmpty()) {
+            kafkaConsumer.commitSync(revokedOffsets);
+        }
+    }
+
+    /**
+     * Seeks the assigned partitions with an initial offset to it, only the first time they're assigned. The others
+     * start from their committed offsets.
+     *
+     * @param partitions The assigned partitions.
+     */
+    @Override
+    public void onPartitionsAssigned(final Collection<TopicPartition> partitions) {
+        for (final TopicPartition topicPartition : partitions) {
+            final Long initialOffset = initialOffsets.remove(topicPartition);
+
+            if (initialOffset != null) {
+                logger.info(String.format("Starting %s from offset %d.", topicPartition, initialOffset));
+
+                kafkaConsumer.seek(topicPartition, initialOffset);
+                processedOffsets.put(topicPartition, new OffsetAndMetadata(initialOffset));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package cgss.dev.pipeline;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Runs the storage to Kafka pipeline every poll interval.
+ * Unlike a fixed rate schedule, each run schedules the next one, so the poll interval can be changed at runtime. The
+ * next run is scheduled one poll interval after the start of the previous one, like a fixed rate schedule would.
+ */
+public class ProducerScheduler {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(ProducerScheduler.class.getSimpleName());
+    /**
+     * The executor to run the pipeline on.
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * The pipeline to be run.
+     */
+    private final Runnable producerRunnable;
+    /**
+     * The interval between runs.
+     */
+    private volatile Duration pollInterval;
+
+    /**
+     * Constructor for the producer scheduler.
+     *
+     * @param executor The executor to run the pipeline on.
+     * @param producerRunnable The pipeline to be run.
+     * @param pollInterval The interval between runs.
+     */
+    public ProducerScheduler(final ScheduledExecutorService executor, final Runnable producerRunnable, final Duration pollInterval) {
+        this.executor = executor;
+        this.producerRunnable = producerRunnable;
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Schedules the first run, right away.
+     */
+    public void start() {
+        executor.execute(this::runAndReschedule);
+    }
+
+    /**
+     * Gets the interval between runs.
+     *
+     * @return The poll interval.
+     */
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    /**
+     * Changes the interval between runs. It's used from the next scheduled run on.
+     *
+     * @param pollInterval The poll interval.
+     */
+    public void setPollInterval(final Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Runs the pipeline and schedules the next run, unless the executor is shutting down.
+     * A failing run doesn't stop the next ones from being scheduled.
+     */
+    private void runAndReschedule() {
+        final long startNanos = System.nanoTime();
+
+        try {
+            producerRunnable.run();
+        } catch (final Throwable e) {
+            logger.warning(String.format("Producer run failed: %s", e.getMessage()));
+        }
+
+        if (executor.isShutdown()) {
+            return;
+        }
+
+        final long delayNanos = Math.max(0, pollInterval.toNanos() - (System.nanoTime() - startNanos));
+
+        try {
+            executor.schedule(this::runAndReschedule, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (final RuntimeException e) {
+            // The executor got shut down in the meantime.
+            logger.fine(String.format("Not scheduling the producer anymore: %s", e.getMessage()));
+        }
+    }
+}
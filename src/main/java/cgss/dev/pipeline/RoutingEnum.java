@@ -0,0 +1,9 @@
+package cgss.dev.pipeline;
+
+/**
+ * Enum used to define how the destination of an event is picked.
+ * These are the possible values for 'routing.mode'.
+ */
+public enum RoutingEnum {
+    BROADCAST, HEADER, FIELD, SOURCE_TOPIC
+}
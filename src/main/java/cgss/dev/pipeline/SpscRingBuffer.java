@@ -0,0 +1,152 @@
+package cgss.dev.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A bounded, lock-free ring buffer for handing entries from a single producer thread to a single consumer thread.
+ * Entries are preallocated and reused: the producer claims the next free entry, fills it and publishes it, and the
+ * consumer handles the published entries in batches, releasing a whole batch at once. Each side caches the position
+ * of the other, only reading it again when it looks like the buffer is full, or empty.
+ * Notice that each side must only ever be used by one thread.
+ *
+ * @param <T> The entry type.
+ */
+class SpscRingBuffer<T> {
+    /**
+     * The preallocated entries.
+     */
+    private final T[] entries;
+    /**
+     * Masks a position into an index of the entries, as their number is a power of two.
+     */
+    private final int mask;
+    /**
+     * The number of entries published by the producer, read by the consumer.
+     */
+    private final AtomicLong published;
+    /**
+     * The number of entries released by the consumer, read by the producer.
+     */
+    private final AtomicLong released;
+    /**
+     * The producer's last reading of the released entries.
+     */
+    private long cachedReleased;
+    /**
+     * The consumer's last reading of the published entries.
+     */
+    private long cachedPublished;
+    /**
+     * The position of the next entry to be claimed, only used by the producer.
+     */
+    private long producerPosition;
+    /**
+     * The position of the next entry to be handled, only used by the consumer.
+     */
+    private long consumerPosition;
+
+    /**
+     * Constructor for the ring buffer.
+     *
+     * @param capacity The minimum number of entries, rounded up to a power of two.
+     * @param entryFactory Creates the preallocated entries.
+     */
+    @SuppressWarnings("unchecked")
+    SpscRingBuffer(final int capacity, final Supplier<T> entryFactory) {
+        final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+
+        this.entries = (T[]) new Object[size];
+        for (int i = 0; i < size; i++) {
+            entries[i] = entryFactory.get();
+        }
+
+        this.mask = size - 1;
+        this.published = new AtomicLong();
+        this.released = new AtomicLong();
+        this.cachedReleased = 0;
+        this.cachedPublished = 0;
+        this.producerPosition = 0;
+        this.consumerPosition = 0;
+    }
+
+    /**
+     * Claims the next free entry, to be filled and then published. Claiming again without publishing returns the
+     * same entry.
+     *
+     * @return The entry to be filled, or null if the buffer is full.
+     */
+    T claim() {
+        if (producerPosition - cachedReleased >= entries.length) {
+            cachedReleased = released.get();
+
+            if (producerPosition - cachedReleased >= entries.length) {
+                return null;
+            }
+        }
+
+        return entries[(int) producerPosition & mask];
+    }
+
+    /**
+     * Publishes the claimed entry, handing it to the consumer.
+     */
+    void publish() {
+        published.lazySet(++producerPosition);
+    }
+
+    /**
+     * Handles the published entries, in order, up to the given batch size. The handled entries are released once
+     * the batch is over, so the handler must copy out whatever it needs. The handler can stop the batch early, by
+     * refusing an entry, which is then left to be handled by the next drain.
+     *
+     * @param handler Handles each entry, returning false to refuse it.
+     * @param maxBatchSize The maximum number of entries to be handled.
+     * @return The number of handled entries.
+     */
+    int drain(final Predicate<T> handler, final int maxBatchSize) {
+        long available = cachedPublished - consumerPosition;
+
+        if (available == 0) {
+            cachedPublished = published.get();
+            available = cachedPublished - consumerPosition;
+
+            if (available == 0) {
+                return 0;
+            }
+        }
+
+        final long batchSize = Math.min(available, maxBatchSize);
+        int handled = 0;
+
+        while (handled < batchSize && handler.test(entries[(int) (consumerPosition + handled) & mask])) {
+            handled++;
+        }
+
+        if (handled > 0) {
+            consumerPosition += handled;
+            released.lazySet(consumerPosition);
+        }
+
+        return handled;
+    }
+
+    /**
+     * Returns the number of entries in the buffer. It's only an estimate while the buffer is in use.
+     *
+     * @return The number of published entries that haven't been released yet.
+     */
+    int size() {
+        return (int) (published.get() - released.get());
+    }
+
+    /**
+     * Returns the number of entries the buffer holds.
+     *
+     * @return The buffer capacity.
+     */
+    int capacity() {
+        return entries.length;
+    }
+}
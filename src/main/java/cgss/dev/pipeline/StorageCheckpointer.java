@@ -0,0 +1,268 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import org.apache.kafka.common.TopicPartition;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Creates checkpoints of the storage, each along with the consumer offsets it corresponds to, so a node can be brought
+ * up from a copy of it, consuming from those offsets, instead of consuming the source topics all over again.
+ * Each checkpoint is a directory under the checkpoints directory, holding the storage snapshot and the offsets file.
+ * Offsets are read before the snapshot is taken, so the snapshot holds at least every record before them. Records
+ * saved after them are consumed again when restoring, and events emitted after the snapshot are emitted again.
+ */
+public class StorageCheckpointer {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(StorageCheckpointer.class.getSimpleName());
+    /**
+     * The prefix of every checkpoint directory, followed by its creation time in epoch millis.
+     */
+    private static final String CHECKPOINT_PREFIX = "checkpoint-";
+    /**
+     * The directory of the storage snapshot, inside the checkpoint.
+     */
+    public static final String STORAGE_DIRECTORY = "storage";
+    /**
+     * The offsets file, inside the checkpoint.
+     */
+    private static final String OFFSETS_FILE = "offsets.properties";
+
+    /**
+     * The storage to be checkpointed.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * The directory the checkpoints are created in.
+     */
+    private final Path checkpointsPath;
+    /**
+     * The interval between periodic checkpoints, zero to only create them on demand.
+     */
+    private final Duration checkpointInterval;
+    /**
+     * How many checkpoints are kept, older ones are deleted.
+     */
+    private final long retainedCheckpoints;
+    /**
+     * The clock naming the checkpoints and telling when the next one is due.
+     */
+    private final Clock clock;
+    /**
+     * When the last checkpoint was created, in epoch millis.
+     */
+    private long lastCheckpointMillis;
+
+    /**
+     * Constructor for the storage checkpointer.
+     *
+     * @param kvStorage The storage to be checkpointed.
+     * @param checkpointsPath The directory the checkpoints are created in.
+     * @param checkpointInterval The interval between periodic checkpoints, zero to only create them on demand.
+     * @param retainedCheckpoints How many checkpoints are kept, older ones are deleted.
+     * @param clock The clock naming the checkpoints and telling when the next one is due.
+     */
+    public StorageCheckpointer(
+            final KVStorage kvStorage,
+            final Path checkpointsPath,
+            final Duration checkpointInterval,
+            final long retainedCheckpoints,
+            final Clock clock) {
+        this.kvStorage = kvStorage;
+        this.checkpointsPath = checkpointsPath;
+        this.checkpointInterval = checkpointInterval;
+        this.retainedCheckpoints = Math.max(1, retainedCheckpoints);
+        this.clock = clock;
+        this.lastCheckpointMillis = clock.millis();
+    }
+
+    /**
+     * Checks if a periodic checkpoint is due.
+     *
+     * @return If the checkpoint interval has elapsed since the last checkpoint.
+     */
+    public boolean isDue() {
+        return !checkpointInterval.isZero() && clock.millis() - lastCheckpointMillis >= checkpointInterval.toMillis();
+    }
+
+    /**
+     * Creates a checkpoint of the storage, recording the given offsets along with it, and deletes the oldest
+     * checkpoints beyond the retained ones.
+     * The offsets must be read before calling this, so the storage holds every record before them.
+     *
+     * @param offsets The offset of the next record to be consumed, per partition.
+     * @return The checkpoint directory.
+     * @throws KVStorageException If it fails to snapshot the storage.
+     * @throws IOException If it fails to write the offsets.
+     */
+    public Path checkpoint(final Map<TopicPartition, Long> offsets) throws KVStorageException, IOException {
+        lastCheckpointMillis = clock.millis();
+
+        Files.createDirectories(checkpointsPath);
+        final Path checkpointPath = checkpointsPath.resolve(CHECKPOINT_PREFIX + lastCheckpointMillis);
+        Files.createDirectory(checkpointPath);
+
+        final long startNanos = System.nanoTime();
+        kvStorage.CreateCheckpoint(checkpointPath.resolve(STORAGE_DIRECTORY).toString());
+        writeOffsets(checkpointPath, offsets);
+
+        logger.info(String.format("Created checkpoint %s at %s in %d ms.", checkpointPath, offsets, Duration.ofNanos(System.nanoTime() - startNanos).toMillis()));
+
+        deleteOldCheckpoints();
+
+        return checkpointPath;
+    }
+
+    /**
+     * Reads the offsets recorded along with the given checkpoint.
+     *
+     * @param checkpointPath The checkpoint directory.
+     * @return The offset of the next record to be consumed, per partition.
+     * @throws IOException If it fails to read the offsets.
+     */
+    public static Map<TopicPartition, Long> readOffsets(final Path checkpointPath) throws IOException {
+        final Properties properties = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(checkpointPath.resolve(OFFSETS_FILE))) {
+            properties.load(inputStream);
+        }
+
+        final Map<TopicPartition, Long> offsets = new HashMap<>();
+        for (final String name : properties.stringPropertyNames()) {
+            // Topic names can have dashes, but not the partition number after the last one.
+            final int separator = name.lastIndexOf('-');
+
+            offsets.put(new TopicPartition(name.substring(0, separator), Integer.parseInt(name.substring(separator + 1))), Long.parseLong(properties.getProperty(name)));
+        }
+
+        return offsets;
+    }
+
+    /**
+     * Copies the storage snapshot of the given checkpoint into the given directory, so it can be opened there without
+     * changing the checkpoint. The directory must not exist yet, or be empty.
+     *
+     * @param checkpointPath The checkpoint directory.
+     * @param storagePath The directory the storage is opened from.
+     * @throws IOException If it fails to copy the files, or the directory isn't empty.
+     */
+    public static void copyStorage(final Path checkpointPath, final Path storagePath) throws IOException {
+        copyDirectory(checkpointPath, checkpointPath.resolve(STORAGE_DIRECTORY), storagePath);
+    }
+
+    /**
+     * Copies one stripe of the storage snapshot of the given checkpoint into the given directory, for storages
+     * snapshotting each of their stripes into a directory of its own. The directory must not exist yet, or be empty.
+     *
+     * @param checkpointPath The checkpoint directory.
+     * @param stripeDirectory The directory of the stripe, inside the storage snapshot.
+     * @param storagePath The directory the stripe is opened from.
+     * @throws IOException If it fails to copy the files, or the directory isn't empty.
+     */
+    public static void copyStorage(final Path checkpointPath, final String stripeDirectory, final Path storagePath) throws IOException {
+        copyDirectory(checkpointPath, checkpointPath.resolve(STORAGE_DIRECTORY).resolve(stripeDirectory), storagePath);
+    }
+
+    /**
+     * Copies the files of a storage snapshot into the given directory, which must not exist yet, or be empty.
+     *
+     * @param checkpointPath The checkpoint directory.
+     * @param snapshotPath The storage snapshot directory, inside the checkpoint.
+     * @param storagePath The directory the storage is opened from.
+     * @throws IOException If it fails to copy the files, or the directory isn't empty.
+     */
+    private static void copyDirectory(final Path checkpointPath, final Path snapshotPath, final Path storagePath) throws IOException {
+        if (Files.exists(storagePath)) {
+            try (final Stream<Path> existing = Files.list(storagePath)) {
+                if (existing.findAny().isPresent()) {
+                    throw new IOException(String.format("%s isn't empty, not restoring %s into it", storagePath, checkpointPath));
+                }
+            }
+        }
+
+        Files.createDirectories(storagePath);
+
+        final List<Path> files;
+        try (final Stream<Path> stream = Files.list(snapshotPath)) {
+            files = stream.collect(Collectors.toList());
+        }
+
+        for (final Path file : files) {
+            Files.copy(file, storagePath.resolve(file.getFileName()), StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+    /**
+     * Writes the offsets file of a checkpoint.
+     *
+     * @param checkpointPath The checkpoint directory.
+     * @param offsets The offset of the next record to be consumed, per partition.
+     * @throws IOException If it fails to write the file.
+     */
+    private static void writeOffsets(final Path checkpointPath, final Map<TopicPartition, Long> offsets) throws IOException {
+        final Properties properties = new Properties();
+        for (final Map.Entry<TopicPartition, Long> entry : offsets.entrySet()) {
+            properties.setProperty(entry.getKey().toString(), String.valueOf(entry.getValue()));
+        }
+
+        try (final OutputStream outputStream = Files.newOutputStream(checkpointPath.resolve(OFFSETS_FILE))) {
+            properties.store(outputStream, "Consumer offsets");
+        }
+    }
+
+    /**
+     * Deletes the oldest checkpoints, keeping the retained ones.
+     *
+     * @throws IOException If it fails to list or delete them.
+     */
+    private void deleteOldCheckpoints() throws IOException {
+        final List<Path> checkpoints;
+        try (final Stream<Path> stream = Files.list(checkpointsPath)) {
+            checkpoints = stream
+                    .filter(path -> path.getFileName().toString().startsWith(CHECKPOINT_PREFIX))
+                    .sorted(Comparator.comparingLong(StorageCheckpointer::creationMillis).reversed())
+                    .collect(Collectors.toList());
+        }
+
+        for (final Path checkpoint : checkpoints.subList((int) Math.min(retainedCheckpoints, checkpoints.size()), checkpoints.size())) {
+            try (final Stream<Path> stream = Files.walk(checkpoint)) {
+                for (final Path path : stream.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.delete(path);
+                }
+            }
+
+            logger.info(String.format("Deleted old checkpoint %s.", checkpoint));
+        }
+    }
+
+    /**
+     * Returns when the given checkpoint was created, from its name.
+     *
+     * @param checkpointPath The checkpoint directory.
+     * @return The creation time in epoch millis, 0 if the name isn't a checkpoint one.
+     */
+    private static long creationMillis(final Path checkpointPath) {
+        try {
+            return Long.parseLong(checkpointPath.getFileName().toString().substring(CHECKPOINT_PREFIX.length()));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+}
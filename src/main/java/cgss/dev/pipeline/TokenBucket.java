@@ -0,0 +1,94 @@
+package cgss.dev.pipeline;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A token bucket, used to limit how fast something happens.
+ * The bucket is refilled continuously at the given rate, and holds up to one second worth of tokens, which allows for
+ * small bursts. Acquiring tokens blocks until the bucket has them. Requests bigger than the bucket are allowed by
+ * putting the bucket in debt, so they never block forever.
+ * A rate of zero means there's no limit. The rate can be changed while the bucket is in use.
+ */
+public class TokenBucket {
+    /**
+     * How many tokens are added to the bucket per second.
+     * Volatile, as it can be changed without waiting for the acquiring threads.
+     */
+    private volatile long tokensPerSecond;
+    /**
+     * The tokens currently in the bucket. Can be negative, if the bucket is in debt.
+     */
+    private double tokens;
+    /**
+     * When the bucket was last refilled, in nanos.
+     */
+    private long lastRefillNanos;
+
+    /**
+     * Constructor for the token bucket. It starts full.
+     *
+     * @param tokensPerSecond How many tokens are added to the bucket per second, zero for no limit.
+     */
+    public TokenBucket(final long tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+        this.tokens = tokensPerSecond;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Takes the given amount of tokens from the bucket, waiting until they are available.
+     *
+     * @param amount The amount of tokens to take.
+     * @throws InterruptedException If interrupted while waiting for the tokens.
+     */
+    public synchronized void acquire(final long amount) throws InterruptedException {
+        final long tokensPerSecond = this.tokensPerSecond;
+
+        if (tokensPerSecond <= 0) {
+            // Keeps the bucket from refilling a huge amount of tokens once a limit is set again.
+            lastRefillNanos = System.nanoTime();
+            tokens = 0;
+
+            return;
+        }
+
+        refill(tokensPerSecond);
+
+        tokens -= amount;
+
+        if (tokens < 0) {
+            TimeUnit.NANOSECONDS.sleep((long) (-tokens * TimeUnit.SECONDS.toNanos(1) / tokensPerSecond));
+        }
+    }
+
+    /**
+     * Changes the rate of the bucket. It's used from the next acquire on.
+     *
+     * @param tokensPerSecond How many tokens are added to the bucket per second, zero for no limit.
+     */
+    public void setTokensPerSecond(final long tokensPerSecond) {
+        this.tokensPerSecond = tokensPerSecond;
+    }
+
+    /**
+     * Returns the rate of the bucket.
+     *
+     * @return How many tokens are added to the bucket per second, zero for no limit.
+     */
+    public long getTokensPerSecond() {
+        return tokensPerSecond;
+    }
+
+    /**
+     * Adds the tokens accumulated since the last refill, up to one second worth of them.
+     *
+     * @param tokensPerSecond The current rate of the bucket.
+     */
+    private void refill(final long tokensPerSecond) {
+        final long nowNanos = System.nanoTime();
+        final double refilledTokens = (nowNanos - lastRefillNanos) * tokensPerSecond / (double) TimeUnit.SECONDS.toNanos(1);
+
+        tokens = Math.min(tokensPerSecond, tokens + refilledTokens);
+        lastRefillNanos = nowNanos;
+    }
+}
@@ -1,12 +1,17 @@
 package cgss.dev.storage;
 
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Stream;
 
 /**
  * This interface represents a key value storage.
  * The idea is that, given a key, you would store a given value.
- * Currently, we never fetch one single value, due to the nature of the application, so we rely on streaming in order
- * to access the values in the key value storage.
+ * Due to the nature of the application, the events are accessed by streaming the values in key order. Single values are
+ * only fetched by key for bookkeeping, e.g. the entries of an index.
  */
 public interface KVStorage {
 
@@ -18,6 +23,19 @@ public interface KVStorage {
      */
     void SaveValue(final KeyValue keyValue) throws KVStorageException;
 
+    /**
+     * Saves the given values, in order. Storages able to write them at once should do so, by default they're saved
+     * one by one. If it fails, any of the values might have been saved, so saving them again must be harmless.
+     *
+     * @param keyValues Objects representing the key values.
+     * @throws KVStorageException If it fails to save any of them.
+     */
+    default void SaveValues(final List<KeyValue> keyValues) throws KVStorageException {
+        for (final KeyValue keyValue : keyValues) {
+            SaveValue(keyValue);
+        }
+    }
+
     /**
      * Deletes the value associated with the given key, if it exists.
      *
@@ -26,6 +44,23 @@ public interface KVStorage {
      */
     void DeleteValue(final byte[] key) throws KVStorageException;
 
+    /**
+     * Reads the value associated with the given key. Storages able to look a key up should do so, by default it's
+     * found by streaming from it.
+     *
+     * @param key The key for the given value.
+     * @return An optional containing the value, empty if it isn't stored.
+     * @throws KVStorageException If it fails to read it.
+     */
+    default Optional<byte[]> GetValue(final byte[] key) throws KVStorageException {
+        try (final Stream<KeyValue> keyValues = StreamValuesFrom(key)) {
+            return keyValues
+                    .findFirst()
+                    .filter(keyValue -> Arrays.equals(keyValue.getKey(), key))
+                    .map(KeyValue::getValue);
+        }
+    }
+
     /**
      * Streams all the current pairs stored by this KV Storage.
      *
@@ -33,4 +68,71 @@ public interface KVStorage {
      */
     Stream<KeyValue> StreamValues();
 
+    /**
+     * Streams the pairs stored by this KV Storage whose keys are greater than or equal to the given key, when compared
+     * as unsigned bytes. Used to resume a previous stream from where it stopped.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the current KV storage, starting from the given key, at the moment of calling.
+     */
+    Stream<KeyValue> StreamValuesFrom(final byte[] fromKey);
+
+    /**
+     * Returns how many values are currently stored. Storages are allowed to estimate it.
+     *
+     * @return The number of stored values.
+     * @throws KVStorageException If it fails to read the number of values.
+     */
+    long CountValues() throws KVStorageException;
+
+    /**
+     * Returns how many bytes are currently used by the stored values. Storages are allowed to estimate it.
+     *
+     * @return The number of bytes used by the stored values.
+     * @throws KVStorageException If it fails to read the used bytes.
+     */
+    long SizeInBytes() throws KVStorageException;
+
+    /**
+     * Returns if writes are currently being stalled by the storage, e.g, because it can't keep up with compactions.
+     *
+     * @return If writes are being stalled.
+     * @throws KVStorageException If it fails to read the write state.
+     */
+    default boolean IsWriteStalled() throws KVStorageException {
+        return false;
+    }
+
+    /**
+     * Returns the storage engine internal properties worth monitoring, e.g. memtable sizes or compaction backlog.
+     *
+     * @return The properties by name, empty if the storage has none.
+     * @throws KVStorageException If it fails to read the properties.
+     */
+    default Map<String, Long> GetProperties() throws KVStorageException {
+        return new LinkedHashMap<>();
+    }
+
+    /**
+     * Creates a consistent snapshot of the stored values under the given path, which must not exist yet, while the
+     * storage keeps being used. The snapshot can be opened as a storage of the same kind.
+     *
+     * @param path The directory to create the snapshot in.
+     * @throws KVStorageException If it fails to create it, or the storage doesn't support snapshots.
+     */
+    default void CreateCheckpoint(final String path) throws KVStorageException {
+        throw new KVStorageException(new UnsupportedOperationException(String.format("%s doesn't support checkpoints", getClass().getSimpleName())));
+    }
+
+    /**
+     * Adds the values of the given prebuilt storage files at once, bypassing the regular writes. Used to bulk load
+     * events. The files might be moved into the storage.
+     *
+     * @param paths The storage files, each sorted by key.
+     * @throws KVStorageException If it fails to add them, or the storage doesn't support it.
+     */
+    default void IngestFiles(final List<String> paths) throws KVStorageException {
+        throw new KVStorageException(new UnsupportedOperationException(String.format("%s doesn't support ingesting files", getClass().getSimpleName())));
+    }
+
 }
@@ -1,9 +1,10 @@
-package cgss.dev.storage;
-
-/**
- * Enum used to define which storage backend is supposed to be used.
- * These are the possible values for 'storage.type'.
- */
-public enum StorageEnum {
-    NOP, MEMORY, ROCKSDB
-}
+package cgss.dev.storage;
+
+/**
+ * Enum used to define which storage backend is supposed to be used.
+ * These are the possible values for 'storage.type'.
+ * TIERED keeps the values on RocksDB, with the ones about to be due in memory as well.
+ */
+public enum StorageEnum {
+    NOP, MEMORY, ROCKSDB, TIERED
+}
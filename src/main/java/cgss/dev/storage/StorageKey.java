@@ -0,0 +1,52 @@
+package cgss.dev.storage;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * Builds and reads the keys used to store events.
+ * A key is made of the event timestamp followed by a sequence number, both as big-endian longs with their sign bit
+ * flipped. This way, comparing keys as unsigned bytes sorts them by timestamp, so storages that keep their keys sorted
+ * return the oldest events first.
+ */
+public final class StorageKey {
+    /**
+     * The size of a key, in bytes.
+     */
+    public static final int SIZE = 2 * Long.BYTES;
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private StorageKey() {}
+
+    /**
+     * Builds the key for an event.
+     *
+     * @param timestamp The event timestamp.
+     * @param sequence A sequence number to tell apart events with the same timestamp.
+     * @return The storage key.
+     */
+    public static byte[] encode(final Instant timestamp, final long sequence) {
+        return ByteBuffer
+                .allocate(SIZE)
+                .putLong(timestamp.toEpochMilli() ^ Long.MIN_VALUE)
+                .putLong(sequence ^ Long.MIN_VALUE)
+                .array();
+    }
+
+    /**
+     * Reads the event timestamp from the given key.
+     * Keys that are too short to contain a timestamp are considered to be from the epoch, so they sort first.
+     *
+     * @param key The storage key.
+     * @return The event timestamp.
+     */
+    public static Instant getTimestamp(final byte[] key) {
+        if (key == null || key.length < Long.BYTES) {
+            return Instant.EPOCH;
+        }
+
+        return Instant.ofEpochMilli(ByteBuffer.wrap(key).getLong() ^ Long.MIN_VALUE);
+    }
+}
@@ -0,0 +1,337 @@
+package cgss.dev.storage;
+
+import org.javatuples.Pair;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Copies every value of a storage into another, so the storage engine can be switched without draining the backlog.
+ * <p>
+ * Values are streamed from the source in key order, and saved to the target in batches, by a pool of workers. Only
+ * as many batches as there are workers are held in memory at once. The last key of the batches saved so far, without
+ * gaps, is recorded in a progress file, so an interrupted migration resumes from there instead of starting over.
+ * Once done, the values in both storages are counted, and the migration is only recorded as completed if they match.
+ * <p>
+ * Neither storage should be written to by anything else while migrating.
+ */
+public class StorageMigrator {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(StorageMigrator.class.getSimpleName());
+    /**
+     * The progress file property with the last migrated key, in Base64.
+     */
+    private static final String LAST_KEY_PROPERTY = "last.key";
+    /**
+     * The progress file property with the number of migrated values.
+     */
+    private static final String MIGRATED_PROPERTY = "migrated";
+    /**
+     * The progress file property telling if the migration was completed.
+     */
+    private static final String COMPLETED_PROPERTY = "completed";
+
+    /**
+     * The storage the values are copied from.
+     */
+    private final KVStorage source;
+    /**
+     * The storage the values are copied to.
+     */
+    private final KVStorage target;
+    /**
+     * How many values are saved to the target at once.
+     */
+    private final int batchSize;
+    /**
+     * How many batches are saved at once.
+     */
+    private final int parallelism;
+    /**
+     * The file the progress is recorded to.
+     */
+    private final Path progressPath;
+    /**
+     * The batches saved out of order, by index, waiting for the ones before them. Each one has its last key and size.
+     */
+    private final TreeMap<Long, Pair<byte[], Integer>> savedBatches;
+    /**
+     * The index of the next batch to be recorded as saved.
+     */
+    private long nextBatchIndex;
+    /**
+     * The last key of the batches recorded as saved, null if none.
+     */
+    private byte[] lastKey;
+    /**
+     * The number of values in the batches recorded as saved.
+     */
+    private long migrated;
+
+    /**
+     * Constructor for the storage migrator.
+     *
+     * @param source The storage the values are copied from.
+     * @param target The storage the values are copied to. It must be empty, unless resuming.
+     * @param batchSize How many values are saved to the target at once.
+     * @param parallelism How many batches are saved at once.
+     * @param progressPath The file the progress is recorded to.
+     */
+    public StorageMigrator(
+            final KVStorage source,
+            final KVStorage target,
+            final int batchSize,
+            final int parallelism,
+            final Path progressPath) {
+        if (batchSize <= 0 || parallelism <= 0) {
+            throw new IllegalArgumentException("batch size and parallelism must be positive");
+        }
+
+        this.source = source;
+        this.target = target;
+        this.batchSize = batchSize;
+        this.parallelism = parallelism;
+        this.progressPath = progressPath;
+        this.savedBatches = new TreeMap<>();
+    }
+
+    /**
+     * Copies the values, resuming from the progress file if there's one. Does nothing if it says the migration was
+     * completed already.
+     *
+     * @return The number of values in the target.
+     * @throws KVStorageException If it fails to read or save any value, or the counts don't match.
+     * @throws IOException If it fails to read or write the progress file.
+     */
+    public long migrate() throws KVStorageException, IOException {
+        final Properties progress = readProgress();
+        if (Boolean.parseBoolean(progress.getProperty(COMPLETED_PROPERTY))) {
+            logger.info(String.format("Migration recorded in %s was completed already.", progressPath));
+
+            return Long.parseLong(progress.getProperty(MIGRATED_PROPERTY));
+        }
+
+        final byte[] resumeKey = progress.containsKey(LAST_KEY_PROPERTY) ? Base64.getDecoder().decode(progress.getProperty(LAST_KEY_PROPERTY)) : null;
+        synchronized (this) {
+            savedBatches.clear();
+            nextBatchIndex = 0;
+            lastKey = resumeKey;
+            migrated = Long.parseLong(progress.getProperty(MIGRATED_PROPERTY, "0"));
+        }
+
+        if (resumeKey == null) {
+            try (final Stream<KeyValue> targetValues = target.StreamValues()) {
+                if (targetValues.findAny().isPresent()) {
+                    throw new KVStorageException(new IllegalStateException("the target storage isn't empty"));
+                }
+            }
+        } else {
+            logger.info(String.format("Resuming the migration after %d values.", migrated));
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, StorageMigrator.class.getSimpleName());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        final Semaphore inFlightBatches = new Semaphore(parallelism);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        try (final Stream<KeyValue> sourceValues = resumeKey == null ? source.StreamValues() : source.StreamValuesFrom(resumeKey)) {
+            final Iterator<KeyValue> iterator = sourceValues.iterator();
+            List<KeyValue> batch = new ArrayList<>(batchSize);
+            long batchIndex = 0;
+
+            while (iterator.hasNext() && failure.get() == null) {
+                final KeyValue keyValue = iterator.next();
+
+                // Streaming from a key includes it, but it was already migrated.
+                if (resumeKey != null && Arrays.equals(keyValue.getKey(), resumeKey)) {
+                    continue;
+                }
+
+                batch.add(keyValue);
+                if (batch.size() == batchSize) {
+                    submitBatch(executor, inFlightBatches, failure, batchIndex++, batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+
+            if (!batch.isEmpty() && failure.get() == null) {
+                submitBatch(executor, inFlightBatches, failure, batchIndex, batch);
+            }
+
+            // Waits for the batches in flight.
+            inFlightBatches.acquire(parallelism);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new KVStorageException(e);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            if (failure.get() instanceof KVStorageException) {
+                throw (KVStorageException) failure.get();
+            }
+
+            throw new KVStorageException(failure.get());
+        }
+
+        return verify();
+    }
+
+    /**
+     * Hands the given batch to the workers, waiting for one of the batches in flight to be saved if there are too
+     * many. The first failure is kept, and stops the migration.
+     *
+     * @param executor The workers.
+     * @param inFlightBatches The permits for the batches in flight.
+     * @param failure The first failure.
+     * @param batchIndex The position of the batch in the source.
+     * @param batch The values of the batch.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private void submitBatch(
+            final ExecutorService executor,
+            final Semaphore inFlightBatches,
+            final AtomicReference<Throwable> failure,
+            final long batchIndex,
+            final List<KeyValue> batch) throws InterruptedException {
+        inFlightBatches.acquire();
+        if (failure.get() != null) {
+            inFlightBatches.release();
+            return;
+        }
+
+        executor.execute(() -> {
+            try {
+                target.SaveValues(batch);
+                batchSaved(batchIndex, batch.get(batch.size() - 1).getKey(), batch.size());
+            } catch (final Throwable e) {
+                failure.compareAndSet(null, e);
+            } finally {
+                inFlightBatches.release();
+            }
+        });
+    }
+
+    /**
+     * Records that the given batch was saved. The progress only moves once the batches before it are saved too, so
+     * resuming never skips a value.
+     *
+     * @param batchIndex The position of the batch in the source.
+     * @param batchLastKey The last key of the batch.
+     * @param size The number of values in the batch.
+     * @throws IOException If it fails to write the progress file.
+     */
+    private synchronized void batchSaved(final long batchIndex, final byte[] batchLastKey, final int size) throws IOException {
+        savedBatches.put(batchIndex, Pair.with(batchLastKey, size));
+
+        boolean advanced = false;
+        while (!savedBatches.isEmpty() && savedBatches.firstKey() == nextBatchIndex) {
+            final Pair<byte[], Integer> savedBatch = savedBatches.pollFirstEntry().getValue();
+            lastKey = savedBatch.getValue0();
+            migrated += savedBatch.getValue1();
+            nextBatchIndex++;
+            advanced = true;
+        }
+
+        if (advanced) {
+            writeProgress(false);
+        }
+    }
+
+    /**
+     * Counts the values in both storages, recording the migration as completed if they match.
+     *
+     * @return The number of values in the target.
+     * @throws KVStorageException If it fails to count the values, or the counts don't match.
+     * @throws IOException If it fails to write the progress file.
+     */
+    private long verify() throws KVStorageException, IOException {
+        final long sourceCount;
+        try (final Stream<KeyValue> sourceValues = source.StreamValues()) {
+            sourceCount = sourceValues.count();
+        }
+        final long targetCount;
+        try (final Stream<KeyValue> targetValues = target.StreamValues()) {
+            targetCount = targetValues.count();
+        }
+
+        if (sourceCount != targetCount || targetCount != migrated) {
+            throw new KVStorageException(new IllegalStateException(String.format(
+                    "the source holds %d values and the target %d, but %d were migrated", sourceCount, targetCount, migrated)));
+        }
+
+        synchronized (this) {
+            writeProgress(true);
+        }
+
+        logger.info(String.format("Migrated %d values.", migrated));
+
+        return targetCount;
+    }
+
+    /**
+     * Reads the progress file. If it doesn't exist, there's no progress.
+     *
+     * @return The recorded progress.
+     * @throws IOException If it fails to read the file.
+     */
+    private Properties readProgress() throws IOException {
+        final Properties properties = new Properties();
+
+        if (Files.exists(progressPath)) {
+            try (final InputStream inputStream = Files.newInputStream(progressPath)) {
+                properties.load(inputStream);
+            }
+        }
+
+        return properties;
+    }
+
+    /**
+     * Writes the current progress to the file. It's written to a temporary file first, and then moved over the old
+     * one, so a crash never leaves a partially written file behind.
+     *
+     * @param completed If the migration was completed.
+     * @throws IOException If it fails to write the file.
+     */
+    private void writeProgress(final boolean completed) throws IOException {
+        final Properties properties = new Properties();
+        if (lastKey != null) {
+            properties.setProperty(LAST_KEY_PROPERTY, Base64.getEncoder().encodeToString(lastKey));
+        }
+        properties.setProperty(MIGRATED_PROPERTY, String.valueOf(migrated));
+        properties.setProperty(COMPLETED_PROPERTY, String.valueOf(completed));
+
+        final Path temporaryPath = progressPath.resolveSibling(progressPath.getFileName() + ".tmp");
+        try (final OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+            properties.store(outputStream, "Storage migration progress");
+        }
+
+        Files.move(temporaryPath, progressPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
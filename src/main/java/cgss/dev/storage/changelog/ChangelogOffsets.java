@@ -0,0 +1,112 @@
+package cgss.dev.storage.changelog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps track of how far the local storage has got in each partition of the changelog topic, and saves it to a file
+ * next to it, so a restore can resume from there instead of reading the whole changelog again.
+ * The offsets are the ones of the next changelog record to be applied, as expected by Kafka.
+ */
+public class ChangelogOffsets {
+    /**
+     * The file the offsets are saved to.
+     */
+    private final Path offsetsPath;
+    /**
+     * The next offset of each partition of the changelog topic.
+     */
+    private final ConcurrentMap<Integer, Long> offsets;
+
+    /**
+     * Constructor for the changelog offsets. Nothing is loaded until asked to.
+     *
+     * @param offsetsPath The file the offsets are saved to.
+     */
+    public ChangelogOffsets(final Path offsetsPath) {
+        this.offsetsPath = offsetsPath;
+        this.offsets = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Loads the offsets from the file, replacing the current ones. If the file doesn't exist, there are no offsets.
+     *
+     * @throws IOException If it fails to read the file.
+     */
+    public void load() throws IOException {
+        offsets.clear();
+
+        if (!Files.exists(offsetsPath)) {
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(offsetsPath)) {
+            properties.load(inputStream);
+        }
+
+        for (final String partition : properties.stringPropertyNames()) {
+            offsets.put(Integer.parseInt(partition), Long.parseLong(properties.getProperty(partition)));
+        }
+    }
+
+    /**
+     * Saves the current offsets to the file. It's written to a temporary file first, and then moved over the old one,
+     * so a crash never leaves a partially written file behind.
+     *
+     * @throws IOException If it fails to write the file.
+     */
+    public void store() throws IOException {
+        final Properties properties = new Properties();
+        for (final Map.Entry<Integer, Long> entry : offsets.entrySet()) {
+            properties.setProperty(String.valueOf(entry.getKey()), String.valueOf(entry.getValue()));
+        }
+
+        final Path temporaryPath = offsetsPath.resolveSibling(offsetsPath.getFileName() + ".tmp");
+        try (final OutputStream outputStream = Files.newOutputStream(temporaryPath)) {
+            properties.store(outputStream, "Changelog offsets");
+        }
+
+        Files.move(temporaryPath, offsetsPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records that the changelog record at the given offset has been applied. Offsets never move backwards.
+     *
+     * @param partition The changelog partition.
+     * @param offset The offset of the applied record.
+     */
+    public void applied(final int partition, final long offset) {
+        offsets.merge(partition, offset + 1, Math::max);
+    }
+
+    /**
+     * Gets the next offset to be applied of the given partition.
+     *
+     * @param partition The changelog partition.
+     * @return An optional containing the offset, empty if nothing of the partition has been applied.
+     */
+    public Optional<Long> get(final int partition) {
+        return Optional.ofNullable(offsets.get(partition));
+    }
+
+    /**
+     * Gets a copy of the current offsets.
+     *
+     * @return The next offset of each partition.
+     */
+    public Map<Integer, Long> getAll() {
+        return Collections.unmodifiableMap(new HashMap<>(offsets));
+    }
+}
@@ -0,0 +1,241 @@
+package cgss.dev.storage.changelog;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the changelog topic to a local storage, starting from the offsets it already holds.
+ * It's used in two ways: an active instance restores up to the end of the changelog before it starts consuming, and
+ * a standby instance runs it as a thread, keeping a warm replica, so taking over only restores what's left.
+ * The changelog consumer is assigned all the changelog partitions, it's not part of a consumer group.
+ */
+public class ChangelogRestorer extends Thread {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(ChangelogRestorer.class.getSimpleName());
+    /**
+     * The consumer reading the changelog topic.
+     */
+    private final Consumer<byte[], byte[]> changelogConsumer;
+    /**
+     * The changelog topic.
+     */
+    private final String changelogTopic;
+    /**
+     * The storage the changes are applied to. It shouldn't send them to the changelog again.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * The changelog offsets the storage holds.
+     */
+    private final ChangelogOffsets changelogOffsets;
+    /**
+     * How long to poll the changelog for, and how often the offsets are saved while running as a standby.
+     */
+    private final Duration pollIntervalDuration;
+    /**
+     * If the thread has been asked to stop.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Constructor for the changelog restorer.
+     *
+     * @param changelogConsumer The consumer reading the changelog topic, not subscribed to anything.
+     * @param changelogTopic The changelog topic.
+     * @param kvStorage The storage the changes are applied to.
+     * @param changelogOffsets The changelog offsets the storage holds, already loaded.
+     * @param pollIntervalDuration How long to poll the changelog for.
+     */
+    public ChangelogRestorer(
+            final Consumer<byte[], byte[]> changelogConsumer,
+            final String changelogTopic,
+            final KVStorage kvStorage,
+            final ChangelogOffsets changelogOffsets,
+            final Duration pollIntervalDuration) {
+        this.changelogConsumer = changelogConsumer;
+        this.changelogTopic = changelogTopic;
+        this.kvStorage = kvStorage;
+        this.changelogOffsets = changelogOffsets;
+        this.pollIntervalDuration = pollIntervalDuration;
+        this.stopped = false;
+    }
+
+    /**
+     * Restores the changelog up to its current end, then saves the offsets. Used by an active instance before it
+     * starts consuming, which then sends the changes itself.
+     *
+     * @return The number of changes applied.
+     * @throws KVStorageException If it fails to apply a change.
+     * @throws IOException If it fails to save the offsets.
+     */
+    public long restoreToEnd() throws KVStorageException, IOException {
+        final Collection<TopicPartition> topicPartitions = assign();
+        final Map<TopicPartition, Long> endOffsets = changelogConsumer.endOffsets(topicPartitions);
+
+        logger.info(String.format("Restoring %s from %s up to %s.", changelogTopic, changelogOffsets.getAll(), endOffsets));
+
+        long applied = 0;
+        while (!stopped && !reached(endOffsets)) {
+            applied += apply(changelogConsumer.poll(pollIntervalDuration));
+        }
+
+        changelogOffsets.store();
+
+        logger.info(String.format("Restored %d changes from %s.", applied, changelogTopic));
+
+        return applied;
+    }
+
+    /**
+     * Stops the standby, or the restore.
+     * The consumer is woken up and closed by the standby thread itself, after saving the offsets.
+     */
+    @Override
+    public void interrupt() {
+        stopped = true;
+
+        changelogConsumer.wakeup();
+    }
+
+    /**
+     * Runs as a standby, applying the changes as they come, and saving the offsets every poll interval.
+     */
+    @Override
+    public void run() {
+        try {
+            restoreToEnd();
+
+            long lastStoreMillis = System.currentTimeMillis();
+            while (!stopped) {
+                final int applied = apply(changelogConsumer.poll(pollIntervalDuration));
+
+                if (logger.isLoggable(Level.FINE) && applied > 0) {
+                    logger.fine(String.format("Applied %d changes from %s.", applied, changelogTopic));
+                }
+
+                if (System.currentTimeMillis() - lastStoreMillis >= pollIntervalDuration.toMillis()) {
+                    changelogOffsets.store();
+                    lastStoreMillis = System.currentTimeMillis();
+                }
+            }
+        } catch (final WakeupException e) {
+            // We are shutting down.
+        } catch (final KVStorageException | IOException e) {
+            logger.severe(String.format("Standby stopped, failed applying %s: %s", changelogTopic, e.getMessage()));
+        } finally {
+            try {
+                changelogOffsets.store();
+            } catch (final IOException e) {
+                logger.warning(String.format("Failed saving the changelog offsets on shutdown: %s", e.getMessage()));
+            }
+
+            changelogConsumer.close();
+        }
+    }
+
+    /**
+     * Assigns all the changelog partitions to the consumer, seeking each one to the offset the storage holds, or to
+     * its beginning if it holds none.
+     *
+     * @return The changelog partitions.
+     */
+    private Collection<TopicPartition> assign() {
+        final List<PartitionInfo> partitionInfos = changelogConsumer.partitionsFor(changelogTopic);
+        if (partitionInfos == null || partitionInfos.isEmpty()) {
+            throw new IllegalStateException(String.format("The changelog topic %s doesn't exist.", changelogTopic));
+        }
+
+        final List<TopicPartition> topicPartitions = partitionInfos
+                .stream()
+                .map(partitionInfo -> new TopicPartition(changelogTopic, partitionInfo.partition()))
+                .collect(Collectors.toList());
+        changelogConsumer.assign(topicPartitions);
+
+        final List<TopicPartition> withoutOffset = new ArrayList<>();
+        for (final TopicPartition topicPartition : topicPartitions) {
+            final Optional<Long> offsetOpt = changelogOffsets.get(topicPartition.partition());
+
+            if (offsetOpt.isPresent()) {
+                changelogConsumer.seek(topicPartition, offsetOpt.get());
+            } else {
+                withoutOffset.add(topicPartition);
+            }
+        }
+        changelogConsumer.seekToBeginning(withoutOffset);
+
+        return topicPartitions;
+    }
+
+    /**
+     * Checks if the consumer has reached the given offsets on every partition.
+     *
+     * @param endOffsets The offsets to be reached.
+     * @return If they've all been reached.
+     */
+    private boolean reached(final Map<TopicPartition, Long> endOffsets) {
+        for (final Map.Entry<TopicPartition, Long> entry : endOffsets.entrySet()) {
+            if (changelogConsumer.position(entry.getKey()) < entry.getValue()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Applies the given changes to the storage, in order for each partition. Consecutive saves are written at once.
+     *
+     * @param consumerRecords The changes read from the changelog.
+     * @return The number of changes applied.
+     * @throws KVStorageException If it fails to apply a change.
+     */
+    private int apply(final ConsumerRecords<byte[], byte[]> consumerRecords) throws KVStorageException {
+        for (final TopicPartition topicPartition : consumerRecords.partitions()) {
+            final List<KeyValue> saves = new ArrayList<>();
+
+            for (final ConsumerRecord<byte[], byte[]> record : consumerRecords.records(topicPartition)) {
+                if (record.value() != null) {
+                    saves.add(new KeyValue(record.key(), record.value()));
+
+                    continue;
+                }
+
+                // A delete might be for one of the pending saves, so they go first.
+                if (!saves.isEmpty()) {
+                    kvStorage.SaveValues(saves);
+                    saves.clear();
+                }
+                kvStorage.DeleteValue(record.key());
+            }
+
+            if (!saves.isEmpty()) {
+                kvStorage.SaveValues(saves);
+            }
+
+            final List<ConsumerRecord<byte[], byte[]>> records = consumerRecords.records(topicPartition);
+            changelogOffsets.applied(topicPartition.partition(), records.get(records.size() - 1).offset());
+        }
+
+        return consumerRecords.count();
+    }
+}
@@ -0,0 +1,239 @@
+package cgss.dev.storage.changelog;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * A KVStorage that mirrors every save and delete of another one to a changelog topic, so a standby instance can keep
+ * a replica of it, and take over without consuming the source topics again.
+ * The changelog topic should be compacted: saves are sent keyed by the storage key, and deletes as tombstones.
+ * Saves wait for the changelog to acknowledge them, so an event is never committed on the source topics before it's in
+ * the changelog. Deletes don't, as losing one only means the standby emits the event again, which is already possible.
+ */
+public class ChangelogStorage implements KVStorage {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(ChangelogStorage.class.getSimpleName());
+    /**
+     * The storage actually holding the values.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * The producer sending to the changelog topic.
+     */
+    private final Producer<byte[], byte[]> changelogProducer;
+    /**
+     * The changelog topic.
+     */
+    private final String changelogTopic;
+    /**
+     * The changelog offsets the storage holds, updated as the changes are acknowledged.
+     */
+    private final ChangelogOffsets changelogOffsets;
+
+    /**
+     * Constructor for the changelog storage.
+     *
+     * @param kvStorage The storage actually holding the values.
+     * @param changelogProducer The producer sending to the changelog topic. It should wait for all the replicas.
+     * @param changelogTopic The changelog topic.
+     * @param changelogOffsets The changelog offsets the storage holds.
+     */
+    public ChangelogStorage(
+            final KVStorage kvStorage,
+            final Producer<byte[], byte[]> changelogProducer,
+            final String changelogTopic,
+            final ChangelogOffsets changelogOffsets) {
+        this.kvStorage = kvStorage;
+        this.changelogProducer = changelogProducer;
+        this.changelogTopic = changelogTopic;
+        this.changelogOffsets = changelogOffsets;
+    }
+
+    /**
+     * Saves the given value, and waits for it to be in the changelog.
+     *
+     * @param keyValue Object representing a key value.
+     * @throws KVStorageException If it fails to save, or to send it to the changelog.
+     */
+    @Override
+    public void SaveValue(final KeyValue keyValue) throws KVStorageException {
+        kvStorage.SaveValue(keyValue);
+
+        awaitChange(sendChange(keyValue.getKey(), keyValue.getValue()));
+    }
+
+    /**
+     * Saves the given values, and waits for all of them to be in the changelog. They're all sent before waiting, so
+     * they're batched by the producer.
+     *
+     * @param keyValues Objects representing the key values.
+     * @throws KVStorageException If it fails to save, or to send any of them to the changelog.
+     */
+    @Override
+    public void SaveValues(final List<KeyValue> keyValues) throws KVStorageException {
+        kvStorage.SaveValues(keyValues);
+
+        final List<Future<RecordMetadata>> futures = new ArrayList<>(keyValues.size());
+        for (final KeyValue keyValue : keyValues) {
+            futures.add(sendChange(keyValue.getKey(), keyValue.getValue()));
+        }
+
+        for (final Future<RecordMetadata> future : futures) {
+            awaitChange(future);
+        }
+    }
+
+    /**
+     * Deletes the value associated with the given key, and sends a tombstone for it to the changelog, without
+     * waiting for it.
+     *
+     * @param key The key for the given value.
+     * @throws KVStorageException If it fails to delete.
+     */
+    @Override
+    public void DeleteValue(final byte[] key) throws KVStorageException {
+        kvStorage.DeleteValue(key);
+
+        changelogProducer.send(new ProducerRecord<>(changelogTopic, key, null), (recordMetadata, e) -> {
+            if (e != null) {
+                logger.warning(String.format("Failed sending a tombstone to %s: %s", changelogTopic, e.getMessage()));
+            } else {
+                changelogOffsets.applied(recordMetadata.partition(), recordMetadata.offset());
+            }
+        });
+    }
+
+    /**
+     * Reads the value associated with the given key from the underlying storage.
+     *
+     * @param key The key for the given value.
+     * @return An optional containing the value, empty if it isn't stored.
+     * @throws KVStorageException If it fails to read it.
+     */
+    @Override
+    public Optional<byte[]> GetValue(final byte[] key) throws KVStorageException {
+        return kvStorage.GetValue(key);
+    }
+
+    /**
+     * Streams the values of the underlying storage.
+     *
+     * @return A stream containing all the current values.
+     */
+    @Override
+    public Stream<KeyValue> StreamValues() {
+        return kvStorage.StreamValues();
+    }
+
+    /**
+     * Streams the values of the underlying storage, starting from the given key.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the current values, starting from the given key.
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        return kvStorage.StreamValuesFrom(fromKey);
+    }
+
+    /**
+     * Returns the number of values of the underlying storage.
+     *
+     * @return The number of stored values.
+     * @throws KVStorageException If it fails to read the number of values.
+     */
+    @Override
+    public long CountValues() throws KVStorageException {
+        return kvStorage.CountValues();
+    }
+
+    /**
+     * Returns the number of bytes used by the underlying storage.
+     *
+     * @return The number of bytes used by the stored values.
+     * @throws KVStorageException If it fails to read the used bytes.
+     */
+    @Override
+    public long SizeInBytes() throws KVStorageException {
+        return kvStorage.SizeInBytes();
+    }
+
+    /**
+     * Returns if writes are being stalled by the underlying storage.
+     *
+     * @return If writes are being stalled.
+     * @throws KVStorageException If it fails to read the write state.
+     */
+    @Override
+    public boolean IsWriteStalled() throws KVStorageException {
+        return kvStorage.IsWriteStalled();
+    }
+
+    /**
+     * Returns the properties of the underlying storage.
+     *
+     * @return The properties by name.
+     * @throws KVStorageException If it fails to read the properties.
+     */
+    @Override
+    public Map<String, Long> GetProperties() throws KVStorageException {
+        return kvStorage.GetProperties();
+    }
+
+    /**
+     * Creates a checkpoint of the underlying storage.
+     *
+     * @param path The directory to create the checkpoint in.
+     * @throws KVStorageException If it fails to create it.
+     */
+    @Override
+    public void CreateCheckpoint(final String path) throws KVStorageException {
+        kvStorage.CreateCheckpoint(path);
+    }
+
+    /**
+     * Sends a change to the changelog topic.
+     *
+     * @param key The storage key.
+     * @param value The stored value, null for a delete.
+     * @return The future of the send.
+     */
+    private Future<RecordMetadata> sendChange(final byte[] key, final byte[] value) {
+        return changelogProducer.send(new ProducerRecord<>(changelogTopic, key, value));
+    }
+
+    /**
+     * Waits for a change to be acknowledged by the changelog, recording its offset.
+     *
+     * @param future The future of the send.
+     * @throws KVStorageException If the send failed, or it was interrupted while waiting.
+     */
+    private void awaitChange(final Future<RecordMetadata> future) throws KVStorageException {
+        try {
+            final RecordMetadata recordMetadata = future.get();
+
+            changelogOffsets.applied(recordMetadata.partition(), recordMetadata.offset());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new KVStorageException(e);
+        } catch (final ExecutionException e) {
+            throw new KVStorageException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package cgss.dev.storage.indexed;
+
+import cgss.dev.model.EventEnvelope;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A KVStorage keeping a secondary index over another one, from the business key of each event to its storage keys, so
+ * pending events can be cancelled by business key without scanning the storage.
+ * The business key is the Kafka key the event was consumed with, or one of its fields. Events without one aren't
+ * indexed, so they can't be cancelled.
+ * The index is kept in the underlying storage itself, under keys starting with a byte no storage key starts with, so
+ * they're sorted after every event and hidden from the streams. Each event gets an entry from its business key, and
+ * one back from its storage key, saved in the same batch as the event. Being stored, the index is mirrored to the
+ * changelog and checkpointed along with the events, and it's only built from the events once, or when the business
+ * key field changes. Along with that field, it stores how many values are indexed, saved with each batch, so the index
+ * entries can be left out of the count of values.
+ * <p>
+ * In upsert mode, the business key identifies a pending slot: saving an event replaces the pending ones with the same
+ * business key, so only the last one saved is emitted, at its own due time. The new one is saved before the old ones
+ * are deleted, so if it stops in between, both stay pending.
+ */
+public class IndexedStorage implements KVStorage {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(IndexedStorage.class.getSimpleName());
+    /**
+     * The first byte of every index key. Storage keys start with their timestamp, which only starts with it hundreds of
+     * millions of years from now.
+     */
+    private static final byte INDEX_PREFIX = (byte) 0xFF;
+    /**
+     * The key holding how many values are indexed, followed by the business key field the index was built with.
+     */
+    private static final byte[] INDEX_FIELD_KEY = {INDEX_PREFIX, 0};
+    /**
+     * The second byte of the entries from a business key to a storage key.
+     */
+    private static final byte BUSINESS_KEY_ENTRY = 1;
+    /**
+     * The second byte of the entries from a storage key back to its business key.
+     */
+    private static final byte STORAGE_KEY_ENTRY = 2;
+    /**
+     * How many entries are saved at once while building the index.
+     */
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    /**
+     * The storage actually holding the values, and the index.
+     */
+    private final KVStorage kvStorage;
+    /**
+     * The event business object, extracting the business key field.
+     */
+    private final EventHandler eventHandler;
+    /**
+     * The field holding the business key of each event, empty to use its Kafka key.
+     */
+    private final String idFieldName;
+    /**
+     * If saving an event replaces the pending ones with the same business key.
+     */
+    private final boolean upsert;
+    /**
+     * How many values are indexed, each with two index entries.
+     */
+    private final AtomicLong indexedValues;
+    /**
+     * If the index was built, so it's stored along with how many values are indexed.
+     */
+    private volatile boolean indexBuilt;
+
+    /**
+     * Constructor for the indexed storage. The values stored before without an index aren't indexed until it's built.
+     *
+     * @param kvStorage The storage actually holding the values, and the index.
+     * @param eventHandler The event business object, extracting the business key field.
+     * @param idFieldName The field holding the business key of each event, empty to use its Kafka key.
+     * @param upsert If saving an event replaces the pending ones with the same business key.
+     */
+    public IndexedStorage(final KVStorage kvStorage, final EventHandler eventHandler, final String idFieldName, final boolean upsert) {
+        this.kvStorage = kvStorage;
+        this.eventHandler = eventHandler;
+        this.idFieldName = idFieldName;
+        this.upsert = upsert;
+        this.indexedValues = new AtomicLong();
+        this.indexBuilt = false;
+    }
+
+    /**
+     * Builds the index from the values currently stored, unless the storage already holds one built with the same
+     * business key field. Should be called before the storage is used.
+     *
+     * @return How many values were indexed, zero if the index was already built.
+     * @throws KVStorageException If it fails to read the index, or to build it.
+     */
+    public long buildIndex() throws KVStorageException {
+        final Optional<byte[]> indexField = kvStorage.GetValue(INDEX_FIELD_KEY);
+        final byte[] fieldName = idFieldName.getBytes(StandardCharsets.UTF_8);
+
+        if (indexField.isPresent() && indexField.get().length == Long.BYTES + fieldName.length
+                && Arrays.equals(indexField.get(), Long.BYTES, indexField.get().length, fieldName, 0, fieldName.length)) {
+            indexedValues.set(ByteBuffer.wrap(indexField.get()).getLong());
+            indexBuilt = true;
+            logger.info(String.format("The storage is already indexed, with %d values.", indexedValues.get()));
+
+            return 0;
+        }
+
+        return rebuildIndex();
+    }
+
+    /**
+     * Builds the index from the values currently stored, replacing the one stored, if any.
+     *
+     * @return How many values were indexed.
+     * @throws KVStorageException If it fails to delete the stored index, or to save the new one.
+     */
+    public long rebuildIndex() throws KVStorageException {
+        final long startNanos = System.nanoTime();
+
+        // Dropped first, so the field it was built with is only stored again once it's complete.
+        indexBuilt = false;
+        try (final Stream<KeyValue> indexEntries = kvStorage.StreamValuesFrom(new byte[]{INDEX_PREFIX})) {
+            for (final KeyValue indexEntry : (Iterable<KeyValue>) indexEntries::iterator) {
+                kvStorage.DeleteValue(indexEntry.getKey());
+            }
+        }
+
+        long indexed = 0;
+        final List<KeyValue> indexEntries = new ArrayList<>(BUILD_BATCH_SIZE);
+        try (final Stream<KeyValue> storedValues = StreamValues()) {
+            for (final KeyValue keyValue : (Iterable<KeyValue>) storedValues::iterator) {
+                final Optional<byte[]> businessKeyOpt = findBusinessKey(keyValue.getValue());
+                if (!businessKeyOpt.isPresent()) {
+                    continue;
+                }
+
+                addIndexEntries(indexEntries, businessKeyOpt.get(), keyValue.getKey());
+                indexed++;
+
+                if (indexEntries.size() >= BUILD_BATCH_SIZE) {
+                    kvStorage.SaveValues(indexEntries);
+                    indexEntries.clear();
+                }
+            }
+        }
+        indexEntries.add(indexFieldEntry(indexed));
+        kvStorage.SaveValues(indexEntries);
+        indexedValues.set(indexed);
+        indexBuilt = true;
+
+        logger.info(String.format("Indexed %d values in %d ms.", indexed, (System.nanoTime() - startNanos) / 1_000_000));
+
+        return indexed;
+    }
+
+    /**
+     * Deletes every pending event with the given business key.
+     *
+     * @param businessKey The business key, e.g. the Kafka key the events were consumed with.
+     * @return How many indexed events were deleted.
+     * @throws KVStorageException If it fails to delete any of them. The ones not deleted stay indexed.
+     */
+    public int cancel(final byte[] businessKey) throws KVStorageException {
+        final List<byte[]> cancelledKeys = findStorageKeys(businessKey);
+
+        for (final byte[] storageKey : cancelledKeys) {
+            deleteIndexed(businessKey, storageKey);
+        }
+
+        return cancelledKeys.size();
+    }
+
+    /**
+     * Saves the given value, and indexes it. In upsert mode, the pending values with the same business key are
+     * deleted once it's saved.
+     *
+     * @param keyValue Object representing a key value.
+     * @throws KVStorageException If it fails to save, or to delete the replaced values.
+     */
+    @Override
+    public void SaveValue(final KeyValue keyValue) throws KVStorageException {
+        SaveValues(Collections.singletonList(keyValue));
+    }
+
+    /**
+     * Saves the given values along with their index entries, and how many values are indexed, at once. In upsert mode,
+     * only the last of the values with the same business key is saved, and the pending values with that business key
+     * are deleted once it is.
+     *
+     * @param keyValues Objects representing the key values.
+     * @throws KVStorageException If it fails to save any of them, or to delete the replaced values.
+     */
+    @Override
+    public void SaveValues(final List<KeyValue> keyValues) throws KVStorageException {
+        final List<KeyValue> savedValues = new ArrayList<>(3 * keyValues.size() + 1);
+
+        if (!upsert) {
+            long newlyIndexed = 0;
+            for (final KeyValue keyValue : keyValues) {
+                savedValues.add(keyValue);
+
+                final Optional<byte[]> businessKeyOpt = findBusinessKey(keyValue.getValue());
+                if (businessKeyOpt.isPresent()) {
+                    addIndexEntries(savedValues, businessKeyOpt.get(), keyValue.getKey());
+                    newlyIndexed++;
+                }
+            }
+
+            saveIndexed(savedValues, newlyIndexed);
+
+            return;
+        }
+
+        // Keeps the last value of each business key, in the order they were last seen.
+        final Map<ByteBuffer, KeyValue> lastValues = new LinkedHashMap<>();
+        for (final KeyValue keyValue : keyValues) {
+            final Optional<byte[]> businessKeyOpt = findBusinessKey(keyValue.getValue());
+
+            if (businessKeyOpt.isPresent()) {
+                final ByteBuffer businessKey = ByteBuffer.wrap(businessKeyOpt.get());
+
+                lastValues.remove(businessKey);
+                lastValues.put(businessKey, keyValue);
+            } else {
+                savedValues.add(keyValue);
+            }
+        }
+
+        final Map<ByteBuffer, List<byte[]>> replacedKeys = new LinkedHashMap<>();
+        for (final Map.Entry<ByteBuffer, KeyValue> entry : lastValues.entrySet()) {
+            final byte[] businessKey = entry.getKey().array();
+            final byte[] storageKey = entry.getValue().getKey();
+
+            savedValues.add(entry.getValue());
+            addIndexEntries(savedValues, businessKey, storageKey);
+            replacedKeys.put(entry.getKey(), findStorageKeys(businessKey)
+                    .stream()
+                    .filter(replacedKey -> !Arrays.equals(replacedKey, storageKey))
+                    .collect(Collectors.toList()));
+        }
+
+        saveIndexed(savedValues, lastValues.size());
+
+        for (final Map.Entry<ByteBuffer, List<byte[]>> entry : replacedKeys.entrySet()) {
+            for (final byte[] replacedKey : entry.getValue()) {
+                deleteIndexed(entry.getKey().array(), replacedKey);
+            }
+        }
+    }
+
+    /**
+     * Deletes the value associated with the given key, and its index entries.
+     * The value goes first, so a failure in between only leaves index entries to a missing value, which are deleted
+     * once its business key is cancelled or replaced.
+     *
+     * @param key The key for the given value.
+     * @throws KVStorageException If it fails to delete it, or to read or delete its index entries.
+     */
+    @Override
+    public void DeleteValue(final byte[] key) throws KVStorageException {
+        kvStorage.DeleteValue(key);
+
+        final Optional<byte[]> businessKeyOpt = kvStorage.GetValue(storageKeyEntry(key));
+        if (businessKeyOpt.isPresent()) {
+            kvStorage.DeleteValue(storageKeyEntry(key));
+            kvStorage.DeleteValue(businessKeyEntry(businessKeyOpt.get(), key));
+            indexedValues.decrementAndGet();
+        }
+    }
+
+    /**
+     * Streams the values of the underlying storage, without the index entries.
+     *
+     * @return A stream containing the stored key value pairs.
+     */
+    @Override
+    public Stream<KeyValue> StreamValues() {
+        return kvStorage.StreamValues().takeWhile(keyValue -> !isIndexKey(keyValue.getKey()));
+    }
+
+    /**
+     * Streams the values of the underlying storage, starting from the given key, without the index entries.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the stored key value pairs, starting from the given key.
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        return kvStorage.StreamValuesFrom(fromKey).takeWhile(keyValue -> !isIndexKey(keyValue.getKey()));
+    }
+
+    /**
+     * Returns the number of values of the underlying storage, leaving out the index entries, two per indexed value, and
+     * the one holding the business key field. It's as accurate as the count of the underlying storage.
+     *
+     * @return The number of stored values.
+     * @throws KVStorageException If it fails to read the number of values.
+     */
+    @Override
+    public long CountValues() throws KVStorageException {
+        final long indexEntries = 2 * indexedValues.get() + (indexBuilt ? 1 : 0);
+
+        return Math.max(0, kvStorage.CountValues() - indexEntries);
+    }
+
+    /**
+     * Returns the bytes used by the underlying storage, index included.
+     *
+     * @return The number of bytes used by the stored values.
+     * @throws KVStorageException If it fails to read the used bytes.
+     */
+    @Override
+    public long SizeInBytes() throws KVStorageException {
+        return kvStorage.SizeInBytes();
+    }
+
+    /**
+     * Returns if the underlying storage is stalling writes.
+     *
+     * @return If writes are being stalled.
+     * @throws KVStorageException If it fails to read the write state.
+     */
+    @Override
+    public boolean IsWriteStalled() throws KVStorageException {
+        return kvStorage.IsWriteStalled();
+    }
+
+    /**
+     * Returns the properties of the underlying storage.
+     *
+     * @return The properties by name.
+     * @throws KVStorageException If it fails to read the properties.
+     */
+    @Override
+    public Map<String, Long> GetProperties() throws KVStorageException {
+        return kvStorage.GetProperties();
+    }
+
+    /**
+     * Creates a checkpoint of the underlying storage, which holds the index as well.
+     *
+     * @param path The directory to create the checkpoint in.
+     * @throws KVStorageException If it fails to create it.
+     */
+    @Override
+    public void CreateCheckpoint(final String path) throws KVStorageException {
+        kvStorage.CreateCheckpoint(path);
+    }
+
+    /**
+     * Ingests the given files into the underlying storage, then builds the index again, as their values are unknown.
+     *
+     * @param paths The storage files, each sorted by key.
+     * @throws KVStorageException If it fails to ingest them, or to index them.
+     */
+    @Override
+    public void IngestFiles(final List<String> paths) throws KVStorageException {
+        kvStorage.IngestFiles(paths);
+
+        rebuildIndex();
+    }
+
+    /**
+     * Deletes an indexed value, then its index entries.
+     *
+     * @param businessKey The business key of the value.
+     * @param storageKey The storage key of the value.
+     * @throws KVStorageException If it fails to delete it, or its index entries.
+     */
+    private void deleteIndexed(final byte[] businessKey, final byte[] storageKey) throws KVStorageException {
+        kvStorage.DeleteValue(storageKey);
+        kvStorage.DeleteValue(storageKeyEntry(storageKey));
+        kvStorage.DeleteValue(businessKeyEntry(businessKey, storageKey));
+        indexedValues.decrementAndGet();
+    }
+
+    /**
+     * Saves the given values along with their index entries at once, followed by how many values are indexed once they
+     * are, if the index was built. Deletes only update the stored count with the next batch, so after a restart it
+     * might still count some of the last values deleted.
+     *
+     * @param savedValues The values, and their index entries.
+     * @param newlyIndexed How many of the values are indexed.
+     * @throws KVStorageException If it fails to save them.
+     */
+    private void saveIndexed(final List<KeyValue> savedValues, final long newlyIndexed) throws KVStorageException {
+        if (indexBuilt) {
+            savedValues.add(indexFieldEntry(indexedValues.get() + newlyIndexed));
+        }
+
+        kvStorage.SaveValues(savedValues);
+        indexedValues.addAndGet(newlyIndexed);
+    }
+
+    /**
+     * Creates the entry holding how many values are indexed, followed by the business key field.
+     *
+     * @param indexed How many values are indexed.
+     * @return The entry.
+     */
+    private KeyValue indexFieldEntry(final long indexed) {
+        final byte[] fieldName = idFieldName.getBytes(StandardCharsets.UTF_8);
+
+        return new KeyValue(INDEX_FIELD_KEY, ByteBuffer.allocate(Long.BYTES + fieldName.length).putLong(indexed).put(fieldName).array());
+    }
+
+    /**
+     * Finds the storage keys indexed under the given business key.
+     *
+     * @param businessKey The business key.
+     * @return The storage keys, sorted.
+     */
+    private List<byte[]> findStorageKeys(final byte[] businessKey) {
+        final byte[] entryPrefix = businessKeyEntry(businessKey, new byte[0]);
+        final List<byte[]> storageKeys = new ArrayList<>();
+
+        try (final Stream<KeyValue> indexEntries = kvStorage.StreamValuesFrom(entryPrefix)) {
+            final Iterator<KeyValue> iterator = indexEntries.iterator();
+
+            while (iterator.hasNext()) {
+                final KeyValue indexEntry = iterator.next();
+                if (!startsWith(indexEntry.getKey(), entryPrefix)) {
+                    break;
+                }
+
+                storageKeys.add(indexEntry.getValue());
+            }
+        }
+
+        return storageKeys;
+    }
+
+    /**
+     * Adds the index entries of a value to the given ones.
+     *
+     * @param indexEntries The entries to add them to.
+     * @param businessKey The business key of the value.
+     * @param storageKey The storage key of the value.
+     */
+    private static void addIndexEntries(final List<KeyValue> indexEntries, final byte[] businessKey, final byte[] storageKey) {
+        indexEntries.add(new KeyValue(businessKeyEntry(businessKey, storageKey), storageKey));
+        indexEntries.add(new KeyValue(storageKeyEntry(storageKey), businessKey));
+    }
+
+    /**
+     * Creates the key of the entry from a business key to a storage key. The business key goes after its length, so
+     * the entries of a business key never get mixed with the ones of a longer one starting the same.
+     *
+     * @param businessKey The business key.
+     * @param storageKey The storage key, empty for the prefix of every entry of the business key.
+     * @return The entry key.
+     */
+    private static byte[] businessKeyEntry(final byte[] businessKey, final byte[] storageKey) {
+        return ByteBuffer
+                .allocate(2 + Integer.BYTES + businessKey.length + storageKey.length)
+                .put(INDEX_PREFIX)
+                .put(BUSINESS_KEY_ENTRY)
+                .putInt(businessKey.length)
+                .put(businessKey)
+                .put(storageKey)
+                .array();
+    }
+
+    /**
+     * Creates the key of the entry from a storage key back to its business key.
+     *
+     * @param storageKey The storage key.
+     * @return The entry key.
+     */
+    private static byte[] storageKeyEntry(final byte[] storageKey) {
+        return ByteBuffer
+                .allocate(2 + storageKey.length)
+                .put(INDEX_PREFIX)
+                .put(STORAGE_KEY_ENTRY)
+                .put(storageKey)
+                .array();
+    }
+
+    /**
+     * Checks if a stored key belongs to the index.
+     *
+     * @param key The stored key.
+     * @return If it's an index key.
+     */
+    private static boolean isIndexKey(final byte[] key) {
+        return key.length > 0 && key[0] == INDEX_PREFIX;
+    }
+
+    /**
+     * Checks if a key starts with the given prefix.
+     *
+     * @param key The key.
+     * @param prefix The prefix.
+     * @return If the key starts with it.
+     */
+    private static boolean startsWith(final byte[] key, final byte[] prefix) {
+        return key.length >= prefix.length && Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    /**
+     * Finds the business key of a stored value, from its envelope, or from the event itself for values stored before
+     * envelopes, which only have fields.
+     *
+     * @param value The stored value.
+     * @return An optional containing the business key, empty if it has none.
+     */
+    private Optional<byte[]> findBusinessKey(final byte[] value) {
+        final Optional<EventEnvelope> eventEnvelopeOpt = EventEnvelope.decode(value);
+
+        if (idFieldName.isEmpty()) {
+            return eventEnvelopeOpt.map(EventEnvelope::getKey);
+        }
+
+        final byte[] event = eventEnvelopeOpt.map(EventEnvelope::getValue).orElse(value);
+
+        return event == null
+                ? Optional.empty()
+                : eventHandler.extractField(event, idFieldName).map(id -> id.getBytes(StandardCharsets.UTF_8));
+    }
+}
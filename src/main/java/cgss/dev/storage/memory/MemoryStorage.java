@@ -3,63 +3,140 @@ package cgss.dev.storage.memory;
 import cgss.dev.storage.KVStorage;
 import cgss.dev.storage.KeyValue;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Stream;
 
 /**
  * A memory backed KVStorage.
- * Internally, we just use a concurrent hashmap. Only recommended if you don't care about losing durability for the sake
- * of latency.
+ * Internally, we just use a concurrent skip list sorted by the unsigned bytes of the keys, so values are streamed in key
+ * order, like the other storages do. Only recommended if you don't care about losing durability for the sake of
+ * latency.
  */
 public class MemoryStorage implements KVStorage {
     /**
      * The map where the key value pairs are stored.
      */
-    private final ConcurrentHashMap<byte[], byte[]> concurrentHashMap;
-
+    private final ConcurrentNavigableMap<byte[], byte[]> concurrentMap;
     /**
-     * Constructor for injecting an existing concurrent hash map.
-     *
-     * @param concurrentHashMap A concurrent hashmap to be used to save the events.
+     * The number of entries in the map. Kept apart, as the skip list doesn't have a constant time size.
      */
-    public MemoryStorage(final ConcurrentHashMap<byte[], byte[]> concurrentHashMap) {
-        this.concurrentHashMap = concurrentHashMap;
-    }
+    private final AtomicLong count;
+    /**
+     * The number of bytes used by the keys and values in the map.
+     */
+    private final AtomicLong sizeInBytes;
 
     /**
-     * Default constructor.
+     * Default constructor, keeps the values sorted by key.
      */
     public MemoryStorage() {
-        this(new ConcurrentHashMap<>());
+        this.concurrentMap = new ConcurrentSkipListMap<>(Arrays::compareUnsigned);
+        this.count = new AtomicLong();
+        this.sizeInBytes = new AtomicLong();
     }
 
     /**
-     * Saves the given key value on the concurrent hash map.
+     * Saves the given key value on the concurrent map.
      *
      * @param keyValue Object representing a key value.
      */
     @Override
     public void SaveValue(final KeyValue keyValue) {
-        concurrentHashMap.put(keyValue.getKey(), keyValue.getValue());
+        final byte[] previousValue = concurrentMap.put(keyValue.getKey(), keyValue.getValue());
+
+        if (previousValue == null) {
+            count.incrementAndGet();
+        }
+        sizeInBytes.addAndGet(sizeOf(keyValue.getKey(), keyValue.getValue()) - sizeOf(keyValue.getKey(), previousValue));
     }
 
     /**
-     * Deletes the value associated with the given key from the concurret hash map.
+     * Deletes the value associated with the given key from the concurrent map.
      *
      * @param key The key for the given value.
      */
     @Override
     public void DeleteValue(byte[] key) {
-        concurrentHashMap.remove(key);
+        final byte[] previousValue = concurrentMap.remove(key);
+
+        if (previousValue != null) {
+            count.decrementAndGet();
+        }
+        sizeInBytes.addAndGet(-sizeOf(key, previousValue));
     }
 
     /**
-     * Stream the values currently stored in the hash map.
+     * Reads the value associated with the given key from the concurrent map.
+     *
+     * @param key The key for the given value.
+     * @return An optional containing the value, empty if it isn't stored.
+     */
+    @Override
+    public Optional<byte[]> GetValue(final byte[] key) {
+        return Optional.ofNullable(concurrentMap.get(key));
+    }
+
+    /**
+     * Stream the values currently stored in the map.
      *
      * @return A stream containing all the current values.
      */
     @Override
     public Stream<KeyValue> StreamValues() {
-        return concurrentHashMap.entrySet().stream().map(entry -> new KeyValue(entry.getKey(), entry.getValue()));
+        return concurrentMap.entrySet().stream().map(entry -> new KeyValue(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Stream the values currently stored in the map, starting from the given key.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the current values, starting from the given key.
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        return concurrentMap
+                .tailMap(fromKey, true)
+                .entrySet()
+                .stream()
+                .map(entry -> new KeyValue(entry.getKey(), entry.getValue()));
+    }
+
+    /**
+     * Returns the number of entries in the map.
+     *
+     * @return The number of stored values.
+     */
+    @Override
+    public long CountValues() {
+        return count.get();
+    }
+
+    /**
+     * Returns the number of bytes used by the keys and values in the map.
+     *
+     * @return The number of bytes used by the stored values.
+     */
+    @Override
+    public long SizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes used by the given entry. If there's no value, the entry doesn't exist.
+     *
+     * @param key The key of the entry.
+     * @param value The value of the entry, can be null.
+     * @return The number of bytes used by the entry.
+     */
+    private static long sizeOf(final byte[] key, final byte[] value) {
+        if (value == null) {
+            return 0;
+        }
+
+        return (key == null ? 0 : key.length) + value.length;
     }
 }
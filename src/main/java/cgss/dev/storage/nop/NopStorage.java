@@ -3,6 +3,7 @@ package cgss.dev.storage.nop;
 import cgss.dev.storage.KVStorage;
 import cgss.dev.storage.KeyValue;
 
+import java.util.Optional;
 import java.util.stream.Stream;
 
 /**
@@ -27,6 +28,17 @@ public class NopStorage implements KVStorage {
     @Override
     public void DeleteValue(byte[] key) {}
 
+    /**
+     * Returns an empty optional.
+     *
+     * @param key The key for the given value.
+     * @return Optional.empty()
+     */
+    @Override
+    public Optional<byte[]> GetValue(final byte[] key) {
+        return Optional.empty();
+    }
+
     /**
      * Returns an empty stream.
      *
@@ -36,4 +48,35 @@ public class NopStorage implements KVStorage {
     public Stream<KeyValue> StreamValues() {
         return Stream.empty();
     }
+
+    /**
+     * Returns an empty stream.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return Stream.empty()
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        return Stream.empty();
+    }
+
+    /**
+     * Nothing is ever stored.
+     *
+     * @return 0
+     */
+    @Override
+    public long CountValues() {
+        return 0;
+    }
+
+    /**
+     * Nothing is ever stored.
+     *
+     * @return 0
+     */
+    @Override
+    public long SizeInBytes() {
+        return 0;
+    }
 }
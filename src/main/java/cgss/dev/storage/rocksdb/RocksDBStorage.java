@@ -4,11 +4,24 @@ import cgss.dev.storage.KVStorage;
 import cgss.dev.storage.KVStorageException;
 import cgss.dev.storage.KeyValue;
 
+import org.rocksdb.Checkpoint;
+import org.rocksdb.IngestExternalFileOptions;
 import org.rocksdb.Options;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.Statistics;
+import org.rocksdb.TickerType;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -17,20 +30,85 @@ import java.util.stream.StreamSupport;
  * It will save the values on disk inside a RocksDB instance.
  */
 public class RocksDBStorage implements KVStorage {
+    /**
+     * The numeric RocksDB properties exposed by GetProperties.
+     */
+    private static final Collection<String> MONITORED_PROPERTIES = Arrays.asList(
+            "rocksdb.estimate-num-keys",
+            "rocksdb.cur-size-all-mem-tables",
+            "rocksdb.total-sst-files-size",
+            "rocksdb.estimate-pending-compaction-bytes",
+            "rocksdb.num-running-compactions",
+            "rocksdb.num-running-flushes",
+            "rocksdb.actual-delayed-write-rate",
+            "rocksdb.is-write-stopped"
+    );
 
     /**
      * The actual RocksDB instance.
      */
     private final RocksDB rocksDB;
+    /**
+     * The statistics collected by the RocksDB instance, null if it doesn't collect them.
+     */
+    private final Statistics statistics;
 
     /**
-     * Constructor that takes a path where a RocksDB instance will be created.
+     * Constructor that takes a path where a RocksDB instance will be created, without collecting statistics.
      *
      * @param dbPath The path where the RocksDB instance will be created.
      * @throws RocksDBException If fails to create a RocksDB instance with the given path.
      */
     public RocksDBStorage(final String dbPath) throws RocksDBException {
-        this(RocksDB.open(new Options().setCreateIfMissing(true), dbPath));
+        this(dbPath, false);
+    }
+
+    /**
+     * Constructor that takes a path where a RocksDB instance will be created, optionally collecting statistics.
+     * Statistics add some overhead to every read and write.
+     *
+     * @param dbPath The path where the RocksDB instance will be created.
+     * @param collectStatistics If the instance collects statistics, such as the time writes were stalled for.
+     * @throws RocksDBException If fails to create a RocksDB instance with the given path.
+     */
+    public RocksDBStorage(final String dbPath, final boolean collectStatistics) throws RocksDBException {
+        this(dbPath, collectStatistics ? newStatistics() : null);
+    }
+
+    /**
+     * Constructor that creates the RocksDB instance collecting its statistics into the given object, if any.
+     *
+     * @param dbPath The path where the RocksDB instance will be created.
+     * @param statistics The statistics the instance will collect, null for none.
+     * @throws RocksDBException If fails to create a RocksDB instance with the given path.
+     */
+    private RocksDBStorage(final String dbPath, final Statistics statistics) throws RocksDBException {
+        this(RocksDB.open(newOptions(statistics), dbPath), statistics);
+    }
+
+    /**
+     * Creates the statistics object, loading the RocksDB native library first, as nothing may have loaded it yet.
+     *
+     * @return The statistics object.
+     */
+    private static Statistics newStatistics() {
+        RocksDB.loadLibrary();
+
+        return new Statistics();
+    }
+
+    /**
+     * Creates the options to open a RocksDB instance with, creating it if missing.
+     *
+     * @param statistics The statistics the instance will collect, null for none.
+     * @return The options.
+     */
+    private static Options newOptions(final Statistics statistics) {
+        RocksDB.loadLibrary();
+
+        final Options options = new Options().setCreateIfMissing(true);
+
+        return statistics == null ? options : options.setStatistics(statistics);
     }
 
     /**
@@ -39,7 +117,18 @@ public class RocksDBStorage implements KVStorage {
      * @param rocksDB RocksDB instance to be used.
      */
     public RocksDBStorage(final RocksDB rocksDB) {
+        this(rocksDB, null);
+    }
+
+    /**
+     * Constructor that accepts a RocksDB and the statistics it collects.
+     *
+     * @param rocksDB RocksDB instance to be used.
+     * @param statistics The statistics collected by the instance, can be null.
+     */
+    public RocksDBStorage(final RocksDB rocksDB, final Statistics statistics) {
         this.rocksDB = rocksDB;
+        this.statistics = statistics;
     }
 
     /**
@@ -57,6 +146,63 @@ public class RocksDBStorage implements KVStorage {
         }
     }
 
+    /**
+     * Saves the given KeyValue pairs in a single write batch, so they're written to the log at once, and either all
+     * of them or none are saved.
+     *
+     * @param keyValues Objects representing the key values.
+     * @throws KVStorageException If it fails to save the batch.
+     */
+    @Override
+    public void SaveValues(final List<KeyValue> keyValues) throws KVStorageException {
+        try (final WriteBatch writeBatch = new WriteBatch(); final WriteOptions writeOptions = new WriteOptions()) {
+            for (final KeyValue keyValue : keyValues) {
+                writeBatch.put(keyValue.getKey(), keyValue.getValue());
+            }
+
+            rocksDB.write(writeOptions, writeBatch);
+        } catch (final RocksDBException e) {
+            throw new KVStorageException(e);
+        }
+    }
+
+    /**
+     * Creates a RocksDB checkpoint under the given path. The SST files are hard linked when on the same file system,
+     * so it's cheap, and the checkpoint can be opened as a RocksDB instance of its own.
+     *
+     * @param path The directory to create the checkpoint in, which must not exist yet.
+     * @throws KVStorageException If it fails to create the checkpoint.
+     */
+    @Override
+    public void CreateCheckpoint(final String path) throws KVStorageException {
+        try (final Checkpoint checkpoint = Checkpoint.create(rocksDB)) {
+            checkpoint.createCheckpoint(path);
+        } catch (final RocksDBException e) {
+            throw new KVStorageException(e);
+        }
+    }
+
+    /**
+     * Ingests the given SST files, moving them into the database when they're on the same file system. Files are
+     * ingested one at a time, as the ones ingested together can't overlap; overlapping files are placed on a higher
+     * level than the ones they overlap with, and merged by later compactions.
+     *
+     * @param paths The SST files, written with the same comparator as the database.
+     * @throws KVStorageException If it fails to ingest any of them. The ones before it stay ingested.
+     */
+    @Override
+    public void IngestFiles(final List<String> paths) throws KVStorageException {
+        try (final IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+            ingestOptions.setMoveFiles(true);
+
+            for (final String path : paths) {
+                rocksDB.ingestExternalFile(Collections.singletonList(path), ingestOptions);
+            }
+        } catch (final RocksDBException e) {
+            throw new KVStorageException(e);
+        }
+    }
+
     /**
      * Deletes a value given the provided key.
      *
@@ -72,16 +218,124 @@ public class RocksDBStorage implements KVStorage {
         }
     }
 
+    /**
+     * Reads the value associated with the given key.
+     *
+     * @param key The key for the given value.
+     * @return An optional containing the value, empty if it isn't stored.
+     * @throws KVStorageException If it fails to read it.
+     */
+    @Override
+    public Optional<byte[]> GetValue(final byte[] key) throws KVStorageException {
+        try {
+            return Optional.ofNullable(rocksDB.get(key));
+        } catch (RocksDBException e) {
+            throw new KVStorageException(e);
+        }
+    }
+
     /**
      * Streams the current stored key value pairs.
      * It uses a RocksDBValueSpliterator to wrap a RocksIterator in order to provide a stream.
+     * The pairs are streamed in key order. The stream should be closed once done with, in order to release the
+     * iterator.
      *
      * @return A stream containing the stored key value pairs.
      */
     @Override
     public Stream<KeyValue> StreamValues() {
         final RocksIterator rocksIterator = rocksDB.newIterator();
+        rocksIterator.seekToFirst();
+
+        return StreamSupport
+                .stream(new RocksDBValueSpliterator(rocksIterator), false)
+                .onClose(rocksIterator::close);
+    }
+
+    /**
+     * Streams the current stored key value pairs, starting from the given key.
+     * The stream should be closed once done with, in order to release the iterator.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the stored key value pairs, starting from the given key.
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        final RocksIterator rocksIterator = rocksDB.newIterator();
+        rocksIterator.seek(fromKey);
+
+        return StreamSupport
+                .stream(new RocksDBValueSpliterator(rocksIterator), false)
+                .onClose(rocksIterator::close);
+    }
+
+    /**
+     * Returns RocksDB's estimate of the number of keys.
+     *
+     * @return The estimated number of stored values.
+     * @throws KVStorageException If it fails to read the RocksDB property.
+     */
+    @Override
+    public long CountValues() throws KVStorageException {
+        return getLongProperty("rocksdb.estimate-num-keys");
+    }
 
-        return StreamSupport.stream(new RocksDBValueSpliterator(rocksIterator), false);
+    /**
+     * Returns the size of the SST files plus the size of the memtables.
+     *
+     * @return The number of bytes used by the stored values.
+     * @throws KVStorageException If it fails to read the RocksDB properties.
+     */
+    @Override
+    public long SizeInBytes() throws KVStorageException {
+        return getLongProperty("rocksdb.total-sst-files-size") + getLongProperty("rocksdb.cur-size-all-mem-tables");
+    }
+
+    /**
+     * Checks if RocksDB is either delaying or stopping writes.
+     *
+     * @return If writes are being stalled.
+     * @throws KVStorageException If it fails to read the RocksDB properties.
+     */
+    @Override
+    public boolean IsWriteStalled() throws KVStorageException {
+        return getLongProperty("rocksdb.is-write-stopped") != 0 || getLongProperty("rocksdb.actual-delayed-write-rate") != 0;
+    }
+
+    /**
+     * Returns the numeric RocksDB properties worth monitoring, plus the total time writes have been stalled, only if the
+     * instance collects statistics.
+     *
+     * @return The properties by name.
+     * @throws KVStorageException If it fails to read the RocksDB properties.
+     */
+    @Override
+    public Map<String, Long> GetProperties() throws KVStorageException {
+        final Map<String, Long> properties = new LinkedHashMap<>();
+
+        for (final String property : MONITORED_PROPERTIES) {
+            properties.put(property, getLongProperty(property));
+        }
+
+        if (statistics != null) {
+            properties.put("rocksdb.stall.micros", statistics.getTickerCount(TickerType.STALL_MICROS));
+        }
+
+        return properties;
+    }
+
+    /**
+     * Reads the given numeric RocksDB property.
+     *
+     * @param property The property name.
+     * @return The property value.
+     * @throws KVStorageException If it fails to read the property.
+     */
+    private long getLongProperty(final String property) throws KVStorageException {
+        try {
+            return rocksDB.getLongProperty(property);
+        } catch (final RocksDBException e) {
+            throw new KVStorageException(e);
+        }
     }
 }
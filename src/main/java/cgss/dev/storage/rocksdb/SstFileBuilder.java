@@ -0,0 +1,275 @@
+package cgss.dev.storage.rocksdb;
+
+import cgss.dev.model.Event;
+import cgss.dev.model.EventEnvelope;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.Options;
+import org.rocksdb.RocksDBException;
+import org.rocksdb.SstFileWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Builds RocksDB SST files out of files holding one event per line, like a recorded workload or a topic dump, so
+ * they can be bulk loaded through {@link RocksDBStorage#IngestFiles(List)} instead of going through the sink.
+ * <p>
+ * The lines are read in chunks, each turned into a sorted SST file by a pool of workers. Events get the same keys
+ * and envelopes the sink would give them, the sequences following their position in the input. Only as many chunks
+ * as there are workers are held in memory at once, so inputs of any size can be built.
+ */
+public class SstFileBuilder {
+    /**
+     * The default logger for this class.
+     */
+    private final static Logger logger = Logger.getLogger(SstFileBuilder.class.getSimpleName());
+
+    /**
+     * The event business object, which extracts the event timestamps.
+     */
+    private final EventHandler eventHandler;
+    /**
+     * The directory the SST files are written to.
+     */
+    private final Path outputPath;
+    /**
+     * The topic saved as the source of the events, can be null.
+     */
+    private final String sourceTopic;
+    /**
+     * How many chunks are built at once.
+     */
+    private final int parallelism;
+    /**
+     * How many lines go into each chunk, and so at most into each SST file.
+     */
+    private final int entriesPerFile;
+    /**
+     * The sequence of the first line, the others following it.
+     */
+    private final long sequenceBase;
+    /**
+     * The clock giving the consume time saved along with the events.
+     */
+    private final Clock clock;
+    /**
+     * The number of events written so far.
+     */
+    private final AtomicLong builtEvents;
+    /**
+     * The number of lines that weren't valid events so far.
+     */
+    private final AtomicLong invalidEvents;
+
+    /**
+     * Constructor for the SST file builder.
+     *
+     * @param eventHandler The event business object, which extracts the event timestamps.
+     * @param outputPath The directory the SST files are written to. Created if missing.
+     * @param sourceTopic The topic saved as the source of the events, can be null.
+     * @param parallelism How many chunks are built at once.
+     * @param entriesPerFile How many lines go into each chunk, and so at most into each SST file.
+     * @param sequenceBase The sequence of the first line, the others following it.
+     * @param clock The clock giving the consume time saved along with the events.
+     */
+    public SstFileBuilder(
+            final EventHandler eventHandler,
+            final Path outputPath,
+            final String sourceTopic,
+            final int parallelism,
+            final int entriesPerFile,
+            final long sequenceBase,
+            final Clock clock) {
+        if (parallelism <= 0 || entriesPerFile <= 0) {
+            throw new IllegalArgumentException("parallelism and entries per file must be positive");
+        }
+
+        this.eventHandler = eventHandler;
+        this.outputPath = outputPath;
+        this.sourceTopic = sourceTopic;
+        this.parallelism = parallelism;
+        this.entriesPerFile = entriesPerFile;
+        this.sequenceBase = sequenceBase;
+        this.clock = clock;
+        this.builtEvents = new AtomicLong();
+        this.invalidEvents = new AtomicLong();
+    }
+
+    /**
+     * Builds the SST files for the events in the given input files, read in order.
+     *
+     * @param inputPaths The files holding one event per line.
+     * @return The SST files, in the order of the chunks they were built from. Chunks without valid events get none.
+     * @throws IOException If it fails to read the input files.
+     * @throws KVStorageException If it fails to write any SST file.
+     */
+    public List<Path> build(final List<Path> inputPaths) throws IOException, KVStorageException {
+        Files.createDirectories(outputPath);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            final Thread thread = new Thread(runnable, SstFileBuilder.class.getSimpleName());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+        final Semaphore inFlightChunks = new Semaphore(parallelism);
+        final List<Future<Optional<Path>>> futures = new ArrayList<>();
+
+        try {
+            List<String> chunk = new ArrayList<>(entriesPerFile);
+
+            for (final Path inputPath : inputPaths) {
+                try (final BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.trim().isEmpty()) {
+                            continue;
+                        }
+
+                        chunk.add(line);
+                        if (chunk.size() == entriesPerFile) {
+                            futures.add(submitChunk(executor, inFlightChunks, futures.size(), chunk));
+                            chunk = new ArrayList<>(entriesPerFile);
+                        }
+                    }
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                futures.add(submitChunk(executor, inFlightChunks, futures.size(), chunk));
+            }
+
+            final List<Path> sstPaths = new ArrayList<>();
+            for (final Future<Optional<Path>> future : futures) {
+                future.get().ifPresent(sstPaths::add);
+            }
+
+            logger.info(String.format("Built %d SST files with %d events in %s, skipping %d invalid events.", sstPaths.size(), builtEvents.get(), outputPath, invalidEvents.get()));
+
+            return sstPaths;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new KVStorageException(e);
+        } catch (final ExecutionException e) {
+            throw new KVStorageException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the number of events written so far.
+     *
+     * @return The number of built events.
+     */
+    public long getBuiltEvents() {
+        return builtEvents.get();
+    }
+
+    /**
+     * Gets the number of lines that weren't valid events so far.
+     *
+     * @return The number of invalid events.
+     */
+    public long getInvalidEvents() {
+        return invalidEvents.get();
+    }
+
+    /**
+     * Hands the given chunk to the workers, waiting for one of the chunks in flight to be done if there are too many.
+     *
+     * @param executor The workers.
+     * @param inFlightChunks The permits for the chunks in flight.
+     * @param chunkIndex The position of the chunk in the input.
+     * @param chunk The lines of the chunk.
+     * @return The future SST file of the chunk.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    private Future<Optional<Path>> submitChunk(
+            final ExecutorService executor,
+            final Semaphore inFlightChunks,
+            final long chunkIndex,
+            final List<String> chunk) throws InterruptedException {
+        inFlightChunks.acquire();
+
+        return executor.submit(() -> {
+            try {
+                return writeChunk(chunkIndex, chunk);
+            } finally {
+                inFlightChunks.release();
+            }
+        });
+    }
+
+    /**
+     * Turns the given chunk into an SST file, sorted by key as RocksDB requires.
+     *
+     * @param chunkIndex The position of the chunk in the input.
+     * @param chunk The lines of the chunk.
+     * @return An optional containing the SST file, empty if the chunk has no valid events.
+     * @throws RocksDBException If it fails to write the file.
+     */
+    private Optional<Path> writeChunk(final long chunkIndex, final List<String> chunk) throws RocksDBException {
+        final Instant consumedAt = clock.instant();
+        final List<KeyValue> keyValues = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            final byte[] value = chunk.get(i).getBytes(StandardCharsets.UTF_8);
+            final Optional<Event> eventOpt = eventHandler.unmarshallEvent(value);
+
+            if (!eventOpt.isPresent()) {
+                invalidEvents.incrementAndGet();
+                continue;
+            }
+
+            final long sequence = sequenceBase + chunkIndex * entriesPerFile + i;
+            keyValues.add(new KeyValue(
+                    StorageKey.encode(eventOpt.get().getTimestamp(), sequence),
+                    new EventEnvelope(sourceTopic, null, consumedAt, null, value).encode()
+            ));
+        }
+
+        if (keyValues.isEmpty()) {
+            return Optional.empty();
+        }
+
+        keyValues.sort(Comparator.comparing(KeyValue::getKey, Arrays::compareUnsigned));
+
+        final Path sstPath = outputPath.resolve(String.format("bulk-%08d.sst", chunkIndex));
+        try (final EnvOptions envOptions = new EnvOptions();
+             final Options options = new Options();
+             final SstFileWriter sstFileWriter = new SstFileWriter(envOptions, options)) {
+            sstFileWriter.open(sstPath.toString());
+            for (final KeyValue keyValue : keyValues) {
+                sstFileWriter.put(keyValue.getKey(), keyValue.getValue());
+            }
+            sstFileWriter.finish();
+        }
+
+        builtEvents.addAndGet(keyValues.size());
+
+        return Optional.of(sstPath);
+    }
+}
@@ -0,0 +1,131 @@
+package cgss.dev.storage.striped;
+
+import cgss.dev.storage.KeyValue;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator merging the given key ordered spliterators into one, also in key order, by keeping the next value of
+ * each one in a heap. Keys are compared as unsigned bytes, so values come out by due time.
+ * Notice that this spliterator is not meant to be used concurrently.
+ */
+class MergingSpliterator implements Spliterator<KeyValue> {
+    /**
+     * The spliterators being merged, each streaming in key order.
+     */
+    private final List<Spliterator<KeyValue>> spliterators;
+    /**
+     * The next value of each spliterator that isn't exhausted, with the index of the spliterator.
+     */
+    private final PriorityQueue<Head> heads;
+    /**
+     * If the first value of every spliterator has been read into the heap.
+     */
+    private boolean started;
+
+    /**
+     * Constructor for the MergingSpliterator.
+     *
+     * @param spliterators The spliterators to merge, each streaming in key order.
+     */
+    MergingSpliterator(final List<Spliterator<KeyValue>> spliterators) {
+        this.spliterators = spliterators;
+        this.heads = new PriorityQueue<>(Math.max(1, spliterators.size()), Comparator.comparing(head -> head.keyValue.getKey(), Arrays::compareUnsigned));
+        this.started = false;
+    }
+
+    /**
+     * Feeds the value with the lowest key into the stream, and replaces it with the next value of its spliterator.
+     *
+     * @param consumer The action.
+     * @return If there was a value left in any of the spliterators.
+     */
+    @Override
+    public boolean tryAdvance(final Consumer<? super KeyValue> consumer) {
+        if (!started) {
+            for (int index = 0; index < spliterators.size(); index++) {
+                advance(index);
+            }
+            started = true;
+        }
+
+        final Head head = heads.poll();
+        if (head == null) {
+            return false;
+        }
+
+        consumer.accept(head.keyValue);
+        advance(head.index);
+
+        return true;
+    }
+
+    /**
+     * Does nothing, as the merge has to be done in order.
+     *
+     * @return null
+     */
+    @Override
+    public Spliterator<KeyValue> trySplit() {
+        return null;
+    }
+
+    /**
+     * The merged spliterators may not know their sizes, so it returns Long.MAX_VALUE.
+     *
+     * @return Long.MAX_VALUE
+     */
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Values are streamed in key order, and never null.
+     *
+     * @return The characteristics of the values.
+     */
+    @Override
+    public int characteristics() {
+        return Spliterator.ORDERED | Spliterator.NONNULL;
+    }
+
+    /**
+     * Reads the next value of the given spliterator into the heap, if it has one.
+     *
+     * @param index The index of the spliterator.
+     */
+    private void advance(final int index) {
+        spliterators.get(index).tryAdvance(keyValue -> heads.add(new Head(keyValue, index)));
+    }
+
+    /**
+     * The next value of one of the merged spliterators.
+     */
+    private static class Head {
+        /**
+         * The value.
+         */
+        private final KeyValue keyValue;
+        /**
+         * The index of the spliterator it was read from.
+         */
+        private final int index;
+
+        /**
+         * Constructor for the head.
+         *
+         * @param keyValue The value.
+         * @param index The index of the spliterator it was read from.
+         */
+        private Head(final KeyValue keyValue, final int index) {
+            this.keyValue = keyValue;
+            this.index = index;
+        }
+    }
+}
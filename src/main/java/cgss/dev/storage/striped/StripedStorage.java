@@ -0,0 +1,404 @@
+package cgss.dev.storage.striped;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Spliterator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A KVStorage striping the values across several storages, e.g. RocksDB instances on different disks, by the hash of
+ * their keys. Each stripe writes, flushes and compacts on its own, so they run in parallel, and batches are split into
+ * one write per stripe, made at the same time.
+ * Streams merge the stripes back in key order, so values still come out by due time.
+ * Each stripe's directory records its index and the number of stripes, so they can't be opened in another order or
+ * number, which would look values up in the wrong stripes.
+ */
+public class StripedStorage implements KVStorage, AutoCloseable {
+    /**
+     * The prefix of the directory each stripe is checkpointed in, followed by its index.
+     */
+    private static final String STRIPE_PREFIX = "stripe-";
+    /**
+     * The file in each stripe's directory recording its index and the number of stripes.
+     */
+    private static final String STRIPE_FILE = "STRIPE";
+
+    /**
+     * The stripes, each holding the values whose key hashes to its index.
+     */
+    private final List<KVStorage> stripes;
+    /**
+     * Writes the batches of each stripe at the same time.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Constructor for the striped storage.
+     *
+     * @param stripes The stripes. Values are assigned to them by index, so they must always be given in the same
+     *                order, and their number can't change without migrating the values.
+     */
+    public StripedStorage(final List<KVStorage> stripes) {
+        if (stripes.isEmpty()) {
+            throw new IllegalArgumentException("there must be at least one stripe");
+        }
+
+        this.stripes = stripes;
+        this.executor = Executors.newFixedThreadPool(stripes.size(), runnable -> {
+            final Thread thread = new Thread(runnable, StripedStorage.class.getSimpleName());
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the directory a stripe is checkpointed in, inside the checkpoint directory.
+     *
+     * @param index The index of the stripe.
+     * @return The directory name.
+     */
+    public static String stripeDirectory(final int index) {
+        return STRIPE_PREFIX + index;
+    }
+
+    /**
+     * Checks the stripe recorded in the given directory is the given one, recording it if the directory has none yet.
+     * Should be called before the stripe is opened.
+     *
+     * @param stripePath The directory the stripe is opened from.
+     * @param index The index of the stripe.
+     * @param count The number of stripes.
+     * @throws IOException If it fails to read or write the record.
+     * @throws IllegalStateException If the directory holds another stripe, or the number of stripes changed.
+     */
+    public static void checkStripe(final Path stripePath, final int index, final int count) throws IOException {
+        final Path stripeFile = stripePath.resolve(STRIPE_FILE);
+
+        if (!Files.exists(stripeFile)) {
+            Files.createDirectories(stripePath);
+            writeStripe(stripePath, index, count);
+
+            return;
+        }
+
+        final Properties properties = new Properties();
+        try (final InputStream inputStream = Files.newInputStream(stripeFile)) {
+            properties.load(inputStream);
+        }
+
+        if (!String.valueOf(index).equals(properties.getProperty("index")) || !String.valueOf(count).equals(properties.getProperty("count"))) {
+            throw new IllegalStateException(String.format(
+                    "%s holds the stripe %s of %s, not %d of %d, the values must be migrated to change the stripes",
+                    stripePath,
+                    properties.getProperty("index"),
+                    properties.getProperty("count"),
+                    index,
+                    count
+            ));
+        }
+    }
+
+    /**
+     * Stops the threads writing the stripes' batches. Nothing can be saved in more than one stripe at once after.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    /**
+     * Saves the given value in its stripe.
+     *
+     * @param keyValue Object representing a key value.
+     * @throws KVStorageException If it fails to save.
+     */
+    @Override
+    public void SaveValue(final KeyValue keyValue) throws KVStorageException {
+        stripeOf(keyValue.getKey()).SaveValue(keyValue);
+    }
+
+    /**
+     * Splits the given values by stripe, and saves each stripe's values at once, at the same time as the others.
+     *
+     * @param keyValues Objects representing the key values.
+     * @throws KVStorageException If it fails to save any of the stripes' values. The other stripes might have saved
+     *                            theirs.
+     */
+    @Override
+    public void SaveValues(final List<KeyValue> keyValues) throws KVStorageException {
+        final Map<KVStorage, List<KeyValue>> stripeValues = keyValues
+                .stream()
+                .collect(Collectors.groupingBy(keyValue -> stripeOf(keyValue.getKey()), LinkedHashMap::new, Collectors.toList()));
+
+        if (stripeValues.size() == 1) {
+            final Map.Entry<KVStorage, List<KeyValue>> entry = stripeValues.entrySet().iterator().next();
+            entry.getKey().SaveValues(entry.getValue());
+
+            return;
+        }
+
+        final List<Future<?>> futures = new ArrayList<>(stripeValues.size());
+        KVStorageException failure = null;
+        try {
+            for (final Map.Entry<KVStorage, List<KeyValue>> entry : stripeValues.entrySet()) {
+                futures.add(executor.submit(() -> {
+                    entry.getKey().SaveValues(entry.getValue());
+
+                    return null;
+                }));
+            }
+        } catch (final RejectedExecutionException e) {
+            // Closed, though the batches already submitted are still waited for.
+            failure = new KVStorageException(e);
+        }
+
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new KVStorageException(e);
+            } catch (final ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof KVStorageException ? (KVStorageException) e.getCause() : new KVStorageException(e.getCause());
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Deletes the value associated with the given key from its stripe.
+     *
+     * @param key The key for the given value.
+     * @throws KVStorageException If it fails to delete.
+     */
+    @Override
+    public void DeleteValue(final byte[] key) throws KVStorageException {
+        stripeOf(key).DeleteValue(key);
+    }
+
+    /**
+     * Reads the value associated with the given key from its stripe.
+     *
+     * @param key The key for the given value.
+     * @return An optional containing the value, empty if it isn't stored.
+     * @throws KVStorageException If it fails to read it.
+     */
+    @Override
+    public Optional<byte[]> GetValue(final byte[] key) throws KVStorageException {
+        return stripeOf(key).GetValue(key);
+    }
+
+    /**
+     * Streams the values of all the stripes, merged in key order. The stream should be closed once done with, in
+     * order to close the stripes' streams.
+     *
+     * @return A stream containing the stored key value pairs.
+     */
+    @Override
+    public Stream<KeyValue> StreamValues() {
+        return mergeStripes(KVStorage::StreamValues);
+    }
+
+    /**
+     * Streams the values of all the stripes, starting from the given key, merged in key order. The stream should be
+     * closed once done with, in order to close the stripes' streams.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the stored key value pairs, starting from the given key.
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        return mergeStripes(stripe -> stripe.StreamValuesFrom(fromKey));
+    }
+
+    /**
+     * Returns the number of values of all the stripes.
+     *
+     * @return The number of stored values, estimated if any stripe estimates it.
+     * @throws KVStorageException If it fails to read the number of values of any stripe.
+     */
+    @Override
+    public long CountValues() throws KVStorageException {
+        long count = 0;
+        for (final KVStorage stripe : stripes) {
+            count += stripe.CountValues();
+        }
+
+        return count;
+    }
+
+    /**
+     * Returns the bytes used by all the stripes.
+     *
+     * @return The number of bytes used by the stored values.
+     * @throws KVStorageException If it fails to read the used bytes of any stripe.
+     */
+    @Override
+    public long SizeInBytes() throws KVStorageException {
+        long sizeInBytes = 0;
+        for (final KVStorage stripe : stripes) {
+            sizeInBytes += stripe.SizeInBytes();
+        }
+
+        return sizeInBytes;
+    }
+
+    /**
+     * Checks if any stripe is stalling writes. Batches touch every stripe, so one stalled stripe stalls them all.
+     *
+     * @return If writes are being stalled.
+     * @throws KVStorageException If it fails to read the write state of any stripe.
+     */
+    @Override
+    public boolean IsWriteStalled() throws KVStorageException {
+        for (final KVStorage stripe : stripes) {
+            if (stripe.IsWriteStalled()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the properties of all the stripes, each one summed across them, plus the number of stripes.
+     *
+     * @return The properties by name.
+     * @throws KVStorageException If it fails to read the properties of any stripe.
+     */
+    @Override
+    public Map<String, Long> GetProperties() throws KVStorageException {
+        final Map<String, Long> properties = new LinkedHashMap<>();
+        properties.put("striped.stripes", (long) stripes.size());
+
+        for (final KVStorage stripe : stripes) {
+            for (final Map.Entry<String, Long> property : stripe.GetProperties().entrySet()) {
+                properties.merge(property.getKey(), property.getValue(), Long::sum);
+            }
+        }
+
+        return properties;
+    }
+
+    /**
+     * Checkpoints every stripe into a directory of its own under the given path, named after its index, along with
+     * its record, so it can only be restored as the same stripe. Writes keep going while the stripes are checkpointed
+     * one after the other, so the checkpoint is only consistent with the offsets read before it, as the values saved
+     * since are saved again once consumed.
+     *
+     * @param path The directory to create the checkpoint in, created if missing, which must not hold the stripes yet.
+     * @throws KVStorageException If it fails to create the directory, to checkpoint any stripe, or to record it.
+     */
+    @Override
+    public void CreateCheckpoint(final String path) throws KVStorageException {
+        // The stripes' engines only create their own directory, not the ones above it.
+        try {
+            Files.createDirectories(Paths.get(path));
+        } catch (final IOException e) {
+            throw new KVStorageException(e);
+        }
+
+        for (int index = 0; index < stripes.size(); index++) {
+            final Path stripePath = Paths.get(path, stripeDirectory(index));
+
+            stripes.get(index).CreateCheckpoint(stripePath.toString());
+            try {
+                writeStripe(stripePath, index, stripes.size());
+            } catch (final IOException e) {
+                throw new KVStorageException(e);
+            }
+        }
+    }
+
+    /**
+     * Files hold values of every stripe, so they can't be ingested into any one of them.
+     *
+     * @param paths The storage files, each sorted by key.
+     * @throws KVStorageException Always.
+     */
+    @Override
+    public void IngestFiles(final List<String> paths) throws KVStorageException {
+        throw new KVStorageException(new UnsupportedOperationException(String.format("%s doesn't support ingesting files", getClass().getSimpleName())));
+    }
+
+    /**
+     * Records the index of a stripe and the number of stripes in its directory.
+     *
+     * @param stripePath The directory of the stripe.
+     * @param index The index of the stripe.
+     * @param count The number of stripes.
+     * @throws IOException If it fails to write the record.
+     */
+    private static void writeStripe(final Path stripePath, final int index, final int count) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty("index", String.valueOf(index));
+        properties.setProperty("count", String.valueOf(count));
+
+        try (final OutputStream outputStream = Files.newOutputStream(stripePath.resolve(STRIPE_FILE))) {
+            properties.store(outputStream, "Stripe");
+        }
+    }
+
+    /**
+     * Picks the stripe of the given key, by its hash. Keys end with a sequence number, so values with the same
+     * timestamp are spread too.
+     *
+     * @param key The key.
+     * @return The stripe holding it.
+     */
+    private KVStorage stripeOf(final byte[] key) {
+        return stripes.get(Math.floorMod(Arrays.hashCode(key), stripes.size()));
+    }
+
+    /**
+     * Opens a stream on every stripe, and merges them in key order.
+     *
+     * @param streamer Opens the stream of a stripe.
+     * @return The merged stream, closing the stripes' streams once closed.
+     */
+    private Stream<KeyValue> mergeStripes(final Function<KVStorage, Stream<KeyValue>> streamer) {
+        final List<Stream<KeyValue>> streams = new ArrayList<>(stripes.size());
+        final List<Spliterator<KeyValue>> spliterators = new ArrayList<>(stripes.size());
+
+        for (final KVStorage stripe : stripes) {
+            final Stream<KeyValue> stream = streamer.apply(stripe);
+
+            streams.add(stream);
+            spliterators.add(stream.spliterator());
+        }
+
+        return StreamSupport
+                .stream(new MergingSpliterator(spliterators), false)
+                .onClose(() -> streams.forEach(Stream::close));
+    }
+}
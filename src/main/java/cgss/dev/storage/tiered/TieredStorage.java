@@ -0,0 +1,424 @@
+package cgss.dev.storage.tiered;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A KVStorage made of a durable cold tier, holding every value, and an in memory hot tier, holding a copy of the
+ * values due within a look ahead window. Streams read the hot tier first, and only go on to the cold tier past the
+ * window, so emitting the due events never touches the disk while the backlog far in the future stays there.
+ * <p>
+ * The hot tier holds every value keyed before a boundary, which {@link #loadDueValues()} moves forward as time goes
+ * by, copying the values entering the window from the cold tier. It should be called more often than the look ahead,
+ * or emission falls back to the cold tier. Values are saved to the cold tier first, and to the hot one as well if
+ * they're before the boundary. While the boundary moves, saves and deletes wait, so none is missed by either tier.
+ */
+public class TieredStorage implements KVStorage {
+    /**
+     * The key every other key sorts after, so nothing is before it.
+     */
+    private static final byte[] FIRST_KEY = new byte[0];
+
+    /**
+     * The in memory tier, holding the values before the boundary.
+     */
+    private final MemoryStorage hotStorage;
+    /**
+     * The durable tier, holding every value.
+     */
+    private final KVStorage coldStorage;
+    /**
+     * How old an event needs to be in order to be considered expired, so due.
+     */
+    private final Duration expiryAge;
+    /**
+     * How long before being due values are loaded into the hot tier.
+     */
+    private final Duration lookAhead;
+    /**
+     * The clock telling which values are within the look ahead window.
+     */
+    private final Clock clock;
+    /**
+     * Saves and deletes share it, moving the boundary takes it exclusively.
+     */
+    private final ReadWriteLock boundaryLock;
+    /**
+     * The hot tier holds every value keyed before it.
+     */
+    private volatile byte[] boundaryKey;
+
+    /**
+     * Constructor for the tiered storage. The hot tier starts empty, until values are loaded into it.
+     *
+     * @param coldStorage The durable tier, holding every value.
+     * @param expiryAge How old an event needs to be in order to be considered expired, so due.
+     * @param lookAhead How long before being due values are loaded into the hot tier.
+     * @param clock The clock telling which values are within the look ahead window.
+     */
+    public TieredStorage(final KVStorage coldStorage, final Duration expiryAge, final Duration lookAhead, final Clock clock) {
+        this.hotStorage = new MemoryStorage();
+        this.coldStorage = coldStorage;
+        this.expiryAge = expiryAge;
+        this.lookAhead = lookAhead;
+        this.clock = clock;
+        this.boundaryLock = new ReentrantReadWriteLock();
+        this.boundaryKey = FIRST_KEY;
+    }
+
+    /**
+     * Moves the boundary to the end of the look ahead window, copying the values entering it into the hot tier.
+     *
+     * @return The number of values loaded.
+     * @throws KVStorageException If it fails to read the cold tier.
+     */
+    public long loadDueValues() throws KVStorageException {
+        final byte[] newBoundaryKey = StorageKey.encode(clock.instant().minus(expiryAge).plus(lookAhead), Long.MIN_VALUE);
+
+        boundaryLock.writeLock().lock();
+        try {
+            if (Arrays.compareUnsigned(newBoundaryKey, boundaryKey) <= 0) {
+                return 0;
+            }
+
+            final long loadedValues = copyToHotTier(boundaryKey, newBoundaryKey);
+            boundaryKey = newBoundaryKey;
+
+            return loadedValues;
+        } finally {
+            boundaryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the given value to the cold tier, and to the hot one if it's before the boundary.
+     *
+     * @param keyValue Object representing a key value.
+     * @throws KVStorageException If it fails to save it to the cold tier.
+     */
+    @Override
+    public void SaveValue(final KeyValue keyValue) throws KVStorageException {
+        boundaryLock.readLock().lock();
+        try {
+            coldStorage.SaveValue(keyValue);
+
+            if (isHot(keyValue.getKey())) {
+                hotStorage.SaveValue(keyValue);
+            }
+        } finally {
+            boundaryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saves the given values to the cold tier at once, and the ones before the boundary to the hot tier as well.
+     *
+     * @param keyValues Objects representing the key values.
+     * @throws KVStorageException If it fails to save them to the cold tier.
+     */
+    @Override
+    public void SaveValues(final List<KeyValue> keyValues) throws KVStorageException {
+        boundaryLock.readLock().lock();
+        try {
+            coldStorage.SaveValues(keyValues);
+
+            hotStorage.SaveValues(keyValues
+                    .stream()
+                    .filter(keyValue -> isHot(keyValue.getKey()))
+                    .collect(Collectors.toList()));
+        } finally {
+            boundaryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes the value associated with the given key from both tiers. The cold tier goes first, so a failure never
+     * leaves a value only on disk, where it wouldn't be loaded again.
+     *
+     * @param key The key for the given value.
+     * @throws KVStorageException If it fails to delete it from the cold tier.
+     */
+    @Override
+    public void DeleteValue(final byte[] key) throws KVStorageException {
+        boundaryLock.readLock().lock();
+        try {
+            coldStorage.DeleteValue(key);
+            hotStorage.DeleteValue(key);
+        } finally {
+            boundaryLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the value associated with the given key, from the hot tier if it's before the boundary, or else from the
+     * cold tier.
+     *
+     * @param key The key for the given value.
+     * @return An optional containing the value, empty if it isn't stored.
+     * @throws KVStorageException If it fails to read it from the cold tier.
+     */
+    @Override
+    public Optional<byte[]> GetValue(final byte[] key) throws KVStorageException {
+        if (isHot(key)) {
+            return hotStorage.GetValue(key);
+        }
+
+        return coldStorage.GetValue(key);
+    }
+
+    /**
+     * Streams the values of the hot tier, followed by the ones of the cold tier past the boundary. The cold tier is
+     * only read once the hot one is exhausted.
+     *
+     * @return A stream containing all the current values.
+     */
+    @Override
+    public Stream<KeyValue> StreamValues() {
+        final byte[] currentBoundaryKey = boundaryKey;
+
+        return concat(hotStorage.StreamValues(), currentBoundaryKey);
+    }
+
+    /**
+     * Streams the values starting from the given key, from the hot tier if it's before the boundary, and then from
+     * the cold tier.
+     *
+     * @param fromKey The key to start streaming from.
+     * @return A stream containing the current values, starting from the given key.
+     */
+    @Override
+    public Stream<KeyValue> StreamValuesFrom(final byte[] fromKey) {
+        final byte[] currentBoundaryKey = boundaryKey;
+
+        if (Arrays.compareUnsigned(fromKey, currentBoundaryKey) >= 0) {
+            return coldStorage.StreamValuesFrom(fromKey);
+        }
+
+        return concat(hotStorage.StreamValuesFrom(fromKey), currentBoundaryKey);
+    }
+
+    /**
+     * Returns the number of values in the cold tier, which holds all of them.
+     *
+     * @return The number of stored values.
+     * @throws KVStorageException If it fails to count them.
+     */
+    @Override
+    public long CountValues() throws KVStorageException {
+        return coldStorage.CountValues();
+    }
+
+    /**
+     * Returns the number of bytes used by the cold tier, which holds all the values.
+     *
+     * @return The number of bytes used by the stored values.
+     * @throws KVStorageException If it fails to measure them.
+     */
+    @Override
+    public long SizeInBytes() throws KVStorageException {
+        return coldStorage.SizeInBytes();
+    }
+
+    /**
+     * Returns the properties of the cold tier, along with the size of the hot tier.
+     *
+     * @return The properties by name.
+     * @throws KVStorageException If it fails to read the cold tier properties.
+     */
+    @Override
+    public Map<String, Long> GetProperties() throws KVStorageException {
+        final Map<String, Long> properties = new LinkedHashMap<>(coldStorage.GetProperties());
+        properties.put("tiered.hot-values", hotStorage.CountValues());
+        properties.put("tiered.hot-bytes", hotStorage.SizeInBytes());
+
+        return properties;
+    }
+
+    /**
+     * Creates a checkpoint of the cold tier, which holds all the values.
+     *
+     * @param path The directory to create the snapshot in.
+     * @throws KVStorageException If it fails to create it.
+     */
+    @Override
+    public void CreateCheckpoint(final String path) throws KVStorageException {
+        coldStorage.CreateCheckpoint(path);
+    }
+
+    /**
+     * Ingests the given files into the cold tier, copying the ingested values before the boundary into the hot tier.
+     *
+     * @param paths The storage files, each sorted by key.
+     * @throws KVStorageException If it fails to ingest them.
+     */
+    @Override
+    public void IngestFiles(final List<String> paths) throws KVStorageException {
+        boundaryLock.writeLock().lock();
+        try {
+            coldStorage.IngestFiles(paths);
+
+            // Saving a value again is harmless, so the whole hot range is copied over.
+            copyToHotTier(FIRST_KEY, boundaryKey);
+        } finally {
+            boundaryLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if the given key is before the boundary, so belongs in the hot tier.
+     *
+     * @param key The key to be checked.
+     * @return If it belongs in the hot tier.
+     */
+    private boolean isHot(final byte[] key) {
+        return Arrays.compareUnsigned(key, boundaryKey) < 0;
+    }
+
+    /**
+     * Copies the values of the cold tier within the given range into the hot tier.
+     *
+     * @param fromKey The first key of the range.
+     * @param toKey The key right after the range.
+     * @return The number of values copied.
+     * @throws KVStorageException If it fails to save them to the hot tier.
+     */
+    private long copyToHotTier(final byte[] fromKey, final byte[] toKey) throws KVStorageException {
+        long copiedValues = 0;
+
+        try (final Stream<KeyValue> coldValues = coldStorage.StreamValuesFrom(fromKey)) {
+            final Iterator<KeyValue> iterator = coldValues.iterator();
+
+            while (iterator.hasNext()) {
+                final KeyValue keyValue = iterator.next();
+                if (Arrays.compareUnsigned(keyValue.getKey(), toKey) >= 0) {
+                    break;
+                }
+
+                hotStorage.SaveValue(keyValue);
+                copiedValues++;
+            }
+        }
+
+        return copiedValues;
+    }
+
+    /**
+     * Follows the given hot tier values, up to the boundary, with the cold tier values from the boundary. The cold
+     * tier stream is only opened once the hot values are exhausted, and closed along with the returned stream.
+     *
+     * @param hotValues The hot tier values.
+     * @param fromBoundaryKey The boundary at the time the stream was asked for.
+     * @return The values of both tiers, in key order.
+     */
+    private Stream<KeyValue> concat(final Stream<KeyValue> hotValues, final byte[] fromBoundaryKey) {
+        final ColdSpliterator coldSpliterator = new ColdSpliterator(fromBoundaryKey);
+
+        // The hot tier is live, so values loaded after the boundary was read are cut, as they're in the cold stream.
+        return Stream.concat(
+                hotValues.takeWhile(keyValue -> Arrays.compareUnsigned(keyValue.getKey(), fromBoundaryKey) < 0),
+                StreamSupport.stream(coldSpliterator, false).onClose(coldSpliterator::close)
+        );
+    }
+
+    /**
+     * Iterates over the cold tier values from a given key, only opening the cold tier stream once the first value is
+     * asked for. Concatenating streams asks for their sizes up front, which would open it right away otherwise.
+     */
+    private class ColdSpliterator implements Spliterator<KeyValue> {
+        /**
+         * The key to start streaming from.
+         */
+        private final byte[] fromKey;
+        /**
+         * The cold tier stream, null until opened.
+         */
+        private Stream<KeyValue> coldValues;
+        /**
+         * The cold tier stream spliterator, null until opened.
+         */
+        private Spliterator<KeyValue> coldSpliterator;
+
+        /**
+         * Constructor for the cold spliterator.
+         *
+         * @param fromKey The key to start streaming from.
+         */
+        private ColdSpliterator(final byte[] fromKey) {
+            this.fromKey = fromKey;
+        }
+
+        /**
+         * Opens the cold tier stream if needed, and advances it.
+         *
+         * @param action The action for the next value.
+         * @return If there was a next value.
+         */
+        @Override
+        public boolean tryAdvance(final Consumer<? super KeyValue> action) {
+            if (coldSpliterator == null) {
+                coldValues = coldStorage.StreamValuesFrom(fromKey);
+                coldSpliterator = coldValues.spliterator();
+            }
+
+            return coldSpliterator.tryAdvance(action);
+        }
+
+        /**
+         * The cold tier is streamed in order, so it's never split.
+         *
+         * @return Always null.
+         */
+        @Override
+        public Spliterator<KeyValue> trySplit() {
+            return null;
+        }
+
+        /**
+         * The number of values isn't known without opening the cold tier stream.
+         *
+         * @return Always Long.MAX_VALUE, meaning unknown.
+         */
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        /**
+         * Values are streamed in key order, and never null.
+         *
+         * @return The characteristics of the values.
+         */
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED | Spliterator.NONNULL;
+        }
+
+        /**
+         * Closes the cold tier stream, if opened.
+         */
+        private void close() {
+            if (coldValues != null) {
+                coldValues.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package cgss.dev.admin;
+
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.metrics.StorageMetrics;
+import cgss.dev.model.EventHandler;
+import cgss.dev.pipeline.EmitRateLimiter;
+import cgss.dev.pipeline.KafkaDelayedProducerRunnable;
+import cgss.dev.pipeline.KafkaSinkThread;
+import cgss.dev.pipeline.ProducerScheduler;
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class AdminServerTest {
+
+    private PipelineMetrics pipelineMetrics;
+    private KVStorage kvStorage;
+    private KafkaSinkThread kafkaSinkThread;
+    private KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable;
+    private ProducerScheduler producerScheduler;
+    private EmitRateLimiter emitRateLimiter;
+    private ScheduledExecutorService executor;
+    private AdminServer adminServer;
+
+    @Before
+    public void setUp() throws IOException {
+        final EventHandler eventHandler = new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT);
+        pipelineMetrics = new PipelineMetrics();
+
+        kvStorage = new MemoryStorage();
+        kafkaSinkThread = new KafkaSinkThread(new MockConsumer<>(OffsetResetStrategy.EARLIEST), Duration.ofMillis(10), kvStorage, eventHandler);
+        emitRateLimiter = new EmitRateLimiter(0, 0);
+        kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer()),
+                kvStorage,
+                eventHandler,
+                Duration.ofMinutes(1),
+                Collections.singletonList("test"),
+                emitRateLimiter,
+                0,
+                Duration.ZERO,
+                false,
+                pipelineMetrics,
+                Clock.systemUTC()
+        );
+        executor = Executors.newSingleThreadScheduledExecutor();
+        producerScheduler = new ProducerScheduler(executor, kafkaDelayedProducerRunnable, Duration.ofSeconds(1));
+
+        Logger.getLogger(AdminServer.class.getSimpleName()).setLevel(Level.OFF);
+        adminServer = new AdminServer(
+                new InetSocketAddress("127.0.0.1", 0),
+                pipelineMetrics,
+                new StorageMetrics(kvStorage, Duration.ofMinutes(1)),
+                kvStorage,
+                kafkaSinkThread,
+                kafkaDelayedProducerRunnable,
+                producerScheduler,
+                emitRateLimiter
+        );
+        adminServer.start();
+    }
+
+    @After
+    public void tearDown() {
+        adminServer.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void pause_PausesAndResumesPipelines() throws IOException {
+        Assert.assertEquals(200, request("POST", "/ingest/pause").getStatus());
+        Assert.assertTrue(kafkaSinkThread.isIngestPaused());
+
+        final Response response = request("POST", "/emit/pause");
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertTrue(kafkaDelayedProducerRunnable.isEmitPaused());
+        Assert.assertTrue(response.getBody().get("emitPaused").getAsBoolean());
+
+        request("POST", "/ingest/resume");
+        request("POST", "/emit/resume");
+        Assert.assertFalse(kafkaSinkThread.isIngestPaused());
+        Assert.assertFalse(kafkaDelayedProducerRunnable.isEmitPaused());
+
+        Assert.assertEquals(405, request("GET", "/ingest/pause").getStatus());
+    }
+
+    @Test
+    public void stats_ReportsPipelineCounters() throws IOException {
+        pipelineMetrics.recordConsumed();
+        pipelineMetrics.recordConsumed();
+        pipelineMetrics.recordInvalid();
+        pipelineMetrics.recordStored(3_000);
+        pipelineMetrics.recordEmitted(5_000);
+        pipelineMetrics.emitAccuracy().recordEmit("test", 7, 60_000);
+
+        final Response response = request("GET", "/stats");
+
+        Assert.assertEquals(200, response.getStatus());
+        final JsonObject pipeline = response.getBody().getAsJsonObject("pipeline");
+        Assert.assertEquals(2, pipeline.get("consumedCount").getAsLong());
+        Assert.assertEquals(1, pipeline.get("invalidCount").getAsLong());
+        Assert.assertEquals(1, pipeline.get("storedCount").getAsLong());
+        Assert.assertEquals(1, pipeline.get("emittedCount").getAsLong());
+        Assert.assertEquals(0, pipeline.get("emitFailedCount").getAsLong());
+        Assert.assertEquals(3, pipeline.get("storeLatencyMaxMicros").getAsLong());
+        Assert.assertEquals(5, pipeline.get("emitLatencyMaxMicros").getAsLong());
+        Assert.assertEquals(7, response.getBody().getAsJsonObject("emitLatenessP50Millis").get("test").getAsLong());
+    }
+
+    @Test
+    public void tunables_ChangesOnlyValidTunables() throws IOException {
+        final Response response = request("POST", "/tunables?producer.poll.time=PT0.5S&emit.max.events.per.second=100&producer.max.events.per.tick=50");
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(Duration.ofMillis(500), producerScheduler.getPollInterval());
+        Assert.assertEquals(100, emitRateLimiter.getMaxEventsPerSecond());
+        Assert.assertEquals(50, kafkaDelayedProducerRunnable.getMaxEventsPerTick());
+        Assert.assertEquals("PT0.5S", response.getBody().get("producer.poll.time").getAsString());
+
+        Assert.assertEquals(400, request("POST", "/tunables?emit.max.bytes.per.second=-1&producer.max.events.per.tick=10").getStatus());
+        Assert.assertEquals(400, request("POST", "/tunables?unknown=1").getStatus());
+        Assert.assertEquals(400, request("POST", "/tunables?consumer.poll.time=soon").getStatus());
+        Assert.assertEquals(50, kafkaDelayedProducerRunnable.getMaxEventsPerTick());
+        Assert.assertEquals(Duration.ofMillis(10), kafkaSinkThread.getPollInterval());
+    }
+
+    @Test
+    public void checkpoint_RefusesWhenDisabled() throws IOException {
+        final Response response = request("POST", "/checkpoint");
+
+        Assert.assertEquals(400, response.getStatus());
+        Assert.assertEquals("checkpoints are disabled", response.getBody().get("error").getAsString());
+    }
+
+    @Test
+    public void storageIngest_RefusesUnsupportedStorage() throws IOException {
+        final Path directory = Files.createTempDirectory("bulk");
+
+        final Response response = request("POST", "/storage/ingest?path=" + directory);
+
+        Assert.assertEquals(400, response.getStatus());
+        Assert.assertEquals("MemoryStorage doesn't support ingesting files", response.getBody().get("error").getAsString());
+        Assert.assertEquals(400, request("POST", "/storage/ingest?path=" + directory.resolve("missing")).getStatus());
+    }
+
+    @Test
+    public void pending_CountsEventsByDueTime() throws IOException, KVStorageException {
+        final Instant now = Instant.now();
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(now.minusSeconds(120), 0), "a".getBytes()));
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(now.plusSeconds(30), 1), "b".getBytes()));
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(now.plusSeconds(3600), 2), "c".getBytes()));
+
+        final Response response = request("GET", "/pending?width=PT1M&buckets=2");
+
+        Assert.assertEquals(200, response.getStatus());
+        Assert.assertEquals(1, response.getBody().get("overdue").getAsLong());
+        Assert.assertEquals(0, response.getBody().get("within PT1M").getAsLong());
+        Assert.assertEquals(1, response.getBody().get("within PT2M").getAsLong());
+        Assert.assertEquals(1, response.getBody().get("later").getAsLong());
+
+        Assert.assertEquals(3, request("GET", "/storage").getBody().get("pendingEvents").getAsLong());
+        Assert.assertEquals(400, request("GET", "/pending?buckets=-1").getStatus());
+    }
+
+    private Response request(final String method, final String path) throws IOException {
+        final URL url = new URL(String.format("http://127.0.0.1:%d%s", adminServer.getAddress().getPort(), path));
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+
+        final int status = connection.getResponseCode();
+        try (final InputStream inputStream = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            final String body = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+
+            return new Response(status, new Gson().fromJson(body, JsonObject.class));
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static class Response {
+        private final int status;
+        private final JsonObject body;
+
+        private Response(final int status, final JsonObject body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        private int getStatus() {
+            return status;
+        }
+
+        private JsonObject getBody() {
+            return body;
+        }
+    }
+
+}
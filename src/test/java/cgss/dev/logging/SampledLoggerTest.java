@@ -0,0 +1,97 @@
+package cgss.dev.logging;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+public class SampledLoggerTest {
+
+    @After
+    public void tearDown() {
+        SampledLogger.configure(1000, Collections.emptyList());
+    }
+
+    @Test
+    public void shouldLog_SamplesOccurrences() {
+        SampledLogger.configure(10, Collections.emptyList());
+        final SampledLogger sampledLogger = SampledLogger.getLogger("shouldLog_SamplesOccurrences");
+
+        int logged = 0;
+        for (int i = 0; i < 25; i++) {
+            if (sampledLogger.shouldLog(Level.WARNING, "kind")) {
+                logged++;
+            }
+        }
+
+        // The 1st, 11th and 21st occurrences.
+        Assert.assertEquals(3, logged);
+    }
+
+    @Test
+    public void shouldLog_RespectsLevel() {
+        SampledLogger.configure(1, Collections.emptyList());
+        final SampledLogger sampledLogger = SampledLogger.getLogger("shouldLog_RespectsLevel");
+
+        Assert.assertFalse(sampledLogger.shouldLog(Level.FINEST, "kind"));
+        Assert.assertTrue(sampledLogger.shouldLog(Level.WARNING, "kind"));
+    }
+
+    @Test
+    public void logSummary_LogsCountsSinceLastSummary() {
+        final List<LogRecord> logRecords = captureLogRecords("logSummary_LogsCountsSinceLastSummary");
+        final SampledLogger sampledLogger = SampledLogger.getLogger("logSummary_LogsCountsSinceLastSummary");
+
+        sampledLogger.shouldLog(Level.FINEST, "a");
+        sampledLogger.shouldLog(Level.FINEST, "a");
+        sampledLogger.shouldLog(Level.FINEST, "b");
+        sampledLogger.logSummary();
+        sampledLogger.shouldLog(Level.FINEST, "b");
+        sampledLogger.logSummary();
+        sampledLogger.logSummary();
+
+        Assert.assertEquals(2, logRecords.size());
+        Assert.assertTrue(logRecords.get(0).getMessage().contains("{a=2, b=1}"));
+        Assert.assertTrue(logRecords.get(1).getMessage().contains("{b=1}"));
+    }
+
+    @Test
+    public void isTraced_MatchesConfiguredKeys() {
+        Assert.assertFalse(SampledLogger.isTraced("key".getBytes()));
+
+        SampledLogger.configure(1000, Collections.singletonList("key"));
+
+        Assert.assertTrue(SampledLogger.isTraced("key".getBytes()));
+        Assert.assertFalse(SampledLogger.isTraced("other".getBytes()));
+        Assert.assertFalse(SampledLogger.isTraced(null));
+    }
+
+    private static List<LogRecord> captureLogRecords(final String loggerName) {
+        final List<LogRecord> logRecords = new ArrayList<>();
+        final Logger logger = Logger.getLogger(loggerName);
+
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(final LogRecord record) {
+                logRecords.add(record);
+            }
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+        });
+
+        return logRecords;
+    }
+
+}
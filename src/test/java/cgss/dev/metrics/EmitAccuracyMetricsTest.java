@@ -0,0 +1,42 @@
+package cgss.dev.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class EmitAccuracyMetricsTest {
+
+    @Test
+    public void recordEmit_RecordsPerSourceTopic() {
+        final EmitAccuracyMetrics emitAccuracyMetrics = new EmitAccuracyMetrics();
+
+        emitAccuracyMetrics.recordEmit("topic-1", 10, 1_000);
+        emitAccuracyMetrics.recordEmit("topic-2", 50, 2_000);
+        emitAccuracyMetrics.recordEmit(null, 20, -1);
+
+        final Map<String, Long> emitLateness = emitAccuracyMetrics.getEmitLatenessP99Millis();
+        final Map<String, Long> dwellTime = emitAccuracyMetrics.getDwellTimeP50Millis();
+
+        Assert.assertEquals(Long.valueOf(10), emitLateness.get("topic-1"));
+        Assert.assertEquals(Long.valueOf(50), emitLateness.get("topic-2"));
+        Assert.assertEquals(Long.valueOf(20), emitLateness.get(EmitAccuracyMetrics.UNKNOWN_SOURCE_TOPIC));
+        Assert.assertEquals(2, dwellTime.size());
+        Assert.assertEquals(2_000, dwellTime.get("topic-2"), 2_000 * 0.016);
+    }
+
+    @Test
+    public void logSummary_DoesNotChangeExportedValues() {
+        Logger.getLogger(EmitAccuracyMetrics.class.getSimpleName()).setLevel(Level.OFF);
+        final EmitAccuracyMetrics emitAccuracyMetrics = new EmitAccuracyMetrics();
+
+        emitAccuracyMetrics.recordEmit("topic", 10, 100);
+        emitAccuracyMetrics.logSummary();
+        emitAccuracyMetrics.logSummary();
+
+        Assert.assertEquals(Long.valueOf(10), emitAccuracyMetrics.getEmitLatenessP50Millis().get("topic"));
+    }
+
+}
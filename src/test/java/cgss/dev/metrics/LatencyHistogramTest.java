@@ -0,0 +1,52 @@
+package cgss.dev.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void indexOf_KeepsValuesWithinTheirBucket() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            final int index = LatencyHistogram.indexOf(value);
+
+            Assert.assertTrue(LatencyHistogram.highestValueOf(index) >= value);
+            Assert.assertTrue(index == 0 || LatencyHistogram.highestValueOf(index - 1) < value);
+        }
+
+        Assert.assertEquals(Long.MAX_VALUE, LatencyHistogram.highestValueOf(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void getValueAtPercentile_IsWithinPrecision() {
+        final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+        for (long value = 1; value <= 10_000; value++) {
+            latencyHistogram.record(value);
+        }
+
+        final HistogramSnapshot snapshot = latencyHistogram.snapshot();
+
+        Assert.assertEquals(10_000, snapshot.getTotalCount());
+        Assert.assertEquals(5_000, snapshot.getValueAtPercentile(0.5), 5_000 * 0.016);
+        Assert.assertEquals(9_900, snapshot.getValueAtPercentile(0.99), 9_900 * 0.016);
+        Assert.assertEquals(9_990, snapshot.getValueAtPercentile(0.999), 9_990 * 0.016);
+    }
+
+    @Test
+    public void since_KeepsOnlyNewValues() {
+        final LatencyHistogram latencyHistogram = new LatencyHistogram();
+
+        latencyHistogram.record(1_000);
+        final HistogramSnapshot earlier = latencyHistogram.snapshot();
+        latencyHistogram.record(5);
+        latencyHistogram.record(-5);
+
+        final HistogramSnapshot interval = latencyHistogram.snapshot().since(earlier);
+
+        Assert.assertEquals(2, interval.getTotalCount());
+        Assert.assertEquals(5, interval.getValueAtPercentile(1.0));
+        Assert.assertEquals(0, interval.getValueAtPercentile(0.5));
+    }
+
+}
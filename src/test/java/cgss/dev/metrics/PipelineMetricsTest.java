@@ -0,0 +1,45 @@
+package cgss.dev.metrics;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void record_CountsAndTracksLatencies() {
+        final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+        pipelineMetrics.recordConsumed();
+        pipelineMetrics.recordConsumed();
+        pipelineMetrics.recordInvalid();
+        pipelineMetrics.recordStored(TimeUnit.MICROSECONDS.toNanos(10));
+        pipelineMetrics.recordEmitted(TimeUnit.MICROSECONDS.toNanos(20));
+        pipelineMetrics.recordEmitted(TimeUnit.MICROSECONDS.toNanos(40));
+        pipelineMetrics.recordEmitFailed();
+
+        Assert.assertEquals(2, pipelineMetrics.getConsumedCount());
+        Assert.assertEquals(1, pipelineMetrics.getInvalidCount());
+        Assert.assertEquals(1, pipelineMetrics.getStoredCount());
+        Assert.assertEquals(0, pipelineMetrics.getStoreFailedCount());
+        Assert.assertEquals(2, pipelineMetrics.getEmittedCount());
+        Assert.assertEquals(1, pipelineMetrics.getEmitFailedCount());
+        Assert.assertEquals(10, pipelineMetrics.getStoreLatencyMeanMicros(), 0.001);
+        Assert.assertEquals(30, pipelineMetrics.getEmitLatencyMeanMicros(), 0.001);
+        Assert.assertEquals(40, pipelineMetrics.getEmitLatencyMaxMicros());
+        Assert.assertEquals(0, pipelineMetrics.getTickLatencyMeanMicros(), 0.001);
+    }
+
+    @Test
+    public void sendCompleted_TracksInFlightSends() {
+        final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+        pipelineMetrics.sendStarted();
+        pipelineMetrics.sendStarted();
+        pipelineMetrics.sendCompleted();
+
+        Assert.assertEquals(1, pipelineMetrics.getInFlightSends());
+    }
+
+}
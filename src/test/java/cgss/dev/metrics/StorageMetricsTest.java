@@ -0,0 +1,42 @@
+package cgss.dev.metrics;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+public class StorageMetricsTest {
+
+    @Test
+    public void getOldestPendingDueTime_ReadsFirstKey() throws KVStorageException {
+        final Instant oldest = Instant.parse("2020-01-01T00:00:00Z");
+        final Duration expiryAge = Duration.ofMinutes(5);
+
+        final KVStorage kvStorage = new MemoryStorage();
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(oldest.plusSeconds(60), 1), "b".getBytes()));
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(oldest, 0), "a".getBytes()));
+
+        final StorageMetrics storageMetrics = new StorageMetrics(kvStorage, expiryAge);
+
+        Assert.assertEquals(2, storageMetrics.getPendingEvents());
+        Assert.assertEquals(2 * StorageKey.SIZE + 2, storageMetrics.getPendingBytes());
+        Assert.assertEquals(oldest.plus(expiryAge).toString(), storageMetrics.getOldestPendingDueTime());
+        Assert.assertTrue(storageMetrics.getOldestPendingOverdueMillis() > 0);
+        Assert.assertTrue(storageMetrics.getEngineProperties().isEmpty());
+    }
+
+    @Test
+    public void getOldestPendingDueTime_EmptyWithoutEvents() {
+        final StorageMetrics storageMetrics = new StorageMetrics(new MemoryStorage(), Duration.ofMinutes(5));
+
+        Assert.assertEquals("", storageMetrics.getOldestPendingDueTime());
+        Assert.assertEquals(0, storageMetrics.getOldestPendingOverdueMillis());
+    }
+
+}
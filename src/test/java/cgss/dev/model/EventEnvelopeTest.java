@@ -0,0 +1,72 @@
+package cgss.dev.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+
+public class EventEnvelopeTest {
+
+    @Test
+    public void decode_DecodesEncodedEnvelope() {
+        final EventEnvelope eventEnvelope = new EventEnvelope("source", "destination", Instant.ofEpochMilli(1000), "key".getBytes(), "value".getBytes());
+
+        final Optional<EventEnvelope> decodedOpt = EventEnvelope.decode(eventEnvelope.encode());
+
+        Assert.assertTrue(decodedOpt.isPresent());
+        Assert.assertEquals("source", decodedOpt.get().getSourceTopic());
+        Assert.assertEquals("destination", decodedOpt.get().getDestination());
+        Assert.assertEquals(Instant.ofEpochMilli(1000), decodedOpt.get().getConsumedAt());
+        Assert.assertArrayEquals("key".getBytes(), decodedOpt.get().getKey());
+        Assert.assertArrayEquals("value".getBytes(), decodedOpt.get().getValue());
+    }
+
+    @Test
+    public void decode_KeepsNullFields() {
+        final EventEnvelope eventEnvelope = new EventEnvelope(null, null, null, null, "value".getBytes());
+
+        final Optional<EventEnvelope> decodedOpt = EventEnvelope.decode(eventEnvelope.encode());
+
+        Assert.assertTrue(decodedOpt.isPresent());
+        Assert.assertNull(decodedOpt.get().getSourceTopic());
+        Assert.assertNull(decodedOpt.get().getDestination());
+        Assert.assertNull(decodedOpt.get().getConsumedAt());
+        Assert.assertNull(decodedOpt.get().getKey());
+        Assert.assertArrayEquals("value".getBytes(), decodedOpt.get().getValue());
+    }
+
+    @Test
+    public void decode_RejectsMalformedBytes() {
+        final byte[] encoded = new EventEnvelope("source", null, null, null, "value".getBytes()).encode();
+
+        Assert.assertFalse(EventEnvelope.decode(Arrays.copyOf(encoded, encoded.length - 1)).isPresent());
+        Assert.assertFalse(EventEnvelope.decode(new byte[0]).isPresent());
+        Assert.assertFalse(EventEnvelope.decode("{}".getBytes()).isPresent());
+    }
+
+    @Test
+    public void decode_DecodesFirstVersion() {
+        final byte[] sourceTopic = "source".getBytes(StandardCharsets.UTF_8);
+        final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+        final byte[] encoded = ByteBuffer
+                .allocate(1 + 4 * Integer.BYTES + sourceTopic.length + value.length)
+                .put((byte) 1)
+                .putInt(sourceTopic.length).put(sourceTopic)
+                .putInt(-1)
+                .putInt(-1)
+                .putInt(value.length).put(value)
+                .array();
+
+        final Optional<EventEnvelope> decodedOpt = EventEnvelope.decode(encoded);
+
+        Assert.assertTrue(decodedOpt.isPresent());
+        Assert.assertEquals("source", decodedOpt.get().getSourceTopic());
+        Assert.assertNull(decodedOpt.get().getConsumedAt());
+        Assert.assertArrayEquals(value, decodedOpt.get().getValue());
+    }
+
+}
@@ -0,0 +1,68 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class BackpressureControllerTest {
+
+    @Test
+    public void shouldPause_PausesAboveThresholdAndResumesBelowRatio() throws KVStorageException {
+        final KVStorage kvStorage = Mockito.mock(KVStorage.class);
+        Mockito.when(kvStorage.CountValues()).thenReturn(50L, 101L, 90L, 79L);
+
+        final BackpressureController backpressureController = new BackpressureController(kvStorage, () -> Duration.ZERO, 100, 0, Duration.ZERO, 0.8);
+
+        Assert.assertFalse(backpressureController.shouldPause());
+        Assert.assertTrue(backpressureController.shouldPause());
+        // Still above 80% of the threshold.
+        Assert.assertTrue(backpressureController.shouldPause());
+        Assert.assertFalse(backpressureController.shouldPause());
+    }
+
+    @Test
+    public void shouldPause_PausesOnEmitLag() {
+        final AtomicReference<Duration> emitLag = new AtomicReference<>(Duration.ofSeconds(1));
+        final BackpressureController backpressureController = new BackpressureController(Mockito.mock(KVStorage.class), emitLag::get, 0, 0, Duration.ofSeconds(10), 0.5);
+
+        Assert.assertFalse(backpressureController.shouldPause());
+
+        emitLag.set(Duration.ofSeconds(11));
+        Assert.assertTrue(backpressureController.shouldPause());
+        Assert.assertTrue(backpressureController.getPauseReason().isPresent());
+
+        emitLag.set(Duration.ofSeconds(4));
+        Assert.assertFalse(backpressureController.shouldPause());
+        Assert.assertFalse(backpressureController.getPauseReason().isPresent());
+    }
+
+    @Test
+    public void shouldPause_PausesOnWriteStall() throws KVStorageException {
+        final KVStorage kvStorage = Mockito.mock(KVStorage.class);
+        Mockito.when(kvStorage.IsWriteStalled()).thenReturn(true, false);
+
+        final BackpressureController backpressureController = new BackpressureController(kvStorage, () -> Duration.ZERO, 0, 0, Duration.ZERO, 0.8);
+
+        Assert.assertTrue(backpressureController.shouldPause());
+        Assert.assertFalse(backpressureController.shouldPause());
+    }
+
+    @Test
+    public void shouldPause_KeepsStateOnStorageErrors() throws KVStorageException {
+        final KVStorage kvStorage = Mockito.mock(KVStorage.class);
+        Mockito.when(kvStorage.SizeInBytes())
+                .thenReturn(2000L)
+                .thenThrow(new KVStorageException(new RuntimeException("Storage error")));
+
+        final BackpressureController backpressureController = new BackpressureController(kvStorage, () -> Duration.ZERO, 0, 1000, Duration.ZERO, 0.8);
+
+        Assert.assertTrue(backpressureController.shouldPause());
+        Assert.assertTrue(backpressureController.shouldPause());
+    }
+
+}
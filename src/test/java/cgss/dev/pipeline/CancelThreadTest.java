@@ -0,0 +1,64 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.model.EventEnvelope;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.indexed.IndexedStorage;
+import cgss.dev.storage.memory.MemoryStorage;
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+
+public class CancelThreadTest {
+
+    @Test
+    public void run_CancelsTheEventsOfEachCommand() throws KVStorageException, InterruptedException {
+        final EventHandler eventHandler = new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT);
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        final IndexedStorage indexedStorage = new IndexedStorage(memoryStorage, eventHandler, "", false);
+        for (int sequence = 0; sequence < 3; sequence++) {
+            final String kafkaKey = sequence == 2 ? "order-2" : "order-1";
+            final EventEnvelope eventEnvelope = new EventEnvelope("source", null, Instant.now(), kafkaKey.getBytes(StandardCharsets.UTF_8), "{}".getBytes(StandardCharsets.UTF_8));
+
+            indexedStorage.SaveValue(new KeyValue(StorageKey.encode(Instant.now(), sequence), eventEnvelope.encode()));
+        }
+
+        final TopicPartition topicPartition = new TopicPartition("cancel", 0);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+        kafkaConsumerMock.addRecord(new ConsumerRecord<>("cancel", 0, 0, "order-1".getBytes(StandardCharsets.UTF_8), null));
+        kafkaConsumerMock.addRecord(new ConsumerRecord<>("cancel", 0, 1, "unknown".getBytes(StandardCharsets.UTF_8), null));
+
+        final CancelThread cancelThread = new CancelThread(kafkaConsumerMock, Duration.ofMillis(10), indexedStorage, eventHandler, "");
+        cancelThread.start();
+
+        try {
+            final Instant deadline = Instant.now().plusSeconds(5);
+            while (kafkaConsumerMock.committed(topicPartition) == null) {
+                Assert.assertTrue("timed out waiting", Instant.now().isBefore(deadline));
+                Thread.sleep(10);
+            }
+
+            Assert.assertEquals(2, cancelThread.getCancelledEvents());
+            Assert.assertEquals(1, indexedStorage.StreamValues().count());
+            Assert.assertEquals(2L, kafkaConsumerMock.committed(topicPartition).offset());
+        } finally {
+            cancelThread.interrupt();
+            cancelThread.join();
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.model.EventHandler;
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class DelayTierRouterTest {
+
+    private static final EventHandler eventHandler = new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT);
+    private static final List<DelayTier> delayTiers = DelayTier.of(Arrays.asList("PT1M", "PT1S", "PT10S"), "tier");
+    private static final DelayTierRouter delayTierRouter = new DelayTierRouter(delayTiers, eventHandler, EventRouter.broadcast(), Arrays.asList("sink-1", "sink-2"), Duration.ofMinutes(1));
+
+    @Test
+    public void of_SortsTheTiers() {
+        Assert.assertEquals(Arrays.asList("tier-PT1S", "tier-PT10S", "tier-PT1M"), Arrays.asList(delayTiers.get(0).getTopic(), delayTiers.get(1).getTopic(), delayTiers.get(2).getTopic()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_RefusesNonPositiveDelays() {
+        DelayTier.of(Collections.singletonList("PT0S"), "tier");
+    }
+
+    @Test
+    public void route_PicksTheLongestTierNotPastTheDueTime() {
+        final Instant now = Instant.parse("2019-01-01T00:00:00Z");
+
+        final List<ProducerRecord<byte[], byte[]>> producerRecords = delayTierRouter.route(newRecord("{\"timestamp\": \"2018-12-31T23:59:45Z\"}", null), now);
+
+        Assert.assertEquals(1, producerRecords.size());
+        Assert.assertEquals("tier-PT10S", producerRecords.get(0).topic());
+        Assert.assertEquals(now.toEpochMilli(), (long) producerRecords.get(0).timestamp());
+        Assert.assertEquals(
+                String.valueOf(Instant.parse("2019-01-01T00:00:45Z").toEpochMilli()),
+                new String(producerRecords.get(0).headers().lastHeader(DelayTierRouter.DUE_HEADER).value(), StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test
+    public void route_UsesTheShortestTierForTheRemainder() {
+        final Instant now = Instant.parse("2019-01-01T00:00:00.500Z");
+
+        final List<ProducerRecord<byte[], byte[]>> producerRecords = delayTierRouter.route(newRecord("{}", now.plusMillis(200)), now);
+
+        Assert.assertEquals("tier-PT1S", producerRecords.get(0).topic());
+    }
+
+    @Test
+    public void route_SendsDueRecordsToTheSinkTopics() {
+        final Instant now = Instant.parse("2019-01-01T00:00:00Z");
+
+        final List<ProducerRecord<byte[], byte[]>> producerRecords = delayTierRouter.route(newRecord("{}", now), now);
+
+        Assert.assertEquals(2, producerRecords.size());
+        Assert.assertEquals("sink-1", producerRecords.get(0).topic());
+        Assert.assertEquals("sink-2", producerRecords.get(1).topic());
+        Assert.assertFalse(producerRecords.get(0).headers().iterator().hasNext());
+    }
+
+    @Test
+    public void route_DropsInvalidEvents() {
+        Logger.getLogger(DelayTierRouter.class.getSimpleName()).setLevel(Level.OFF);
+
+        Assert.assertTrue(delayTierRouter.route(newRecord("not an event", null), Instant.now()).isEmpty());
+    }
+
+    private static ConsumerRecord<byte[], byte[]> newRecord(final String value, final Instant dueTime) {
+        final RecordHeaders headers = new RecordHeaders();
+        if (dueTime != null) {
+            headers.add(DelayTierRouter.DUE_HEADER, String.valueOf(dueTime.toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new ConsumerRecord<>("source", 0, 0, 0L, TimestampType.CREATE_TIME, 0L, 0, 0, null, value.getBytes(), headers);
+    }
+
+}
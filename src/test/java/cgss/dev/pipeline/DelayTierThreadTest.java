@@ -0,0 +1,131 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.model.EventHandler;
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+public class DelayTierThreadTest {
+
+    private static final Instant appendedAt = Instant.parse("2019-01-01T00:00:00Z");
+    private static final DelayTierRouter delayTierRouter = new DelayTierRouter(
+            DelayTier.of(Arrays.asList("PT1S", "PT10S"), "tier"),
+            new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT),
+            EventRouter.broadcast(),
+            Collections.singletonList("sink"),
+            Duration.ofSeconds(15)
+    );
+
+    @Test
+    public void run_ForwardsSourceRecordsToATier() throws InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("source", 0);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = newConsumer(topicPartition);
+        final MockProducer<byte[], byte[]> kafkaProducerMock = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        final AtomicReference<Instant> now = new AtomicReference<>(appendedAt);
+
+        final String eventPayload = String.format("{\"timestamp\": \"%s\"}", appendedAt);
+        kafkaConsumerMock.addRecord(newRecord(topicPartition, appendedAt, eventPayload, null));
+
+        final DelayTierThread delayTierThread = new DelayTierThread(kafkaConsumerMock, kafkaProducerMock, Duration.ofMillis(10), Duration.ZERO, delayTierRouter, newClock(now));
+        delayTierThread.start();
+
+        try {
+            waitFor(() -> kafkaConsumerMock.committed(topicPartition) != null);
+
+            Assert.assertEquals(1, kafkaProducerMock.history().size());
+            Assert.assertEquals("tier-PT10S", kafkaProducerMock.history().get(0).topic());
+            Assert.assertEquals(1L, kafkaConsumerMock.committed(topicPartition).offset());
+        } finally {
+            delayTierThread.interrupt();
+            delayTierThread.join();
+        }
+    }
+
+    @Test
+    public void run_HoldsBackRecordsUntilDue() throws InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("tier-PT10S", 0);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = newConsumer(topicPartition);
+        final MockProducer<byte[], byte[]> kafkaProducerMock = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        final AtomicReference<Instant> now = new AtomicReference<>(appendedAt.plusSeconds(5));
+
+        final ConsumerRecord<byte[], byte[]> record = newRecord(topicPartition, appendedAt, "{}", appendedAt.plusSeconds(10));
+        kafkaConsumerMock.addRecord(record);
+
+        final DelayTierThread delayTierThread = new DelayTierThread(kafkaConsumerMock, kafkaProducerMock, Duration.ofMillis(10), Duration.ofSeconds(10), delayTierRouter, newClock(now));
+        delayTierThread.start();
+
+        try {
+            waitFor(() -> !delayTierThread.getPausedPartitions().isEmpty());
+
+            Assert.assertEquals(Collections.singleton(topicPartition), delayTierThread.getPausedPartitions());
+            Assert.assertTrue(kafkaProducerMock.history().isEmpty());
+            Assert.assertNull(kafkaConsumerMock.committed(topicPartition));
+
+            now.set(appendedAt.plusSeconds(10));
+            waitFor(() -> delayTierThread.getPausedPartitions().isEmpty());
+            // The mock forgets the records once polled, even for paused partitions.
+            kafkaConsumerMock.addRecord(record);
+            waitFor(() -> kafkaConsumerMock.committed(topicPartition) != null);
+
+            Assert.assertEquals(1, kafkaProducerMock.history().size());
+            Assert.assertEquals("sink", kafkaProducerMock.history().get(0).topic());
+            Assert.assertEquals(1L, kafkaConsumerMock.committed(topicPartition).offset());
+        } finally {
+            delayTierThread.interrupt();
+            delayTierThread.join();
+        }
+    }
+
+    private static MockConsumer<byte[], byte[]> newConsumer(final TopicPartition topicPartition) {
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        return kafkaConsumerMock;
+    }
+
+    private static Clock newClock(final AtomicReference<Instant> now) {
+        final Clock clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.instant()).thenAnswer(invocation -> now.get());
+
+        return clock;
+    }
+
+    private static ConsumerRecord<byte[], byte[]> newRecord(final TopicPartition topicPartition, final Instant timestamp, final String value, final Instant dueTime) {
+        final RecordHeaders headers = new RecordHeaders();
+        if (dueTime != null) {
+            headers.add(DelayTierRouter.DUE_HEADER, String.valueOf(dueTime.toEpochMilli()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), 0, timestamp.toEpochMilli(), TimestampType.CREATE_TIME, 0L, 0, 0, null, value.getBytes(), headers);
+    }
+
+    private static void waitFor(final BooleanSupplier condition) throws InterruptedException {
+        final Instant deadline = Instant.now().plusSeconds(5);
+
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue("timed out waiting", Instant.now().isBefore(deadline));
+            Thread.sleep(10);
+        }
+    }
+
+}
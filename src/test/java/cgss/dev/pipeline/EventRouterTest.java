@@ -0,0 +1,72 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.model.EventHandler;
+import com.google.gson.Gson;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class EventRouterTest {
+
+    private static final Collection<String> sinkTopics = Arrays.asList("sink-1", "sink-2");
+    private static final EventHandler eventHandler = new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT);
+
+    @Test
+    public void route_BroadcastsByDefault() {
+        final ConsumerRecord<byte[], byte[]> record = newRecord("source", "{\"destination\": \"sink-1\"}", "sink-1");
+
+        Assert.assertNull(EventRouter.broadcast().route(record));
+    }
+
+    @Test
+    public void route_RoutesByHeader() {
+        final EventRouter eventRouter = new EventRouter(RoutingEnum.HEADER, sinkTopics, eventHandler, "destination", Collections.emptyMap());
+
+        Assert.assertEquals("sink-2", eventRouter.route(newRecord("source", "{}", "sink-2")));
+        Assert.assertNull(eventRouter.route(newRecord("source", "{}", null)));
+    }
+
+    @Test
+    public void route_RoutesByField() {
+        final EventRouter eventRouter = new EventRouter(RoutingEnum.FIELD, sinkTopics, eventHandler, "destination", Collections.emptyMap());
+
+        Assert.assertEquals("sink-1", eventRouter.route(newRecord("source", "{\"destination\": \"sink-1\"}", null)));
+        Assert.assertNull(eventRouter.route(newRecord("source", "{\"other\": \"sink-1\"}", null)));
+    }
+
+    @Test
+    public void route_RoutesBySourceTopic() {
+        final EventRouter eventRouter = new EventRouter(RoutingEnum.SOURCE_TOPIC, sinkTopics, eventHandler, null, Collections.singletonMap("source", "sink-2"));
+
+        Assert.assertEquals("sink-2", eventRouter.route(newRecord("source", "{}", null)));
+        Assert.assertNull(eventRouter.route(newRecord("other", "{}", null)));
+    }
+
+    @Test
+    public void route_BroadcastsUnknownDestinations() {
+        Logger.getLogger(EventRouter.class.getSimpleName()).setLevel(Level.OFF);
+        final EventRouter eventRouter = new EventRouter(RoutingEnum.HEADER, sinkTopics, eventHandler, "destination", Collections.emptyMap());
+
+        Assert.assertNull(eventRouter.route(newRecord("source", "{}", "unknown")));
+    }
+
+    private static ConsumerRecord<byte[], byte[]> newRecord(final String topic, final String value, final String destinationHeader) {
+        final RecordHeaders headers = new RecordHeaders();
+        if (destinationHeader != null) {
+            headers.add("destination", destinationHeader.getBytes(StandardCharsets.UTF_8));
+        }
+
+        return new ConsumerRecord<>(topic, 0, 0, 0L, TimestampType.CREATE_TIME, 0L, 0, 0, null, value.getBytes(), headers);
+    }
+
+}
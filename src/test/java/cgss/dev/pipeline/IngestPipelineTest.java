@@ -0,0 +1,112 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.storage.KeyValue;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+public class IngestPipelineTest {
+
+    @Test
+    public void drainCompleted_ReturnsOutcomesInOrder() throws InterruptedException {
+        // Records with a null value are invalid.
+        final IngestPipeline ingestPipeline = new IngestPipeline(
+                "test",
+                16,
+                4,
+                (record, consumedAt) -> record.value() == null ? null : new KeyValue(record.value(), record.value()),
+                List::size
+        );
+        ingestPipeline.start();
+
+        for (long offset = 0; offset < 10; offset++) {
+            Assert.assertTrue(ingestPipeline.offer(record(offset, offset == 4 ? null : new byte[]{(byte) offset}), 0, Instant.now()));
+        }
+
+        final List<Long> offsets = new ArrayList<>();
+        final List<IngestPipeline.Outcome> outcomes = new ArrayList<>();
+        drain(ingestPipeline, entry -> {
+            offsets.add(entry.record.offset());
+            outcomes.add(entry.outcome);
+        });
+        ingestPipeline.stop();
+
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L), offsets);
+        Assert.assertEquals(IngestPipeline.Outcome.INVALID, outcomes.get(4));
+        Assert.assertEquals(9, outcomes.stream().filter(outcome -> outcome == IngestPipeline.Outcome.STORED).count());
+    }
+
+    @Test
+    public void drainCompleted_SkipsRecordsAfterFailureUntilNextEpoch() throws InterruptedException {
+        // The record at offset 1 fails to be stored the first time only.
+        final AtomicInteger failures = new AtomicInteger(1);
+        final IngestPipeline ingestPipeline = new IngestPipeline(
+                "test",
+                16,
+                16,
+                (record, consumedAt) -> new KeyValue(record.value(), record.value()),
+                entries -> {
+                    for (int i = 0; i < entries.size(); i++) {
+                        if (entries.get(i).record.offset() == 1 && failures.getAndDecrement() > 0) {
+                            return i;
+                        }
+                    }
+
+                    return entries.size();
+                }
+        );
+        ingestPipeline.start();
+
+        for (long offset = 0; offset < 4; offset++) {
+            ingestPipeline.offer(record(offset, new byte[]{(byte) offset}), 0, Instant.now());
+        }
+        final List<String> outcomes = new ArrayList<>();
+        drain(ingestPipeline, entry -> outcomes.add(entry.record.offset() + ":" + entry.outcome));
+
+        // Rewound to the failed record, with a new epoch.
+        for (long offset = 1; offset < 4; offset++) {
+            ingestPipeline.offer(record(offset, new byte[]{(byte) offset}), 1, Instant.now());
+        }
+        drain(ingestPipeline, entry -> outcomes.add(entry.record.offset() + ":" + entry.outcome));
+        ingestPipeline.stop();
+
+        Assert.assertEquals(Arrays.asList("0:STORED", "1:FAILED", "2:SKIPPED", "3:SKIPPED", "1:STORED", "2:STORED", "3:STORED"), outcomes);
+    }
+
+    @Test
+    public void offer_RefusesWhenFull() throws InterruptedException {
+        final IngestPipeline ingestPipeline = new IngestPipeline("test", 4, 4, (record, consumedAt) -> null, List::size);
+
+        // Not started, so nothing leaves the pipeline.
+        for (long offset = 0; offset < 4; offset++) {
+            Assert.assertTrue(ingestPipeline.offer(record(offset, null), 0, Instant.now()));
+        }
+
+        Assert.assertFalse(ingestPipeline.offer(record(4, null), 0, Instant.now()));
+        Assert.assertEquals(4, ingestPipeline.getInFlight());
+    }
+
+    private static ConsumerRecord<byte[], byte[]> record(final long offset, final byte[] value) {
+        return new ConsumerRecord<>("topic", 0, offset, null, value);
+    }
+
+    private static void drain(final IngestPipeline ingestPipeline, final Consumer<IngestPipeline.Entry> handler) throws InterruptedException {
+        final long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+
+        while (ingestPipeline.getInFlight() > 0 && System.nanoTime() < deadline) {
+            if (ingestPipeline.drainCompleted(handler) == 0) {
+                Thread.sleep(1);
+            }
+        }
+
+        Assert.assertEquals(0, ingestPipeline.getInFlight());
+    }
+}
@@ -1,9 +1,12 @@
 package cgss.dev.pipeline;
 
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.model.EventEnvelope;
 import cgss.dev.model.EventHandler;
 import cgss.dev.storage.KVStorage;
 import cgss.dev.storage.KVStorageException;
 import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
 import cgss.dev.storage.memory.MemoryStorage;
 import com.google.gson.Gson;
 import org.apache.kafka.clients.producer.MockProducer;
@@ -15,9 +18,12 @@ import org.junit.Test;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.logging.Level;
@@ -64,4 +70,299 @@ public class KafkaDelayedProducerRunnableTest {
         Assert.assertEquals(eventPayload, new String(producerRecords.get(0).value()));
     }
 
+    @Test
+    public void run_SendsOldestFirstUpToUnexpiredEvents() throws IOException, KVStorageException {
+        final int expirySeconds = 60;
+        final String timestampFieldName = "timestamp";
+        final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
+        final Instant now = Instant.now();
+        final List<Instant> timestamps = Arrays.asList(now.minusSeconds(2 * expirySeconds), now.minusSeconds(3 * expirySeconds), now);
+
+        final KVStorage kvStorage = new MemoryStorage();
+        long sequence = 0;
+        for (final Instant timestamp : timestamps) {
+            saveEvent(kvStorage, StorageKey.encode(timestamp, sequence++), timestampFieldName, timestamp);
+        }
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), dateTimeFormatter),
+                Duration.ofSeconds(expirySeconds),
+                Collections.singletonList("test"),
+                new EmitRateLimiter(1000, 0),
+                0,
+                Duration.ZERO,
+                false,
+                new PipelineMetrics(),
+                Clock.systemUTC()
+        );
+        kafkaDelayedProducerRunnable.run();
+
+        final List<ProducerRecord<byte[], byte[]>> producerRecords = mockProducer.history();
+
+        Assert.assertEquals(2, producerRecords.size());
+        Assert.assertTrue(new String(producerRecords.get(0).value()).contains(dateTimeFormatter.format(timestamps.get(1))));
+        Assert.assertTrue(new String(producerRecords.get(1).value()).contains(dateTimeFormatter.format(timestamps.get(0))));
+        Assert.assertEquals(1, kvStorage.StreamValues().count());
+        Assert.assertEquals(Duration.ZERO, kafkaDelayedProducerRunnable.getEmitLag());
+    }
+
+    @Test
+    public void run_ResumesFromWhereBudgetRanOut() throws IOException, KVStorageException {
+        final int expirySeconds = 60;
+        final String timestampFieldName = "timestamp";
+        final Instant now = Instant.now();
+
+        final KVStorage kvStorage = new MemoryStorage();
+        for (int i = 0; i < 3; i++) {
+            final Instant timestamp = now.minusSeconds(2 * expirySeconds).plusSeconds(i);
+            saveEvent(kvStorage, StorageKey.encode(timestamp, i), timestampFieldName, timestamp);
+        }
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT),
+                Duration.ofSeconds(expirySeconds),
+                Collections.singletonList("test"),
+                new EmitRateLimiter(0, 0),
+                2,
+                Duration.ZERO,
+                false,
+                new PipelineMetrics(),
+                Clock.systemUTC()
+        );
+
+        kafkaDelayedProducerRunnable.run();
+        Assert.assertEquals(2, mockProducer.history().size());
+        Assert.assertEquals(1, kvStorage.StreamValues().count());
+
+        kafkaDelayedProducerRunnable.run();
+        Assert.assertEquals(3, mockProducer.history().size());
+        Assert.assertEquals(0, kvStorage.StreamValues().count());
+    }
+
+    @Test
+    public void run_CatchesUpInOneRun() throws IOException, KVStorageException {
+        final int expirySeconds = 60;
+        final String timestampFieldName = "timestamp";
+        final Instant now = Instant.now();
+
+        final KVStorage kvStorage = new MemoryStorage();
+        for (int i = 0; i < 5; i++) {
+            final Instant timestamp = now.minusSeconds(2 * expirySeconds).plusSeconds(i);
+            saveEvent(kvStorage, StorageKey.encode(timestamp, i), timestampFieldName, timestamp);
+        }
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT),
+                Duration.ofSeconds(expirySeconds),
+                Collections.singletonList("test"),
+                new EmitRateLimiter(0, 0),
+                2,
+                Duration.ZERO,
+                true,
+                new PipelineMetrics(),
+                Clock.systemUTC()
+        );
+
+        kafkaDelayedProducerRunnable.run();
+
+        Assert.assertEquals(5, mockProducer.history().size());
+        Assert.assertEquals(0, kvStorage.StreamValues().count());
+    }
+
+    @Test
+    public void run_KeepsUnexpiredEvents() throws IOException, KVStorageException {
+        final String timestampFieldName = "timestamp";
+
+        // A key without a timestamp is always read, so the event timestamp is the one that counts.
+        final KVStorage kvStorage = new MemoryStorage();
+        saveEvent(kvStorage, "0".getBytes(), timestampFieldName, Instant.now());
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT),
+                Duration.ofSeconds(60),
+                Collections.singletonList("test")
+        );
+        kafkaDelayedProducerRunnable.run();
+
+        Assert.assertEquals(0, mockProducer.history().size());
+        Assert.assertEquals(1, kvStorage.StreamValues().count());
+    }
+
+    @Test
+    public void run_ExpiresEventsByInjectedClock() throws IOException, KVStorageException {
+        final String timestampFieldName = "timestamp";
+        final Instant timestamp = Instant.now();
+
+        final KVStorage kvStorage = new MemoryStorage();
+        saveEvent(kvStorage, StorageKey.encode(timestamp, 0), timestampFieldName, timestamp);
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+        // An hour long delay expires right away once the clock is two hours ahead.
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT),
+                Duration.ofHours(1),
+                Collections.singletonList("test"),
+                new EmitRateLimiter(0, 0),
+                0,
+                Duration.ZERO,
+                false,
+                pipelineMetrics,
+                Clock.fixed(timestamp.plus(Duration.ofHours(2)), ZoneOffset.UTC)
+        );
+        kafkaDelayedProducerRunnable.run();
+
+        Assert.assertEquals(1, mockProducer.history().size());
+        Assert.assertEquals(Duration.ofHours(1).toMillis(), pipelineMetrics.emitAccuracy().getEmitLatenessP50Millis().get("unknown"), Duration.ofHours(1).toMillis() / 100.0);
+        Assert.assertEquals(0, kvStorage.StreamValues().count());
+    }
+
+    @Test
+    public void run_SkipsWhileEmitPaused() throws IOException, KVStorageException {
+        final String timestampFieldName = "timestamp";
+
+        final KVStorage kvStorage = new MemoryStorage();
+        saveEvent(kvStorage, "0".getBytes(), timestampFieldName, Instant.now().minusSeconds(120));
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT),
+                Duration.ofSeconds(60),
+                Collections.singletonList("test")
+        );
+        kafkaDelayedProducerRunnable.setEmitPaused(true);
+        kafkaDelayedProducerRunnable.run();
+
+        Assert.assertEquals(0, mockProducer.history().size());
+
+        kafkaDelayedProducerRunnable.setEmitPaused(false);
+        kafkaDelayedProducerRunnable.run();
+
+        Assert.assertEquals(1, mockProducer.history().size());
+    }
+
+    @Test
+    public void run_SendsToEnvelopeDestination() throws KVStorageException {
+        final int expirySeconds = 60;
+        final String timestampFieldName = "timestamp";
+        final Instant timestamp = Instant.now().minusSeconds(2 * expirySeconds);
+        final String eventPayload = String.format("{\"%s\": \"%s\"}", timestampFieldName, DateTimeFormatter.ISO_INSTANT.format(timestamp));
+
+        final KVStorage kvStorage = new MemoryStorage();
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(timestamp, 0), new EventEnvelope("source", "sink-2", timestamp, "key".getBytes(), eventPayload.getBytes()).encode()));
+        kvStorage.SaveValue(new KeyValue(StorageKey.encode(timestamp, 1), new EventEnvelope("source", null, timestamp, "key".getBytes(), eventPayload.getBytes()).encode()));
+
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        final PipelineMetrics pipelineMetrics = new PipelineMetrics();
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT),
+                Duration.ofSeconds(expirySeconds),
+                Arrays.asList("sink-1", "sink-2"),
+                new EmitRateLimiter(0, 0),
+                0,
+                Duration.ZERO,
+                false,
+                pipelineMetrics,
+                Clock.systemUTC()
+        );
+        kafkaDelayedProducerRunnable.run();
+
+        final List<ProducerRecord<byte[], byte[]>> producerRecords = mockProducer.history();
+
+        Assert.assertEquals(3, producerRecords.size());
+        Assert.assertEquals("sink-2", producerRecords.get(0).topic());
+        Assert.assertArrayEquals("key".getBytes(), producerRecords.get(0).key());
+        Assert.assertEquals("sink-1", producerRecords.get(1).topic());
+        Assert.assertEquals("sink-2", producerRecords.get(2).topic());
+        Assert.assertEquals(0, kvStorage.StreamValues().count());
+        Assert.assertEquals(2, pipelineMetrics.getEmittedCount());
+        Assert.assertEquals(0, pipelineMetrics.getInFlightSends());
+        Assert.assertTrue(pipelineMetrics.emitAccuracy().getDwellTimeP50Millis().get("source") >= 2 * expirySeconds * 1000);
+    }
+
+    @Test
+    public void run_FlushesEachEmitBatch() throws KVStorageException {
+        final Duration expiryAge = Duration.ofSeconds(60);
+        final Instant now = Instant.parse("2020-01-01T00:00:00Z");
+        final Instant due = now.minus(expiryAge).minusSeconds(10);
+
+        final KVStorage kvStorage = new MemoryStorage();
+        for (int sequence = 0; sequence < 8; sequence++) {
+            final Instant timestamp = due.plusSeconds(sequence);
+            final String eventPayload = String.format("{\"timestamp\": \"%s\"}", DateTimeFormatter.ISO_INSTANT.format(timestamp));
+            final EventEnvelope eventEnvelope = new EventEnvelope("source", null, timestamp, ("key-" + sequence).getBytes(), eventPayload.getBytes());
+
+            kvStorage.SaveValue(new KeyValue(StorageKey.encode(timestamp, sequence), eventEnvelope.encode()));
+        }
+
+        // The sends only complete once flushed, so each batch must flush the producer rather than wait for it to linger.
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+
+        Logger.getLogger(KafkaDelayedProducerRunnable.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaDelayedProducerRunnable kafkaDelayedProducerRunnable = new KafkaDelayedProducerRunnable(
+                mockProducer,
+                kvStorage,
+                new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT),
+                expiryAge,
+                Collections.singletonList("test"),
+                new EmitRateLimiter(0, 0),
+                0,
+                Duration.ZERO,
+                false,
+                3,
+                new PipelineMetrics(),
+                Clock.fixed(now, ZoneOffset.UTC)
+        );
+        kafkaDelayedProducerRunnable.run();
+
+        final List<ProducerRecord<byte[], byte[]>> producerRecords = mockProducer.history();
+        Assert.assertTrue(mockProducer.flushed());
+        Assert.assertEquals(8, producerRecords.size());
+        for (int sequence = 0; sequence < 8; sequence++) {
+            Assert.assertArrayEquals(("key-" + sequence).getBytes(), producerRecords.get(sequence).key());
+        }
+        Assert.assertEquals(0, kvStorage.StreamValues().count());
+    }
+
+    private static void saveEvent(final KVStorage kvStorage, final byte[] key, final String timestampFieldName, final Instant timestamp) throws IOException, KVStorageException {
+        final String eventPayload = String.format("{\"%s\": \"%s\"}", timestampFieldName, DateTimeFormatter.ISO_INSTANT.format(timestamp));
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        final ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
+        objectStream.writeObject(new KeyValue(null, eventPayload.getBytes()));
+
+        kvStorage.SaveValue(new KeyValue(key, byteStream.toByteArray()));
+    }
+
 }
@@ -1,21 +1,30 @@
 package cgss.dev.pipeline;
 
+import cgss.dev.metrics.PipelineMetrics;
+import cgss.dev.model.EventEnvelope;
 import cgss.dev.model.EventHandler;
 import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
 import cgss.dev.storage.memory.MemoryStorage;
 import com.google.gson.Gson;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.MockConsumer;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
 import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.apache.kafka.common.record.TimestampType;
 import org.junit.Assert;
 import org.junit.Test;
+import org.mockito.Mockito;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -44,8 +53,7 @@ public class KafkaSinkThreadTest {
         topicPartitions.forEach(topicPartition -> recordsMap.put(topicPartition, Collections.singletonList(new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), 0, topicPartition.topic().getBytes(), eventPayload.getBytes()))));
         kafkaConsumerMock.schedulePollTask(() -> recordsMap.values().forEach(r -> r.forEach(kafkaConsumerMock::addRecord)));
 
-        final ConcurrentHashMap<byte[], byte[]> concurrentHashMap = new ConcurrentHashMap<>();
-        final KVStorage kvStorage = new MemoryStorage(concurrentHashMap);
+        final KVStorage kvStorage = new MemoryStorage();
 
         Logger.getLogger(KafkaSinkThread.class.getSimpleName()).setLevel(Level.OFF);
         final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
@@ -72,4 +80,266 @@ public class KafkaSinkThreadTest {
         Assert.assertTrue(savedAllValues);
     }
 
+    @Test
+    public void run_CommitsUpToFailedRecord() throws KVStorageException, InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final Duration pollDuration = Duration.ofSeconds(5);
+
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ISO_INSTANT;
+        final String timestampFieldName = "timestamp";
+        final String eventPayload = String.format("{\"%s\": \"%s\", \"test\": true}", timestampFieldName, dateTimeFormatter.format(Instant.now()));
+        kafkaConsumerMock.schedulePollTask(() -> {
+            for (long offset = 0; offset < 3; offset++) {
+                kafkaConsumerMock.addRecord(new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, null, eventPayload.getBytes()));
+            }
+        });
+
+        // The second record fails to be saved.
+        final KVStorage kvStorage = Mockito.mock(KVStorage.class);
+        Mockito.doNothing()
+                .doThrow(new KVStorageException(new RuntimeException("Storage error")))
+                .doNothing()
+                .when(kvStorage).SaveValue(Mockito.any(KeyValue.class));
+
+        Logger.getLogger(KafkaSinkThread.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                kafkaConsumerMock,
+                pollDuration,
+                kvStorage,
+                new EventHandler(timestampFieldName, new Gson(), dateTimeFormatter)
+        );
+        kafkaSinkThread.start();
+
+        Thread.sleep(Duration.ofSeconds(1).toMillis());
+
+        final long committedOffset = kafkaConsumerMock.committed(topicPartition).offset();
+        final long position = kafkaConsumerMock.position(topicPartition);
+
+        kafkaSinkThread.interrupt();
+        kafkaSinkThread.join();
+
+        Assert.assertEquals(1, committedOffset);
+        Assert.assertEquals(1, position);
+        Mockito.verify(kvStorage, Mockito.times(2)).SaveValue(Mockito.any(KeyValue.class));
+    }
+
+    @Test
+    public void run_PipelinedCommitsUpToFailedRecord() throws KVStorageException, InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final Duration pollDuration = Duration.ofMillis(10);
+
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        final String timestampFieldName = "timestamp";
+        final String eventPayload = String.format("{\"%s\": \"%s\"}", timestampFieldName, DateTimeFormatter.ISO_INSTANT.format(Instant.now()));
+        kafkaConsumerMock.schedulePollTask(() -> {
+            for (long offset = 0; offset < 10; offset++) {
+                kafkaConsumerMock.addRecord(new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, null, eventPayload.getBytes()));
+            }
+        });
+
+        // Batches always fail, and so does the record at offset 5, when saved on its own.
+        final KVStorage kvStorage = Mockito.mock(KVStorage.class);
+        Mockito.doThrow(new KVStorageException(new RuntimeException("Storage error")))
+                .when(kvStorage).SaveValues(Mockito.anyList());
+        Mockito.doNothing().doNothing().doNothing().doNothing().doNothing()
+                .doThrow(new KVStorageException(new RuntimeException("Storage error")))
+                .doNothing()
+                .when(kvStorage).SaveValue(Mockito.any(KeyValue.class));
+
+        final EventHandler eventHandler = new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT);
+
+        Logger.getLogger(KafkaSinkThread.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                kafkaConsumerMock,
+                pollDuration,
+                kvStorage,
+                eventHandler,
+                new OffsetCommitter(kafkaConsumerMock, Duration.ZERO),
+                new BackpressureController(kvStorage, () -> Duration.ZERO, 0, 0, Duration.ZERO, 1),
+                EventRouter.broadcast(),
+                new PipelineMetrics(),
+                Clock.systemUTC(),
+                4,
+                2,
+                0
+        );
+        kafkaSinkThread.start();
+
+        Thread.sleep(Duration.ofSeconds(1).toMillis());
+
+        final long committedOffset = kafkaConsumerMock.committed(topicPartition).offset();
+        final long position = kafkaConsumerMock.position(topicPartition);
+
+        kafkaSinkThread.interrupt();
+        kafkaSinkThread.join();
+
+        Assert.assertEquals(5, committedOffset);
+        Assert.assertEquals(5, position);
+        Mockito.verify(kvStorage, Mockito.times(6)).SaveValue(Mockito.any(KeyValue.class));
+    }
+
+    @Test
+    public void run_ParallelParseKeepsOffsetOrder() throws InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final Duration pollDuration = Duration.ofMillis(10);
+
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        // Every event has the same timestamp, so they're sorted by the sequence in their keys. Every tenth is invalid.
+        final String timestamp = DateTimeFormatter.ISO_INSTANT.format(Instant.now());
+        kafkaConsumerMock.schedulePollTask(() -> {
+            for (long offset = 0; offset < 1000; offset++) {
+                final String eventPayload = offset % 10 == 0 ? "invalid" : String.format("{\"timestamp\": \"%s\", \"offset\": %d}", timestamp, offset);
+
+                kafkaConsumerMock.addRecord(new ConsumerRecord<>(topicPartition.topic(), topicPartition.partition(), offset, null, eventPayload.getBytes()));
+            }
+        });
+
+        final KVStorage kvStorage = new MemoryStorage();
+
+        Logger.getLogger(KafkaSinkThread.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                kafkaConsumerMock,
+                pollDuration,
+                kvStorage,
+                new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT),
+                new OffsetCommitter(kafkaConsumerMock, Duration.ZERO),
+                new BackpressureController(kvStorage, () -> Duration.ZERO, 0, 0, Duration.ZERO, 1),
+                EventRouter.broadcast(),
+                new PipelineMetrics(),
+                Clock.systemUTC(),
+                0,
+                0,
+                4
+        );
+        kafkaSinkThread.start();
+
+        Thread.sleep(Duration.ofMillis(500).toMillis());
+
+        final long committedOffset = kafkaConsumerMock.committed(topicPartition).offset();
+
+        kafkaSinkThread.interrupt();
+        kafkaSinkThread.join();
+
+        final List<Long> savedOffsets = kvStorage
+                .StreamValues()
+                .map(keyValue -> EventEnvelope.decode(keyValue.getValue()).orElseThrow(AssertionError::new))
+                .map(eventEnvelope -> new Gson().fromJson(new String(eventEnvelope.getValue()), Map.class).get("offset"))
+                .map(offset -> ((Number) offset).longValue())
+                .collect(Collectors.toList());
+        final List<Long> expectedOffsets = new ArrayList<>();
+        for (long offset = 0; offset < 1000; offset++) {
+            if (offset % 10 != 0) {
+                expectedOffsets.add(offset);
+            }
+        }
+
+        Assert.assertEquals(1000, committedOffset);
+        Assert.assertEquals(expectedOffsets, savedOffsets);
+    }
+
+    @Test
+    public void run_PausesAssignedPartitions() throws InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final Duration pollDuration = Duration.ofMillis(10);
+
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        final BackpressureController backpressureController = Mockito.mock(BackpressureController.class);
+        Mockito.when(backpressureController.shouldPause()).thenReturn(true);
+
+        Logger.getLogger(KafkaSinkThread.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                kafkaConsumerMock,
+                pollDuration,
+                new MemoryStorage(),
+                new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT),
+                new OffsetCommitter(kafkaConsumerMock, pollDuration),
+                backpressureController,
+                EventRouter.broadcast(),
+                new PipelineMetrics(),
+                Clock.systemUTC(),
+                0,
+                0,
+                0
+        );
+        kafkaSinkThread.start();
+
+        Thread.sleep(Duration.ofMillis(200).toMillis());
+
+        final Set<TopicPartition> pausedPartitions = kafkaConsumerMock.paused();
+
+        kafkaSinkThread.interrupt();
+        kafkaSinkThread.join();
+
+        Assert.assertEquals(Collections.singleton(topicPartition), pausedPartitions);
+    }
+
+    @Test
+    public void run_SavesEventDestination() throws InterruptedException {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final Duration pollDuration = Duration.ofMillis(10);
+        final String timestampFieldName = "timestamp";
+        final String eventPayload = String.format("{\"%s\": \"%s\"}", timestampFieldName, DateTimeFormatter.ISO_INSTANT.format(Instant.now()));
+
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+
+        final RecordHeaders headers = new RecordHeaders();
+        headers.add("destination", "sink-2".getBytes(StandardCharsets.UTF_8));
+        kafkaConsumerMock.schedulePollTask(() -> kafkaConsumerMock.addRecord(new ConsumerRecord<>(
+                topicPartition.topic(), topicPartition.partition(), 0, 0L, TimestampType.CREATE_TIME, 0L, 0, 0, "key".getBytes(), eventPayload.getBytes(), headers
+        )));
+
+        final EventHandler eventHandler = new EventHandler(timestampFieldName, new Gson(), DateTimeFormatter.ISO_INSTANT);
+        final KVStorage kvStorage = new MemoryStorage();
+        final Instant consumedAt = Instant.parse("2020-01-01T00:00:00Z");
+
+        Logger.getLogger(KafkaSinkThread.class.getSimpleName()).setLevel(Level.OFF);
+        final KafkaSinkThread kafkaSinkThread = new KafkaSinkThread(
+                kafkaConsumerMock,
+                pollDuration,
+                kvStorage,
+                eventHandler,
+                new OffsetCommitter(kafkaConsumerMock, pollDuration),
+                new BackpressureController(kvStorage, () -> Duration.ZERO, 0, 0, Duration.ZERO, 1),
+                new EventRouter(RoutingEnum.HEADER, Arrays.asList("sink-1", "sink-2"), eventHandler, "destination", Collections.emptyMap()),
+                new PipelineMetrics(),
+                Clock.fixed(consumedAt, ZoneOffset.UTC),
+                0,
+                0,
+                0
+        );
+        kafkaSinkThread.start();
+
+        Thread.sleep(Duration.ofMillis(200).toMillis());
+
+        kafkaSinkThread.interrupt();
+        kafkaSinkThread.join();
+
+        final List<EventEnvelope> eventEnvelopes = kvStorage
+                .StreamValues()
+                .map(keyValue -> EventEnvelope.decode(keyValue.getValue()).orElseThrow(AssertionError::new))
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(1, eventEnvelopes.size());
+        Assert.assertEquals("topic", eventEnvelopes.get(0).getSourceTopic());
+        Assert.assertEquals("sink-2", eventEnvelopes.get(0).getDestination());
+        Assert.assertEquals(consumedAt, eventEnvelopes.get(0).getConsumedAt());
+        Assert.assertArrayEquals("key".getBytes(), eventEnvelopes.get(0).getKey());
+        Assert.assertEquals(eventPayload, new String(eventEnvelopes.get(0).getValue()));
+    }
+
 }
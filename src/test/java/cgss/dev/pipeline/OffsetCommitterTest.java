@@ -0,0 +1,100 @@
+package cgss.dev.pipeline;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class OffsetCommitterTest {
+
+    @Test
+    public void commit_CommitsLastProcessedOffset() {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+
+        final OffsetCommitter offsetCommitter = new OffsetCommitter(kafkaConsumerMock, Duration.ofHours(1));
+        offsetCommitter.markProcessed(new ConsumerRecord<>("topic", 0, 0, null, null));
+        offsetCommitter.markProcessed(new ConsumerRecord<>("topic", 0, 1, null, null));
+        offsetCommitter.commit();
+
+        Assert.assertEquals(2, kafkaConsumerMock.committed(topicPartition).offset());
+    }
+
+    @Test
+    public void commit_DoesNothingWithoutProcessedOffsets() {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Collections.singletonList(topicPartition));
+
+        final OffsetCommitter offsetCommitter = new OffsetCommitter(kafkaConsumerMock, Duration.ZERO);
+        offsetCommitter.commit();
+
+        Assert.assertNull(kafkaConsumerMock.committed(topicPartition));
+    }
+
+    @Test
+    public void onPartitionsRevoked_CommitsRevokedPartitions() {
+        final TopicPartition revokedPartition = new TopicPartition("topic", 0);
+        final TopicPartition keptPartition = new TopicPartition("topic", 1);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Arrays.asList(revokedPartition, keptPartition));
+
+        final OffsetCommitter offsetCommitter = new OffsetCommitter(kafkaConsumerMock, Duration.ofHours(1));
+        offsetCommitter.markProcessed(new ConsumerRecord<>("topic", 0, 4, null, null));
+        offsetCommitter.markProcessed(new ConsumerRecord<>("topic", 1, 7, null, null));
+        offsetCommitter.onPartitionsRevoked(Collections.singletonList(revokedPartition));
+
+        Assert.assertEquals(5, kafkaConsumerMock.committed(revokedPartition).offset());
+        Assert.assertNull(kafkaConsumerMock.committed(keptPartition));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void commitSync_CommitsOffsetsAlreadyCommittedAsynchronously() {
+        final TopicPartition topicPartition = new TopicPartition("topic", 0);
+        // The asynchronous commits never complete, as if they failed.
+        final Consumer<byte[], byte[]> kafkaConsumerMock = Mockito.mock(Consumer.class);
+
+        final OffsetCommitter offsetCommitter = new OffsetCommitter(kafkaConsumerMock, Duration.ofHours(1));
+        offsetCommitter.markProcessed(new ConsumerRecord<>("topic", 0, 3, null, null));
+        offsetCommitter.commit();
+        Mockito.verify(kafkaConsumerMock).commitAsync(Mockito.anyMap(), Mockito.any());
+
+        offsetCommitter.commitSync();
+        Mockito.verify(kafkaConsumerMock).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(4)));
+
+        offsetCommitter.onPartitionsRevoked(Collections.singletonList(topicPartition));
+        Mockito.verify(kafkaConsumerMock, Mockito.times(2)).commitSync(Collections.singletonMap(topicPartition, new OffsetAndMetadata(4)));
+    }
+
+    @Test
+    public void onPartitionsAssigned_SeeksToInitialOffsets() {
+        final TopicPartition restoredPartition = new TopicPartition("topic", 0);
+        final TopicPartition otherPartition = new TopicPartition("topic", 1);
+        final MockConsumer<byte[], byte[]> kafkaConsumerMock = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        kafkaConsumerMock.assign(Arrays.asList(restoredPartition, otherPartition));
+        kafkaConsumerMock.updateBeginningOffsets(Collections.singletonMap(otherPartition, 0L));
+        kafkaConsumerMock.commitSync(Collections.singletonMap(otherPartition, new OffsetAndMetadata(7)));
+
+        final OffsetCommitter offsetCommitter = new OffsetCommitter(kafkaConsumerMock, Duration.ofHours(1));
+        offsetCommitter.setInitialOffsets(Collections.singletonMap(restoredPartition, 42L));
+        offsetCommitter.onPartitionsAssigned(Arrays.asList(restoredPartition, otherPartition));
+
+        Assert.assertEquals(42, kafkaConsumerMock.position(restoredPartition));
+        Assert.assertEquals(Long.valueOf(42), offsetCommitter.getProcessedOffsets().get(restoredPartition));
+        Assert.assertEquals(Long.valueOf(7), offsetCommitter.getProcessedOffsets().get(otherPartition));
+
+        offsetCommitter.markProcessed(new ConsumerRecord<>("topic", 1, 9, null, null));
+        Assert.assertEquals(Long.valueOf(10), offsetCommitter.getProcessedOffsets().get(otherPartition));
+    }
+}
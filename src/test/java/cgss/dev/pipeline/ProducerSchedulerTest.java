@@ -0,0 +1,54 @@
+package cgss.dev.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+public class ProducerSchedulerTest {
+
+    @Test
+    public void start_PicksUpNewPollInterval() throws InterruptedException {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final AtomicInteger runs = new AtomicInteger();
+
+        final ProducerScheduler producerScheduler = new ProducerScheduler(executor, runs::incrementAndGet, Duration.ofMillis(10));
+        producerScheduler.start();
+
+        Thread.sleep(100);
+        producerScheduler.setPollInterval(Duration.ofHours(1));
+
+        // At most the run already scheduled with the old interval happens after the change.
+        Thread.sleep(50);
+        final int runsAfterChange = runs.get();
+        Thread.sleep(200);
+        executor.shutdownNow();
+
+        Assert.assertTrue(runsAfterChange > 2);
+        Assert.assertEquals(runsAfterChange, runs.get());
+    }
+
+    @Test
+    public void start_KeepsRunningAfterFailures() throws InterruptedException {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        final AtomicInteger runs = new AtomicInteger();
+
+        Logger.getLogger(ProducerScheduler.class.getSimpleName()).setLevel(Level.OFF);
+        final ProducerScheduler producerScheduler = new ProducerScheduler(executor, () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("failed");
+        }, Duration.ofMillis(10));
+        producerScheduler.start();
+
+        Thread.sleep(200);
+        executor.shutdownNow();
+
+        Assert.assertTrue(runs.get() > 2);
+    }
+
+}
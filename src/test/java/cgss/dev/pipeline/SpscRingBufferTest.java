@@ -0,0 +1,92 @@
+package cgss.dev.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class SpscRingBufferTest {
+
+    @Test
+    public void claim_ReturnsNullWhenFull() {
+        final SpscRingBuffer<long[]> ringBuffer = new SpscRingBuffer<>(3, () -> new long[1]);
+
+        // The capacity is rounded up to a power of two.
+        Assert.assertEquals(4, ringBuffer.capacity());
+
+        for (int i = 0; i < ringBuffer.capacity(); i++) {
+            Assert.assertNotNull(ringBuffer.claim());
+            ringBuffer.publish();
+        }
+
+        Assert.assertNull(ringBuffer.claim());
+        Assert.assertEquals(4, ringBuffer.size());
+    }
+
+    @Test
+    public void drain_StopsWhenHandlerRefuses() {
+        final SpscRingBuffer<long[]> ringBuffer = new SpscRingBuffer<>(8, () -> new long[1]);
+        for (long value = 0; value < 5; value++) {
+            ringBuffer.claim()[0] = value;
+            ringBuffer.publish();
+        }
+
+        final List<Long> drained = new ArrayList<>();
+        final int handled = ringBuffer.drain(entry -> {
+            if (entry[0] == 3) {
+                return false;
+            }
+
+            drained.add(entry[0]);
+
+            return true;
+        }, 10);
+
+        Assert.assertEquals(3, handled);
+        Assert.assertEquals(2, ringBuffer.size());
+
+        ringBuffer.drain(entry -> drained.add(entry[0]), 1);
+
+        Assert.assertEquals(Arrays.asList(0L, 1L, 2L, 3L), drained);
+    }
+
+    @Test
+    public void drain_KeepsOrderAcrossThreads() throws InterruptedException {
+        final SpscRingBuffer<long[]> ringBuffer = new SpscRingBuffer<>(64, () -> new long[1]);
+        final long count = 100_000;
+
+        final Thread producer = new Thread(() -> {
+            for (long value = 0; value < count; value++) {
+                long[] entry = ringBuffer.claim();
+                while (entry == null) {
+                    Thread.yield();
+                    entry = ringBuffer.claim();
+                }
+
+                entry[0] = value;
+                ringBuffer.publish();
+            }
+        });
+        producer.start();
+
+        final long[] expected = {0};
+        final boolean[] inOrder = {true};
+        while (expected[0] < count) {
+            final int handled = ringBuffer.drain(entry -> {
+                inOrder[0] &= entry[0] == expected[0]++;
+
+                return true;
+            }, 16);
+
+            if (handled == 0) {
+                Thread.yield();
+            }
+        }
+        producer.join();
+
+        Assert.assertTrue(inOrder[0]);
+        Assert.assertEquals(0, ringBuffer.size());
+    }
+}
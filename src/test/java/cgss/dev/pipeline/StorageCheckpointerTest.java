@@ -0,0 +1,126 @@
+package cgss.dev.pipeline;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.memory.MemoryStorage;
+import cgss.dev.storage.rocksdb.RocksDBStorage;
+import cgss.dev.storage.striped.StripedStorage;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.rocksdb.RocksDBException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class StorageCheckpointerTest {
+
+    @Test
+    public void checkpoint_CanBeRestoredWithItsOffsets() throws RocksDBException, KVStorageException, IOException {
+        final Path directory = Files.createTempDirectory("checkpointer");
+        final RocksDBStorage rocksDBStorage = new RocksDBStorage(directory.resolve("db").toString());
+        for (int i = 0; i < 10; i++) {
+            rocksDBStorage.SaveValue(new KeyValue(("key-" + i).getBytes(StandardCharsets.UTF_8), "value".getBytes(StandardCharsets.UTF_8)));
+        }
+
+        final Map<TopicPartition, Long> offsets = new HashMap<>();
+        offsets.put(new TopicPartition("source-topic", 0), 10L);
+        offsets.put(new TopicPartition("source-topic", 11), 3L);
+
+        final StorageCheckpointer storageCheckpointer = new StorageCheckpointer(rocksDBStorage, directory.resolve("checkpoints"), Duration.ZERO, 3, Clock.systemUTC());
+        final Path checkpointPath = storageCheckpointer.checkpoint(offsets);
+
+        // Saved after the checkpoint, so not in it.
+        rocksDBStorage.SaveValue(new KeyValue("key-10".getBytes(StandardCharsets.UTF_8), "value".getBytes(StandardCharsets.UTF_8)));
+
+        StorageCheckpointer.copyStorage(checkpointPath, directory.resolve("restored"));
+        final RocksDBStorage restoredStorage = new RocksDBStorage(directory.resolve("restored").toString());
+
+        Assert.assertEquals(offsets, StorageCheckpointer.readOffsets(checkpointPath));
+        Assert.assertEquals(10, restoredStorage.StreamValues().count());
+        Assert.assertFalse(storageCheckpointer.isDue());
+    }
+
+    @Test
+    public void checkpoint_CanBeRestoredStripeByStripe() throws RocksDBException, KVStorageException, IOException {
+        final Path directory = Files.createTempDirectory("checkpointer");
+        final List<KVStorage> stripes = new ArrayList<>();
+        for (int index = 0; index < 2; index++) {
+            final Path stripePath = directory.resolve("db-" + index);
+
+            StripedStorage.checkStripe(stripePath, index, 2);
+            stripes.add(new RocksDBStorage(stripePath.toString()));
+        }
+        final StripedStorage stripedStorage = new StripedStorage(stripes);
+
+        final List<KeyValue> keyValues = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            keyValues.add(new KeyValue(("key-" + i).getBytes(StandardCharsets.UTF_8), "value".getBytes(StandardCharsets.UTF_8)));
+        }
+        stripedStorage.SaveValues(keyValues);
+
+        final StorageCheckpointer storageCheckpointer = new StorageCheckpointer(stripedStorage, directory.resolve("checkpoints"), Duration.ZERO, 3, Clock.systemUTC());
+        final Path checkpointPath = storageCheckpointer.checkpoint(Collections.singletonMap(new TopicPartition("source-topic", 0), 10L));
+        stripedStorage.close();
+
+        final List<KVStorage> restoredStripes = new ArrayList<>();
+        for (int index = 0; index < 2; index++) {
+            final Path stripePath = directory.resolve("restored-" + index);
+
+            StorageCheckpointer.copyStorage(checkpointPath, StripedStorage.stripeDirectory(index), stripePath);
+            StripedStorage.checkStripe(stripePath, index, 2);
+            restoredStripes.add(new RocksDBStorage(stripePath.toString()));
+        }
+        final StripedStorage restoredStorage = new StripedStorage(restoredStripes);
+
+        try (final Stream<KeyValue> restoredValues = restoredStorage.StreamValues()) {
+            Assert.assertEquals(10, restoredValues.count());
+        }
+        restoredStorage.close();
+
+        // The checkpointed stripes record their place, so they can't be restored as other ones.
+        final Path misplacedPath = directory.resolve("misplaced");
+        StorageCheckpointer.copyStorage(checkpointPath, StripedStorage.stripeDirectory(0), misplacedPath);
+        try {
+            StripedStorage.checkStripe(misplacedPath, 0, 3);
+            Assert.fail("restored a stripe with another number of stripes");
+        } catch (final IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void checkpoint_DeletesOldCheckpoints() throws KVStorageException, IOException {
+        final Path checkpointsPath = Files.createTempDirectory("checkpoints");
+        final MemoryStorage kvStorage = Mockito.spy(new MemoryStorage());
+        Mockito.doAnswer(invocation -> Files.createDirectory(Paths.get((String) invocation.getArgument(0))))
+                .when(kvStorage).CreateCheckpoint(Mockito.anyString());
+
+        final Clock clock = Mockito.mock(Clock.class);
+        Mockito.when(clock.millis()).thenReturn(0L, 1000L, 2000L, 3000L);
+
+        final StorageCheckpointer storageCheckpointer = new StorageCheckpointer(kvStorage, checkpointsPath, Duration.ofSeconds(1), 2, clock);
+        storageCheckpointer.checkpoint(new HashMap<>());
+        storageCheckpointer.checkpoint(new HashMap<>());
+        storageCheckpointer.checkpoint(new HashMap<>());
+
+        try (final Stream<Path> checkpoints = Files.list(checkpointsPath)) {
+            Assert.assertEquals(2, checkpoints.count());
+        }
+        Assert.assertFalse(Files.exists(checkpointsPath.resolve("checkpoint-1000")));
+        Assert.assertTrue(Files.exists(checkpointsPath.resolve("checkpoint-3000")));
+    }
+}
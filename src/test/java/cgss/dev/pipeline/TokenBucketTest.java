@@ -0,0 +1,53 @@
+package cgss.dev.pipeline;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    @Test
+    public void acquire_DoesNotWaitWithinBurst() throws InterruptedException {
+        final TokenBucket tokenBucket = new TokenBucket(1000);
+
+        final long start = System.nanoTime();
+        tokenBucket.acquire(1000);
+
+        Assert.assertTrue(System.nanoTime() - start < 100_000_000L);
+    }
+
+    @Test
+    public void acquire_WaitsForRefill() throws InterruptedException {
+        final TokenBucket tokenBucket = new TokenBucket(100);
+        tokenBucket.acquire(100);
+
+        final long start = System.nanoTime();
+        tokenBucket.acquire(20);
+
+        // 20 tokens at 100 tokens per second take 200 millis.
+        Assert.assertTrue(System.nanoTime() - start >= 150_000_000L);
+    }
+
+    @Test
+    public void acquire_NeverWaitsWithoutLimit() throws InterruptedException {
+        final TokenBucket tokenBucket = new TokenBucket(0);
+
+        final long start = System.nanoTime();
+        tokenBucket.acquire(Long.MAX_VALUE);
+
+        Assert.assertTrue(System.nanoTime() - start < 100_000_000L);
+    }
+
+    @Test
+    public void setTokensPerSecond_AppliesNewRate() throws InterruptedException {
+        final TokenBucket tokenBucket = new TokenBucket(0);
+        tokenBucket.setTokensPerSecond(100);
+        tokenBucket.acquire(100);
+
+        final long start = System.nanoTime();
+        tokenBucket.acquire(20);
+
+        Assert.assertEquals(100, tokenBucket.getTokensPerSecond());
+        Assert.assertTrue(System.nanoTime() - start >= 150_000_000L);
+    }
+
+}
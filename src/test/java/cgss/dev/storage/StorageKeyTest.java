@@ -0,0 +1,39 @@
+package cgss.dev.storage;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+
+public class StorageKeyTest {
+
+    @Test
+    public void encode_SortsByTimestampThenSequence() {
+        final Instant timestamp = Instant.parse("2018-11-27T10:15:30Z");
+
+        final byte[] older = StorageKey.encode(timestamp.minusMillis(1), 10);
+        final byte[] first = StorageKey.encode(timestamp, 1);
+        final byte[] second = StorageKey.encode(timestamp, 2);
+
+        Assert.assertTrue(Arrays.compareUnsigned(older, first) < 0);
+        Assert.assertTrue(Arrays.compareUnsigned(first, second) < 0);
+    }
+
+    @Test
+    public void getTimestamp_ReadsEncodedTimestamp() {
+        final Instant timestamp = Instant.parse("2018-11-27T10:15:30.123Z");
+
+        Assert.assertEquals(timestamp, StorageKey.getTimestamp(StorageKey.encode(timestamp, 42)));
+    }
+
+    @Test
+    public void getTimestamp_SortsShortKeysFirst() {
+        final byte[] legacyKey = ByteBuffer.allocate(Long.BYTES).putLong(Long.MIN_VALUE + 5).array();
+
+        Assert.assertEquals(Instant.EPOCH, StorageKey.getTimestamp("a".getBytes()));
+        Assert.assertEquals(Instant.ofEpochMilli(5), StorageKey.getTimestamp(legacyKey));
+    }
+
+}
@@ -0,0 +1,82 @@
+package cgss.dev.storage;
+
+import cgss.dev.storage.memory.MemoryStorage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StorageMigratorTest {
+
+    @Test
+    public void migrate_CopiesEveryValueOnce() throws KVStorageException, IOException {
+        final Path progressPath = Files.createTempDirectory("migration").resolve("migration.progress");
+        final KVStorage source = newSource(2500);
+        final KVStorage target = Mockito.spy(new MemoryStorage());
+
+        Assert.assertEquals(2500, new StorageMigrator(source, target, 100, 3, progressPath).migrate());
+        Assert.assertEquals(2500, target.CountValues());
+
+        // Completed already, so nothing is copied again.
+        Assert.assertEquals(2500, new StorageMigrator(source, target, 100, 3, progressPath).migrate());
+        Mockito.verify(target, Mockito.times(25)).SaveValues(Mockito.anyList());
+    }
+
+    @Test
+    public void migrate_ResumesAfterFailure() throws KVStorageException, IOException {
+        final Path progressPath = Files.createTempDirectory("migration").resolve("migration.progress");
+        final KVStorage source = newSource(2500);
+        final KVStorage target = Mockito.spy(new MemoryStorage());
+
+        final AtomicInteger saves = new AtomicInteger();
+        Mockito.doAnswer(invocation -> {
+            if (saves.incrementAndGet() == 5) {
+                throw new KVStorageException(new IllegalStateException("disk full"));
+            }
+
+            return invocation.callRealMethod();
+        }).when(target).SaveValues(Mockito.anyList());
+
+        try {
+            new StorageMigrator(source, target, 100, 1, progressPath).migrate();
+            Assert.fail("Should've escalated the error!");
+        } catch (final KVStorageException e) {
+            Assert.assertEquals("disk full", e.getCause().getMessage());
+        }
+        Assert.assertEquals(400, target.CountValues());
+
+        Mockito.reset(target);
+        Assert.assertEquals(2500, new StorageMigrator(source, target, 100, 1, progressPath).migrate());
+        Mockito.verify(target, Mockito.times(21)).SaveValues(Mockito.anyList());
+    }
+
+    @Test
+    public void migrate_RefusesNonEmptyTarget() throws KVStorageException, IOException {
+        final Path progressPath = Files.createTempDirectory("migration").resolve("migration.progress");
+        final KVStorage target = new MemoryStorage();
+        target.SaveValue(new KeyValue(StorageKey.encode(Instant.EPOCH, 0), "value".getBytes(StandardCharsets.UTF_8)));
+
+        try {
+            new StorageMigrator(newSource(10), target, 100, 1, progressPath).migrate();
+            Assert.fail("Should've refused the target!");
+        } catch (final KVStorageException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertFalse(Files.exists(progressPath));
+    }
+
+    private static KVStorage newSource(final int count) throws KVStorageException {
+        final KVStorage source = new MemoryStorage();
+        for (int i = 0; i < count; i++) {
+            source.SaveValue(new KeyValue(StorageKey.encode(Instant.EPOCH.plusSeconds(i % 17), i), ("value-" + i).getBytes(StandardCharsets.UTF_8)));
+        }
+
+        return source;
+    }
+}
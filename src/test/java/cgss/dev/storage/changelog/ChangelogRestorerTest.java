@@ -0,0 +1,93 @@
+package cgss.dev.storage.changelog;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.memory.MemoryStorage;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class ChangelogRestorerTest {
+
+    @Test
+    public void restoreToEnd_AppliesSavesAndDeletes() throws KVStorageException, IOException {
+        final TopicPartition topicPartition = new TopicPartition("changelog", 0);
+        final MockConsumer<byte[], byte[]> mockConsumer = changelogConsumer(topicPartition, 0, 4);
+        mockConsumer.schedulePollTask(() -> {
+            mockConsumer.addRecord(change(topicPartition, 0, "a", "1"));
+            mockConsumer.addRecord(change(topicPartition, 1, "b", "2"));
+            mockConsumer.addRecord(change(topicPartition, 2, "a", null));
+            mockConsumer.addRecord(change(topicPartition, 3, "c", "3"));
+        });
+
+        final Path offsetsPath = Files.createTempDirectory("changelog").resolve("changelog.offsets");
+        final ChangelogOffsets changelogOffsets = new ChangelogOffsets(offsetsPath);
+        final KVStorage kvStorage = new MemoryStorage();
+
+        final long applied = new ChangelogRestorer(mockConsumer, "changelog", kvStorage, changelogOffsets, Duration.ofMillis(10)).restoreToEnd();
+
+        final List<String> keys = kvStorage
+                .StreamValues()
+                .map(keyValue -> new String(keyValue.getKey(), StandardCharsets.UTF_8))
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(4, applied);
+        Assert.assertEquals(Arrays.asList("b", "c"), keys);
+
+        // The offsets are saved, so the next restore resumes from them.
+        final ChangelogOffsets loadedOffsets = new ChangelogOffsets(offsetsPath);
+        loadedOffsets.load();
+        Assert.assertEquals(Long.valueOf(4), loadedOffsets.get(0).orElseThrow(AssertionError::new));
+    }
+
+    @Test
+    public void restoreToEnd_ResumesFromSavedOffsets() throws KVStorageException, IOException {
+        final TopicPartition topicPartition = new TopicPartition("changelog", 0);
+        final MockConsumer<byte[], byte[]> mockConsumer = changelogConsumer(topicPartition, 0, 3);
+        mockConsumer.schedulePollTask(() -> mockConsumer.addRecord(change(topicPartition, 2, "c", "3")));
+
+        final ChangelogOffsets changelogOffsets = new ChangelogOffsets(Files.createTempDirectory("changelog").resolve("changelog.offsets"));
+        changelogOffsets.applied(0, 1);
+        final KVStorage kvStorage = new MemoryStorage();
+        kvStorage.SaveValue(new KeyValue("a".getBytes(StandardCharsets.UTF_8), "1".getBytes(StandardCharsets.UTF_8)));
+
+        new ChangelogRestorer(mockConsumer, "changelog", kvStorage, changelogOffsets, Duration.ofMillis(10)).restoreToEnd();
+
+        Assert.assertEquals(3, mockConsumer.position(topicPartition));
+        Assert.assertEquals(2, kvStorage.CountValues());
+    }
+
+    private static MockConsumer<byte[], byte[]> changelogConsumer(final TopicPartition topicPartition, final long beginningOffset, final long endOffset) {
+        final MockConsumer<byte[], byte[]> mockConsumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+        mockConsumer.updatePartitions(topicPartition.topic(), Collections.singletonList(new PartitionInfo(topicPartition.topic(), topicPartition.partition(), null, null, null)));
+        mockConsumer.updateBeginningOffsets(Collections.singletonMap(topicPartition, beginningOffset));
+        mockConsumer.updateEndOffsets(Collections.singletonMap(topicPartition, endOffset));
+
+        return mockConsumer;
+    }
+
+    private static ConsumerRecord<byte[], byte[]> change(final TopicPartition topicPartition, final long offset, final String key, final String value) {
+        return new ConsumerRecord<>(
+                topicPartition.topic(),
+                topicPartition.partition(),
+                offset,
+                key.getBytes(StandardCharsets.UTF_8),
+                value == null ? null : value.getBytes(StandardCharsets.UTF_8)
+        );
+    }
+}
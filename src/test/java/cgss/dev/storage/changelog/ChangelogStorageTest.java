@@ -0,0 +1,64 @@
+package cgss.dev.storage.changelog;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.memory.MemoryStorage;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+public class ChangelogStorageTest {
+
+    @Test
+    public void saveValue_MirrorsToChangelog() throws KVStorageException {
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(true, new ByteArraySerializer(), new ByteArraySerializer());
+        final KVStorage memoryStorage = new MemoryStorage();
+        final ChangelogOffsets changelogOffsets = new ChangelogOffsets(Paths.get("unused"));
+        final ChangelogStorage changelogStorage = new ChangelogStorage(memoryStorage, mockProducer, "changelog", changelogOffsets);
+
+        final byte[] key = "key".getBytes(StandardCharsets.UTF_8);
+        final byte[] value = "value".getBytes(StandardCharsets.UTF_8);
+        changelogStorage.SaveValue(new KeyValue(key, value));
+        changelogStorage.SaveValues(Arrays.asList(new KeyValue("key-2".getBytes(StandardCharsets.UTF_8), value)));
+        changelogStorage.DeleteValue(key);
+
+        final List<ProducerRecord<byte[], byte[]>> history = mockProducer.history();
+
+        Assert.assertEquals(1, memoryStorage.CountValues());
+        Assert.assertEquals(3, history.size());
+        Assert.assertEquals("changelog", history.get(0).topic());
+        Assert.assertArrayEquals(key, history.get(0).key());
+        Assert.assertArrayEquals(value, history.get(0).value());
+        Assert.assertArrayEquals(key, history.get(2).key());
+        Assert.assertNull(history.get(2).value());
+        Assert.assertEquals(Long.valueOf(3), changelogOffsets.get(0).orElseThrow(AssertionError::new));
+    }
+
+    @Test
+    public void saveValue_ThrowsWhenChangelogFails() {
+        final MockProducer<byte[], byte[]> mockProducer = new MockProducer<>(false, new ByteArraySerializer(), new ByteArraySerializer());
+        final ChangelogStorage changelogStorage = new ChangelogStorage(new MemoryStorage(), mockProducer, "changelog", new ChangelogOffsets(Paths.get("unused")));
+
+        final Thread failer = new Thread(() -> {
+            while (!mockProducer.errorNext(new RuntimeException("Changelog error"))) {
+                Thread.yield();
+            }
+        });
+        failer.start();
+
+        try {
+            changelogStorage.SaveValue(new KeyValue("key".getBytes(StandardCharsets.UTF_8), "value".getBytes(StandardCharsets.UTF_8)));
+            Assert.fail("Should've escalated the error!");
+        } catch (KVStorageException e) {
+            // If it catches, it's correct.
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package cgss.dev.storage.indexed;
+
+import cgss.dev.model.EventEnvelope;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class IndexedStorageTest {
+    private static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+    private static final EventHandler eventHandler = new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT);
+
+    @Test
+    public void cancel_DeletesTheValuesWithTheKafkaKey() throws KVStorageException {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        final IndexedStorage indexedStorage = new IndexedStorage(memoryStorage, eventHandler, "", false);
+
+        indexedStorage.SaveValues(Arrays.asList(keyValue(0, "order-1", "{}"), keyValue(1, "order-2", "{}"), keyValue(2, "order-1", "{}")));
+
+        Assert.assertEquals(2, indexedStorage.cancel("order-1".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(0, indexedStorage.cancel("order-1".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, countValues(indexedStorage));
+        Assert.assertEquals(3, memoryStorage.CountValues());
+    }
+
+    @Test
+    public void cancel_UsesTheIdFieldAndForgetsDeletedValues() throws KVStorageException {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        final IndexedStorage indexedStorage = new IndexedStorage(memoryStorage, eventHandler, "orderId", false);
+
+        final KeyValue emittedValue = keyValue(0, "key-1", "{\"orderId\": \"order-1\"}");
+        indexedStorage.SaveValue(emittedValue);
+        indexedStorage.SaveValue(keyValue(1, "key-2", "{\"orderId\": \"order-1\"}"));
+        indexedStorage.SaveValue(keyValue(2, "key-3", "{}"));
+
+        Assert.assertEquals(3, indexedStorage.CountValues());
+
+        indexedStorage.DeleteValue(emittedValue.getKey());
+        Assert.assertEquals(4, memoryStorage.CountValues());
+        Assert.assertEquals(2, indexedStorage.CountValues());
+
+        Assert.assertEquals(1, indexedStorage.cancel("order-1".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, countValues(indexedStorage));
+        Assert.assertEquals(1, memoryStorage.CountValues());
+    }
+
+    @Test
+    public void buildIndex_IndexesTheStoredValues() throws KVStorageException {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        memoryStorage.SaveValue(keyValue(0, "order-1", "{}"));
+        memoryStorage.SaveValue(keyValue(1, "order-2", "{}"));
+        memoryStorage.SaveValue(new KeyValue(StorageKey.encode(NOW, 2), "{}".getBytes(StandardCharsets.UTF_8)));
+
+        final IndexedStorage indexedStorage = new IndexedStorage(memoryStorage, eventHandler, "", false);
+
+        Assert.assertEquals(2, indexedStorage.buildIndex());
+        Assert.assertEquals(1, indexedStorage.cancel("order-2".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(2, countValues(indexedStorage));
+    }
+
+    @Test
+    public void buildIndex_KeepsTheStoredIndex() throws KVStorageException {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        final IndexedStorage indexedStorage = new IndexedStorage(memoryStorage, eventHandler, "", false);
+        Assert.assertEquals(0, indexedStorage.buildIndex());
+        indexedStorage.SaveValues(Arrays.asList(keyValue(0, "order-1", "{}"), keyValue(1, "order-2", "{}")));
+        Assert.assertEquals(2, indexedStorage.CountValues());
+
+        // Restarting with the same business key field reads the index, and how many values it holds, from the storage.
+        final IndexedStorage restartedStorage = new IndexedStorage(memoryStorage, eventHandler, "", false);
+        Assert.assertEquals(0, restartedStorage.buildIndex());
+        Assert.assertEquals(2, restartedStorage.CountValues());
+        Assert.assertEquals(1, restartedStorage.cancel("order-1".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, restartedStorage.CountValues());
+
+        // Changing it builds the index again.
+        final IndexedStorage reindexedStorage = new IndexedStorage(memoryStorage, eventHandler, "orderId", false);
+        Assert.assertEquals(0, reindexedStorage.buildIndex());
+        Assert.assertEquals(0, reindexedStorage.cancel("order-2".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertEquals(1, countValues(reindexedStorage));
+        Assert.assertEquals(1, reindexedStorage.CountValues());
+    }
+
+    @Test
+    public void saveValues_ReplacesThePendingValueInUpsertMode() throws KVStorageException {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        final IndexedStorage indexedStorage = new IndexedStorage(memoryStorage, eventHandler, "", true);
+
+        indexedStorage.SaveValue(keyValue(0, "order-1", "{\"version\": 1}"));
+        indexedStorage.SaveValues(Arrays.asList(keyValue(1, "order-2", "{}"), keyValue(2, "order-1", "{\"version\": 2}"), keyValue(3, "order-1", "{\"version\": 3}")));
+        Assert.assertEquals(2, countValues(indexedStorage));
+
+        // The due time moves with the last version, even if it's earlier.
+        indexedStorage.SaveValue(new KeyValue(StorageKey.encode(NOW.minusSeconds(1), 4), keyValue(4, "order-1", "{\"version\": 4}").getValue()));
+
+        try (final Stream<KeyValue> storedValues = indexedStorage.StreamValues()) {
+            final List<String> events = storedValues
+                    .map(keyValue -> new String(EventEnvelope.decode(keyValue.getValue()).get().getValue(), StandardCharsets.UTF_8))
+                    .collect(Collectors.toList());
+
+            Assert.assertEquals(Arrays.asList("{\"version\": 4}", "{}"), events);
+        }
+        Assert.assertEquals(6, memoryStorage.CountValues());
+        Assert.assertEquals(2, indexedStorage.CountValues());
+    }
+
+    private static long countValues(final IndexedStorage indexedStorage) {
+        try (final Stream<KeyValue> storedValues = indexedStorage.StreamValues()) {
+            return storedValues.count();
+        }
+    }
+
+    private static KeyValue keyValue(final long sequence, final String kafkaKey, final String event) {
+        final EventEnvelope eventEnvelope = new EventEnvelope("source", null, NOW, kafkaKey.getBytes(StandardCharsets.UTF_8), event.getBytes(StandardCharsets.UTF_8));
+
+        return new KeyValue(StorageKey.encode(NOW, sequence), eventEnvelope.encode());
+    }
+}
@@ -6,14 +6,14 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
 
 public class MemoryStorageTest {
 
     @Test
     public void saveValue_SavesValue() {
-        final ConcurrentHashMap<byte[], byte[]> concurrentHashMap = new ConcurrentHashMap<>();
-        final MemoryStorage memoryStorage = new MemoryStorage(concurrentHashMap);
+        final MemoryStorage memoryStorage = new MemoryStorage();
 
         final Collection<KeyValue> keyValueCollection = Arrays.asList(
                 new KeyValue("test-key-1".getBytes(), "test-value-1".getBytes()),
@@ -22,19 +22,18 @@ public class MemoryStorageTest {
         );
 
         keyValueCollection.forEach(memoryStorage::SaveValue);
-        final boolean isMissingEntry = concurrentHashMap
-                .entrySet()
-                .stream()
-                .map(entry -> new KeyValue(entry.getKey(), entry.getValue()))
+        final boolean isMissingEntry = memoryStorage
+                .StreamValues()
                 .map(keyValueCollection::contains)
                 .anyMatch(contains -> !contains);
 
         Assert.assertFalse(isMissingEntry);
+        Assert.assertEquals(3, memoryStorage.StreamValues().count());
     }
 
     @Test
     public void deleteValue_DeletesValue() {
-        final ConcurrentHashMap<byte[], byte[]> concurrentHashMap = new ConcurrentHashMap<>();
+        final MemoryStorage memoryStorage = new MemoryStorage();
 
         final Collection<KeyValue> keyValueCollection = Arrays.asList(
                 new KeyValue("test-key-1".getBytes(), "test-value-1".getBytes()),
@@ -42,37 +41,62 @@ public class MemoryStorageTest {
                 new KeyValue("test-key-3".getBytes(), "test-value-3".getBytes())
         );
 
-        keyValueCollection.forEach(kv -> concurrentHashMap.put(kv.getKey(), kv.getValue()));
-
-        final MemoryStorage memoryStorage = new MemoryStorage(concurrentHashMap);
+        keyValueCollection.forEach(memoryStorage::SaveValue);
 
         keyValueCollection.forEach(kv -> memoryStorage.DeleteValue(kv.getKey()));
 
-        Assert.assertTrue(concurrentHashMap.isEmpty());
+        Assert.assertEquals(0, memoryStorage.StreamValues().count());
     }
 
     @Test
-    public void streamValues_StreamsValues() {
-        final ConcurrentHashMap<byte[], byte[]> concurrentHashMap = new ConcurrentHashMap<>();
-
-        final Collection<KeyValue> keyValueCollection = Arrays.asList(
-                new KeyValue("test-key-1".getBytes(), "test-value-1".getBytes()),
-                new KeyValue("test-key-2".getBytes(), "test-value-2".getBytes()),
-                new KeyValue("test-key-3".getBytes(), "test-value-3".getBytes()),
-                new KeyValue("test-key-4".getBytes(), "test-value-4".getBytes())
+    public void streamValues_StreamsValuesInKeyOrder() {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+
+        final List<KeyValue> keyValueCollection = Arrays.asList(
+                new KeyValue(new byte[]{1}, "test-value-1".getBytes()),
+                new KeyValue(new byte[]{2}, "test-value-2".getBytes()),
+                new KeyValue(new byte[]{(byte) 0x80}, "test-value-3".getBytes()),
+                new KeyValue(new byte[]{(byte) 0xFF}, "test-value-4".getBytes())
         );
 
-        keyValueCollection.forEach(kv -> concurrentHashMap.put(kv.getKey(), kv.getValue()));
+        keyValueCollection.forEach(memoryStorage::SaveValue);
 
-        final MemoryStorage memoryStorage = new MemoryStorage(concurrentHashMap);
+        final List<KeyValue> streamedValues = memoryStorage.StreamValues().collect(Collectors.toList());
 
-        final boolean isMissingEntry = memoryStorage
-                .StreamValues()
-                .map(keyValueCollection::contains)
-                .anyMatch(contains -> !contains);
+        Assert.assertEquals(keyValueCollection, streamedValues);
+    }
 
-        Assert.assertFalse(isMissingEntry);
+    @Test
+    public void countValues_TracksSavedAndDeletedValues() {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+        final KeyValue keyValue = new KeyValue("test-key-1".getBytes(), "test-value-1".getBytes());
+
+        memoryStorage.SaveValue(keyValue);
+        memoryStorage.SaveValue(new KeyValue("test-key-2".getBytes(), "test-value-2".getBytes()));
+
+        Assert.assertEquals(2, memoryStorage.CountValues());
+        Assert.assertEquals(44, memoryStorage.SizeInBytes());
+
+        memoryStorage.DeleteValue(keyValue.getKey());
+
+        Assert.assertEquals(1, memoryStorage.CountValues());
+        Assert.assertEquals(22, memoryStorage.SizeInBytes());
     }
 
+    @Test
+    public void streamValuesFrom_StreamsFromKey() {
+        final MemoryStorage memoryStorage = new MemoryStorage();
+
+        memoryStorage.SaveValue(new KeyValue("test-key-3".getBytes(), "test-value-3".getBytes()));
+        memoryStorage.SaveValue(new KeyValue("test-key-1".getBytes(), "test-value-1".getBytes()));
+        memoryStorage.SaveValue(new KeyValue("test-key-2".getBytes(), "test-value-2".getBytes()));
+
+        final List<String> streamedKeys = memoryStorage
+                .StreamValuesFrom("test-key-2".getBytes())
+                .map(keyValue -> new String(keyValue.getKey()))
+                .collect(Collectors.toList());
+
+        Assert.assertEquals(Arrays.asList("test-key-2", "test-key-3"), streamedKeys);
+    }
 
 }
@@ -7,10 +7,19 @@ import org.junit.Test;
 import org.mockito.Mockito;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class RocksDBStorageTest {
 
@@ -47,6 +56,41 @@ public class RocksDBStorageTest {
         }
     }
 
+    @Test
+    public void saveValues_WritesSingleBatch() throws KVStorageException, RocksDBException {
+        RocksDB.loadLibrary();
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+
+        storage.SaveValues(Arrays.asList(
+                new KeyValue("key-1".getBytes(StandardCharsets.UTF_8), "value-1".getBytes(StandardCharsets.UTF_8)),
+                new KeyValue("key-2".getBytes(StandardCharsets.UTF_8), "value-2".getBytes(StandardCharsets.UTF_8))
+        ));
+
+        Mockito.verify(rocksDBMock, Mockito.times(1)).write(Mockito.any(WriteOptions.class), Mockito.any(WriteBatch.class));
+        Mockito.verify(rocksDBMock, Mockito.never()).put(Mockito.any(byte[].class), Mockito.any(byte[].class));
+    }
+
+    @Test
+    public void saveValues_ThrowsError() throws RocksDBException {
+        RocksDB.loadLibrary();
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        Mockito.doAnswer(invocationOnMock -> {
+            throw new RocksDBException("RocksDB error");
+        }).when(rocksDBMock).write(Mockito.any(WriteOptions.class), Mockito.any(WriteBatch.class));
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+
+        try {
+            storage.SaveValues(Arrays.asList(new KeyValue("key".getBytes(StandardCharsets.UTF_8), "value".getBytes(StandardCharsets.UTF_8))));
+            Assert.fail("Should've escalated the error!");
+        } catch (KVStorageException e) {
+            // If it catches, it's correct.
+        }
+    }
+
     @Test
     public void deleteValue_DeletesValue() throws KVStorageException {
         final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
@@ -78,6 +122,39 @@ public class RocksDBStorageTest {
         }
     }
 
+    @Test
+    public void getValue_ReadsValue() throws KVStorageException, RocksDBException {
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        final byte[] testKey = "test-key".getBytes(StandardCharsets.UTF_8);
+        final byte[] testValue = "test-value".getBytes(StandardCharsets.UTF_8);
+
+        Mockito.when(rocksDBMock.get(testKey)).thenReturn(testValue);
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+
+        Assert.assertArrayEquals(testValue, storage.GetValue(testKey).get());
+        Assert.assertFalse(storage.GetValue("missing-key".getBytes(StandardCharsets.UTF_8)).isPresent());
+    }
+
+    @Test
+    public void getValue_ThrowsError() throws RocksDBException {
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        final byte[] testKey = "test-key".getBytes(StandardCharsets.UTF_8);
+
+        Mockito.when(rocksDBMock.get(testKey)).thenThrow(new RocksDBException("RocksDB error"));
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+
+        try {
+            storage.GetValue(testKey);
+            Assert.fail("Should've escalated the error!");
+        } catch (KVStorageException e) {
+            // If it catches, it's correct.
+        }
+    }
+
     @Test
     public void streamValues_StreamValues() {
         final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
@@ -87,16 +164,86 @@ public class RocksDBStorageTest {
                 new KeyValue("test-key-3".getBytes(), "test-value-3".getBytes())
         );
 
-        keyValueCollection.forEach(keyValue -> {
-            try {
-                Mockito.when(rocksDBMock.get(keyValue.getKey())).thenReturn(keyValue.getValue());
-            } catch (final RocksDBException e) {
-                Assert.fail(e.getMessage());
-            }
-        });
+        final RocksIterator rocksIteratorMock = Mockito.mock(RocksIterator.class);
+        Mockito.when(rocksDBMock.newIterator()).thenReturn(rocksIteratorMock);
+        Mockito.when(rocksIteratorMock.isValid()).thenReturn(true, true, true, false);
+        Mockito.when(rocksIteratorMock.key()).thenReturn("test-key-1".getBytes(), "test-key-2".getBytes(), "test-key-3".getBytes());
+        Mockito.when(rocksIteratorMock.value()).thenReturn("test-value-1".getBytes(), "test-value-2".getBytes(), "test-value-3".getBytes());
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+
+        try (final Stream<KeyValue> values = storage.StreamValues()) {
+            Assert.assertEquals(keyValueCollection, values.collect(Collectors.toList()));
+        }
+
+        Mockito.verify(rocksIteratorMock).seekToFirst();
+        Mockito.verify(rocksIteratorMock).close();
+    }
+
+    @Test
+    public void isWriteStalled_ChecksDelayedWrites() throws RocksDBException, KVStorageException {
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        Mockito.when(rocksDBMock.getLongProperty("rocksdb.is-write-stopped")).thenReturn(0L);
+        Mockito.when(rocksDBMock.getLongProperty("rocksdb.actual-delayed-write-rate")).thenReturn(0L, 1024L);
 
         final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
 
-        storage.StreamValues().forEach(keyValue -> Assert.assertTrue(keyValueCollection.contains(keyValue)));
+        Assert.assertFalse(storage.IsWriteStalled());
+        Assert.assertTrue(storage.IsWriteStalled());
+    }
+
+    @Test
+    public void getProperties_ReadsMonitoredProperties() throws RocksDBException, KVStorageException {
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        Mockito.when(rocksDBMock.getLongProperty(Mockito.anyString())).thenReturn(0L);
+        Mockito.when(rocksDBMock.getLongProperty("rocksdb.estimate-pending-compaction-bytes")).thenReturn(4096L);
+
+        final Map<String, Long> properties = new RocksDBStorage(rocksDBMock).GetProperties();
+
+        Assert.assertEquals(Long.valueOf(4096L), properties.get("rocksdb.estimate-pending-compaction-bytes"));
+        Assert.assertEquals(Long.valueOf(0L), properties.get("rocksdb.cur-size-all-mem-tables"));
+        Assert.assertFalse(properties.containsKey("rocksdb.stall.micros"));
+    }
+
+    @Test
+    public void getProperties_ReportsStallsOnlyWhenCollectingStatistics() throws IOException, RocksDBException, KVStorageException {
+        final Path directory = Files.createTempDirectory("statistics");
+
+        Assert.assertFalse(new RocksDBStorage(directory.resolve("default").toString()).GetProperties().containsKey("rocksdb.stall.micros"));
+        Assert.assertEquals(Long.valueOf(0L), new RocksDBStorage(directory.resolve("statistics").toString(), true).GetProperties().get("rocksdb.stall.micros"));
+    }
+
+    @Test
+    public void sizeInBytes_SumsFilesAndMemtables() throws RocksDBException, KVStorageException {
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+
+        Mockito.when(rocksDBMock.getLongProperty("rocksdb.total-sst-files-size")).thenReturn(1000L);
+        Mockito.when(rocksDBMock.getLongProperty("rocksdb.cur-size-all-mem-tables")).thenReturn(24L);
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+
+        Assert.assertEquals(1024L, storage.SizeInBytes());
+    }
+
+    @Test
+    public void streamValuesFrom_SeeksToKey() {
+        final RocksDB rocksDBMock = Mockito.mock(RocksDB.class);
+        final RocksIterator rocksIteratorMock = Mockito.mock(RocksIterator.class);
+        Mockito.when(rocksDBMock.newIterator()).thenReturn(rocksIteratorMock);
+        Mockito.when(rocksIteratorMock.isValid()).thenReturn(true, false);
+        Mockito.when(rocksIteratorMock.key()).thenReturn("test-key-2".getBytes());
+        Mockito.when(rocksIteratorMock.value()).thenReturn("test-value-2".getBytes());
+
+        final RocksDBStorage storage = new RocksDBStorage(rocksDBMock);
+        final byte[] fromKey = "test-key-2".getBytes();
+
+        try (final Stream<KeyValue> values = storage.StreamValuesFrom(fromKey)) {
+            Assert.assertEquals(1, values.count());
+        }
+
+        Mockito.verify(rocksIteratorMock).seek(fromKey);
+        Mockito.verify(rocksIteratorMock).close();
     }
 }
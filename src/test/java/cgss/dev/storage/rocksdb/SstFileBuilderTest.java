@@ -0,0 +1,91 @@
+package cgss.dev.storage.rocksdb;
+
+import cgss.dev.model.EventEnvelope;
+import cgss.dev.model.EventHandler;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import com.google.gson.Gson;
+import org.junit.Assert;
+import org.junit.Test;
+import org.rocksdb.RocksDBException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class SstFileBuilderTest {
+
+    @Test
+    public void build_WritesIngestableSortedFiles() throws IOException, KVStorageException, RocksDBException {
+        final Path directory = Files.createTempDirectory("bulk");
+        final Instant base = Instant.parse("2020-01-01T00:00:00Z");
+
+        // Out of timestamp order, so each chunk has to be sorted, and overlapping between chunks.
+        final List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            lines.add(String.format("{\"timestamp\": \"%s\"}", base.plusSeconds((i * 7) % 25)));
+        }
+        lines.add("not an event");
+        lines.add("");
+        final Path inputPath = Files.write(directory.resolve("events.jsonl"), lines, StandardCharsets.UTF_8);
+
+        final SstFileBuilder sstFileBuilder = new SstFileBuilder(
+                new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT),
+                directory.resolve("sst"),
+                "source-topic",
+                2,
+                10,
+                0,
+                Clock.fixed(base, ZoneOffset.UTC)
+        );
+        final List<Path> sstPaths = sstFileBuilder.build(Collections.singletonList(inputPath));
+
+        Assert.assertEquals(3, sstPaths.size());
+        Assert.assertEquals(25, sstFileBuilder.getBuiltEvents());
+        Assert.assertEquals(1, sstFileBuilder.getInvalidEvents());
+
+        final RocksDBStorage rocksDBStorage = new RocksDBStorage(directory.resolve("db").toString());
+        rocksDBStorage.IngestFiles(sstPaths.stream().map(Path::toString).collect(Collectors.toList()));
+
+        final List<KeyValue> keyValues = rocksDBStorage.StreamValues().collect(Collectors.toList());
+        Assert.assertEquals(25, keyValues.size());
+        for (int i = 0; i < keyValues.size(); i++) {
+            Assert.assertEquals(base.plusSeconds(i), StorageKey.getTimestamp(keyValues.get(i).getKey()));
+
+            final EventEnvelope eventEnvelope = EventEnvelope.decode(keyValues.get(i).getValue()).get();
+            Assert.assertEquals("source-topic", eventEnvelope.getSourceTopic());
+            Assert.assertNull(eventEnvelope.getDestination());
+            Assert.assertEquals(base, eventEnvelope.getConsumedAt());
+        }
+    }
+
+    @Test
+    public void build_SkipsChunksWithoutEvents() throws IOException, KVStorageException {
+        final Path directory = Files.createTempDirectory("bulk");
+        final Path inputPath = Files.write(directory.resolve("events.jsonl"), Arrays.asList("{}", "[]"), StandardCharsets.UTF_8);
+
+        final SstFileBuilder sstFileBuilder = new SstFileBuilder(
+                new EventHandler("timestamp", new Gson(), DateTimeFormatter.ISO_INSTANT),
+                directory.resolve("sst"),
+                null,
+                1,
+                10,
+                0,
+                Clock.systemUTC()
+        );
+
+        Assert.assertTrue(sstFileBuilder.build(Collections.singletonList(inputPath)).isEmpty());
+        Assert.assertEquals(2, sstFileBuilder.getInvalidEvents());
+    }
+}
@@ -0,0 +1,112 @@
+package cgss.dev.storage.striped;
+
+import cgss.dev.storage.KVStorage;
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class StripedStorageTest {
+    private static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+
+    @Test
+    public void saveValues_SpreadsValuesAndStreamsThemInKeyOrder() throws KVStorageException {
+        final List<MemoryStorage> stripes = Arrays.asList(new MemoryStorage(), new MemoryStorage(), new MemoryStorage());
+        final StripedStorage stripedStorage = new StripedStorage(new ArrayList<KVStorage>(stripes));
+
+        final Random random = new Random(42);
+        final List<KeyValue> keyValues = new ArrayList<>();
+        for (int sequence = 0; sequence < 300; sequence++) {
+            keyValues.add(new KeyValue(StorageKey.encode(NOW.plusMillis(random.nextInt(1000)), sequence), new byte[]{(byte) sequence}));
+        }
+        stripedStorage.SaveValues(keyValues);
+
+        Assert.assertEquals(300, stripedStorage.CountValues());
+        for (final MemoryStorage stripe : stripes) {
+            Assert.assertTrue(stripe.CountValues() > 50);
+        }
+
+        final List<byte[]> expectedKeys = keyValues
+                .stream()
+                .map(KeyValue::getKey)
+                .sorted(Arrays::compareUnsigned)
+                .collect(Collectors.toList());
+        try (final Stream<KeyValue> storedValues = stripedStorage.StreamValues()) {
+            final List<byte[]> storedKeys = storedValues.map(KeyValue::getKey).collect(Collectors.toList());
+
+            Assert.assertEquals(expectedKeys.size(), storedKeys.size());
+            for (int index = 0; index < expectedKeys.size(); index++) {
+                Assert.assertArrayEquals(expectedKeys.get(index), storedKeys.get(index));
+            }
+        }
+
+        final byte[] fromKey = expectedKeys.get(100);
+        try (final Stream<KeyValue> storedValues = stripedStorage.StreamValuesFrom(fromKey)) {
+            final List<byte[]> storedKeys = storedValues.map(KeyValue::getKey).collect(Collectors.toList());
+
+            Assert.assertEquals(200, storedKeys.size());
+            Assert.assertArrayEquals(fromKey, storedKeys.get(0));
+        }
+    }
+
+    @Test
+    public void deleteValue_DeletesFromTheSameStripe() throws KVStorageException {
+        final StripedStorage stripedStorage = new StripedStorage(Arrays.asList(new MemoryStorage(), new MemoryStorage()));
+
+        final List<KeyValue> keyValues = new ArrayList<>();
+        for (int sequence = 0; sequence < 10; sequence++) {
+            final KeyValue keyValue = new KeyValue(StorageKey.encode(NOW, sequence), new byte[0]);
+
+            keyValues.add(keyValue);
+            stripedStorage.SaveValue(keyValue);
+        }
+
+        for (final KeyValue keyValue : keyValues) {
+            Assert.assertTrue(stripedStorage.GetValue(keyValue.getKey()).isPresent());
+            stripedStorage.DeleteValue(keyValue.getKey());
+            Assert.assertFalse(stripedStorage.GetValue(keyValue.getKey()).isPresent());
+        }
+
+        Assert.assertEquals(0, stripedStorage.CountValues());
+        try (final Stream<KeyValue> storedValues = stripedStorage.StreamValues()) {
+            Assert.assertFalse(storedValues.findAny().isPresent());
+        }
+    }
+
+    @Test
+    public void checkStripe_RefusesAnotherNumberOfStripes() throws IOException {
+        final Path directory = Files.createTempDirectory("stripes");
+        final Path stripePath = directory.resolve("stripe");
+
+        StripedStorage.checkStripe(stripePath, 1, 2);
+        StripedStorage.checkStripe(stripePath, 1, 2);
+
+        try {
+            StripedStorage.checkStripe(stripePath, 1, 3);
+            Assert.fail("opened the stripe with another number of stripes");
+        } catch (final IllegalStateException e) {
+            Assert.assertTrue(e.getMessage().contains("1 of 2"));
+        }
+
+        try {
+            StripedStorage.checkStripe(stripePath, 0, 2);
+            Assert.fail("opened the stripe as another one");
+        } catch (final IllegalStateException e) {
+            // Expected.
+        }
+    }
+
+}
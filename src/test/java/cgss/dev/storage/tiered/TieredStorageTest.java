@@ -0,0 +1,85 @@
+package cgss.dev.storage.tiered;
+
+import cgss.dev.storage.KVStorageException;
+import cgss.dev.storage.KeyValue;
+import cgss.dev.storage.StorageKey;
+import cgss.dev.storage.memory.MemoryStorage;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class TieredStorageTest {
+    private static final Instant NOW = Instant.parse("2020-01-01T00:00:00Z");
+    private static final Duration EXPIRY_AGE = Duration.ofMinutes(1);
+
+    @Test
+    public void loadDueValues_StreamsDueValuesFromMemory() throws KVStorageException {
+        final MemoryStorage coldStorage = Mockito.spy(new MemoryStorage());
+        final TieredStorage tieredStorage = new TieredStorage(coldStorage, EXPIRY_AGE, Duration.ofSeconds(10), Clock.fixed(NOW, ZoneOffset.UTC));
+
+        tieredStorage.SaveValue(keyValue(-5, 0));
+        tieredStorage.SaveValue(keyValue(5, 1));
+        tieredStorage.SaveValue(keyValue(60, 2));
+        Assert.assertEquals(0L, (long) tieredStorage.GetProperties().get("tiered.hot-values"));
+
+        Assert.assertEquals(2, tieredStorage.loadDueValues());
+        Assert.assertEquals(0, tieredStorage.loadDueValues());
+        Assert.assertEquals(2L, (long) tieredStorage.GetProperties().get("tiered.hot-values"));
+
+        Mockito.clearInvocations(coldStorage);
+        try (final Stream<KeyValue> storedValues = tieredStorage.StreamValues()) {
+            final Iterator<KeyValue> iterator = storedValues.iterator();
+            Assert.assertEquals(NOW.minus(EXPIRY_AGE).minusSeconds(5), StorageKey.getTimestamp(iterator.next().getKey()));
+            Assert.assertEquals(NOW.minus(EXPIRY_AGE).plusSeconds(5), StorageKey.getTimestamp(iterator.next().getKey()));
+        }
+        Mockito.verify(coldStorage, Mockito.never()).StreamValuesFrom(Mockito.any());
+
+        try (final Stream<KeyValue> storedValues = tieredStorage.StreamValues()) {
+            Assert.assertEquals(3, storedValues.count());
+        }
+        Mockito.verify(coldStorage, Mockito.times(1)).StreamValuesFrom(Mockito.any());
+    }
+
+    @Test
+    public void saveValue_KeepsTiersInSync() throws KVStorageException {
+        final MemoryStorage coldStorage = new MemoryStorage();
+        final TieredStorage tieredStorage = new TieredStorage(coldStorage, EXPIRY_AGE, Duration.ofSeconds(10), Clock.fixed(NOW, ZoneOffset.UTC));
+        tieredStorage.loadDueValues();
+
+        final KeyValue dueValue = keyValue(1, 0);
+        tieredStorage.SaveValues(Arrays.asList(dueValue, keyValue(30, 1)));
+        tieredStorage.SaveValue(keyValue(2, 2));
+
+        Assert.assertEquals(2L, (long) tieredStorage.GetProperties().get("tiered.hot-values"));
+        Assert.assertEquals(3, coldStorage.CountValues());
+        Assert.assertEquals(keys(coldStorage.StreamValues()), keys(tieredStorage.StreamValues()));
+        Assert.assertEquals(2, tieredStorage.StreamValuesFrom(keyValue(2, 2).getKey()).count());
+
+        tieredStorage.DeleteValue(dueValue.getKey());
+
+        Assert.assertEquals(1L, (long) tieredStorage.GetProperties().get("tiered.hot-values"));
+        Assert.assertEquals(2, tieredStorage.CountValues());
+        Assert.assertEquals(keys(coldStorage.StreamValues()), keys(tieredStorage.StreamValues()));
+    }
+
+    private static KeyValue keyValue(final long dueInSeconds, final long sequence) {
+        return new KeyValue(StorageKey.encode(NOW.minus(EXPIRY_AGE).plusSeconds(dueInSeconds), sequence), "value".getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<Instant> keys(final Stream<KeyValue> storedValues) {
+        try (final Stream<KeyValue> values = storedValues) {
+            return values.map(keyValue -> StorageKey.getTimestamp(keyValue.getKey())).collect(Collectors.toList());
+        }
+    }
+}